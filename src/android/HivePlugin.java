@@ -24,6 +24,7 @@ package org.elastos.plugins.hive;
 
 import android.util.Base64;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
@@ -52,35 +53,171 @@ import org.elastos.hive.files.FileInfo;
 import org.elastos.hive.payment.Order;
 import org.elastos.hive.scripting.RawCondition;
 import org.elastos.hive.scripting.RawExecutable;
+import org.elastos.plugins.hive.database.BulkWrite;
+import org.elastos.plugins.hive.database.ChunkedInsert;
+import org.elastos.plugins.hive.files.FileCompression;
+import org.elastos.plugins.hive.files.ReadAheadInputStream;
+import org.elastos.plugins.hive.files.SpillBuffer;
+import org.elastos.plugins.hive.files.StreamRegistry;
+import org.elastos.plugins.hive.files.WriterPipeline;
+import org.elastos.plugins.hive.metrics.CallTrace;
+import org.elastos.plugins.hive.metrics.CallTracer;
+import org.elastos.plugins.hive.metrics.MeteredCallbackContext;
+import org.elastos.plugins.hive.metrics.PluginMetrics;
+import org.elastos.plugins.hive.nodes.HiveNodeSelector;
+import org.elastos.plugins.hive.nodes.HttpNodeProber;
+import org.elastos.plugins.hive.replica.CollectionReplica;
+import org.elastos.plugins.hive.replica.QueryMatcher;
+import org.elastos.plugins.hive.replica.ReplicaStore;
+import org.elastos.plugins.hive.requests.ProviderUnavailableException;
+import org.elastos.plugins.hive.requests.RequestTracker;
+import org.elastos.plugins.hive.requests.RetryPolicy;
+import org.elastos.plugins.hive.requests.SingleFlight;
+import org.elastos.plugins.hive.subscriptions.CollectionSubscription;
+import org.elastos.plugins.hive.workload.WorkloadRecorder;
+import org.elastos.plugins.hive.workload.WorkloadReplayer;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.nio.file.ProviderNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 
 public class HivePlugin extends CordovaPlugin {
-    private HashMap<String, Client> clientMap = new HashMap<>();
-    private HashMap<String, CallbackContext> clientAuthHandlerCallbackMap = new HashMap<>();
-    private HashMap<String, CompletableFuture<String>> clientAuthHandlerCompletionMap = new HashMap<>();
-    private HashMap<String, Vault> vaultMap = new HashMap<>();
-    private HashMap<String, InputStream> readerMap = new HashMap<>();
-    private HashMap<String, Integer> readerOffsetsMap = new HashMap<>(); // Current read offset byte position for each active reader
-    private HashMap<String, OutputStream> writerMap = new HashMap<>();
-    private HashMap<String, HiveURLInfo> hiveUrlInfoMap = new HashMap<>();
+    // Concurrent maps: offloaded actions (see OFFLOADED_ACTIONS) read them from worker threads
+    private ConcurrentHashMap<String, Client> clientMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CallbackContext> clientAuthHandlerCallbackMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CompletableFuture<String>> clientAuthHandlerCompletionMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, Vault> vaultMap = new ConcurrentHashMap<>();
+    // Open streams are bounded, and closed if JS forgets them. Closing may block on the network, so it is done
+    // in the background.
+    private StreamRegistry<InputStream> readers = new StreamRegistry<>("reader", DEFAULT_MAX_READERS, DEFAULT_STREAM_IDLE_TIMEOUT_MS,
+            reader -> cordova.getThreadPool().execute(() -> closeStreamQuietly(reader)));
+    private StreamRegistry<WriterPipeline> writers = new StreamRegistry<>("writer", DEFAULT_MAX_WRITERS, DEFAULT_STREAM_IDLE_TIMEOUT_MS,
+            writer -> cordova.getThreadPool().execute(writer::abort));
+    private ReadAheadInputStream.Stats readAheadStats = new ReadAheadInputStream.Stats();
+    // Large readAll() results written to temporary files, by reader object id. Deleted when the reader is closed.
+    private ConcurrentHashMap<String, File> readAllSpillFiles = new ConcurrentHashMap<>();
+    private static final String READ_ALL_SPILL_DIR = "hive-readall";
+    private static final int READ_SPILLED_MAX_CHUNK = 1024 * 1024;
+    private HashMap<String, CachedHiveURLInfo> hiveUrlInfoMap = new HashMap<>();
+
+    // Parsed hive urls, per client and url string. The same url is often parsed many times (ex: rendered in a feed),
+    // so we keep returning the same handle, and the same vault resolution, instead of parsing it again.
+    private static final int HIVE_URL_INFO_CACHE_SIZE = 100;
+    private LruCache<String, CompletableFuture<CachedHiveURLInfo>> hiveUrlInfoCache = new LruCache<String, CompletableFuture<CachedHiveURLInfo>>(HIVE_URL_INFO_CACHE_SIZE) {
+        @Override
+        protected void entryRemoved(boolean evicted, String key, CompletableFuture<CachedHiveURLInfo> oldValue, CompletableFuture<CachedHiveURLInfo> newValue) {
+            CachedHiveURLInfo removed = oldValue.getNow(null);
+            if (evicted && removed != null) {
+                synchronized (hiveUrlInfoMap) {
+                    hiveUrlInfoMap.remove(removed.objectId);
+                }
+            }
+        }
+    };
+
+    // Shared scheduler for timeouts and delayed work. Tasks scheduled here must stay short.
+    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private static final int DEFAULT_MAX_READERS = 32;
+    private static final int DEFAULT_MAX_WRITERS = 16;
+    private static final long DEFAULT_STREAM_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final long STREAM_SWEEP_INTERVAL_MS = 30 * 1000;
+
+    // Actions that decode and convert large arguments (documents, queries, script params). They run on the Cordova
+    // thread pool instead of the bridge thread, so that large payloads don't delay other plugin calls.
+    private static final Set<String> OFFLOADED_ACTIONS = new HashSet<>(Arrays.asList(
+            "client_callScriptOnVaults",
+            "database_insertOne",
+            "database_insertMany",
+            "database_countDocuments",
+            "database_findOne",
+            "database_findMany",
+            "database_findOneLocal",
+            "database_findManyLocal",
+            "database_countDocumentsLocal",
+            "database_subscribe",
+            "database_updateOne",
+            "database_updateMany",
+            "database_deleteOne",
+            "database_deleteMany",
+            "database_bulkWrite",
+            "scripting_setScript",
+            "scripting_call"
+    ));
+    // Disabled with setOptions(), to run all actions on the bridge thread
+    private volatile boolean offloadActions = true;
+
+    private static final int DEFAULT_FAN_OUT_CONCURRENCY = 8;
+    private static final long DEFAULT_FAN_OUT_TIMEOUT_MS = 15000;
+
+    private PluginMetrics metrics = new PluginMetrics();
+    private CallTracer tracer = new CallTracer();
+    private RequestTracker requests = new RequestTracker();
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    private SingleFlight singleFlight = new SingleFlight();
+    private WorkloadRecorder recorder = new WorkloadRecorder();
+
+    private static final String BUNDLED_NODE_LIST_ASSET = "hive/ipfsnodes.json";
+    // Null unless node selection was enabled with setOptions()
+    private volatile HiveNodeSelector nodeSelector = null;
+    // Database and scripting results serialized by Jackson and passed as is to JS, see setOptions()
+    private volatile boolean rawJsonResults = false;
+    // Local replicas of vault collections, by vault owner DID, app DID and collection name
+    private ConcurrentHashMap<String, CollectionReplica> replicas = new ConcurrentHashMap<>();
+    private ReplicaStore replicaStore = null;
+    // Collection change subscriptions, by subscription id
+    private ConcurrentHashMap<String, CollectionSubscription> subscriptions = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CallbackContext> subscriptionCallbacks = new ConcurrentHashMap<>();
+    private CollectionSubscription.Stats subscriptionStats = new CollectionSubscription.Stats();
+    private AtomicLong nextSubscriptionId = new AtomicLong(1);
+    private volatile boolean paused = false;
+    private PluginWarmUp warmUp = new PluginWarmUp();
+    // Vault owners whose provider address is resolved as soon as a client exists, see setOptions()
+    private volatile List<String> warmUpVaultOwners = new ArrayList<>();
+    private AtomicBoolean vaultOwnersPreResolved = new AtomicBoolean(false);
+    // Provider addresses resolved ahead of the first vault lookup of each owner
+    private ConcurrentHashMap<String, String> preResolvedProviders = new ConcurrentHashMap<>();
+    // Vault provider addresses forced by setVaultAddress(), by vault owner DID
+    private ConcurrentHashMap<String, String> vaultAddressOverrides = new ConcurrentHashMap<>();
 
     private static boolean didResolverInitialized = false;
 
+    // config.xml preferences
+    private static final String PREFERENCE_DID_RESOLVER_URL = "HiveDIDResolverUrl";
+    private static final String PREFERENCE_WARM_UP = "HiveWarmUp";
+
     private static String s_didResolverUrl = "https://api.elastos.io/eid";
 
     private enum EnhancedErrorCodes {
@@ -89,13 +226,19 @@ public class HivePlugin extends CordovaPlugin {
         PROVIDER_NOT_PUBLISHED(-2),
         DID_NOT_PUBLISHED(-3),
         INVALID_HIVE_URL_FORMAT(-4),
+        PROVIDER_UNAVAILABLE(-5),
 
         // Database errors - range -1000 ~ -1999
         COLLECTION_NOT_FOUND(-1000),
+        REPLICA_NOT_ENABLED(-1001),
+        UNSUPPORTED_LOCAL_QUERY(-1002),
 
         // File errors - range -2000 ~ -2999
         FILE_NOT_FOUND(-2000),
 
+        // Request errors - range -3000 ~ -3999
+        REQUEST_CANCELLED(-3000),
+
         UNSPECIFIED(-9999);
 
         public int mValue;
@@ -114,19 +257,280 @@ public class HivePlugin extends CordovaPlugin {
         }
     }
 
+    @Override
+    protected void pluginInitialize() {
+        // The resolver can only be set up in the background if its URL is configured in config.xml, otherwise
+        // JS may still change it with setDIDResolverUrl() before creating a client.
+        String resolverUrl = preferences.getString(PREFERENCE_DID_RESOLVER_URL, null);
+        if (resolverUrl != null && !resolverUrl.isEmpty())
+            s_didResolverUrl = resolverUrl;
+
+        if (preferences.getBoolean(PREFERENCE_WARM_UP, true)) {
+            boolean setupResolver = resolverUrl != null && !resolverUrl.isEmpty();
+            cordova.getThreadPool().execute(() -> warmUp.run(setupResolver ? HivePlugin::setupDIDResolver : null));
+        }
+
+        // Spill files left by a previous run of the app
+        long startTime = System.currentTimeMillis();
+        cordova.getThreadPool().execute(() -> {
+            File[] leftovers = new File(cordova.getActivity().getCacheDir(), READ_ALL_SPILL_DIR).listFiles();
+            if (leftovers != null) {
+                for (File leftover : leftovers) {
+                    if (leftover.lastModified() < startTime)
+                        leftover.delete();
+                }
+            }
+        });
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            readers.sweepIdle();
+            writers.sweepIdle();
+            deleteSpillFiles(false);
+        }, STREAM_SWEEP_INTERVAL_MS, STREAM_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public void onDestroy() {
-        for(Map.Entry<String, CompletableFuture<String>> entry : clientAuthHandlerCompletionMap.entrySet()){
-            CompletableFuture<String> authResponseFuture = entry.getValue();
-            authResponseFuture.complete(null);
-            clientAuthHandlerCompletionMap.remove(entry.getKey());
+        releaseJSResources();
+
+        HiveNodeSelector selector = nodeSelector;
+        if (selector != null)
+            selector.stop();
+
+        scheduler.shutdownNow();
+        tracer.shutdown();
+        recorder.shutdown();
+
+        synchronized (this) {
+            if (replicaStore != null)
+                replicaStore.close();
+        }
+    }
+
+    /**
+     * Collection subscriptions and node probes stop while the app is in background.
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        paused = true;
+        for (CollectionSubscription subscription : subscriptions.values()) {
+            subscription.pause();
+        }
+
+        HiveNodeSelector selector = nodeSelector;
+        if (selector != null)
+            selector.stop();
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        paused = false;
+        for (CollectionSubscription subscription : subscriptions.values()) {
+            subscription.resume();
+        }
+
+        HiveNodeSelector selector = nodeSelector;
+        if (selector != null)
+            selector.start(scheduler, cordova.getThreadPool());
+    }
+
+    /**
+     * The web view navigated or reloaded: JS objects are gone, nothing can close their streams any more.
+     */
+    @Override
+    public void onReset() {
+        releaseJSResources();
+    }
+
+    /**
+     * Unblocks pending auth handlers and closes all open streams.
+     */
+    private void releaseJSResources() {
+        for (String clientObjectId : clientAuthHandlerCompletionMap.keySet()) {
+            CompletableFuture<String> authResponseFuture = clientAuthHandlerCompletionMap.remove(clientObjectId);
+            if (authResponseFuture != null)
+                authResponseFuture.complete(null);
+        }
+
+        readers.closeAll();
+        writers.closeAll();
+        deleteSpillFiles(true);
+
+        for (String subscriptionId : subscriptions.keySet()) {
+            CollectionSubscription subscription = subscriptions.remove(subscriptionId);
+            if (subscription != null)
+                subscription.cancel();
+        }
+        subscriptionCallbacks.clear();
+    }
+
+    /**
+     * Deletes readAll() spill files of readers that are not open any more (ex: reclaimed), or all spill files.
+     */
+    private void deleteSpillFiles(boolean all) {
+        for (Map.Entry<String, File> entry : readAllSpillFiles.entrySet()) {
+            if ((all || !readers.contains(entry.getKey())) && readAllSpillFiles.remove(entry.getKey(), entry.getValue()))
+                entry.getValue().delete();
+        }
+    }
+
+    private static void closeStreamQuietly(InputStream stream) {
+        try {
+            stream.close();
+        }
+        catch (IOException e) {
+            Log.w("HivePlugin", "Unable to close reader", e);
         }
     }
 
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        long startNanos = System.nanoTime();
+
+        // All results go through a metered context that records the call outcome and duration.
+        CallTrace trace = tracer.startTrace(action, startNanos);
+        MeteredCallbackContext meteredCallbackContext = new MeteredCallbackContext(callbackContext, metrics.forAction(action), startNanos, tracer, trace);
+
+        // Calls with a request id can be cancelled with the "cancel" action.
+        String requestId = extractRequestId(args);
+        if (requestId != null) {
+            meteredCallbackContext.setRequest(requests.start(requestId, () -> {
+                JSONObject error = createEnhancedError(EnhancedErrorCodes.REQUEST_CANCELLED, "Request cancelled: " + action);
+                return meteredCallbackContext.cancel(new PluginResult(PluginResult.Status.ERROR, error));
+            }));
+        }
+
+        if (offloadActions && OFFLOADED_ACTIONS.contains(action)) {
+            try {
+                cordova.getThreadPool().execute(() -> executeOffloaded(action, args, meteredCallbackContext, startNanos));
+                meteredCallbackContext.getMetrics().recordCall();
+                meteredCallbackContext.getMetrics().recordBridgeTime(System.nanoTime() - startNanos);
+                return true;
+            }
+            catch (RejectedExecutionException e) {
+                // Pool shutting down: run the action on the bridge thread
+            }
+        }
+
+        startCapture(action, args, meteredCallbackContext, startNanos);
+
+        boolean handled;
+        CallTracer.setCurrentTrace(trace);
+        try {
+            handled = executeAction(action, args, meteredCallbackContext);
+        }
+        finally {
+            CallTracer.setCurrentTrace(null);
+        }
+
+        if (handled) {
+            long endNanos = System.nanoTime();
+            meteredCallbackContext.getMetrics().recordCall();
+            meteredCallbackContext.getMetrics().recordBridgeTime(endNanos - startNanos);
+            meteredCallbackContext.getMetrics().recordWorkTime(endNanos - startNanos);
+            meteredCallbackContext.onBridgeReturned(endNanos);
+        }
+        return handled;
+    }
+
+    /**
+     * Runs an action of OFFLOADED_ACTIONS on a worker thread. Queue time is the time between execute() and the
+     * start of the action on the worker, work time is the synchronous part of the action on the worker.
+     */
+    private void executeOffloaded(String action, JSONArray args, MeteredCallbackContext callbackContext, long startNanos) {
+        long workStartNanos = System.nanoTime();
+        callbackContext.getMetrics().recordQueueTime(workStartNanos - startNanos);
+        CallTrace trace = callbackContext.getTrace();
+        if (trace != null)
+            trace.addSpan("queue", startNanos, workStartNanos);
+
+        // Arguments are redacted here rather than on the bridge thread, as they can be large (ex: insertMany)
+        startCapture(action, args, callbackContext, startNanos);
+
+        // Cancelled while queued: the cancellation result was already sent
+        RequestTracker.Request request = callbackContext.getRequest();
+        if (request == null || !request.isCancelled()) {
+            CallTracer.setCurrentTrace(trace);
+            try {
+                executeAction(action, args, callbackContext);
+            }
+            catch (JSONException | RuntimeException e) {
+                enhancedError(callbackContext, e);
+            }
+            finally {
+                CallTracer.setCurrentTrace(null);
+            }
+        }
+
+        long workEndNanos = System.nanoTime();
+        callbackContext.getMetrics().recordWorkTime(workEndNanos - workStartNanos);
+        callbackContext.onBridgeReturned(workEndNanos);
+    }
+
+    /**
+     * Opt-in capture of the calls made by the app, to replay them later. Must be called before the action runs.
+     */
+    private void startCapture(String action, JSONArray args, MeteredCallbackContext callbackContext, long startNanos) {
+        MeteredCallbackContext.CompletionListener captureListener = recorder.onCallStarted(action, args, this::handleType, startNanos);
+        if (captureListener != null)
+            callbackContext.setCompletionListener(captureListener);
+    }
+
+    /**
+     * The JS side appends a {"$requestId": id} object to the arguments of each call. Removes it from the arguments
+     * and returns the id, or null if there is no request id.
+     */
+    private static String extractRequestId(JSONArray args) {
+        int last = args.length() - 1;
+        if (last < 0)
+            return null;
+
+        JSONObject requestInfo = args.optJSONObject(last);
+        if (requestInfo == null || !requestInfo.has("$requestId"))
+            return null;
+
+        args.remove(last);
+        return requestInfo.optString("$requestId", null);
+    }
+
+    /**
+     * Type of the plugin object with the given id, or null if the value is not an object id. Used to recognize
+     * object ids in captured call arguments.
+     */
+    private String handleType(String value) {
+        if (vaultMap.containsKey(value))
+            return "vault";
+        if (clientMap.containsKey(value))
+            return "client";
+        if (readers.contains(value))
+            return "reader";
+        if (writers.contains(value))
+            return "writer";
+        synchronized (hiveUrlInfoMap) {
+            if (hiveUrlInfoMap.containsKey(value))
+                return "hiveURLInfo";
+        }
+        return null;
+    }
+
+    private boolean executeAction(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
         try {
             switch (action) {
+                case "cancel":
+                    this.cancel(args, callbackContext);
+                    break;
+                case "setOptions":
+                    this.setOptions(args, callbackContext);
+                    break;
+                case "getMetrics":
+                    this.getMetrics(args, callbackContext);
+                    break;
+                case "resetMetrics":
+                    this.resetMetrics(args, callbackContext);
+                    break;
+                case "replayWorkload":
+                    this.replayWorkload(args, callbackContext);
+                    break;
                 case "getClient":
                     this.getClient(args, callbackContext);
                     break;
@@ -145,12 +549,21 @@ public class HivePlugin extends CordovaPlugin {
                 case "client_getVault":
                     this.client_getVault(args, callbackContext);
                     break;
+                case "client_setVaultAddress":
+                    this.client_setVaultAddress(args, callbackContext);
+                    break;
+                case "client_getVaultAddress":
+                    this.client_getVaultAddress(args, callbackContext);
+                    break;
                 case "client_parseHiveURL":
                     this.client_parseHiveURL(args, callbackContext);
                     break;
                 case "client_downloadFileByScriptUrl":
                     this.client_downloadFileByScriptUrl(args, callbackContext);
                     break;
+                case "client_callScriptOnVaults":
+                    this.client_callScriptOnVaults(args, callbackContext);
+                    break;
                 case "vault_getNodeVersion":
                     this.vault_getNodeVersion(args, callbackContext);
                     break;
@@ -178,6 +591,30 @@ public class HivePlugin extends CordovaPlugin {
                 case "database_findMany":
                     this.database_findMany(args, callbackContext);
                     break;
+                case "database_enableReplica":
+                    this.database_enableReplica(args, callbackContext);
+                    break;
+                case "database_syncReplica":
+                    this.database_syncReplica(args, callbackContext);
+                    break;
+                case "database_disableReplica":
+                    this.database_disableReplica(args, callbackContext);
+                    break;
+                case "database_findOneLocal":
+                    this.database_findLocal(args, callbackContext, true);
+                    break;
+                case "database_findManyLocal":
+                    this.database_findLocal(args, callbackContext, false);
+                    break;
+                case "database_countDocumentsLocal":
+                    this.database_countDocumentsLocal(args, callbackContext);
+                    break;
+                case "database_subscribe":
+                    this.database_subscribe(args, callbackContext);
+                    break;
+                case "database_unsubscribe":
+                    this.database_unsubscribe(args, callbackContext);
+                    break;
                 case "database_updateOne":
                     this.database_updateOne(args, callbackContext);
                     break;
@@ -190,6 +627,9 @@ public class HivePlugin extends CordovaPlugin {
                 case "database_deleteMany":
                     this.database_deleteMany(args, callbackContext);
                     break;
+                case "database_bulkWrite":
+                    this.database_bulkWrite(args, callbackContext);
+                    break;
                 case "files_upload":
                     this.files_upload(args, callbackContext);
                     break;
@@ -238,9 +678,15 @@ public class HivePlugin extends CordovaPlugin {
                 case "reader_read":
                     this.reader_read(args, callbackContext);
                     break;
+                case "reader_enableReadAhead":
+                    this.reader_enableReadAhead(args, callbackContext);
+                    break;
                 case "reader_readAll":
                     this.reader_readAll(args, callbackContext);
                     break;
+                case "reader_readSpilled":
+                    this.reader_readSpilled(args, callbackContext);
+                    break;
                 case "reader_close":
                     this.reader_close(args, callbackContext);
                     break;
@@ -317,6 +763,12 @@ public class HivePlugin extends CordovaPlugin {
         else if (exception instanceof FileNotFoundException) {
             result = new PluginResult(PluginResult.Status.ERROR, Objects.requireNonNull(createEnhancedError(EnhancedErrorCodes.FILE_NOT_FOUND, hiveErrorMessage)));
         }
+        else if (exception instanceof ProviderUnavailableException) {
+            result = new PluginResult(PluginResult.Status.ERROR, Objects.requireNonNull(createEnhancedError(EnhancedErrorCodes.PROVIDER_UNAVAILABLE, hiveErrorMessage)));
+        }
+        else if (exception instanceof QueryMatcher.UnsupportedQueryException) {
+            result = new PluginResult(PluginResult.Status.ERROR, Objects.requireNonNull(createEnhancedError(EnhancedErrorCodes.UNSUPPORTED_LOCAL_QUERY, hiveErrorMessage)));
+        }
 
         if (result == null) {
             result = new PluginResult(PluginResult.Status.ERROR, errorMessage);
@@ -325,6 +777,24 @@ public class HivePlugin extends CordovaPlugin {
         callbackContext.sendPluginResult(result);
     }
 
+    /**
+     * Same classification as enhancedError(), but returned as a JSON object (code + message) so it can be embedded
+     * inside a larger result, for example one entry of a multi-vault call.
+     */
+    private JSONObject enhancedErrorJson(Throwable exception) {
+        String hiveErrorMessage = exception.getMessage();
+        if (hiveErrorMessage != null && hiveErrorMessage.contains("collection not exist"))
+            return createEnhancedError(EnhancedErrorCodes.COLLECTION_NOT_FOUND, hiveErrorMessage);
+        else if (hiveErrorMessage != null && hiveErrorMessage.contains("vault service not found"))
+            return createEnhancedError(EnhancedErrorCodes.VAULT_NOT_FOUND, "Vault does not exist. It has to be created by calling createVault()");
+        else if (exception instanceof FileNotFoundException)
+            return createEnhancedError(EnhancedErrorCodes.FILE_NOT_FOUND, hiveErrorMessage);
+        else if (exception instanceof ProviderUnavailableException)
+            return createEnhancedError(EnhancedErrorCodes.PROVIDER_UNAVAILABLE, hiveErrorMessage);
+        else
+            return createEnhancedError(EnhancedErrorCodes.UNSPECIFIED, hiveErrorMessage);
+    }
+
     private void enhancedError(CallbackContext callbackContext, EnhancedErrorCodes enhancedErrorCode, String message) {
         PluginResult result =  new PluginResult(PluginResult.Status.ERROR, Objects.requireNonNull(createEnhancedError(enhancedErrorCode, message)));
         callbackContext.sendPluginResult(result);
@@ -338,7 +808,7 @@ public class HivePlugin extends CordovaPlugin {
         return s_didResolverUrl;
     }
 
-    private void setupDIDResolver() throws HiveException {
+    private static synchronized void setupDIDResolver() throws HiveException {
         if (didResolverInitialized)
             return;
 
@@ -350,131 +820,626 @@ public class HivePlugin extends CordovaPlugin {
         didResolverInitialized = true;
     }
 
-    private void setDIDResolverUrl(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        s_didResolverUrl = args.getString(0);
+    /**
+     * Cancels a call in progress. The cancelled call fails immediately with a REQUEST_CANCELLED error, and results
+     * it produces later are dropped. Returns false if the call was already completed.
+     */
+    private void cancel(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String requestId = args.getString(0);
 
-        callbackContext.success();
+        boolean cancelled = requests.cancel(requestId);
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, cancelled));
     }
 
-    private void getClient(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        JSONObject optionsJson = args.isNull(0) ? null : args.getJSONObject(0);
-        if (optionsJson == null) {
-            callbackContext.error("Client creation options must be provided");
+    /**
+     * Starts or stops probing hive nodes, to route vault lookups to the fastest one. The node list is the bundled
+     * ipfsnodes.json, unless a list of addresses is given (ex: local test servers).
+     */
+    private void configureNodeSelection(JSONObject nodesOptions) throws JSONException, IOException {
+        HiveNodeSelector previousSelector = nodeSelector;
+        if (previousSelector != null)
+            previousSelector.stop();
+
+        if (!nodesOptions.optBoolean("enabled", true)) {
+            nodeSelector = null;
             return;
         }
 
-        try {
-            setupDIDResolver();
-
-            // final atomic reference as a way to pass our non final client Id to the auth handler.
-            final AtomicReference<String> clientIdReference = new AtomicReference<>();
-            String authDIDDocumentJson = optionsJson.getString("authenticationDIDDocument");
+        List<String> addresses;
+        if (nodesOptions.has("addresses"))
+            addresses = HivePluginHelper.JSONArrayToList(nodesOptions.getJSONArray("addresses"));
+        else
+            addresses = HiveNodeSelector.parseNodeList(readAsset(BUNDLED_NODE_LIST_ASSET));
+
+        HiveNodeSelector.Routing routing = HiveNodeSelector.Routing.fromName(nodesOptions.optString("routing", "fallback"));
+        if (routing == null)
+            throw new IllegalArgumentException("Unknown routing " + nodesOptions.optString("routing"));
+
+        HiveNodeSelector selector = new HiveNodeSelector(addresses,
+                new HttpNodeProber(nodesOptions.optString("probePath", HttpNodeProber.DEFAULT_PROBE_PATH)),
+                routing,
+                nodesOptions.optLong("probeIntervalMs", HiveNodeSelector.DEFAULT_PROBE_INTERVAL_MS),
+                nodesOptions.optInt("probeTimeoutMs", HiveNodeSelector.DEFAULT_PROBE_TIMEOUT_MS));
+        if (!paused)
+            selector.start(scheduler, cordova.getThreadPool());
+        nodeSelector = selector;
+    }
 
-            ApplicationContext context = new ApplicationContext() {
-                @Override
-                public String getLocalDataDir() {
-                    return getDataDir();
-                }
+    private String readAsset(String assetPath) throws IOException {
+        try (InputStream in = cordova.getActivity().getAssets().open(assetPath)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int readBytes;
+            while ((readBytes = in.read(buffer)) != -1) {
+                content.write(buffer, 0, readBytes);
+            }
+            return content.toString("UTF-8");
+        }
+    }
 
-                @Override
-                public DIDDocument getAppInstanceDocument() {
-                    try {
-                        DIDDocument authenticationDIDDocument = DIDDocument.fromJson(authDIDDocumentJson);
-                        return authenticationDIDDocument;
-                    } catch (MalformedDocumentException e) {
-                        e.printStackTrace();
-                        return null;
-                    }
-                }
+    /**
+     * Resolves the vault of the given owner. The address forced by setVaultAddress() is used first, if any.
+     * Otherwise, when node selection is enabled, the fastest healthy node is used as provider, either always, or
+     * only if the owner doesn't publish a provider (depending on the routing option).
+     */
+    private CompletableFuture<Vault> resolveVault(Client client, String ownerDid) {
+        String forcedAddress = vaultAddressOverrides.get(ownerDid);
+        if (forcedAddress != null)
+            return client.getVault(ownerDid, forcedAddress);
 
-                @Override
-                public CompletableFuture<String> getAuthorization(String jwtToken) {
-                    CompletableFuture<String> future = new CompletableFuture<>();
+        // Published provider resolved during warm-up, used once instead of resolving the owner's DID again
+        String publishedAddress = preResolvedProviders.remove(ownerDid);
 
-                    // Retrieve the JS side callback context to call it.
-                    // JS will call client_setAuthHandlerChallengeCallback() to send the response JWT
-                    CallbackContext authCallbackContext = clientAuthHandlerCallbackMap.get(clientIdReference.get());
+        HiveNodeSelector selector = nodeSelector;
+        String fastestNode = selector != null ? selector.selectFastest() : null;
+        if (fastestNode == null)
+            return client.getVault(ownerDid, publishedAddress);
 
-                    // Save the response callback ref to call it from client_sendAuthHandlerChallengeResponse
-                    clientAuthHandlerCompletionMap.put(clientIdReference.get(), future);
+        if (selector.getRouting() == HiveNodeSelector.Routing.ALWAYS)
+            return client.getVault(ownerDid, fastestNode);
 
-                    // Call JS callback, so the dapp can start the auth flow.
-                    // Keep the callback active for future use.
-                    PluginResult result = new PluginResult(PluginResult.Status.OK, jwtToken);
-                    result.setKeepCallback(true);
-                    authCallbackContext.sendPluginResult(result);
+        return withNodeFallback(client.getVault(ownerDid, publishedAddress), client, ownerDid, fastestNode);
+    }
 
-                    return future;
-                }
-            };
+    /**
+     * Resolves the published provider of the vault owners configured with setOptions(), in the background, so
+     * that their first vault lookup doesn't wait for DID resolution. Done once, with the first available client.
+     */
+    private void preResolveVaultOwners(Client client) {
+        List<String> vaultOwners = warmUpVaultOwners;
+        if (vaultOwners.isEmpty() || !vaultOwnersPreResolved.compareAndSet(false, true))
+            return;
 
-            Client client = Client.createInstance(context);
-            String clientId = ""+System.identityHashCode(client);
-            clientIdReference.set(clientId);
-            clientMap.put(clientId, client);
+        for (String ownerDid : vaultOwners) {
+            if (vaultAddressOverrides.containsKey(ownerDid))
+                continue;
 
-            JSONObject ret = new JSONObject();
-            ret.put("objectId", clientId);
-            callbackContext.success(ret);
-        }
-        catch (Exception e) {
-            enhancedError(callbackContext, e);
+            client.getVaultProvider(ownerDid, null).whenComplete((address, e) -> {
+                if (e == null && address != null) {
+                    preResolvedProviders.put(ownerDid, address);
+                    warmUp.recordPreResolvedOwner(true);
+                }
+                else {
+                    Log.w("HivePlugin", "Unable to pre-resolve the vault provider of " + ownerDid, e);
+                    warmUp.recordPreResolvedOwner(false);
+                }
+            });
         }
     }
 
-    /*private void client_setVaultAddress(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        String ownerDid = args.getString(0);
-        String vaultAddress = args.getString(1);
+    /**
+     * Retries a failed vault lookup on the given node, if it failed because the owner has no published provider.
+     */
+    private static CompletableFuture<Vault> withNodeFallback(CompletableFuture<Vault> lookup, Client client, String ownerDid, String node) {
+        return lookup.handle((vault, e) -> {
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            if (cause instanceof ProviderNotSetException)
+                return client.getVault(ownerDid, node);
+
+            CompletableFuture<Vault> result = new CompletableFuture<>();
+            if (e != null)
+                result.completeExceptionally(cause);
+            else
+                result.complete(vault);
+            return result;
+        }).thenCompose(future -> future);
+    }
 
-        Client.setVaultProvider(ownerDid, vaultAddress);
+    /**
+     * Returns the target DID of a hive url (hive://target_did@app_did/script?params), or null.
+     */
+    private static String hiveUrlTargetDid(String hiveUrl) {
+        if (!hiveUrl.startsWith("hive://"))
+            return null;
 
-        callbackContext.success();
+        int separator = hiveUrl.indexOf('@', "hive://".length());
+        return separator > 0 ? hiveUrl.substring("hive://".length(), separator) : null;
     }
 
-    private void client_getVaultAddress(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        String ownerDid = args.getString(0);
-
-        Client.getVaultProvider(ownerDid).thenAccept(address -> {
-            callbackContext.success();
-        });
+    /**
+     * Calls the script of a hive url (hive://target_did@app_did/script?params=...), with the same address override
+     * and node selection as resolveVault(). Without override and node routing, the SDK resolves the vault and calls
+     * the script itself. Otherwise, the script is called on the routed vault, so that the script and a download of
+     * its output reach the same node. Completes with the vault used (null for the SDK's) and the script output.
+     */
+    private CompletableFuture<ScriptUrlCall> callScriptUrl(CachedHiveURLInfo cachedInfo) {
+        Client client = cachedInfo.client;
+        String targetDid = hiveUrlTargetDid(cachedInfo.url);
+        String forcedAddress = targetDid != null ? vaultAddressOverrides.get(targetDid) : null;
+        if (forcedAddress != null)
+            return callScriptUrlOn(cachedInfo, client.getVault(targetDid, forcedAddress));
+
+        HiveNodeSelector selector = nodeSelector;
+        String fastestNode = selector != null && targetDid != null ? selector.selectFastest() : null;
+        if (fastestNode != null && selector.getRouting() == HiveNodeSelector.Routing.ALWAYS)
+            return callScriptUrlOn(cachedInfo, client.getVault(targetDid, fastestNode));
+
+        CompletableFuture<ScriptUrlCall> sdkCall = cachedInfo.info.callScript(JsonNode.class).thenApply(scriptResult -> new ScriptUrlCall(null, scriptResult));
+        if (fastestNode == null)
+            return sdkCall;
+
+        // Fallback routing: the fastest node is only used if the target doesn't publish a provider
+        return sdkCall.handle((scriptCall, e) -> {
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            if (cause instanceof ProviderNotSetException)
+                return callScriptUrlOn(cachedInfo, client.getVault(targetDid, fastestNode));
+
+            CompletableFuture<ScriptUrlCall> result = new CompletableFuture<>();
+            if (e != null)
+                result.completeExceptionally(cause);
+            else
+                result.complete(scriptCall);
+            return result;
+        }).thenCompose(future -> future);
+    }
 
-        callbackContext.success((String)null);
-    }*/
+    /**
+     * Calls the script of a hive url on the given vault, with the script name, app DID and params of the url.
+     */
+    private static CompletableFuture<ScriptUrlCall> callScriptUrlOn(CachedHiveURLInfo cachedInfo, CompletableFuture<Vault> vaultLookup) {
+        return vaultLookup.thenCompose(vault -> {
+            if (vault == null)
+                throw new CompletionException(new IllegalStateException("No vault could be resolved for " + cachedInfo.url));
+
+            String path = cachedInfo.url.substring(cachedInfo.url.indexOf('@') + 1);
+            int scriptSeparator = path.indexOf('/');
+            if (scriptSeparator <= 0)
+                throw new CompletionException(new IllegalArgumentException("The given url could not be parsed into a valid info for hive: " + cachedInfo.url));
+
+            String appDid = path.substring(0, scriptSeparator);
+            String scriptName = path.substring(scriptSeparator + 1);
+            JsonNode params = null;
+            int paramsSeparator = scriptName.indexOf("?params=");
+            if (paramsSeparator >= 0) {
+                String paramsString = scriptName.substring(paramsSeparator + "?params=".length());
+                scriptName = scriptName.substring(0, paramsSeparator);
+                try {
+                    params = HivePluginHelper.jsonStringToJsonNode(URLDecoder.decode(paramsString, "UTF-8"));
+                }
+                catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    params = null;
+                }
+                if (params == null)
+                    throw new CompletionException(new IllegalArgumentException("Invalid script parameters in hive url: " + cachedInfo.url));
+            }
 
-    private void client_setAuthHandlerChallengeCallback(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        String clientObjectId = args.getString(0);
+            return vault.getScripting().callScript(scriptName, params, appDid, JsonNode.class)
+                    .thenApply(scriptResult -> new ScriptUrlCall(vault, scriptResult));
+        });
+    }
 
-        // Save current callback content to be able to call it back when an authentication is requests by the hive SDK
-        clientAuthHandlerCallbackMap.put(clientObjectId, callbackContext);
+    private static class ScriptUrlCall {
+        // Null when the SDK resolved the vault: the vault of the url info is then the same one
+        final Vault vault;
+        final JsonNode result;
 
-        // No immediate answer. Just keep the callback context reference for later use.
-        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
-        result.setKeepCallback(true);
-        callbackContext.sendPluginResult(result);
+        ScriptUrlCall(Vault vault, JsonNode result) {
+            this.vault = vault;
+            this.result = result;
+        }
     }
 
-    private void client_sendAuthHandlerChallengeResponse(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        String clientObjectId = args.getString(0);
-        String challengeResponseJwt = args.isNull(1) ? null : args.getString(1);
+    private static RequestTracker.Request requestOf(CallbackContext callbackContext) {
+        if (callbackContext instanceof MeteredCallbackContext)
+            return ((MeteredCallbackContext) callbackContext).getRequest();
+        return null;
+    }
 
-        /*if (challengeResponseJwt == null) {
-            callbackContext.error("Empty challenge response given!");
-            return;
-        }*/
+    /**
+     * Makes the given SDK future cancellable by the call's request, if any.
+     */
+    private static <T> CompletableFuture<T> cancellable(CallbackContext callbackContext, CompletableFuture<T> future) {
+        RequestTracker.Request request = requestOf(callbackContext);
+        return request != null ? request.track(future) : future;
+    }
 
-        // Retrieve the auth response callback and send the authentication JWT back to the hive SDK
-        CompletableFuture<String> authResponseFuture = clientAuthHandlerCompletionMap.get(clientObjectId);
-        authResponseFuture.complete(challengeResponseJwt);
+    /**
+     * Same as cancellable(), for SDK futures that produce a resource to release if the call was cancelled
+     * in the meantime.
+     */
+    private static <T> CompletableFuture<T> cancellable(CallbackContext callbackContext, CompletableFuture<T> future, RequestTracker.LateResultCloser<T> lateResultCloser) {
+        RequestTracker.Request request = requestOf(callbackContext);
+        return request != null ? request.track(future, lateResultCloser) : future;
+    }
 
-        clientAuthHandlerCompletionMap.remove(clientObjectId);
+    /**
+     * Calls an idempotent vault operation, retried on transient errors, and guarded by the circuit breaker of the
+     * vault provider. Retries stop when the call's request is cancelled. callbackContext is null for operations
+     * shared by several callers, that are not bound to a single request.
+     */
+    private <T> CompletableFuture<T> withRetry(Vault vault, CallbackContext callbackContext, Supplier<CompletableFuture<T>> operation) {
+        return retryPolicy.execute(vault.getProviderAddress(), operation, scheduler, requestOf(callbackContext));
+    }
 
-        callbackContext.success();
+    /**
+     * Runs a read operation, or shares the result of the identical operation already in flight on the same vault.
+     * The shared operation is not tied to the request of any caller, so that cancelling one caller doesn't
+     * affect the others.
+     */
+    private <T> CompletableFuture<T> sharedRead(Vault vault, String action, Supplier<CompletableFuture<T>> operation, Object... args) {
+        String vaultKey = vault.getProviderAddress() + " " + vault.getOwnerDid() + " " + vault.getAppDid();
+        return singleFlight.execute(SingleFlight.key(vaultKey, action, args), operation);
     }
 
-    private void client_createVault(JSONArray args, CallbackContext callbackContext) throws JSONException {
-        String clientObjectId = args.getString(0);
-        String vaultOwnerDid = args.isNull(1) ? null : args.getString(1);
-        String vaultProviderAddress = args.isNull(2) ? null : args.getString(2);
+    /**
+     * Applies plugin wide options. Each feature reads its own section, missing sections leave the related
+     * settings unchanged.
+     */
+    private void setOptions(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject options = args.getJSONObject(0);
+
+        if (options.has("tracing"))
+            tracer.configure(options.getJSONObject("tracing"), new File(getDataDir(), "traces"));
+
+        if (options.has("nodes")) {
+            try {
+                configureNodeSelection(options.getJSONObject("nodes"));
+            }
+            catch (IOException | IllegalArgumentException e) {
+                callbackContext.error("Invalid node selection options: " + e.getMessage());
+                return;
+            }
+        }
+
+        if (options.has("retry"))
+            retryPolicy.configure(options.getJSONObject("retry"));
+
+        if (options.has("results")) {
+            JSONObject resultsOptions = options.getJSONObject("results");
+            if (resultsOptions.has("rawJson"))
+                rawJsonResults = resultsOptions.getBoolean("rawJson");
+        }
+
+        if (options.has("bridge")) {
+            JSONObject bridgeOptions = options.getJSONObject("bridge");
+            if (bridgeOptions.has("offloadActions"))
+                offloadActions = bridgeOptions.getBoolean("offloadActions");
+        }
+
+        if (options.has("capture"))
+            recorder.configure(options.getJSONObject("capture"), new File(getDataDir(), "captures"));
+
+        if (options.has("warmUp")) {
+            JSONArray vaultOwnersJson = options.getJSONObject("warmUp").optJSONArray("vaultOwners");
+            ArrayList<String> vaultOwners = new ArrayList<>();
+            if (vaultOwnersJson != null) {
+                for (int i=0; i<vaultOwnersJson.length(); i++) {
+                    vaultOwners.add(vaultOwnersJson.getString(i));
+                }
+            }
+            warmUpVaultOwners = vaultOwners;
+            vaultOwnersPreResolved.set(false);
+
+            Iterator<Client> clients = clientMap.values().iterator();
+            if (clients.hasNext())
+                preResolveVaultOwners(clients.next());
+        }
+
+        if (options.has("streams")) {
+            JSONObject streamsOptions = options.getJSONObject("streams");
+            long idleTimeoutMs = streamsOptions.optLong("idleTimeoutMs", readers.getIdleTimeoutMs());
+            if (streamsOptions.has("maxReaders") || streamsOptions.has("idleTimeoutMs"))
+                readers.setLimits(streamsOptions.optInt("maxReaders", readers.getMaxStreams()), idleTimeoutMs);
+            if (streamsOptions.has("maxWriters") || streamsOptions.has("idleTimeoutMs"))
+                writers.setLimits(streamsOptions.optInt("maxWriters", writers.getMaxStreams()), idleTimeoutMs);
+        }
+
+        callbackContext.success();
+    }
+
+    /**
+     * Returns a snapshot of per action call counts, errors, latencies and transferred bytes, plus the number of
+     * live objects held by the plugin.
+     */
+    private void getMetrics(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        HashMap<String, Integer> liveHandles = new HashMap<>();
+        liveHandles.put("clients", clientMap.size());
+        liveHandles.put("vaults", vaultMap.size());
+        liveHandles.put("readers", readers.size());
+        liveHandles.put("writers", writers.size());
+        synchronized (hiveUrlInfoMap) {
+            liveHandles.put("hiveURLInfos", hiveUrlInfoMap.size());
+        }
+        liveHandles.put("requests", requests.size());
+
+        JSONObject snapshot = metrics.snapshot(liveHandles);
+
+        JSONObject streams = new JSONObject();
+        streams.put("readers", readers.toJson());
+        streams.put("writers", writers.toJson());
+        streams.put("readAhead", readAheadStats.toJson());
+        snapshot.put("streams", streams);
+
+        HiveNodeSelector selector = nodeSelector;
+        if (selector != null)
+            snapshot.put("nodes", selector.toJson());
+
+        snapshot.put("circuitBreakers", retryPolicy.breakersToJson());
+        snapshot.put("singleFlight", singleFlight.toJson());
+        snapshot.put("capture", recorder.toJson());
+        snapshot.put("warmUp", warmUp.toJson());
+
+        JSONObject subscriptionsJson = subscriptionStats.toJson();
+        subscriptionsJson.put("active", subscriptions.size());
+        snapshot.put("subscriptions", subscriptionsJson);
+
+        callbackContext.success(snapshot);
+    }
+
+    /**
+     * Clears call counters and latencies, so that the next getMetrics() only covers calls made from now on.
+     */
+    private void resetMetrics(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        metrics.reset();
+        callbackContext.success();
+    }
+
+    /**
+     * Replays the calls of a capture file on the given vault, and returns the replay throughput and latencies.
+     * Only read-only calls are replayed unless the "allowWrites" option is set. The replay is stopped if this call
+     * is cancelled.
+     *
+     * Replayed calls don't go through execute(): they are not captured again, and are not counted in the plugin
+     * metrics of the app's own calls.
+     */
+    private void replayWorkload(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String captureFilePath = args.getString(0);
+        String vaultObjectId = args.getString(1);
+        JSONObject options = args.isNull(2) ? new JSONObject() : args.getJSONObject(2);
+        double speed = options.optDouble("speed", 1);
+        boolean allowWrites = options.optBoolean("allowWrites", false);
+
+        if (!ensureValidVault(vaultMap.get(vaultObjectId), callbackContext))
+            return;
+
+        cordova.getThreadPool().execute(() -> {
+            List<JSONObject> events;
+            try {
+                events = WorkloadReplayer.readEvents(new File(captureFilePath));
+            }
+            catch (IOException | JSONException e) {
+                callbackContext.error("Unable to read capture file " + captureFilePath + ": " + e.getMessage());
+                return;
+            }
+
+            // Same worker threads as offloaded calls, without the recorder and the metered context of execute()
+            WorkloadReplayer replayer = new WorkloadReplayer(events, speed, vaultObjectId, allowWrites, (action, replayArgs, replayCallbackContext) -> {
+                cordova.getThreadPool().execute(() -> {
+                    try {
+                        if (!executeAction(action, replayArgs, replayCallbackContext))
+                            replayCallbackContext.error("Unknown action " + action);
+                    }
+                    catch (JSONException | RuntimeException e) {
+                        enhancedError(replayCallbackContext, e);
+                    }
+                });
+            }, scheduler);
+
+            RequestTracker.Request request = requestOf(callbackContext);
+            if (request != null)
+                request.onCancel(replayer::stop);
+
+            replayer.start().thenAccept(result -> callbackContext.success(result)).exceptionally(e -> {
+                enhancedError(callbackContext, e.getCause());
+                return null;
+            });
+        });
+    }
+
+    /**
+     * Sends a JSON document returned by the SDK. In raw JSON mode, Jackson's serialization is passed as is to JS,
+     * instead of being parsed into a JSONObject that Cordova serializes again.
+     */
+    private void successJsonNode(CallbackContext callbackContext, JsonNode jsonNode) {
+        if (rawJsonResults) {
+            String json = HivePluginHelper.jsonNodeToJsonString(jsonNode);
+            if (json != null) {
+                callbackContext.sendPluginResult(new RawJsonPluginResult(json));
+                return;
+            }
+        }
+        callbackContext.success(HivePluginHelper.jsonNodeToJsonObject(jsonNode));
+    }
+
+    private static void recordBytesSent(CallbackContext callbackContext, long bytes) {
+        if (callbackContext instanceof MeteredCallbackContext)
+            ((MeteredCallbackContext) callbackContext).getMetrics().recordBytesSent(bytes);
+    }
+
+    private static void recordBytesReceived(CallbackContext callbackContext, long bytes) {
+        if (callbackContext instanceof MeteredCallbackContext)
+            ((MeteredCallbackContext) callbackContext).getMetrics().recordBytesReceived(bytes);
+    }
+
+    /**
+     * Registers a newly opened reader. If too many readers are in use, the reader is closed and an error is
+     * returned to JS.
+     */
+    private boolean registerReader(String objectId, InputStream reader, CallbackContext callbackContext) {
+        if (readers.add(objectId, reader))
+            return true;
+
+        cordova.getThreadPool().execute(() -> closeStreamQuietly(reader));
+        callbackContext.error("Too many readers in use, please close some readers first");
+        return false;
+    }
+
+    private boolean registerWriter(String objectId, WriterPipeline writer, CallbackContext callbackContext) {
+        if (writers.add(objectId, writer))
+            return true;
+
+        cordova.getThreadPool().execute(writer::abort);
+        callbackContext.error("Too many writers in use, please close some writers first");
+        return false;
+    }
+
+    /**
+     * The SDK resolver is static and set up only once, by the first client creation or by the warm up when the
+     * HiveDIDResolverUrl preference is set. Changing the URL after that would be silently ignored, so it fails.
+     */
+    private void setDIDResolverUrl(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String resolverUrl = args.getString(0);
+
+        synchronized (HivePlugin.class) {
+            if (didResolverInitialized && !resolverUrl.equals(s_didResolverUrl)) {
+                Log.w("HivePlugin", "DID resolver already initialized with " + s_didResolverUrl + ", ignoring " + resolverUrl);
+                callbackContext.error("The DID resolver is already initialized with " + s_didResolverUrl + ", it can't be changed to " + resolverUrl);
+                return;
+            }
+            s_didResolverUrl = resolverUrl;
+        }
+
+        callbackContext.success();
+    }
+
+    private void getClient(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject optionsJson = args.isNull(0) ? null : args.getJSONObject(0);
+        if (optionsJson == null) {
+            callbackContext.error("Client creation options must be provided");
+            return;
+        }
+
+        try {
+            setupDIDResolver();
+
+            // final atomic reference as a way to pass our non final client Id to the auth handler.
+            final AtomicReference<String> clientIdReference = new AtomicReference<>();
+            String authDIDDocumentJson = optionsJson.getString("authenticationDIDDocument");
+
+            ApplicationContext context = new ApplicationContext() {
+                @Override
+                public String getLocalDataDir() {
+                    return getDataDir();
+                }
+
+                @Override
+                public DIDDocument getAppInstanceDocument() {
+                    try {
+                        DIDDocument authenticationDIDDocument = DIDDocument.fromJson(authDIDDocumentJson);
+                        return authenticationDIDDocument;
+                    } catch (MalformedDocumentException e) {
+                        e.printStackTrace();
+                        return null;
+                    }
+                }
+
+                @Override
+                public CompletableFuture<String> getAuthorization(String jwtToken) {
+                    CompletableFuture<String> future = new CompletableFuture<>();
+
+                    // Retrieve the JS side callback context to call it.
+                    // JS will call client_setAuthHandlerChallengeCallback() to send the response JWT
+                    CallbackContext authCallbackContext = clientAuthHandlerCallbackMap.get(clientIdReference.get());
+
+                    // Save the response callback ref to call it from client_sendAuthHandlerChallengeResponse
+                    clientAuthHandlerCompletionMap.put(clientIdReference.get(), future);
+
+                    // Call JS callback, so the dapp can start the auth flow.
+                    // Keep the callback active for future use.
+                    PluginResult result = new PluginResult(PluginResult.Status.OK, jwtToken);
+                    result.setKeepCallback(true);
+                    authCallbackContext.sendPluginResult(result);
+
+                    return future;
+                }
+            };
+
+            Client client = Client.createInstance(context);
+            String clientId = ""+System.identityHashCode(client);
+            clientIdReference.set(clientId);
+            clientMap.put(clientId, client);
+
+            preResolveVaultOwners(client);
+
+            JSONObject ret = new JSONObject();
+            ret.put("objectId", clientId);
+            callbackContext.success(ret);
+        }
+        catch (Exception e) {
+            enhancedError(callbackContext, e);
+        }
+    }
+
+    /**
+     * Forces the vault provider address used for a vault owner, instead of the provider published in the owner's
+     * DID document. Mostly useful to point the plugin to a local or test hive node. A null address removes the
+     * override.
+     */
+    private void client_setVaultAddress(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String ownerDid = args.getString(0);
+        String vaultAddress = args.isNull(1) ? null : args.getString(1);
+
+        if (vaultAddress == null)
+            vaultAddressOverrides.remove(ownerDid);
+        else
+            vaultAddressOverrides.put(ownerDid, vaultAddress);
+
+        callbackContext.success();
+    }
+
+    /**
+     * Returns the vault provider address forced with setVaultAddress() for this owner, or null.
+     */
+    private void client_getVaultAddress(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String ownerDid = args.getString(0);
+
+        callbackContext.success(vaultAddressOverrides.get(ownerDid));
+    }
+
+    private void client_setAuthHandlerChallengeCallback(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String clientObjectId = args.getString(0);
+
+        // Save current callback content to be able to call it back when an authentication is requests by the hive SDK
+        clientAuthHandlerCallbackMap.put(clientObjectId, callbackContext);
+
+        // No immediate answer. Just keep the callback context reference for later use.
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    private void client_sendAuthHandlerChallengeResponse(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String clientObjectId = args.getString(0);
+        String challengeResponseJwt = args.isNull(1) ? null : args.getString(1);
+
+        /*if (challengeResponseJwt == null) {
+            callbackContext.error("Empty challenge response given!");
+            return;
+        }*/
+
+        // Retrieve the auth response callback and send the authentication JWT back to the hive SDK
+        CompletableFuture<String> authResponseFuture = clientAuthHandlerCompletionMap.get(clientObjectId);
+        authResponseFuture.complete(challengeResponseJwt);
+
+        clientAuthHandlerCompletionMap.remove(clientObjectId);
+
+        callbackContext.success();
+    }
+
+    private void client_createVault(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String clientObjectId = args.getString(0);
+        String vaultOwnerDid = args.isNull(1) ? null : args.getString(1);
+        String vaultProviderAddress = args.isNull(2) ? null : args.getString(2);
 
         if (vaultOwnerDid == null) {
             callbackContext.error("createVault() cannot be called with a null string as vault owner DID");
@@ -535,7 +1500,7 @@ public class HivePlugin extends CordovaPlugin {
 
         try {
             Client client = clientMap.get(clientObjectId);
-            client.getVault(vaultOwnerDid, null).thenAccept(vault -> {
+            resolveVault(client, vaultOwnerDid).thenAccept(vault -> {
                 if (vault != null) {
                     String vaultId = "" + System.identityHashCode(vault);
                     vaultMap.put(vaultId, vault);
@@ -572,6 +1537,72 @@ public class HivePlugin extends CordovaPlugin {
         }
     }
 
+    private static class CachedHiveURLInfo {
+        final String objectId;
+        final HiveURLInfo info;
+        final Client client;
+        final String url;
+        private CompletableFuture<Vault> vaultFuture = null;
+
+        CachedHiveURLInfo(HiveURLInfo info, Client client, String url) {
+            this.objectId = "" + System.identityHashCode(info);
+            this.info = info;
+            this.client = client;
+            this.url = url;
+        }
+
+        /**
+         * Resolves the url's target vault only once. Failed resolutions are retried on the next call.
+         */
+        synchronized CompletableFuture<Vault> getVault() {
+            if (vaultFuture == null || vaultFuture.isCompletedExceptionally())
+                vaultFuture = info.getVault();
+            return vaultFuture;
+        }
+    }
+
+    /**
+     * Returns the cached parsed info for the given url, or parses it. Concurrent requests for the same url share
+     * the same parsing. Urls that can't be parsed are not cached.
+     */
+    private CompletableFuture<CachedHiveURLInfo> resolveHiveURLInfo(String clientObjectId, Client client, String hiveUrl) {
+        String cacheKey = clientObjectId + " " + hiveUrl;
+
+        synchronized (hiveUrlInfoCache) {
+            CompletableFuture<CachedHiveURLInfo> cached = hiveUrlInfoCache.get(cacheKey);
+            if (cached != null && !cached.isCompletedExceptionally())
+                return cached;
+
+            CompletableFuture<CachedHiveURLInfo> parsed = client.parseHiveURL(hiveUrl).thenApply(hiveURLInfo -> {
+                if (hiveURLInfo == null)
+                    return null;
+
+                CachedHiveURLInfo entry = new CachedHiveURLInfo(hiveURLInfo, client, hiveUrl);
+                synchronized (hiveUrlInfoMap) {
+                    hiveUrlInfoMap.put(entry.objectId, entry);
+                }
+                return entry;
+            });
+            hiveUrlInfoCache.put(cacheKey, parsed);
+
+            parsed.whenComplete((entry, e) -> {
+                if (e != null || entry == null) {
+                    synchronized (hiveUrlInfoCache) {
+                        if (hiveUrlInfoCache.get(cacheKey) == parsed)
+                            hiveUrlInfoCache.remove(cacheKey);
+                    }
+                }
+            });
+            return parsed;
+        }
+    }
+
+    private CachedHiveURLInfo getCachedHiveURLInfo(String hiveUrlObjectId) {
+        synchronized (hiveUrlInfoMap) {
+            return hiveUrlInfoMap.get(hiveUrlObjectId);
+        }
+    }
+
     private void client_parseHiveURL(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String clientObjectId = args.getString(0);
         String scriptUrl = args.isNull(1) ? null : args.getString(1);
@@ -583,13 +1614,11 @@ public class HivePlugin extends CordovaPlugin {
 
         try {
             Client client = clientMap.get(clientObjectId);
-            client.parseHiveURL(scriptUrl).thenAccept(hiveURLInfo -> {
-                if (hiveURLInfo != null) {
-                    String hiveUrlInfoId = "" + System.identityHashCode(hiveURLInfo);
-                    hiveUrlInfoMap.put(hiveUrlInfoId, hiveURLInfo);
+            resolveHiveURLInfo(clientObjectId, client, scriptUrl).thenAccept(cachedInfo -> {
+                if (cachedInfo != null) {
                     try {
                         JSONObject ret = new JSONObject();
-                        ret.put("objectId", hiveUrlInfoId);
+                        ret.put("objectId", cachedInfo.objectId);
                         callbackContext.success(ret);
                     } catch (JSONException e) {
                         enhancedError(callbackContext, e);
@@ -607,6 +1636,11 @@ public class HivePlugin extends CordovaPlugin {
         }
     }
 
+    /**
+     * Same flow as the SDK's Client.downloadFileByScriptUrl() (parse url, call the script, download the file
+     * referenced by the script output) but going through the parsed url cache, so the url parsing and the vault
+     * lookup are not repeated for urls already seen.
+     */
     private void client_downloadFileByScriptUrl(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String clientObjectId = args.getString(0);
         String scriptUrl = args.isNull(1) ? null : args.getString(1);
@@ -618,7 +1652,20 @@ public class HivePlugin extends CordovaPlugin {
 
         try {
             Client client = clientMap.get(clientObjectId);
-            client.downloadFileByScriptUrl(scriptUrl, InputStream.class).thenAccept(reader -> {
+            CompletableFuture<InputStream> download = resolveHiveURLInfo(clientObjectId, client, scriptUrl).thenCompose(cachedInfo -> {
+                if (cachedInfo == null)
+                    throw new CompletionException(new IllegalArgumentException("The given url could not be parsed into a valid info for hive: "+scriptUrl));
+
+                return callScriptUrl(cachedInfo).thenCompose(scriptCall -> {
+                    String transactionId = findTransactionId(scriptCall.result);
+                    if (transactionId == null)
+                        throw new CompletionException(new IllegalStateException("No file download information in the output of the script called by "+scriptUrl));
+
+                    CompletableFuture<Vault> vault = scriptCall.vault != null ? CompletableFuture.completedFuture(scriptCall.vault) : cachedInfo.getVault();
+                    return vault.thenCompose(scriptVault -> scriptVault.getScripting().downloadFile(transactionId, InputStream.class));
+                });
+            });
+            cancellable(callbackContext, download, InputStream::close).thenAccept(reader -> {
                 if (reader == null) {
                     PluginResult result = new PluginResult(PluginResult.Status.ERROR, "Null reader returned by downloadFileByScriptUrl() for url "+scriptUrl);
                     callbackContext.sendPluginResult(result);
@@ -626,8 +1673,8 @@ public class HivePlugin extends CordovaPlugin {
                 else {
                     try {
                         String objectId = "" + System.identityHashCode(reader);
-                        readerMap.put(objectId, reader);
-                        readerOffsetsMap.put(objectId, 0); // Current read offset is 0
+                        if (!registerReader(objectId, reader, callbackContext))
+                            return;
 
                         JSONObject ret = new JSONObject();
                         ret.put("objectId", objectId);
@@ -645,13 +1692,201 @@ public class HivePlugin extends CordovaPlugin {
         }
     }
 
+    /**
+     * Finds the file transaction id in a script output. Download executables output their transaction id
+     * as {"executableName": {"transaction_id": "xxx"}}.
+     */
+    private static String findTransactionId(JsonNode scriptResult) {
+        if (scriptResult == null)
+            return null;
+
+        if (scriptResult.has("transaction_id"))
+            return scriptResult.get("transaction_id").asText();
+
+        Iterator<JsonNode> it = scriptResult.elements();
+        while (it.hasNext()) {
+            JsonNode executableOutput = it.next();
+            if (executableOutput != null && executableOutput.has("transaction_id"))
+                return executableOutput.get("transaction_id").asText();
+        }
+        return null;
+    }
+
+    /**
+     * Calls the same script on many vaults at once. Each target is either a vault owner DID (the vault is resolved
+     * then functionName is called on it) or a hive:// url (the url is parsed and its embedded script is called).
+     *
+     * At most "concurrency" targets are in flight at the same time and each of them is bounded by "timeout" (ms).
+     * Results are streamed back to JS one by one as soon as they are available, with a kept alive callback.
+     * A final {done: true} message closes the callback once all targets have completed.
+     */
+    private void client_callScriptOnVaults(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String clientObjectId = args.getString(0);
+        JSONArray targetsJson = args.isNull(1) ? null : args.getJSONArray(1);
+        String functionName = args.isNull(2) ? null : args.getString(2);
+        JSONObject params = args.isNull(3) ? null : args.getJSONObject(3);
+        String appDID = args.isNull(4) ? null : args.getString(4);
+        JSONObject optionsJson = args.isNull(5) ? null : args.getJSONObject(5);
+
+        if (targetsJson == null) {
+            callbackContext.error("callScriptOnVaults() cannot be called without a list of targets");
+            return;
+        }
+
+        Client client = clientMap.get(clientObjectId);
+        if (client == null) {
+            callbackContext.error("Invalid client object passed");
+            return;
+        }
+
+        int concurrency = DEFAULT_FAN_OUT_CONCURRENCY;
+        long timeoutMs = DEFAULT_FAN_OUT_TIMEOUT_MS;
+        if (optionsJson != null) {
+            if (optionsJson.has("concurrency"))
+                concurrency = Math.max(1, optionsJson.getInt("concurrency"));
+            if (optionsJson.has("timeout"))
+                timeoutMs = optionsJson.getLong("timeout");
+        }
+
+        ArrayList<String> targets = new ArrayList<>();
+        for (int i=0; i<targetsJson.length(); i++) {
+            targets.add(targetsJson.getString(i));
+        }
+
+        if (targets.isEmpty()) {
+            callbackContext.success(fanOutDoneMessage());
+            return;
+        }
+
+        JsonNode paramsJsonNode = HivePluginHelper.jsonObjectToJsonNode(params);
+        FanOutState state = new FanOutState(clientObjectId, client, targets, functionName, paramsJsonNode, appDID, timeoutMs, callbackContext);
+        for (int i=0; i<Math.min(concurrency, targets.size()); i++) {
+            fanOutNext(state);
+        }
+    }
+
+    private static class FanOutState {
+        final String clientObjectId;
+        final Client client;
+        final ArrayList<String> targets;
+        final String functionName;
+        final JsonNode params;
+        final String appDID;
+        final long timeoutMs;
+        final CallbackContext callbackContext;
+        final AtomicInteger nextIndex = new AtomicInteger(0);
+        final AtomicInteger completedCount = new AtomicInteger(0);
+
+        FanOutState(String clientObjectId, Client client, ArrayList<String> targets, String functionName, JsonNode params, String appDID, long timeoutMs, CallbackContext callbackContext) {
+            this.clientObjectId = clientObjectId;
+            this.client = client;
+            this.targets = targets;
+            this.functionName = functionName;
+            this.params = params;
+            this.appDID = appDID;
+            this.timeoutMs = timeoutMs;
+            this.callbackContext = callbackContext;
+        }
+    }
+
+    /**
+     * Starts the call on the next pending target, if any. Each completion starts the next target, so the number of
+     * calls in flight never exceeds the initial number of fanOutNext() calls.
+     *
+     * A call that times out is reported to JS right away, but the SDK call keeps running and can't be interrupted:
+     * its slot is only given to the next target once the SDK call really ends.
+     */
+    private void fanOutNext(FanOutState state) {
+        RequestTracker.Request request = requestOf(state.callbackContext);
+        if (request != null && request.isCancelled())
+            return;
+
+        int index = state.nextIndex.getAndIncrement();
+        if (index >= state.targets.size())
+            return;
+
+        String target = state.targets.get(index);
+        CompletableFuture<JsonNode> call;
+        try {
+            call = cancellable(state.callbackContext, callScriptOnTarget(state, target));
+        }
+        catch (Exception e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+
+        call.whenComplete((scriptResult, e) -> fanOutNext(state));
+
+        HivePluginHelper.withTimeout(call, state.timeoutMs, scheduler).whenComplete((scriptResult, e) -> {
+            try {
+                JSONObject ret = new JSONObject();
+                ret.put("index", index);
+                ret.put("target", target);
+                if (e == null) {
+                    // Scripts can return arrays and single values, not only objects
+                    Object result = scriptResult == null ? JSONObject.NULL : HivePluginHelper.jsonNodeToJsonValue(scriptResult);
+                    ret.put("success", result != null);
+                    if (result != null)
+                        ret.put("result", result);
+                    else
+                        ret.put("error", createEnhancedError(EnhancedErrorCodes.UNSPECIFIED, "Unable to convert the script result of " + target));
+                }
+                else {
+                    Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                    if (cause instanceof TimeoutException)
+                        cause = new TimeoutException("No response from the vault after " + state.timeoutMs + "ms");
+                    ret.put("success", false);
+                    ret.put("error", enhancedErrorJson(cause));
+                }
+
+                PluginResult result = new PluginResult(PluginResult.Status.OK, ret);
+                result.setKeepCallback(true);
+                state.callbackContext.sendPluginResult(result);
+            }
+            catch (JSONException je) {
+                Log.e("HivePlugin", "Unable to send callScriptOnVaults() result for " + target, je);
+            }
+
+            if (state.completedCount.incrementAndGet() == state.targets.size())
+                state.callbackContext.success(fanOutDoneMessage());
+        });
+    }
+
+    private CompletableFuture<JsonNode> callScriptOnTarget(FanOutState state, String target) {
+        if (target.startsWith("hive://")) {
+            return resolveHiveURLInfo(state.clientObjectId, state.client, target).thenCompose(cachedInfo -> {
+                if (cachedInfo == null)
+                    throw new CompletionException(new IllegalArgumentException("The given url could not be parsed into a valid info for hive: " + target));
+                return callScriptUrl(cachedInfo).thenApply(scriptCall -> scriptCall.result);
+            });
+        }
+        else {
+            return resolveVault(state.client, target).thenCompose(vault -> {
+                if (vault == null)
+                    throw new CompletionException(new IllegalStateException("No vault could be resolved for " + target));
+                return vault.getScripting().callScript(state.functionName, state.params, state.appDID, JsonNode.class);
+            });
+        }
+    }
+
+    private JSONObject fanOutDoneMessage() {
+        JSONObject ret = new JSONObject();
+        try {
+            ret.put("done", true);
+        }
+        catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return ret;
+    }
+
     private void vault_getNodeVersion(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String vaultObjectId = args.getString(0);
 
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getNodeVersion().thenAccept(version -> {
+                cancellable(callbackContext, sharedRead(vault, "getNodeVersion", vault::getNodeVersion)).thenAccept(version -> {
                     callbackContext.success(version);
                 }).exceptionally(e -> {
                     enhancedError(callbackContext, e.getCause());
@@ -684,15 +1919,13 @@ public class HivePlugin extends CordovaPlugin {
         String collectionName = args.getString(1);
         JSONObject optionsJson = args.isNull(2) ? null : args.getJSONObject(2);
 
-        CreateCollectionOptions options = new CreateCollectionOptions();
-
+        CreateCollectionOptions options;
         try {
-            if (optionsJson != null) {
-                // Nothing to do, no option handle for now.
-            }
+            options = HivePluginHelper.jsonCreateCollectionOptionsToNative(optionsJson);
         }
-        catch (Exception e) {
-            // Invalid options passed? We'll use default options
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
         }
 
         try {
@@ -752,15 +1985,13 @@ public class HivePlugin extends CordovaPlugin {
         JSONObject documentJson = args.isNull(2) ? null : args.getJSONObject(2);
         JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
 
-        InsertOptions options = new InsertOptions();
-
+        InsertOptions options;
         try {
-            if (optionsJson != null) {
-                // Nothing to do, no option handle for now.
-            }
+            options = HivePluginHelper.jsonInsertOptionsToNative(optionsJson);
         }
-        catch (Exception e) {
-            // Invalid options passed? We'll use default options
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
         }
 
         JsonNode documentJsonNode = HivePluginHelper.jsonObjectToJsonNode(documentJson);
@@ -787,39 +2018,123 @@ public class HivePlugin extends CordovaPlugin {
         }
     }
 
+    /**
+     * Large inputs are sent as several insertMany() calls of at most "batchSize" documents, "concurrency" at a
+     * time. Inserted ids are merged back in the order of the documents. If some batches failed, the result
+     * lists them, and the ids of their documents are null. The call only fails if nothing could be inserted.
+     */
     private void database_insertMany(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String vaultObjectId = args.getString(0);
         String collectionName = args.getString(1);
         JSONArray documentsJson = args.isNull(2) ? null : args.getJSONArray(2);
         JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
 
-        InsertOptions options = new InsertOptions();
+        InsertOptions options;
+        try {
+            options = HivePluginHelper.jsonInsertOptionsToNative(optionsJson);
+        }
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
+        }
+
+        int batchSize = optionsJson != null ? optionsJson.optInt("batchSize", ChunkedInsert.DEFAULT_BATCH_SIZE) : ChunkedInsert.DEFAULT_BATCH_SIZE;
+        int concurrency = optionsJson != null ? optionsJson.optInt("concurrency", ChunkedInsert.DEFAULT_CONCURRENCY) : ChunkedInsert.DEFAULT_CONCURRENCY;
+        boolean continueOnError = optionsJson != null && optionsJson.optBoolean("continueOnError", false);
+        if (batchSize < 1 || concurrency < 1) {
+            enhancedError(callbackContext, new IllegalArgumentException("Invalid options: batchSize and concurrency must be at least 1"));
+            return;
+        }
+
+        // Like for the vault, inserts are ordered unless ordered is explicitly false: batches are then sent one by one
+        boolean ordered = optionsJson == null || optionsJson.isNull("ordered") || optionsJson.optBoolean("ordered", true);
 
         try {
-            if (optionsJson != null) {
-                // Nothing to do, no option handle for now.
+            Vault vault = vaultMap.get(vaultObjectId);
+            if (ensureValidVault(vault, callbackContext)) {
+                // Documents are converted batch by batch, when each batch is sent
+                ChunkedInsert insert = new ChunkedInsert(vault.getDatabase(), collectionName, documentsJson != null ? documentsJson : new JSONArray(),
+                        HivePluginHelper::jsonObjectToJsonNode, options, ordered, batchSize, concurrency, continueOnError);
+
+                RequestTracker.Request request = requestOf(callbackContext);
+                if (request != null)
+                    request.onCancel(insert::cancel);
+
+                insert.execute().thenAccept(insertResult -> {
+                    try {
+                        JSONObject ret = insertManyResultJson(insertResult);
+
+                        // Without continueOnError, a failed batch fails the call. The documents inserted until then
+                        // are given by the partial result of the error.
+                        if (!insertResult.failedBatches.isEmpty() && (!continueOnError || insertResult.insertedCount == 0)) {
+                            JSONObject error = enhancedErrorJson(insertResult.failedBatches.get(0).error);
+                            error.put("partialResult", ret);
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, error));
+                            return;
+                        }
+
+                        callbackContext.success(ret);
+                    } catch (JSONException e) {
+                        enhancedError(callbackContext, e);
+                    }
+                }).exceptionally(e -> {
+                    enhancedError(callbackContext, e.getCause());
+                    return null;
+                });
             }
         }
         catch (Exception e) {
-            // Invalid options passed? We'll use default options
+            enhancedError(callbackContext, e);
         }
+    }
 
+    private JSONObject insertManyResultJson(ChunkedInsert.Result insertResult) throws JSONException {
+        JSONArray insertedIds = new JSONArray();
+        for (String insertedId : insertResult.insertedIds) {
+            insertedIds.put(insertedId != null ? insertedId : JSONObject.NULL);
+        }
 
+        JSONArray failedBatches = new JSONArray();
+        for (ChunkedInsert.FailedBatch failedBatch : insertResult.failedBatches) {
+            JSONObject failedBatchJson = new JSONObject();
+            failedBatchJson.put("offset", failedBatch.offset);
+            failedBatchJson.put("count", failedBatch.count);
+            failedBatchJson.put("error", enhancedErrorJson(failedBatch.error));
+            failedBatches.put(failedBatchJson);
+        }
+
+        JSONObject ret = new JSONObject();
+        ret.put("insertedIds", insertedIds);
+        ret.put("insertedCount", insertResult.insertedCount);
+        ret.put("batchCount", insertResult.batchCount);
+        ret.put("failedBatches", failedBatches);
+        return ret;
+    }
+
+    private void database_countDocuments(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String vaultObjectId = args.getString(0);
+        String collectionName = args.getString(1);
+        JSONObject queryJson = args.isNull(2) ? null : args.getJSONObject(2);
+        JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
+
+        JsonNode queryJsonNode = HivePluginHelper.jsonObjectToJsonNode(queryJson);
+
+        CountOptions options;
+        try {
+            options = HivePluginHelper.jsonCountOptionsToNative(optionsJson);
+        }
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
+        }
 
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                // Create the list of documents
-                ArrayList<JsonNode> documentsJsonNodes = new ArrayList<>();
-                for (int i=0; i<documentsJson.length(); i++) {
-                    JsonNode documentJsonNode = HivePluginHelper.jsonObjectToJsonNode(documentsJson.getJSONObject(i));
-                    documentsJsonNodes.add(documentJsonNode);
-                }
-
-                vault.getDatabase().insertMany(collectionName, documentsJsonNodes, options).thenAccept(insertResult -> {
+                cancellable(callbackContext, withRetry(vault, callbackContext, () -> vault.getDatabase().countDocuments(collectionName, queryJsonNode, options))).thenAccept(count -> {
                     try {
                         JSONObject ret = new JSONObject();
-                        ret.put("insertedIds", HivePluginHelper.listToJSONArray(insertResult.insertedIds()));
+                        ret.put("count", count);
                         callbackContext.success(ret);
                     } catch (JSONException e) {
                         enhancedError(callbackContext, e);
@@ -835,104 +2150,391 @@ public class HivePlugin extends CordovaPlugin {
         }
     }
 
-    private void database_countDocuments(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    private void database_findOne(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String vaultObjectId = args.getString(0);
+        String collectionName = args.getString(1);
+        JSONObject queryJson = args.isNull(2) ? null : args.getJSONObject(2);
+        JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
+
+        FindOptions options;
+        try {
+            options = HivePluginHelper.jsonFindOptionsToNative(optionsJson);
+        }
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
+        }
+
+        JsonNode queryJsonNode = HivePluginHelper.jsonObjectToJsonNode(queryJson);
+
+        try {
+            Vault vault = vaultMap.get(vaultObjectId);
+            if (ensureValidVault(vault, callbackContext)) {
+                CompletableFuture<JsonNode> findOne = sharedRead(vault, "findOne",
+                        () -> withRetry(vault, null, () -> vault.getDatabase().findOne(collectionName, queryJsonNode, options)),
+                        collectionName, queryJson, optionsJson);
+                cancellable(callbackContext, findOne).thenAccept(result -> {
+                    if (result == null || result.isNull())
+                        callbackContext.success((String)null); // No result
+                    else
+                        successJsonNode(callbackContext, result);
+                }).exceptionally(e -> {
+                    enhancedError(callbackContext, e.getCause());
+                    return null;
+                });
+            }
+        }
+        catch (Exception e) {
+            enhancedError(callbackContext, e);
+        }
+    }
+
+    private void database_findMany(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String vaultObjectId = args.getString(0);
+        String collectionName = args.getString(1);
+        JSONObject queryJson = args.isNull(2) ? null : args.getJSONObject(2);
+        JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
+
+        FindOptions options;
+        try {
+            options = HivePluginHelper.jsonFindOptionsToNative(optionsJson);
+        }
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
+        }
+
+        JsonNode queryJsonNode = HivePluginHelper.jsonObjectToJsonNode(queryJson);
+
+        try {
+            Vault vault = vaultMap.get(vaultObjectId);
+            if (ensureValidVault(vault, callbackContext)) {
+                cancellable(callbackContext, withRetry(vault, callbackContext, () -> vault.getDatabase().findMany(collectionName, queryJsonNode, options))).thenAccept(results -> {
+                    if (results == null) {
+                        callbackContext.success(new JSONArray());
+                        return;
+                    }
+
+                    if (rawJsonResults) {
+                        String json = HivePluginHelper.jsonNodeToJsonString(results);
+                        if (json != null) {
+                            callbackContext.sendPluginResult(new RawJsonPluginResult(json));
+                            return;
+                        }
+                    }
+                    JSONArray documents = HivePluginHelper.jsonNodesToJsonArray(results);
+                    if (documents == null) {
+                        enhancedError(callbackContext, EnhancedErrorCodes.UNSPECIFIED, "Unable to convert the documents found in collection " + collectionName);
+                        return;
+                    }
+                    callbackContext.success(documents);
+                }).exceptionally(e -> {
+                    enhancedError(callbackContext, e.getCause());
+                    return null;
+                });
+            }
+        }
+        catch (Exception e) {
+            enhancedError(callbackContext, e);
+        }
+    }
+
+    private synchronized ReplicaStore getReplicaStore() {
+        if (replicaStore == null)
+            replicaStore = new ReplicaStore(cordova.getActivity().getApplicationContext());
+        return replicaStore;
+    }
+
+    private static String replicaKey(Vault vault, String collectionName) {
+        return vault.getOwnerDid() + "/" + vault.getAppDid() + "/" + collectionName;
+    }
+
+    private static JSONObject replicaSyncResult(CollectionReplica replica, int pulled) throws JSONException {
+        JSONObject ret = new JSONObject();
+        ret.put("pulled", pulled);
+        ret.put("syncedAt", replica.getSyncedAt());
+        return ret;
+    }
+
+    /**
+     * Starts replicating a collection locally, and pulls new documents. Documents replicated during previous runs
+     * of the app are kept, as long as the watermark field doesn't change.
+     */
+    private void database_enableReplica(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String vaultObjectId = args.getString(0);
+        String collectionName = args.getString(1);
+        JSONObject optionsJson = args.isNull(2) ? new JSONObject() : args.getJSONObject(2);
+
+        String watermarkField = optionsJson.optString("watermarkField", "_id");
+        ArrayList<String> indexedFields = new ArrayList<>();
+        JSONArray indexesJson = optionsJson.optJSONArray("indexes");
+        if (indexesJson != null) {
+            for (int i=0; i<indexesJson.length(); i++) {
+                indexedFields.add(indexesJson.getString(i));
+            }
+        }
+
+        Vault vault = vaultMap.get(vaultObjectId);
+        if (!ensureValidVault(vault, callbackContext))
+            return;
+
+        String key = replicaKey(vault, collectionName);
+        CollectionReplica replica = new CollectionReplica(getReplicaStore(), key, collectionName, watermarkField, indexedFields, cordova.getThreadPool());
+        replicas.put(key, replica);
+
+        replica.open().thenCompose(v -> replica.sync(vault.getDatabase(), false)).thenAccept(pulled -> {
+            try {
+                callbackContext.success(replicaSyncResult(replica, pulled));
+            }
+            catch (JSONException e) {
+                enhancedError(callbackContext, e);
+            }
+        }).exceptionally(e -> {
+            enhancedError(callbackContext, e.getCause());
+            return null;
+        });
+    }
+
+    /**
+     * Returns the replica of a collection, or sends an error if replication was not enabled.
+     */
+    private CollectionReplica getReplica(Vault vault, String collectionName, CallbackContext callbackContext) {
+        CollectionReplica replica = replicas.get(replicaKey(vault, collectionName));
+        if (replica == null)
+            enhancedError(callbackContext, EnhancedErrorCodes.REPLICA_NOT_ENABLED, "Local replica of collection " + collectionName + " is not enabled, call enableReplica() first");
+        return replica;
+    }
+
+    private void database_syncReplica(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String vaultObjectId = args.getString(0);
+        String collectionName = args.getString(1);
+        JSONObject optionsJson = args.isNull(2) ? null : args.getJSONObject(2);
+        boolean full = optionsJson != null && optionsJson.optBoolean("full", false);
+
+        Vault vault = vaultMap.get(vaultObjectId);
+        if (!ensureValidVault(vault, callbackContext))
+            return;
+
+        CollectionReplica replica = getReplica(vault, collectionName, callbackContext);
+        if (replica == null)
+            return;
+
+        replica.sync(vault.getDatabase(), full).thenAccept(pulled -> {
+            try {
+                callbackContext.success(replicaSyncResult(replica, pulled));
+            }
+            catch (JSONException e) {
+                enhancedError(callbackContext, e);
+            }
+        }).exceptionally(e -> {
+            enhancedError(callbackContext, e.getCause());
+            return null;
+        });
+    }
+
+    private void database_disableReplica(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String vaultObjectId = args.getString(0);
+        String collectionName = args.getString(1);
+
+        Vault vault = vaultMap.get(vaultObjectId);
+        if (!ensureValidVault(vault, callbackContext))
+            return;
+
+        CollectionReplica replica = replicas.remove(replicaKey(vault, collectionName));
+        if (replica == null) {
+            callbackContext.success();
+            return;
+        }
+
+        replica.drop().thenAccept(v -> callbackContext.success()).exceptionally(e -> {
+            enhancedError(callbackContext, e.getCause());
+            return null;
+        });
+    }
+
+    /**
+     * Applies the freshness requirements of a local query: if the replica is older than maxStalenessMs, it is
+     * synced first. If this sync fails, the query fails, unless allowStale is set. Completes with true if the
+     * local data is older than required.
+     */
+    private CompletableFuture<Boolean> ensureReplicaFreshness(Vault vault, CollectionReplica replica, JSONObject freshnessJson) {
+        long maxStalenessMs = freshnessJson != null ? freshnessJson.optLong("maxStalenessMs", -1) : -1;
+        boolean allowStale = freshnessJson != null && freshnessJson.optBoolean("allowStale", false);
+
+        if (maxStalenessMs < 0 || System.currentTimeMillis() - replica.getSyncedAt() <= maxStalenessMs)
+            return CompletableFuture.completedFuture(false);
+
+        return replica.sync(vault.getDatabase(), false).handle((pulled, e) -> {
+            if (e == null)
+                return false;
+            if (allowStale)
+                return true;
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        });
+    }
+
+    /**
+     * Queries the local replica of a collection. Results tell when the replica was last synced, and if it is older
+     * than required by the freshness options.
+     */
+    private void database_findLocal(JSONArray args, CallbackContext callbackContext, boolean findOne) throws JSONException {
         String vaultObjectId = args.getString(0);
         String collectionName = args.getString(1);
         JSONObject queryJson = args.isNull(2) ? null : args.getJSONObject(2);
         JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
+        JSONObject freshnessJson = args.isNull(4) ? null : args.getJSONObject(4);
 
         JsonNode queryJsonNode = HivePluginHelper.jsonObjectToJsonNode(queryJson);
+        JsonNode sortJsonNode = optionsJson != null && optionsJson.has("sort") ? HivePluginHelper.jsonObjectToJsonNode(optionsJson.getJSONObject("sort")) : null;
+        long skip = optionsJson != null ? optionsJson.optLong("skip", 0) : 0;
+        long limit = findOne ? 1 : (optionsJson != null ? optionsJson.optLong("limit", 0) : 0);
 
-        CountOptions options = new CountOptions();
+        Vault vault = vaultMap.get(vaultObjectId);
+        if (!ensureValidVault(vault, callbackContext))
+            return;
 
-        try {
-            if (optionsJson != null) {
-                // Nothing to do, no option handle for now.
-            }
-        }
-        catch (Exception e) {
-            // Invalid options passed? We'll use default options
-        }
+        CollectionReplica replica = getReplica(vault, collectionName, callbackContext);
+        if (replica == null)
+            return;
 
-        try {
-            Vault vault = vaultMap.get(vaultObjectId);
-            if (ensureValidVault(vault, callbackContext)) {
-                vault.getDatabase().countDocuments(collectionName, queryJsonNode, options).thenAccept(count -> {
-                    try {
-                        JSONObject ret = new JSONObject();
-                        ret.put("count", count);
-                        callbackContext.success(ret);
-                    } catch (JSONException e) {
-                        enhancedError(callbackContext, e);
-                    }
-                }).exceptionally(e -> {
-                    enhancedError(callbackContext, e.getCause());
-                    return null;
-                });
+        ensureReplicaFreshness(vault, replica, freshnessJson).thenCompose(stale -> replica.find(queryJsonNode, sortJsonNode, skip, limit).thenAccept(documents -> {
+            try {
+                JSONObject ret = new JSONObject();
+                if (findOne)
+                    ret.put("document", documents.isEmpty() ? JSONObject.NULL : HivePluginHelper.jsonNodeToJsonObject(documents.get(0)));
+                else
+                    ret.put("documents", HivePluginHelper.jsonNodesToJsonArray(documents));
+                ret.put("syncedAt", replica.getSyncedAt());
+                ret.put("stale", stale);
+                callbackContext.success(ret);
             }
-        }
-        catch (Exception e) {
-            enhancedError(callbackContext, e);
-        }
+            catch (JSONException e) {
+                enhancedError(callbackContext, e);
+            }
+        })).exceptionally(e -> {
+            enhancedError(callbackContext, e.getCause());
+            return null;
+        });
     }
 
-    private void database_findOne(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    private void database_countDocumentsLocal(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String vaultObjectId = args.getString(0);
         String collectionName = args.getString(1);
         JSONObject queryJson = args.isNull(2) ? null : args.getJSONObject(2);
-        JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
-
-        FindOptions options = HivePluginHelper.jsonFindOptionsToNative(optionsJson);
+        JSONObject freshnessJson = args.isNull(3) ? null : args.getJSONObject(3);
 
         JsonNode queryJsonNode = HivePluginHelper.jsonObjectToJsonNode(queryJson);
 
-        try {
-            Vault vault = vaultMap.get(vaultObjectId);
-            if (ensureValidVault(vault, callbackContext)) {
-                vault.getDatabase().findOne(collectionName, queryJsonNode, options).thenAccept(result -> {
-                    if (result == null || result.isNull())
-                        callbackContext.success((String)null); // No result
-                    else
-                        callbackContext.success(HivePluginHelper.jsonNodeToJsonObject(result));
-                }).exceptionally(e -> {
-                    enhancedError(callbackContext, e.getCause());
-                    return null;
-                });
+        Vault vault = vaultMap.get(vaultObjectId);
+        if (!ensureValidVault(vault, callbackContext))
+            return;
+
+        CollectionReplica replica = getReplica(vault, collectionName, callbackContext);
+        if (replica == null)
+            return;
+
+        ensureReplicaFreshness(vault, replica, freshnessJson).thenCompose(stale -> replica.count(queryJsonNode).thenAccept(count -> {
+            try {
+                JSONObject ret = new JSONObject();
+                ret.put("count", count);
+                ret.put("syncedAt", replica.getSyncedAt());
+                ret.put("stale", stale);
+                callbackContext.success(ret);
             }
-        }
-        catch (Exception e) {
-            enhancedError(callbackContext, e);
-        }
+            catch (JSONException e) {
+                enhancedError(callbackContext, e);
+            }
+        })).exceptionally(e -> {
+            enhancedError(callbackContext, e.getCause());
+            return null;
+        });
     }
 
-    private void database_findMany(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    /**
+     * Polls a collection query natively and streams the changes to the kept alive callback:
+     * - {subscriptionId} once subscribed
+     * - {added, changed, removed, count} after the first poll, then after each poll that found changes
+     * - {error} when a poll fails. Polling continues.
+     * - {done: true} after unsubscribe().
+     */
+    private void database_subscribe(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String vaultObjectId = args.getString(0);
         String collectionName = args.getString(1);
         JSONObject queryJson = args.isNull(2) ? null : args.getJSONObject(2);
-        JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
-
-        FindOptions options = HivePluginHelper.jsonFindOptionsToNative(optionsJson);
+        JSONObject optionsJson = args.isNull(3) ? new JSONObject() : args.getJSONObject(3);
 
         JsonNode queryJsonNode = HivePluginHelper.jsonObjectToJsonNode(queryJson);
+        String changeField = optionsJson.has("changeField") ? optionsJson.getString("changeField") : null;
+        long minIntervalMs = Math.max(100, optionsJson.optLong("minIntervalMs", CollectionSubscription.DEFAULT_MIN_INTERVAL_MS));
+        long maxIntervalMs = optionsJson.optLong("maxIntervalMs", CollectionSubscription.DEFAULT_MAX_INTERVAL_MS);
 
-        try {
-            Vault vault = vaultMap.get(vaultObjectId);
-            if (ensureValidVault(vault, callbackContext)) {
-                vault.getDatabase().findMany(collectionName, queryJsonNode, options).thenAccept(results -> {
-                    JSONArray jsonArray = new JSONArray();
-                    for (JsonNode resultJson : results) {
-                        jsonArray.put(HivePluginHelper.jsonNodeToJsonObject(resultJson));
-                    }
-                    callbackContext.success(jsonArray);
-                }).exceptionally(e -> {
-                    enhancedError(callbackContext, e.getCause());
-                    return null;
-                });
+        Vault vault = vaultMap.get(vaultObjectId);
+        if (!ensureValidVault(vault, callbackContext))
+            return;
+
+        String subscriptionId = "" + nextSubscriptionId.getAndIncrement();
+        CollectionSubscription subscription = new CollectionSubscription(subscriptionId, vault.getDatabase(), collectionName, queryJsonNode, changeField,
+                minIntervalMs, maxIntervalMs, scheduler, new CollectionSubscription.Listener() {
+            @Override
+            public void onChanges(CollectionSubscription subscription, List<JsonNode> added, List<JsonNode> changed, List<JsonNode> removedIds, long count) {
+                try {
+                    JSONObject ret = new JSONObject();
+                    ret.put("added", HivePluginHelper.jsonNodesToJsonArray(added));
+                    ret.put("changed", HivePluginHelper.jsonNodesToJsonArray(changed));
+                    ret.put("removed", HivePluginHelper.jsonNodesToJsonArray(removedIds));
+                    ret.put("count", count);
+                    sendSubscriptionMessage(callbackContext, ret);
+                }
+                catch (JSONException e) {
+                    Log.e("HivePlugin", "Unable to send changes of subscription " + subscription.getId(), e);
+                }
             }
+
+            @Override
+            public void onError(CollectionSubscription subscription, Throwable error) {
+                try {
+                    JSONObject ret = new JSONObject();
+                    ret.put("error", enhancedErrorJson(error));
+                    sendSubscriptionMessage(callbackContext, ret);
+                }
+                catch (JSONException e) {
+                    Log.e("HivePlugin", "Unable to send error of subscription " + subscription.getId(), e);
+                }
+            }
+        }, subscriptionStats);
+        subscriptionCallbacks.put(subscriptionId, callbackContext);
+        subscriptions.put(subscriptionId, subscription);
+
+        JSONObject ret = new JSONObject();
+        ret.put("subscriptionId", subscriptionId);
+        sendSubscriptionMessage(callbackContext, ret);
+
+        if (paused)
+            subscription.pause();
+        subscription.start();
+    }
+
+    private static void sendSubscriptionMessage(CallbackContext callbackContext, JSONObject message) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, message);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    private void database_unsubscribe(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String subscriptionId = args.getString(0);
+
+        CollectionSubscription subscription = subscriptions.remove(subscriptionId);
+        CallbackContext subscriptionCallbackContext = subscriptionCallbacks.remove(subscriptionId);
+        if (subscription != null)
+            subscription.cancel();
+
+        if (subscriptionCallbackContext != null) {
+            JSONObject done = new JSONObject();
+            done.put("done", true);
+            subscriptionCallbackContext.success(done);
         }
-        catch (Exception e) {
-            enhancedError(callbackContext, e);
-        }
+
+        callbackContext.success();
     }
 
     private void database_update(JSONArray args, CallbackContext callbackContext, boolean onlyUpdateOne) throws JSONException {
@@ -942,7 +2544,14 @@ public class HivePlugin extends CordovaPlugin {
         JSONObject updatequeryJson = args.isNull(3) ? null : args.getJSONObject(3);
         JSONObject optionsJson = args.isNull(4) ? null : args.getJSONObject(4);
 
-        UpdateOptions options = HivePluginHelper.jsonUpdateOptionsToNative(optionsJson);
+        UpdateOptions options;
+        try {
+            options = HivePluginHelper.jsonUpdateOptionsToNative(optionsJson);
+        }
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
+        }
 
         JsonNode filterJsonNode = HivePluginHelper.jsonObjectToJsonNode(filterJson);
         JsonNode updateQueryJsonNode = HivePluginHelper.jsonObjectToJsonNode(updatequeryJson);
@@ -996,7 +2605,14 @@ public class HivePlugin extends CordovaPlugin {
         JSONObject filterJson = args.isNull(2) ? null : args.getJSONObject(2);
         JSONObject optionsJson = args.isNull(3) ? null : args.getJSONObject(3);
 
-        DeleteOptions options = HivePluginHelper.jsonDeleteOptionsToNative(optionsJson);
+        DeleteOptions options;
+        try {
+            options = HivePluginHelper.jsonDeleteOptionsToNative(optionsJson);
+        }
+        catch (IllegalArgumentException e) {
+            enhancedError(callbackContext, e);
+            return;
+        }
 
         JsonNode filterJsonNode = HivePluginHelper.jsonObjectToJsonNode(filterJson);
 
@@ -1040,21 +2656,190 @@ public class HivePlugin extends CordovaPlugin {
         database_delete(args, callbackContext, false);
     }
 
+    /**
+     * Runs a list of insertOne, updateOne, updateMany, deleteOne and deleteMany operations with one bridge call.
+     * Operations use the bulkWrite() format of MongoDB: {"updateOne": {"filter": ..., "update": ..., "options": ...}}.
+     */
+    private void database_bulkWrite(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String vaultObjectId = args.getString(0);
+        String collectionName = args.getString(1);
+        JSONArray operationsJson = args.getJSONArray(2);
+        JSONObject optionsJson = args.isNull(3) ? new JSONObject() : args.getJSONObject(3);
+
+        boolean ordered = optionsJson.optBoolean("ordered", true);
+        int concurrency = optionsJson.optInt("concurrency", BulkWrite.DEFAULT_CONCURRENCY);
+        boolean groupInserts = optionsJson.optBoolean("groupInserts", false);
+
+        ArrayList<BulkWrite.Operation> operations = new ArrayList<>();
+        for (int i=0; i<operationsJson.length(); i++) {
+            JSONObject operationJson = operationsJson.getJSONObject(i);
+            if (operationJson.length() != 1) {
+                callbackContext.error("Invalid bulk write operation at index " + i + ", expected a single operation type");
+                return;
+            }
+
+            String type = operationJson.keys().next();
+            JSONObject params = operationJson.getJSONObject(type);
+            JSONObject operationOptionsJson = params.optJSONObject("options");
+            try {
+                switch (type) {
+                    case "insertOne":
+                        operations.add(BulkWrite.Operation.insertOne(HivePluginHelper.jsonObjectToJsonNode(params.getJSONObject("document")),
+                                HivePluginHelper.jsonBulkInsertOptionsToBypassValidation(operationOptionsJson)));
+                        break;
+                    case "updateOne":
+                    case "updateMany":
+                        operations.add(BulkWrite.Operation.update(type.equals("updateOne"),
+                                HivePluginHelper.jsonObjectToJsonNode(params.optJSONObject("filter")),
+                                HivePluginHelper.jsonObjectToJsonNode(params.getJSONObject("update")),
+                                HivePluginHelper.jsonUpdateOptionsToNative(operationOptionsJson)));
+                        break;
+                    case "deleteOne":
+                    case "deleteMany":
+                        operations.add(BulkWrite.Operation.delete(type.equals("deleteOne"),
+                                HivePluginHelper.jsonObjectToJsonNode(params.optJSONObject("filter")),
+                                HivePluginHelper.jsonDeleteOptionsToNative(operationOptionsJson)));
+                        break;
+                    default:
+                        callbackContext.error("Unsupported bulk write operation " + type + " at index " + i);
+                        return;
+                }
+            }
+            catch (IllegalArgumentException e) {
+                enhancedError(callbackContext, new IllegalArgumentException("Invalid bulk write operation at index " + i + ": " + e.getMessage()));
+                return;
+            }
+        }
+
+        try {
+            Vault vault = vaultMap.get(vaultObjectId);
+            if (ensureValidVault(vault, callbackContext)) {
+                BulkWrite bulkWrite = new BulkWrite(vault.getDatabase(), collectionName, operations, ordered, concurrency, groupInserts);
+
+                RequestTracker.Request request = requestOf(callbackContext);
+                if (request != null)
+                    request.onCancel(bulkWrite::cancel);
+
+                bulkWrite.execute().thenAccept(results -> {
+                    try {
+                        callbackContext.success(bulkWriteResultJson(results));
+                    }
+                    catch (JSONException e) {
+                        enhancedError(callbackContext, e);
+                    }
+                }).exceptionally(e -> {
+                    enhancedError(callbackContext, e.getCause());
+                    return null;
+                });
+            }
+        }
+        catch (Exception e) {
+            enhancedError(callbackContext, e);
+        }
+    }
+
+    private JSONObject bulkWriteResultJson(List<BulkWrite.OperationResult> results) throws JSONException {
+        long insertedCount = 0, matchedCount = 0, modifiedCount = 0, upsertedCount = 0, deletedCount = 0, errorCount = 0;
+        JSONArray resultsJson = new JSONArray();
+        for (BulkWrite.OperationResult result : results) {
+            JSONObject resultJson = new JSONObject();
+            resultJson.put("executed", result.executed);
+            if (result.error != null) {
+                resultJson.put("error", enhancedErrorJson(result.error));
+                errorCount++;
+            }
+            else if (result.executed) {
+                switch (result.type) {
+                    case INSERT_ONE:
+                        resultJson.put("insertedId", result.insertedId);
+                        insertedCount++;
+                        break;
+                    case UPDATE_ONE:
+                    case UPDATE_MANY:
+                        resultJson.put("matchedCount", result.matchedCount);
+                        resultJson.put("modifiedCount", result.modifiedCount);
+                        resultJson.put("upsertedCount", result.upsertedCount);
+                        resultJson.put("upsertedId", result.upsertedId);
+                        matchedCount += result.matchedCount;
+                        modifiedCount += result.modifiedCount;
+                        upsertedCount += result.upsertedCount;
+                        break;
+                    default:
+                        resultJson.put("deletedCount", result.deletedCount);
+                        deletedCount += result.deletedCount;
+                }
+            }
+            resultsJson.put(resultJson);
+        }
+
+        JSONObject ret = new JSONObject();
+        ret.put("insertedCount", insertedCount);
+        ret.put("matchedCount", matchedCount);
+        ret.put("modifiedCount", modifiedCount);
+        ret.put("upsertedCount", upsertedCount);
+        ret.put("deletedCount", deletedCount);
+        ret.put("errorCount", errorCount);
+        ret.put("results", resultsJson);
+        return ret;
+    }
+
     private void files_upload(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String vaultObjectId = args.getString(0);
         String srcPath = args.getString(1);
+        JSONObject optionsJson = args.isNull(2) ? null : args.getJSONObject(2);
+
+        // Optional compression of the uploaded content
+        FileCompression.Algorithm compressionAlgorithm = null;
+        int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        if (optionsJson != null && optionsJson.has("compression")) {
+            JSONObject compressionJson = optionsJson.getJSONObject("compression");
+            String algorithmName = compressionJson.has("algorithm") ? compressionJson.getString("algorithm") : "gzip";
+            compressionAlgorithm = FileCompression.Algorithm.fromName(algorithmName);
+            if (compressionAlgorithm == null) {
+                callbackContext.error("Unsupported compression algorithm: " + algorithmName);
+                return;
+            }
+
+            if (compressionJson.has("level")) {
+                compressionLevel = compressionJson.getInt("level");
+                if (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) {
+                    callbackContext.error("Compression level must be between " + Deflater.BEST_SPEED + " and " + Deflater.BEST_COMPRESSION);
+                    return;
+                }
+            }
+        }
+        final FileCompression.Algorithm algorithm = compressionAlgorithm;
+        final int level = compressionLevel;
+
+        // Write queue settings: coalescing buffer size and max bytes queued before write() calls are slowed down
+        int bufferSize = WriterPipeline.DEFAULT_BUFFER_SIZE;
+        long maxInFlightBytes = WriterPipeline.DEFAULT_MAX_IN_FLIGHT_BYTES;
+        if (optionsJson != null) {
+            if (optionsJson.has("bufferSize"))
+                bufferSize = optionsJson.getInt("bufferSize");
+            if (optionsJson.has("maxInFlightBytes"))
+                maxInFlightBytes = optionsJson.getLong("maxInFlightBytes");
+        }
+        final int writerBufferSize = bufferSize;
+        final long writerMaxInFlightBytes = maxInFlightBytes;
 
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getFiles().upload(srcPath, OutputStream.class).thenAccept(stream -> {
+                cancellable(callbackContext, vault.getFiles().upload(srcPath, OutputStream.class), OutputStream::close).thenAccept(stream -> {
                     try {
-                        String objectId = "" + System.identityHashCode(stream);
-                        writerMap.put(objectId, stream);
+                        OutputStream uploadStream = stream;
+                        if (algorithm != null)
+                            uploadStream = FileCompression.compress(stream, algorithm, level);
+
+                        WriterPipeline writer = new WriterPipeline(uploadStream, writerBufferSize, writerMaxInFlightBytes);
+                        String objectId = "" + System.identityHashCode(writer);
+                        if (!registerWriter(objectId, writer, callbackContext))
+                            return;
                         JSONObject ret = new JSONObject();
                         ret.put("objectId", objectId);
                         callbackContext.success(ret);
-                    } catch (JSONException e) {
+                    } catch (JSONException | IOException e) {
                         enhancedError(callbackContext, e);
                     }
                 }).exceptionally(e -> {
@@ -1071,15 +2856,21 @@ public class HivePlugin extends CordovaPlugin {
     private void files_download(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String vaultObjectId = args.getString(0);
         String srcPath = args.getString(1);
+        JSONObject optionsJson = args.isNull(2) ? null : args.getJSONObject(2);
+
+        // Files uploaded with compression are decompressed transparently, unless the raw content is requested.
+        boolean decompress = optionsJson == null || !optionsJson.has("decompress") || optionsJson.getBoolean("decompress");
 
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getFiles().download(srcPath, InputStream.class).thenAccept(reader -> {
+                cancellable(callbackContext, vault.getFiles().download(srcPath, InputStream.class), InputStream::close).thenAccept(stream -> {
                     try {
+                        InputStream reader = decompress ? FileCompression.decompress(stream) : stream;
+
                         String objectId = "" + System.identityHashCode(reader);
-                        readerMap.put(objectId, reader);
-                        readerOffsetsMap.put(objectId, 0); // Current read offset is 0
+                        if (!registerReader(objectId, reader, callbackContext))
+                            return;
 
                         JSONObject ret = new JSONObject();
                         ret.put("objectId", objectId);
@@ -1193,7 +2984,7 @@ public class HivePlugin extends CordovaPlugin {
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getFiles().hash(srcPath).thenAccept(hash -> {
+                cancellable(callbackContext, withRetry(vault, callbackContext, () -> vault.getFiles().hash(srcPath))).thenAccept(hash -> {
                     callbackContext.success(hash);
                 }).exceptionally(e -> {
                     enhancedError(callbackContext, e.getCause());
@@ -1213,7 +3004,7 @@ public class HivePlugin extends CordovaPlugin {
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getFiles().list(srcPath).thenAccept(fileInfos -> {
+                cancellable(callbackContext, withRetry(vault, callbackContext, () -> vault.getFiles().list(srcPath))).thenAccept(fileInfos -> {
                     try {
                         JSONArray jsonArray = new JSONArray();
                         for (FileInfo info : fileInfos) {
@@ -1241,7 +3032,8 @@ public class HivePlugin extends CordovaPlugin {
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getFiles().stat(srcPath).thenAccept(fileInfo -> {
+                CompletableFuture<FileInfo> stat = sharedRead(vault, "stat", () -> withRetry(vault, null, () -> vault.getFiles().stat(srcPath)), srcPath);
+                cancellable(callbackContext, stat).thenAccept(fileInfo -> {
                     try {
                         if (fileInfo != null) {
                             JSONObject ret = HivePluginHelper.hiveFileInfoToPluginJson(fileInfo);
@@ -1310,11 +3102,19 @@ public class HivePlugin extends CordovaPlugin {
             }
         }
 
+        // Scripts flagged as read only by the caller are safe to retry
+        JSONObject optionsJson = args.isNull(4) ? null : args.getJSONObject(4);
+        boolean readOnly = optionsJson != null && optionsJson.optBoolean("readOnly", false);
+
+        JsonNode paramsJsonNode = HivePluginHelper.jsonObjectToJsonNode(params);
+        final String scriptAppDID = appDID;
+
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getScripting().callScript(functionName, HivePluginHelper.jsonObjectToJsonNode(params), appDID, JsonNode.class).thenAccept(scriptResult -> {
-                    callbackContext.success(HivePluginHelper.jsonNodeToJsonObject(scriptResult));
+                Supplier<CompletableFuture<JsonNode>> call = () -> vault.getScripting().callScript(functionName, paramsJsonNode, scriptAppDID, JsonNode.class);
+                cancellable(callbackContext, readOnly ? withRetry(vault, callbackContext, call) : call.get()).thenAccept(scriptResult -> {
+                    successJsonNode(callbackContext, scriptResult);
                 }).exceptionally(e -> {
                     enhancedError(callbackContext, e.getCause());
                     return null;
@@ -1333,12 +3133,12 @@ public class HivePlugin extends CordovaPlugin {
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getScripting().downloadFile(transactionId, InputStream.class).thenAccept(reader -> {
+                cancellable(callbackContext, vault.getScripting().downloadFile(transactionId, InputStream.class), InputStream::close).thenAccept(reader -> {
                     // Same implementation as for files_download()
                     try {
                         String objectId = "" + System.identityHashCode(reader);
-                        readerMap.put(objectId, reader);
-                        readerOffsetsMap.put(objectId, 0); // Current read offset is 0
+                        if (!registerReader(objectId, reader, callbackContext))
+                            return;
 
                         JSONObject ret = new JSONObject();
                         ret.put("objectId", objectId);
@@ -1364,11 +3164,13 @@ public class HivePlugin extends CordovaPlugin {
         try {
             Vault vault = vaultMap.get(vaultObjectId);
             if (ensureValidVault(vault, callbackContext)) {
-                vault.getScripting().uploadFile(transactionId, OutputStream.class).thenAccept(writer -> {
+                cancellable(callbackContext, vault.getScripting().uploadFile(transactionId, OutputStream.class), OutputStream::close).thenAccept(stream -> {
                     // Same implementation as for files_upload()
                     try {
+                        WriterPipeline writer = new WriterPipeline(stream, WriterPipeline.DEFAULT_BUFFER_SIZE, WriterPipeline.DEFAULT_MAX_IN_FLIGHT_BYTES);
                         String objectId = "" + System.identityHashCode(writer);
-                        writerMap.put(objectId, writer);
+                        if (!registerWriter(objectId, writer, callbackContext))
+                            return;
 
                         JSONObject ret = new JSONObject();
                         ret.put("objectId", objectId);
@@ -1391,69 +3193,96 @@ public class HivePlugin extends CordovaPlugin {
         String writerObjectId = args.getString(0);
         String base64encodedFromUint8Array = args.getString(1);
 
-        new Thread(() -> {
-            try {
-                OutputStream writer = writerMap.get(writerObjectId);
+        // In use until the write completes, so that the registry doesn't reclaim it in the meantime
+        WriterPipeline writer = writers.acquire(writerObjectId);
+        if (writer == null) {
+            callbackContext.error(writers.unknownStreamMessage(writerObjectId));
+            return;
+        }
 
-                // Cordova encodes UInt8Array in TS to base64 encoded in java.
-                byte[] data = Base64.decode(base64encodedFromUint8Array, Base64.DEFAULT);
-                writer.write(data);
+        // Cordova encodes UInt8Array in TS to base64 encoded in java.
+        // Writes are queued in order. The success callback is delayed while too much data is queued (backpressure).
+        writer.writeBase64(base64encodedFromUint8Array, error -> {
+            writers.release(writerObjectId);
 
+            if (error != null)
+                enhancedError(callbackContext, error);
+            else
                 callbackContext.success();
-            }
-            catch (IOException e) {
-                enhancedError(callbackContext, e);
-            }
-        }).start();
+        });
+        recordBytesSent(callbackContext, (long) base64encodedFromUint8Array.length() / 4 * 3);
     }
 
     private void writer_flush(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String writerObjectId = args.getString(0);
 
-        new Thread(() -> {
-            try {
-                OutputStream writer = writerMap.get(writerObjectId);
-                writer.flush();
+        WriterPipeline writer = writers.acquire(writerObjectId);
+        if (writer == null) {
+            callbackContext.error(writers.unknownStreamMessage(writerObjectId));
+            return;
+        }
+
+        // Completes once all previously queued writes are sent
+        writer.flush(error -> {
+            writers.release(writerObjectId);
+
+            if (error != null)
+                enhancedError(callbackContext, error);
+            else
                 callbackContext.success();
-            }
-            catch (IOException e) {
-                enhancedError(callbackContext, e);
-            }
-        }).start();
+        });
     }
 
     private void writer_close(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String writerObjectId = args.getString(0);
 
-        new Thread(() -> {
+        WriterPipeline writer = writers.acquire(writerObjectId);
+        if (writer == null) {
+            callbackContext.error(writers.unknownStreamMessage(writerObjectId));
+            return;
+        }
+
+        // Completes once all previously queued writes are sent and the upload stream is closed
+        writer.close(error -> {
+            writers.release(writerObjectId);
+            writers.remove(writerObjectId);
+
+            if (error != null) {
+                enhancedError(callbackContext, error);
+                return;
+            }
+
             try {
-                OutputStream writer = writerMap.get(writerObjectId);
-                writer.close();
-                writerMap.remove(writerObjectId);
-                callbackContext.success();
+                // Compressed uploads report their compression stats
+                OutputStream stream = writer.getStream();
+                if (stream instanceof FileCompression.CompressingOutputStream)
+                    callbackContext.success(((FileCompression.CompressingOutputStream) stream).getStats());
+                else
+                    callbackContext.success();
             }
-            catch (IOException e) {
+            catch (JSONException e) {
                 enhancedError(callbackContext, e);
             }
-        }).start();
+        });
     }
 
     private void reader_read(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String readerObjectId = args.getString(0);
         int bytesCount = args.getInt(1);
 
-        new Thread(() -> {
+        InputStream reader = readers.acquire(readerObjectId);
+        if (reader == null) {
+            callbackContext.error(readers.unknownStreamMessage(readerObjectId));
+            return;
+        }
+
+        Runnable read = () -> {
             try {
                 byte[] buffer = new byte[bytesCount];
-                InputStream reader = readerMap.get(readerObjectId);
-
-                // Resume reading at the previous read offset
-                //int currentReadOffset = readerOffsetsMap.get(readerObjectId);
                 int readBytes = reader.read(buffer, 0, bytesCount);
 
                 if (readBytes != -1) {
-                    // Move read offset to the next position
-                    //readerOffsetsMap.put(readerObjectId, currentReadOffset + readBytes);
+                    recordBytesReceived(callbackContext, readBytes);
                     callbackContext.success(Base64.encodeToString(buffer, 0, readBytes, Base64.NO_WRAP));
                 } else {
                     callbackContext.success((String) null);
@@ -1462,46 +3291,165 @@ public class HivePlugin extends CordovaPlugin {
             } catch (IOException e) {
                 enhancedError(callbackContext, e);
             }
-        }).start();
+            finally {
+                readers.release(readerObjectId);
+            }
+        };
+
+        // Data already prefetched is returned right away, without starting a thread.
+        if (reader instanceof ReadAheadInputStream && ((ReadAheadInputStream) reader).available() > 0)
+            read.run();
+        else
+            new Thread(read).start();
+    }
+
+    /**
+     * Enables read-ahead for a reader: the next chunks are downloaded in the background while JS processes the
+     * previous ones.
+     */
+    private void reader_enableReadAhead(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String readerObjectId = args.getString(0);
+        JSONObject options = args.isNull(1) ? new JSONObject() : args.getJSONObject(1);
+        int chunkSize = options.optInt("chunkSize", ReadAheadInputStream.DEFAULT_CHUNK_SIZE);
+        long maxBufferedBytes = options.optLong("maxBufferedBytes", ReadAheadInputStream.DEFAULT_MAX_BUFFERED_BYTES);
+
+        InputStream reader = readers.get(readerObjectId);
+        if (reader == null) {
+            callbackContext.error(readers.unknownStreamMessage(readerObjectId));
+            return;
+        }
+
+        if (reader instanceof ReadAheadInputStream) {
+            callbackContext.success();
+            return;
+        }
+
+        ReadAheadInputStream readAheadReader = new ReadAheadInputStream(reader, chunkSize, maxBufferedBytes, cordova.getThreadPool(), readAheadStats);
+        if (!readers.replace(readerObjectId, readAheadReader)) {
+            callbackContext.error("Read-ahead can't be enabled while a read is in progress on this reader");
+            return;
+        }
+        readAheadReader.start();
+        callbackContext.success();
     }
 
     private void reader_readAll(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String readerObjectId = args.getString(0);
 
+        InputStream reader = readers.acquire(readerObjectId);
+        if (reader == null) {
+            callbackContext.error(readers.unknownStreamMessage(readerObjectId));
+            return;
+        }
+
+        JSONObject options = args.optJSONObject(1);
+        long spillThreshold = options != null ? options.optLong("spillThresholdBytes", SpillBuffer.DEFAULT_SPILL_THRESHOLD) : SpillBuffer.DEFAULT_SPILL_THRESHOLD;
+
         new Thread(() -> {
+            // Large files are written to a temporary file instead of the heap. JS then reads it by chunks.
+            File spillFile = new File(new File(cordova.getActivity().getCacheDir(), READ_ALL_SPILL_DIR), readerObjectId + "-" + System.currentTimeMillis());
+            SpillBuffer data = new SpillBuffer(spillThreshold, spillFile);
             try {
-                byte[] buffer = new byte[1024];
-                InputStream reader = readerMap.get(readerObjectId);
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                byte[] buffer = new byte[64 * 1024];
+
+                RequestTracker.Request request = requestOf(callbackContext);
 
                 int readBytes;
                 do {
                     readBytes = reader.read(buffer);
                     if (readBytes != -1)
-                        outputStream.write(buffer, 0, readBytes);
+                        data.write(buffer, 0, readBytes);
+                }
+                while (readBytes != -1 && (request == null || !request.isCancelled()));
+
+                data.finish();
+                if (request != null && request.isCancelled()) {
+                    data.discard();
+                    return;
                 }
-                while (readBytes != -1);
 
-                callbackContext.success(Base64.encodeToString(outputStream.toByteArray(), Base64.NO_WRAP));
+                recordBytesReceived(callbackContext, data.size());
+                if (data.isSpilled()) {
+                    File previous = readAllSpillFiles.put(readerObjectId, spillFile);
+                    if (previous != null)
+                        previous.delete();
+
+                    JSONObject ret = new JSONObject();
+                    ret.put("spilled", true);
+                    ret.put("size", data.size());
+                    callbackContext.success(ret);
+                }
+                else {
+                    callbackContext.success(data.encodeBase64());
+                }
             }
             catch (Exception e) {
+                data.discard();
                 enhancedError(callbackContext, e);
             }
+            finally {
+                readers.release(readerObjectId);
+            }
         }).start();
     }
 
+    /**
+     * Returns a base64 encoded chunk of a readAll() result that was written to a temporary file.
+     */
+    private void reader_readSpilled(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String readerObjectId = args.getString(0);
+        long offset = args.getLong(1);
+        int length = Math.min(args.getInt(2), READ_SPILLED_MAX_CHUNK);
+
+        File spillFile = readAllSpillFiles.get(readerObjectId);
+        if (spillFile == null) {
+            callbackContext.error("No readAll() data available for this reader");
+            return;
+        }
+
+        cordova.getThreadPool().execute(() -> {
+            try (RandomAccessFile file = new RandomAccessFile(spillFile, "r")) {
+                int count = (int) Math.max(0, Math.min(length, file.length() - offset));
+                byte[] buffer = new byte[count];
+                file.seek(offset);
+                file.readFully(buffer);
+                callbackContext.success(Base64.encodeToString(buffer, Base64.NO_WRAP));
+            }
+            catch (IOException e) {
+                enhancedError(callbackContext, e);
+            }
+        });
+    }
+
     private void reader_close(JSONArray args, CallbackContext callbackContext) throws JSONException {
         String readerObjectId = args.getString(0);
 
+        InputStream reader = readers.remove(readerObjectId);
+        File spillFile = readAllSpillFiles.remove(readerObjectId);
+        if (spillFile != null)
+            spillFile.delete();
+
+        if (reader == null) {
+            callbackContext.error(readers.unknownStreamMessage(readerObjectId));
+            return;
+        }
+
         new Thread(() -> {
             try {
-                InputStream reader = readerMap.get(readerObjectId);
                 reader.close();
-                readerMap.remove(readerObjectId);
-                readerOffsetsMap.remove(readerObjectId);
-                callbackContext.success();
+
+                // Downloads of compressed files report their decompression stats
+                InputStream source = reader instanceof ReadAheadInputStream ? ((ReadAheadInputStream) reader).getSource() : reader;
+                JSONObject stats = null;
+                if (source instanceof FileCompression.DecompressingInputStream)
+                    stats = ((FileCompression.DecompressingInputStream) source).getStats();
+
+                if (stats != null)
+                    callbackContext.success(stats);
+                else
+                    callbackContext.success();
             }
-            catch (IOException e) {
+            catch (IOException | JSONException e) {
                 enhancedError(callbackContext, e);
             }
         }).start();
@@ -1715,10 +3663,10 @@ public class HivePlugin extends CordovaPlugin {
         String hiveUrlObjectId = args.getString(0);
 
         try {
-            HiveURLInfo urlInfo = hiveUrlInfoMap.get(hiveUrlObjectId);
+            CachedHiveURLInfo urlInfo = getCachedHiveURLInfo(hiveUrlObjectId);
             if (urlInfo != null) {
-                urlInfo.callScript(JsonNode.class).thenAccept(scriptResult -> {
-                    callbackContext.success(HivePluginHelper.jsonNodeToJsonObject(scriptResult));
+                cancellable(callbackContext, callScriptUrl(urlInfo)).thenAccept(scriptCall -> {
+                    successJsonNode(callbackContext, scriptCall.result);
                 }).exceptionally(e->{
                     enhancedError(callbackContext, e.getCause());
                     return null;
@@ -1737,7 +3685,7 @@ public class HivePlugin extends CordovaPlugin {
         String hiveUrlObjectId = args.getString(0);
 
         try {
-            HiveURLInfo urlInfo = hiveUrlInfoMap.get(hiveUrlObjectId);
+            CachedHiveURLInfo urlInfo = getCachedHiveURLInfo(hiveUrlObjectId);
             if (urlInfo != null) {
                 urlInfo.getVault().thenAcceptAsync((vault)->{
                     if (vault != null) {
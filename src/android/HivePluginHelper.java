@@ -3,20 +3,33 @@ package org.elastos.plugins.hive;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.elastos.hive.database.CountOptions;
+import org.elastos.hive.database.CreateCollectionOptions;
 import org.elastos.hive.database.DeleteOptions;
 import org.elastos.hive.database.FindOptions;
 import org.elastos.hive.database.Index;
+import org.elastos.hive.database.InsertOptions;
 import org.elastos.hive.database.UpdateOptions;
 import org.elastos.hive.files.FileInfo;
+import org.elastos.plugins.hive.metrics.CallTracer;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class HivePluginHelper {
+    // ObjectMapper is expensive to create and thread safe once configured: shared by all conversions
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
     /**
      * Creates a FileInfo TS JSONObject from native FileInfo
      */
@@ -54,6 +67,8 @@ public class HivePluginHelper {
                 indexes[i] = new Index(fieldName, Index.Order.ASCENDING);
             else if (order == -1)
                 indexes[i] = new Index(fieldName, Index.Order.DESCENDING);
+            else
+                throw new IllegalArgumentException("Invalid order " + order + " for field " + fieldName + ", expected 1 or -1");
 
             i++;
         }
@@ -61,72 +76,172 @@ public class HivePluginHelper {
     }
 
     /**
-     * Converts TS FindOptions type to native FindOptions.
+     * Converts TS FindOptions type to native FindOptions. Throws an IllegalArgumentException for invalid options.
      */
     public static FindOptions jsonFindOptionsToNative(JSONObject optionsJson) {
+        FindOptions options = new FindOptions();
         if (optionsJson == null)
-            return new FindOptions();
+            return options;
 
-        try {
-            FindOptions options = new FindOptions();
+        if (!optionsJson.isNull("limit"))
+            options.limit(nonNegativeLongOption(optionsJson, "limit"));
 
-            if (optionsJson.has("limit"))
-                options.limit(optionsJson.getLong("limit"));
+        if (!optionsJson.isNull("skip"))
+            options.skip(nonNegativeLongOption(optionsJson, "skip"));
 
-            if (optionsJson.has("skip"))
-                options.skip(optionsJson.getLong("skip"));
+        if (!optionsJson.isNull("sort"))
+            options.sort(indexesOption(optionsJson, "sort"));
 
-            if (optionsJson.has("sort"))
-                options.sort(HivePluginHelper.jsonSortFieldsToNative(optionsJson.getJSONObject("sort")));
+        if (!optionsJson.isNull("projection"))
+            options.projection(HivePluginHelper.jsonObjectToJsonNode(objectOption(optionsJson, "projection")));
 
-            if (optionsJson.has("projection"))
-                options.projection(HivePluginHelper.jsonObjectToJsonNode(optionsJson.getJSONObject("projection")));
+        return options;
+    }
 
+    /**
+     * Converts TS CountOptions type to native CountOptions. Throws an IllegalArgumentException for invalid options.
+     */
+    public static CountOptions jsonCountOptionsToNative(JSONObject optionsJson) {
+        CountOptions options = new CountOptions();
+        if (optionsJson == null)
             return options;
-        }
-        catch (Exception e) {
-            // Invalid options passed? We'll use default options
-            return new FindOptions();
-        }
+
+        if (!optionsJson.isNull("limit"))
+            options.limit(nonNegativeLongOption(optionsJson, "limit"));
+
+        if (!optionsJson.isNull("skip"))
+            options.skip(nonNegativeLongOption(optionsJson, "skip"));
+
+        if (!optionsJson.isNull("maxTimeMS"))
+            options.maxTimeMS(nonNegativeLongOption(optionsJson, "maxTimeMS"));
+
+        if (!optionsJson.isNull("hint"))
+            options.hint(indexesOption(optionsJson, "hint"));
+
+        return options;
     }
 
     /**
-     * Converts TS UpdateOptions type to native UpdateOptions.
+     * Converts TS InsertOptions type to native InsertOptions. Throws an IllegalArgumentException for invalid options.
      */
-    public static UpdateOptions jsonUpdateOptionsToNative(JSONObject optionsJson) {
+    public static InsertOptions jsonInsertOptionsToNative(JSONObject optionsJson) {
+        InsertOptions options = new InsertOptions();
         if (optionsJson == null)
-            return new UpdateOptions();
+            return options;
 
-        try {
-            UpdateOptions options = new UpdateOptions();
+        if (!optionsJson.isNull("bypassDocumentValidation"))
+            options.bypassDocumentValidation(booleanOption(optionsJson, "bypassDocumentValidation"));
 
-            // We don't handle any field for now.
+        if (!optionsJson.isNull("ordered"))
+            options.ordered(booleanOption(optionsJson, "ordered"));
 
+        return options;
+    }
+
+    /**
+     * Reads the TS InsertOptions of a bulkWrite() insertOne operation, and returns its bypassDocumentValidation.
+     * Ordering is an option of the whole bulk write. Throws an IllegalArgumentException for invalid options.
+     */
+    public static boolean jsonBulkInsertOptionsToBypassValidation(JSONObject optionsJson) {
+        if (optionsJson == null)
+            return false;
+
+        if (optionsJson.has("ordered"))
+            throw new IllegalArgumentException("Invalid option ordered: use the ordered option of the bulk write");
+
+        if (optionsJson.isNull("bypassDocumentValidation"))
+            return false;
+
+        return booleanOption(optionsJson, "bypassDocumentValidation");
+    }
+
+    /**
+     * Converts TS UpdateOptions type to native UpdateOptions. Throws an IllegalArgumentException for invalid options.
+     */
+    public static UpdateOptions jsonUpdateOptionsToNative(JSONObject optionsJson) {
+        UpdateOptions options = new UpdateOptions();
+        if (optionsJson == null)
             return options;
-        }
-        catch (Exception e) {
-            // Invalid options passed? We'll use default options
-            return new UpdateOptions();
-        }
+
+        if (!optionsJson.isNull("upsert"))
+            options.upsert(booleanOption(optionsJson, "upsert"));
+
+        if (!optionsJson.isNull("bypassDocumentValidation"))
+            options.bypassDocumentValidation(booleanOption(optionsJson, "bypassDocumentValidation"));
+
+        if (!optionsJson.isNull("hint"))
+            options.hint(indexesOption(optionsJson, "hint"));
+
+        return options;
     }
 
     /**
-     * Converts TS UpdateOptions type to native UpdateOptions.
+     * Converts TS DeleteOptions type to native DeleteOptions. Throws an IllegalArgumentException for invalid options.
      */
     public static DeleteOptions jsonDeleteOptionsToNative(JSONObject optionsJson) {
+        DeleteOptions options = new DeleteOptions();
         if (optionsJson == null)
-            return new DeleteOptions();
+            return options;
 
-        try {
-            DeleteOptions options = new DeleteOptions();
+        if (!optionsJson.isNull("hint"))
+            options.hint(indexesOption(optionsJson, "hint"));
 
-            // We don't handle any field for now.
+        return options;
+    }
 
+    /**
+     * Converts TS CreateCollectionOptions type to native CreateCollectionOptions. Throws an IllegalArgumentException
+     * for invalid options.
+     */
+    public static CreateCollectionOptions jsonCreateCollectionOptionsToNative(JSONObject optionsJson) {
+        CreateCollectionOptions options = new CreateCollectionOptions();
+        if (optionsJson == null)
             return options;
+
+        boolean capped = !optionsJson.isNull("capped") && booleanOption(optionsJson, "capped");
+        if (capped && optionsJson.isNull("size"))
+            throw new IllegalArgumentException("Invalid options: size is required for capped collections");
+        if (!capped && (!optionsJson.isNull("size") || !optionsJson.isNull("max")))
+            throw new IllegalArgumentException("Invalid options: size and max are only used by capped collections");
+
+        if (capped) {
+            options.capped(true);
+            options.size(nonNegativeLongOption(optionsJson, "size"));
+            if (!optionsJson.isNull("max"))
+                options.max(nonNegativeLongOption(optionsJson, "max"));
         }
-        catch (Exception e) {
-            // Invalid options passed? We'll use default options
-            return new DeleteOptions();
+
+        return options;
+    }
+
+    private static long nonNegativeLongOption(JSONObject optionsJson, String name) {
+        Object value = optionsJson.opt(name);
+        if (!(value instanceof Number) || ((Number) value).doubleValue() < 0 || ((Number) value).doubleValue() != Math.floor(((Number) value).doubleValue()))
+            throw new IllegalArgumentException("Invalid option " + name + ": " + value + ", expected a non-negative integer");
+        return ((Number) value).longValue();
+    }
+
+    private static boolean booleanOption(JSONObject optionsJson, String name) {
+        Object value = optionsJson.opt(name);
+        if (!(value instanceof Boolean))
+            throw new IllegalArgumentException("Invalid option " + name + ": " + value + ", expected a boolean");
+        return (Boolean) value;
+    }
+
+    private static JSONObject objectOption(JSONObject optionsJson, String name) {
+        Object value = optionsJson.opt(name);
+        if (!(value instanceof JSONObject))
+            throw new IllegalArgumentException("Invalid option " + name + ": " + value + ", expected an object");
+        return (JSONObject) value;
+    }
+
+    // Sort and hint fields: {"field": 1, "other": -1}
+    private static Index[] indexesOption(JSONObject optionsJson, String name) {
+        try {
+            return jsonSortFieldsToNative(objectOption(optionsJson, name));
+        }
+        catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid option " + name + ": " + optionsJson.opt(name) + ", expected 1 or -1 for each field");
         }
     }
 
@@ -134,8 +249,24 @@ public class HivePluginHelper {
      * Converts a JsonNode object to a JSONObject
      */
     public static JsonNode jsonObjectToJsonNode(JSONObject jsonObject) {
+        long start = System.nanoTime();
         try {
-            return new ObjectMapper().readTree(jsonObject.toString());
+            return objectMapper.readTree(jsonObject.toString());
+        }
+        catch (Exception e) {
+            return null;
+        }
+        finally {
+            CallTracer.recordSpan("jsonObjectToJsonNode", start);
+        }
+    }
+
+    /**
+     * Parses a JSON string to a JsonNode object. Returns null if the string is not valid JSON.
+     */
+    public static JsonNode jsonStringToJsonNode(String json) {
+        try {
+            return objectMapper.readTree(json);
         }
         catch (Exception e) {
             return null;
@@ -146,12 +277,67 @@ public class HivePluginHelper {
      * Converts a JSONObject to a JsonNode object
      */
     public static JSONObject jsonNodeToJsonObject(JsonNode jsonNode) {
+        long start = System.nanoTime();
         try {
-            return new JSONObject(new ObjectMapper().writeValueAsString(jsonNode));
+            return new JSONObject(objectMapper.writeValueAsString(jsonNode));
         }
         catch (Exception e) {
             return null;
         }
+        finally {
+            CallTracer.recordSpan("jsonNodeToJsonObject", start);
+        }
+    }
+
+    /**
+     * Converts a list of JsonNode objects (ex: found documents) to a JSONArray. The whole list is serialized at once,
+     * instead of one round trip through a string per item.
+     */
+    public static JSONArray jsonNodesToJsonArray(List<JsonNode> jsonNodes) {
+        long start = System.nanoTime();
+        try {
+            return new JSONArray(objectMapper.writeValueAsString(jsonNodes));
+        }
+        catch (Exception e) {
+            return null;
+        }
+        finally {
+            CallTracer.recordSpan("jsonNodesToJsonArray", start);
+        }
+    }
+
+    /**
+     * Converts any JsonNode (object, array or single value) to the matching org.json value: JSONObject, JSONArray,
+     * String, Number, Boolean or JSONObject.NULL. Returns null if the value can't be serialized.
+     */
+    public static Object jsonNodeToJsonValue(JsonNode jsonNode) {
+        long start = System.nanoTime();
+        try {
+            return new JSONTokener(objectMapper.writeValueAsString(jsonNode)).nextValue();
+        }
+        catch (Exception e) {
+            return null;
+        }
+        finally {
+            CallTracer.recordSpan("jsonNodeToJsonValue", start);
+        }
+    }
+
+    /**
+     * Serializes a JsonNode, or a list of JsonNode objects, straight to a JSON string, without building org.json
+     * objects. Returns null if the value can't be serialized.
+     */
+    public static String jsonNodeToJsonString(Object jsonNode) {
+        long start = System.nanoTime();
+        try {
+            return objectMapper.writeValueAsString(jsonNode);
+        }
+        catch (Exception e) {
+            return null;
+        }
+        finally {
+            CallTracer.recordSpan("jsonNodeToJsonString", start);
+        }
     }
 
     public static JSONArray listToJSONArray(List list) {
@@ -170,4 +356,27 @@ public class HivePluginHelper {
         }
         return list;
     }
+
+    /**
+     * Returns a future that completes like the given one, or fails with a TimeoutException if the given
+     * future is not completed after timeoutMs. A timeout of 0 or less disables the timeout.
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMs, ScheduledExecutorService scheduler) {
+        if (timeoutMs <= 0)
+            return future;
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            result.completeExceptionally(new TimeoutException("Timed out after " + timeoutMs + "ms"));
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+
+        future.whenComplete((value, e) -> {
+            timeout.cancel(false);
+            if (e != null)
+                result.completeExceptionally(e);
+            else
+                result.complete(value);
+        });
+        return result;
+    }
 }
@@ -0,0 +1,110 @@
+package org.elastos.plugins.hive;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Work done in the background when the plugin is loaded, so that the first vault calls don't pay for it:
+ * DID resolver setup, and loading (static initialization) of Jackson, DID and hive SDK classes.
+ */
+public class PluginWarmUp {
+    private static final String TAG = "HivePlugin";
+
+    // Classes used by most first calls (client creation, vault lookup, database and files calls)
+    private static final String[] PRELOADED_CLASSES = {
+            "com.fasterxml.jackson.databind.ObjectMapper",
+            "com.fasterxml.jackson.databind.node.ObjectNode",
+            "com.fasterxml.jackson.databind.node.ArrayNode",
+            "org.elastos.did.DIDDocument",
+            "org.elastos.did.DIDBackend",
+            "org.elastos.hive.Client",
+            "org.elastos.hive.Vault",
+            "org.elastos.hive.database.FindOptions",
+            "org.elastos.hive.database.CountOptions",
+            "org.elastos.hive.database.InsertOptions",
+            "org.elastos.hive.database.UpdateOptions",
+            "org.elastos.hive.database.DeleteOptions",
+            "org.elastos.hive.files.FileInfo",
+            "org.elastos.hive.scripting.RawCondition",
+            "org.elastos.hive.scripting.RawExecutable"
+    };
+
+    public interface ResolverSetup {
+        void run() throws Exception;
+    }
+
+    private volatile boolean done = false;
+    private volatile long durationMs = 0;
+    private volatile boolean resolverReady = false;
+    private volatile String resolverError = null;
+    private volatile int preloadedClasses = 0;
+    private final AtomicInteger preResolvedOwners = new AtomicInteger(0);
+    private final AtomicInteger preResolveErrors = new AtomicInteger(0);
+
+    /**
+     * Runs the warm-up on the calling thread, which must not be the UI or bridge thread. resolverSetup is null
+     * if the resolver URL is not known yet (set later from JS).
+     */
+    public void run(ResolverSetup resolverSetup) {
+        long start = System.nanoTime();
+
+        if (resolverSetup != null) {
+            try {
+                resolverSetup.run();
+                resolverReady = true;
+            }
+            catch (Exception e) {
+                resolverError = e.getMessage();
+                Log.w(TAG, "Unable to set up the DID resolver during warm-up", e);
+            }
+        }
+
+        ClassLoader loader = getClass().getClassLoader();
+        int loaded = 0;
+        for (String className : PRELOADED_CLASSES) {
+            try {
+                Class.forName(className, true, loader);
+                loaded++;
+            }
+            catch (ClassNotFoundException | LinkageError e) {
+                Log.w(TAG, "Unable to preload " + className, e);
+            }
+        }
+        preloadedClasses = loaded;
+
+        // First use of the shared ObjectMapper builds its serializer and deserializer caches
+        try {
+            HivePluginHelper.jsonNodeToJsonObject(HivePluginHelper.jsonObjectToJsonNode(new JSONObject("{\"a\":[1,2.5,\"s\",true,null],\"o\":{}}")));
+        }
+        catch (JSONException e) {
+            // Only a warm-up
+        }
+
+        durationMs = (System.nanoTime() - start) / 1000000;
+        done = true;
+    }
+
+    public void recordPreResolvedOwner(boolean success) {
+        if (success)
+            preResolvedOwners.incrementAndGet();
+        else
+            preResolveErrors.incrementAndGet();
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("done", done);
+        json.put("durationMs", durationMs);
+        json.put("resolverReady", resolverReady);
+        if (resolverError != null)
+            json.put("resolverError", resolverError);
+        json.put("preloadedClasses", preloadedClasses);
+        json.put("preResolvedOwners", preResolvedOwners.get());
+        json.put("preResolveErrors", preResolveErrors.get());
+        return json;
+    }
+}
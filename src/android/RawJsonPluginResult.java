@@ -0,0 +1,26 @@
+package org.elastos.plugins.hive;
+
+import org.apache.cordova.PluginResult;
+
+/**
+ * Successful plugin result made of an already serialized JSON value. Cordova passes the string as is to the
+ * web view, which parses it like any JSON result, instead of encoding a JSONObject or JSONArray tree first.
+ */
+public class RawJsonPluginResult extends PluginResult {
+    private final String json;
+
+    public RawJsonPluginResult(String json) {
+        super(Status.OK);
+        this.json = json;
+    }
+
+    @Override
+    public int getMessageType() {
+        return MESSAGE_TYPE_JSON;
+    }
+
+    @Override
+    public String getMessage() {
+        return json;
+    }
+}
@@ -0,0 +1,293 @@
+package org.elastos.plugins.hive.database;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.elastos.hive.database.Database;
+import org.elastos.hive.database.DeleteOptions;
+import org.elastos.hive.database.InsertOptions;
+import org.elastos.hive.database.UpdateOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of insert, update and delete operations on a collection.
+ *
+ * - Ordered: operations run one after the other, and the first failure stops the remaining operations.
+ * - Unordered: up to "concurrency" calls run at the same time, and failures don't stop other operations.
+ *
+ * Each insert is a call of its own by default, so that a failure is reported on the operation that failed: the
+ * vault doesn't tell which documents of a failed insertMany() were inserted. With groupInserts, the inserts of an
+ * unordered bulk write are grouped into unordered insertMany() calls of up to MAX_INSERT_BATCH documents, and the
+ * error of a failed group is reported on all its operations.
+ */
+public class BulkWrite {
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final int MAX_INSERT_BATCH = 100;
+
+    public enum Type {
+        INSERT_ONE,
+        UPDATE_ONE,
+        UPDATE_MANY,
+        DELETE_ONE,
+        DELETE_MANY
+    }
+
+    public static class Operation {
+        final Type type;
+        final JsonNode document;
+        final boolean bypassDocumentValidation;
+        final JsonNode filter;
+        final JsonNode update;
+        final UpdateOptions updateOptions;
+        final DeleteOptions deleteOptions;
+
+        private Operation(Type type, JsonNode document, boolean bypassDocumentValidation, JsonNode filter, JsonNode update, UpdateOptions updateOptions, DeleteOptions deleteOptions) {
+            this.type = type;
+            this.document = document;
+            this.bypassDocumentValidation = bypassDocumentValidation;
+            this.filter = filter;
+            this.update = update;
+            this.updateOptions = updateOptions;
+            this.deleteOptions = deleteOptions;
+        }
+
+        public static Operation insertOne(JsonNode document, boolean bypassDocumentValidation) {
+            return new Operation(Type.INSERT_ONE, document, bypassDocumentValidation, null, null, null, null);
+        }
+
+        public static Operation update(boolean onlyUpdateOne, JsonNode filter, JsonNode update, UpdateOptions options) {
+            return new Operation(onlyUpdateOne ? Type.UPDATE_ONE : Type.UPDATE_MANY, null, false, filter, update, options, null);
+        }
+
+        public static Operation delete(boolean onlyDeleteOne, JsonNode filter, DeleteOptions options) {
+            return new Operation(onlyDeleteOne ? Type.DELETE_ONE : Type.DELETE_MANY, null, false, filter, null, null, options);
+        }
+    }
+
+    /**
+     * Outcome of one operation. Operations not run because an ordered bulk write stopped, or because it was
+     * cancelled, are not executed and have no error.
+     */
+    public static class OperationResult {
+        public final Type type;
+        public boolean executed = false;
+        public Throwable error = null;
+        public String insertedId = null;
+        public long matchedCount = 0;
+        public long modifiedCount = 0;
+        public long upsertedCount = 0;
+        public String upsertedId = null;
+        public long deletedCount = 0;
+
+        OperationResult(Type type) {
+            this.type = type;
+        }
+    }
+
+    private final Database database;
+    private final String collectionName;
+    private final List<Operation> operations;
+    private final boolean ordered;
+    private final int concurrency;
+    private final boolean groupInserts;
+
+    private final OperationResult[] results;
+    // Operation indexes of each call, in execution order
+    private final List<int[]> steps = new ArrayList<>();
+    private final AtomicInteger nextStep = new AtomicInteger(0);
+    private final AtomicInteger completedSteps = new AtomicInteger(0);
+    private final CompletableFuture<List<OperationResult>> completion = new CompletableFuture<>();
+    private volatile boolean stopped = false;
+
+    public BulkWrite(Database database, String collectionName, List<Operation> operations, boolean ordered, int concurrency, boolean groupInserts) {
+        this.database = database;
+        this.collectionName = collectionName;
+        this.operations = operations;
+        this.ordered = ordered;
+        this.concurrency = ordered ? 1 : Math.max(1, concurrency);
+        this.groupInserts = groupInserts && !ordered;
+
+        results = new OperationResult[operations.size()];
+        for (int i=0; i<operations.size(); i++) {
+            results[i] = new OperationResult(operations.get(i).type);
+        }
+        groupOperations();
+    }
+
+    private void groupOperations() {
+        // Inserts of a group share the same options
+        ArrayList<Integer> inserts = new ArrayList<>();
+        ArrayList<Integer> unvalidatedInserts = new ArrayList<>();
+        for (int i=0; i<operations.size(); i++) {
+            Operation operation = operations.get(i);
+            if (groupInserts && operation.type == Type.INSERT_ONE) {
+                ArrayList<Integer> group = operation.bypassDocumentValidation ? unvalidatedInserts : inserts;
+                group.add(i);
+                if (group.size() == MAX_INSERT_BATCH) {
+                    steps.add(toIndexes(group));
+                    group.clear();
+                }
+            }
+            else {
+                steps.add(new int[]{i});
+            }
+        }
+        if (!inserts.isEmpty())
+            steps.add(toIndexes(inserts));
+        if (!unvalidatedInserts.isEmpty())
+            steps.add(toIndexes(unvalidatedInserts));
+    }
+
+    private static int[] toIndexes(List<Integer> list) {
+        int[] indexes = new int[list.size()];
+        for (int i=0; i<indexes.length; i++) {
+            indexes[i] = list.get(i);
+        }
+        return indexes;
+    }
+
+    /**
+     * Number of vault calls needed, after grouping inserts.
+     */
+    public int getCallCount() {
+        return steps.size();
+    }
+
+    public CompletableFuture<List<OperationResult>> execute() {
+        if (steps.isEmpty()) {
+            completion.complete(Arrays.asList(results));
+            return completion;
+        }
+
+        for (int i=0; i<Math.min(concurrency, steps.size()); i++) {
+            runNextSteps();
+        }
+        return completion;
+    }
+
+    /**
+     * Doesn't start more calls. Calls in progress complete normally.
+     */
+    public void cancel() {
+        stopped = true;
+    }
+
+    /**
+     * Starts the next steps until one is in progress. Steps not run because the bulk write stopped, and calls that
+     * complete synchronously, are handled in this loop rather than by recursion, as there can be thousands of them.
+     */
+    private void runNextSteps() {
+        while (true) {
+            int stepIndex = nextStep.getAndIncrement();
+            if (stepIndex >= steps.size())
+                return;
+
+            if (!stopped) {
+                CompletableFuture<Void> call = startStep(steps.get(stepIndex));
+                if (!call.isDone()) {
+                    call.thenRun(() -> {
+                        if (!onStepDone())
+                            runNextSteps();
+                    });
+                    return;
+                }
+            }
+
+            if (onStepDone())
+                return;
+        }
+    }
+
+    /**
+     * Runs the calls of a step. The returned future completes normally once the outcome is recorded in the results.
+     */
+    private CompletableFuture<Void> startStep(int[] indexes) {
+        CompletableFuture<Void> call;
+        try {
+            call = runStep(indexes);
+        }
+        catch (RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+
+        return call.handle((v, e) -> {
+            if (e != null) {
+                Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                for (int index : indexes) {
+                    results[index].executed = true;
+                    results[index].error = cause;
+                }
+                if (ordered)
+                    stopped = true;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Counts a finished step, and completes the bulk write after the last one. Returns true for the last one.
+     */
+    private boolean onStepDone() {
+        if (completedSteps.incrementAndGet() != steps.size())
+            return false;
+
+        completion.complete(Arrays.asList(results));
+        return true;
+    }
+
+    private CompletableFuture<Void> runStep(int[] indexes) {
+        Operation operation = operations.get(indexes[0]);
+        OperationResult result = results[indexes[0]];
+
+        switch (operation.type) {
+            case INSERT_ONE:
+                if (indexes.length == 1) {
+                    InsertOptions insertOptions = new InsertOptions().bypassDocumentValidation(operation.bypassDocumentValidation);
+                    return database.insertOne(collectionName, operation.document, insertOptions).thenAccept(insertResult -> {
+                        result.executed = true;
+                        result.insertedId = insertResult.insertedId();
+                    });
+                }
+
+                ArrayList<JsonNode> documents = new ArrayList<>();
+                for (int index : indexes) {
+                    documents.add(operations.get(index).document);
+                }
+                // Unordered, so that a failed document doesn't prevent the next ones of the group from being inserted
+                InsertOptions insertOptions = new InsertOptions().bypassDocumentValidation(operation.bypassDocumentValidation).ordered(false);
+                return database.insertMany(collectionName, documents, insertOptions).thenAccept(insertResult -> {
+                    List<String> insertedIds = insertResult.insertedIds();
+                    for (int i=0; i<indexes.length; i++) {
+                        results[indexes[i]].executed = true;
+                        results[indexes[i]].insertedId = insertedIds != null && i < insertedIds.size() ? insertedIds.get(i) : null;
+                    }
+                });
+            case UPDATE_ONE:
+            case UPDATE_MANY:
+                CompletableFuture<org.elastos.hive.database.UpdateResult> update = operation.type == Type.UPDATE_ONE ?
+                        database.updateOne(collectionName, operation.filter, operation.update, operation.updateOptions) :
+                        database.updateMany(collectionName, operation.filter, operation.update, operation.updateOptions);
+                return update.thenAccept(updateResult -> {
+                    result.executed = true;
+                    result.matchedCount = updateResult.matchedCount();
+                    result.modifiedCount = updateResult.modifiedCount();
+                    result.upsertedCount = updateResult.upsertedCount();
+                    result.upsertedId = updateResult.upsertedId();
+                });
+            default:
+                CompletableFuture<org.elastos.hive.database.DeleteResult> delete = operation.type == Type.DELETE_ONE ?
+                        database.deleteOne(collectionName, operation.filter, operation.deleteOptions) :
+                        database.deleteMany(collectionName, operation.filter, operation.deleteOptions);
+                return delete.thenAccept(deleteResult -> {
+                    result.executed = true;
+                    result.deletedCount = deleteResult.deletedCount();
+                });
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.elastos.plugins.hive.database;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.elastos.hive.database.Database;
+import org.elastos.hive.database.InsertOptions;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inserts a large list of documents as several insertMany() calls of at most batchSize documents. Ordered inserts
+ * send one batch after the other, so that documents are inserted in order; unordered inserts have up to
+ * "concurrency" calls in progress. Documents of a batch are only converted to JsonNode when the batch is sent,
+ * so that a large import doesn't hold two full copies of the documents.
+ *
+ * Inserted ids are returned in the order of the documents. After a failed batch, no new batch is started unless
+ * continueOnError is set, and the ids of documents not inserted are null.
+ */
+public class ChunkedInsert {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_CONCURRENCY = 3;
+
+    public interface DocumentConverter {
+        JsonNode convert(JSONObject document);
+    }
+
+    public static class FailedBatch {
+        public final int offset;
+        public final int count;
+        public final Throwable error;
+
+        FailedBatch(int offset, int count, Throwable error) {
+            this.offset = offset;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    public static class Result {
+        public final String[] insertedIds;
+        public final int insertedCount;
+        public final int batchCount;
+        public final List<FailedBatch> failedBatches;
+
+        Result(String[] insertedIds, int insertedCount, int batchCount, List<FailedBatch> failedBatches) {
+            this.insertedIds = insertedIds;
+            this.insertedCount = insertedCount;
+            this.batchCount = batchCount;
+            this.failedBatches = failedBatches;
+        }
+    }
+
+    private final Database database;
+    private final String collectionName;
+    private final JSONArray documents;
+    private final DocumentConverter converter;
+    private final InsertOptions options;
+    private final int batchSize;
+    private final int concurrency;
+    private final boolean continueOnError;
+
+    private final int batchCount;
+    private final String[] insertedIds;
+    private final AtomicInteger insertedCount = new AtomicInteger(0);
+    private final AtomicInteger nextBatch = new AtomicInteger(0);
+    private final AtomicInteger completedBatches = new AtomicInteger(0);
+    private final List<FailedBatch> failedBatches = new ArrayList<>();
+    private final CompletableFuture<Result> completion = new CompletableFuture<>();
+    private volatile boolean stopped = false;
+
+    public ChunkedInsert(Database database, String collectionName, JSONArray documents, DocumentConverter converter, InsertOptions options,
+                         boolean ordered, int batchSize, int concurrency, boolean continueOnError) {
+        this.database = database;
+        this.collectionName = collectionName;
+        this.documents = documents;
+        this.converter = converter;
+        this.options = options;
+        this.batchSize = Math.max(1, batchSize);
+        this.concurrency = ordered ? 1 : Math.max(1, concurrency);
+        this.continueOnError = continueOnError;
+
+        batchCount = (documents.length() + this.batchSize - 1) / this.batchSize;
+        insertedIds = new String[documents.length()];
+    }
+
+    public CompletableFuture<Result> execute() {
+        if (batchCount == 0) {
+            completion.complete(result());
+            return completion;
+        }
+
+        for (int i=0; i<Math.min(concurrency, batchCount); i++) {
+            sendNextBatch();
+        }
+        return completion;
+    }
+
+    /**
+     * Doesn't start more batches. Batches in progress complete normally.
+     */
+    public void cancel() {
+        stopped = true;
+    }
+
+    private void sendNextBatch() {
+        int batch = nextBatch.getAndIncrement();
+        if (batch >= batchCount)
+            return;
+
+        int offset = batch * batchSize;
+        int count = Math.min(batchSize, documents.length() - offset);
+
+        if (stopped) {
+            onBatchDone();
+            return;
+        }
+
+        CompletableFuture<Void> call;
+        try {
+            ArrayList<JsonNode> batchDocuments = new ArrayList<>(count);
+            for (int i=offset; i<offset + count; i++) {
+                batchDocuments.add(converter.convert(documents.getJSONObject(i)));
+            }
+
+            call = database.insertMany(collectionName, batchDocuments, options).thenAccept(insertResult -> {
+                List<String> ids = insertResult.insertedIds();
+                if (ids != null) {
+                    for (int i=0; i<Math.min(count, ids.size()); i++) {
+                        insertedIds[offset + i] = ids.get(i);
+                    }
+                }
+                insertedCount.addAndGet(count);
+            });
+        }
+        catch (JSONException | RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+
+        call.whenComplete((v, e) -> {
+            if (e != null) {
+                Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                synchronized (failedBatches) {
+                    failedBatches.add(new FailedBatch(offset, count, cause));
+                }
+                if (!continueOnError)
+                    stopped = true;
+            }
+            onBatchDone();
+        });
+    }
+
+    private void onBatchDone() {
+        if (completedBatches.incrementAndGet() == batchCount)
+            completion.complete(result());
+        else
+            sendNextBatch();
+    }
+
+    private Result result() {
+        ArrayList<FailedBatch> failed;
+        synchronized (failedBatches) {
+            failed = new ArrayList<>(failedBatches);
+        }
+        failed.sort((a, b) -> Integer.compare(a.offset, b.offset));
+        return new Result(insertedIds, insertedCount.get(), batchCount, failed);
+    }
+}
@@ -0,0 +1,319 @@
+package org.elastos.plugins.hive.files;
+
+import android.os.Debug;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Optional compression of uploaded files, and transparent decompression of downloaded files.
+ *
+ * Compressed files start with a small header (magic "HIVZ", format version, algorithm id) so that downloads
+ * can detect them and decompress without the caller having to know how the file was uploaded.
+ */
+public class FileCompression {
+    private static final byte[] MAGIC = {'H', 'I', 'V', 'Z'};
+    private static final byte FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    public enum Algorithm {
+        GZIP(1, "gzip"),
+        DEFLATE(2, "deflate");
+
+        private int mId;
+        private String mName;
+
+        Algorithm(int id, String name) {
+            mId = id;
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public static Algorithm fromName(String name) {
+            for(Algorithm a : values()) {
+                if (a.mName.equalsIgnoreCase(name)) {
+                    return a;
+                }
+            }
+            return null;
+        }
+
+        public static Algorithm fromId(int id) {
+            for(Algorithm a : values()) {
+                if (a.mId == id) {
+                    return a;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Wraps the given upload stream so that written data is compressed before being sent.
+     */
+    public static CompressingOutputStream compress(OutputStream out, Algorithm algorithm, int level) throws IOException {
+        return new CompressingOutputStream(out, algorithm, level);
+    }
+
+    /**
+     * Wraps the given download stream so that files uploaded with compress() are decompressed while being read.
+     * Other files are returned unchanged.
+     */
+    public static DecompressingInputStream decompress(InputStream in) {
+        return new DecompressingInputStream(in);
+    }
+
+    private static JSONObject statsToJson(Algorithm algorithm, long rawBytes, long compressedBytes, long cpuTimeNs) throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("algorithm", algorithm.getName());
+        stats.put("rawBytes", rawBytes);
+        stats.put("compressedBytes", compressedBytes);
+        stats.put("ratio", compressedBytes > 0 ? (double) rawBytes / compressedBytes : 0);
+        stats.put("cpuTimeMs", cpuTimeNs / 1000000.0);
+        return stats;
+    }
+
+    public static class CompressingOutputStream extends FilterOutputStream {
+        private final Algorithm algorithm;
+        // Compressed data is first produced in memory, then sent to the network stream. This keeps the measured
+        // CPU time limited to the compression work.
+        private final ByteArrayOutputStream compressedBuffer = new ByteArrayOutputStream();
+        private final DeflaterOutputStream compressor;
+        // Deflater created here for the deflate algorithm. DeflaterOutputStream doesn't end deflaters it didn't
+        // create, so its native memory must be released explicitly.
+        private final Deflater deflater;
+        private long rawBytes = 0;
+        private long compressedBytes = 0;
+        private long cpuTimeNs = 0;
+        private boolean closed = false;
+
+        CompressingOutputStream(OutputStream out, Algorithm algorithm, int level) throws IOException {
+            super(out);
+            this.algorithm = algorithm;
+
+            if (algorithm == Algorithm.GZIP) {
+                compressor = new GZIPOutputStream(compressedBuffer) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+                deflater = null;
+            }
+            else {
+                deflater = new Deflater(level);
+                compressor = new DeflaterOutputStream(compressedBuffer, deflater);
+            }
+
+            out.write(MAGIC);
+            out.write(FORMAT_VERSION);
+            out.write(algorithm.mId);
+            compressedBytes += HEADER_LENGTH;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = Debug.threadCpuTimeNanos();
+            compressor.write(b, off, len);
+            cpuTimeNs += Debug.threadCpuTimeNanos() - start;
+
+            rawBytes += len;
+            sendCompressedData();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = Debug.threadCpuTimeNanos();
+            compressor.flush();
+            cpuTimeNs += Debug.threadCpuTimeNanos() - start;
+
+            sendCompressedData();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+
+            try {
+                long start = Debug.threadCpuTimeNanos();
+                compressor.finish();
+                cpuTimeNs += Debug.threadCpuTimeNanos() - start;
+
+                sendCompressedData();
+            }
+            finally {
+                try {
+                    // Also ends the GZIP stream's own deflater
+                    compressor.close();
+                }
+                finally {
+                    if (deflater != null)
+                        deflater.end();
+                    out.close();
+                }
+            }
+        }
+
+        private void sendCompressedData() throws IOException {
+            if (compressedBuffer.size() == 0)
+                return;
+
+            compressedBytes += compressedBuffer.size();
+            compressedBuffer.writeTo(out);
+            compressedBuffer.reset();
+        }
+
+        public JSONObject getStats() throws JSONException {
+            return statsToJson(algorithm, rawBytes, compressedBytes, cpuTimeNs);
+        }
+    }
+
+    public static class DecompressingInputStream extends FilterInputStream {
+        private final CountingInputStream counter;
+        private final PushbackInputStream source;
+        private Algorithm algorithm = null;
+        private boolean headerChecked = false;
+        private long rawBytes = 0;
+        private long cpuTimeNs = 0;
+
+        DecompressingInputStream(InputStream in) {
+            this(new CountingInputStream(in));
+        }
+
+        private DecompressingInputStream(CountingInputStream counter) {
+            this(counter, new PushbackInputStream(counter, HEADER_LENGTH));
+        }
+
+        private DecompressingInputStream(CountingInputStream counter, PushbackInputStream source) {
+            super(source);
+            this.counter = counter;
+            this.source = source;
+        }
+
+        /**
+         * Reads the file header on first read, and replaces the stream by a decompressing one if the file was
+         * compressed by this plugin.
+         */
+        private void checkHeader() throws IOException {
+            if (headerChecked)
+                return;
+            headerChecked = true;
+
+            byte[] header = new byte[HEADER_LENGTH];
+            int headerBytes = 0;
+            while (headerBytes < HEADER_LENGTH) {
+                int read = source.read(header, headerBytes, HEADER_LENGTH - headerBytes);
+                if (read == -1)
+                    break;
+                headerBytes += read;
+            }
+
+            Algorithm detected = null;
+            if (headerBytes == HEADER_LENGTH && header[MAGIC.length] == FORMAT_VERSION) {
+                boolean magicMatches = true;
+                for (int i=0; i<MAGIC.length; i++) {
+                    if (header[i] != MAGIC[i]) {
+                        magicMatches = false;
+                        break;
+                    }
+                }
+                if (magicMatches)
+                    detected = Algorithm.fromId(header[MAGIC.length + 1]);
+            }
+
+            if (detected == null) {
+                // Not a compressed file, give the header bytes back to the reader.
+                if (headerBytes > 0)
+                    source.unread(header, 0, headerBytes);
+                return;
+            }
+
+            algorithm = detected;
+            if (algorithm == Algorithm.GZIP)
+                in = new GZIPInputStream(source);
+            else
+                in = new InflaterInputStream(source);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkHeader();
+
+            long start = Debug.threadCpuTimeNanos();
+            int read = in.read(b, off, len);
+            cpuTimeNs += Debug.threadCpuTimeNanos() - start;
+
+            if (read > 0)
+                rawBytes += read;
+            return read;
+        }
+
+        public boolean isCompressed() {
+            return algorithm != null;
+        }
+
+        /**
+         * Returns decompression stats, or null if the downloaded file was not compressed.
+         */
+        public JSONObject getStats() throws JSONException {
+            if (algorithm == null)
+                return null;
+
+            return statsToJson(algorithm, rawBytes, counter.count, cpuTimeNs);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+    }
+}
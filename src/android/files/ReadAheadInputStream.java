@@ -0,0 +1,233 @@
+package org.elastos.plugins.hive.files;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download stream that keeps reading the next chunks in the background while the caller processes the previous
+ * ones, so that the network is not idle between two reader_read() calls.
+ *
+ * - Prefetched data is bounded by a byte budget. When the budget is reached, prefetching pauses (without holding
+ * a thread) and resumes as soon as the caller consumes data.
+ * - Reads are served from prefetched data when some is available (hit), otherwise they wait for the next chunk
+ * (stall).
+ * - A network error is reported by the read following the data received before the error.
+ */
+public class ReadAheadInputStream extends InputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 512 * 1024;
+
+    /**
+     * Read-ahead statistics, shared by all readers.
+     */
+    public static class Stats {
+        private final AtomicLong readers = new AtomicLong(0);
+        private final AtomicLong reads = new AtomicLong(0);
+        private final AtomicLong hits = new AtomicLong(0);
+        private final AtomicLong stalls = new AtomicLong(0);
+        private final AtomicLong stallNanos = new AtomicLong(0);
+        private final AtomicLong prefetchedBytes = new AtomicLong(0);
+
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("readers", readers.get());
+            json.put("reads", reads.get());
+            json.put("hits", hits.get());
+            json.put("stalls", stalls.get());
+            json.put("stallTimeMs", stallNanos.get() / 1000000.0);
+            json.put("prefetchedBytes", prefetchedBytes.get());
+            return json;
+        }
+    }
+
+    private final InputStream source;
+    private final int chunkSize;
+    private final long maxBufferedBytes;
+    private final Executor executor;
+    private final Stats stats;
+
+    // Prefetched chunks. The first one may be partially consumed.
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private int firstChunkOffset = 0;
+    private long bufferedBytes = 0;
+    private boolean started = false;
+    private boolean prefetching = false;
+    private boolean endOfStream = false;
+    private boolean closed = false;
+    private IOException failure = null;
+
+    public ReadAheadInputStream(InputStream source, int chunkSize, long maxBufferedBytes, Executor executor, Stats stats) {
+        this.source = source;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxBufferedBytes = Math.max(this.chunkSize, maxBufferedBytes);
+        this.executor = executor;
+        this.stats = stats;
+    }
+
+    /**
+     * Starts prefetching. Until then, the wrapped stream is not touched.
+     */
+    public synchronized void start() {
+        if (started || closed)
+            return;
+
+        started = true;
+        stats.readers.incrementAndGet();
+        startPrefetching();
+    }
+
+    /**
+     * Returns the wrapped download stream.
+     */
+    public InputStream getSource() {
+        return source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] data = new byte[1];
+        int read = read(data, 0, 1);
+        return read == -1 ? -1 : data[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        stats.reads.incrementAndGet();
+        start();
+
+        long waitStart = -1;
+        while (chunks.isEmpty()) {
+            if (closed)
+                throw new IOException("Stream closed");
+            if (failure != null)
+                throw failure;
+            if (endOfStream)
+                return -1;
+
+            if (waitStart == -1)
+                waitStart = System.nanoTime();
+            startPrefetching();
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for data", e);
+            }
+        }
+
+        if (waitStart != -1) {
+            stats.stalls.incrementAndGet();
+            stats.stallNanos.addAndGet(System.nanoTime() - waitStart);
+        }
+        else {
+            stats.hits.incrementAndGet();
+        }
+
+        // Serve as much as possible from prefetched data, without waiting for more.
+        int copied = 0;
+        while (copied < len && !chunks.isEmpty()) {
+            byte[] chunk = chunks.peek();
+            int count = Math.min(len - copied, chunk.length - firstChunkOffset);
+            System.arraycopy(chunk, firstChunkOffset, b, off + copied, count);
+            copied += count;
+            firstChunkOffset += count;
+            if (firstChunkOffset == chunk.length) {
+                chunks.poll();
+                firstChunkOffset = 0;
+            }
+        }
+        bufferedBytes -= copied;
+
+        startPrefetching();
+        return copied;
+    }
+
+    @Override
+    public synchronized int available() {
+        return (int) Math.min(Integer.MAX_VALUE, bufferedBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+
+            closed = true;
+            chunks.clear();
+            bufferedBytes = 0;
+            notifyAll();
+            if (started)
+                stats.readers.decrementAndGet();
+        }
+
+        // Also unblocks the prefetch task if it is waiting for the network.
+        source.close();
+    }
+
+    /**
+     * Starts the prefetch task, if it is not running and there is room for more data. Must hold the lock.
+     */
+    private void startPrefetching() {
+        if (!started || prefetching || closed || endOfStream || failure != null || bufferedBytes >= maxBufferedBytes)
+            return;
+
+        prefetching = true;
+        try {
+            executor.execute(this::prefetch);
+        }
+        catch (RejectedExecutionException e) {
+            prefetching = false;
+            failure = new IOException("Unable to read ahead", e);
+            notifyAll();
+        }
+    }
+
+    private void prefetch() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closed || endOfStream || bufferedBytes >= maxBufferedBytes) {
+                        prefetching = false;
+                        return;
+                    }
+                }
+
+                byte[] buffer = new byte[chunkSize];
+                int read = source.read(buffer, 0, chunkSize);
+
+                synchronized (this) {
+                    if (read == -1) {
+                        endOfStream = true;
+                    }
+                    else if (read > 0 && !closed) {
+                        chunks.add(read == chunkSize ? buffer : Arrays.copyOf(buffer, read));
+                        bufferedBytes += read;
+                        stats.prefetchedBytes.addAndGet(read);
+                    }
+                    notifyAll();
+                }
+            }
+        }
+        catch (Exception e) {
+            synchronized (this) {
+                prefetching = false;
+                if (!closed)
+                    failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.elastos.plugins.hive.files;
+
+import android.util.Base64;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Write buffer that keeps data in memory up to a threshold, then moves it to a file, so that reading a large
+ * download at once doesn't grow the heap with the file size.
+ */
+public class SpillBuffer {
+    public static final long DEFAULT_SPILL_THRESHOLD = 4 * 1024 * 1024;
+
+    // Gives access to the internal buffer, to encode it without copying it first.
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        String encodeBase64() {
+            return Base64.encodeToString(buf, 0, count, Base64.NO_WRAP);
+        }
+    }
+
+    private final long threshold;
+    private final File spillFile;
+    private ExposedByteArrayOutputStream memory = new ExposedByteArrayOutputStream();
+    private OutputStream fileStream = null;
+    private long size = 0;
+
+    public SpillBuffer(long threshold, File spillFile) {
+        this.threshold = threshold;
+        this.spillFile = spillFile;
+    }
+
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (fileStream == null && size + length > threshold)
+            spill();
+
+        if (fileStream != null)
+            fileStream.write(data, offset, length);
+        else
+            memory.write(data, offset, length);
+        size += length;
+    }
+
+    private void spill() throws IOException {
+        File dir = spillFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs())
+            throw new IOException("Unable to create directory " + dir);
+
+        fileStream = new BufferedOutputStream(new FileOutputStream(spillFile), 64 * 1024);
+        memory.writeTo(fileStream);
+        memory = null;
+    }
+
+    public boolean isSpilled() {
+        return fileStream != null;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * File holding the data, once spilled.
+     */
+    public File getFile() {
+        return spillFile;
+    }
+
+    /**
+     * Base64 encoded data, when not spilled.
+     */
+    public String encodeBase64() {
+        return memory.encodeBase64();
+    }
+
+    /**
+     * Completes writing. Spilled data stays in the file.
+     */
+    public void finish() throws IOException {
+        if (fileStream != null)
+            fileStream.close();
+    }
+
+    /**
+     * Drops all data, including the spill file.
+     */
+    public void discard() {
+        memory = null;
+        if (fileStream != null) {
+            try {
+                fileStream.close();
+            }
+            catch (IOException e) {
+                // Deleted anyway
+            }
+            spillFile.delete();
+        }
+    }
+}
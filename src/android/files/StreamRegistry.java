@@ -0,0 +1,254 @@
+package org.elastos.plugins.hive.files;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Open reader or writer streams referenced by the JS side, by object id.
+ *
+ * JS code doesn't always close the streams it opens, and each open stream holds a connection and buffers. This
+ * registry bounds the number of open streams, and closes streams that were not used for too long:
+ * - Streams unused for more than the idle timeout are closed by sweepIdle().
+ * - When the maximum number of streams is reached, opening a new one closes the least recently used stream.
+ * Streams in the middle of an operation (between acquire() and release()) are never closed by the registry.
+ *
+ * Closed streams are remembered for a while, so that later calls with their object id can explain why the
+ * stream is not available any more.
+ */
+public class StreamRegistry<T> {
+    private static final String TAG = "HivePlugin";
+    private static final int MAX_REMEMBERED_RECLAIMED_IDS = 100;
+
+    public interface Closer<T> {
+        void close(T stream) throws Exception;
+    }
+
+    private static class Entry<T> {
+        final T stream;
+        long lastUsed = System.currentTimeMillis();
+        int activeOperations = 0;
+
+        Entry(T stream) {
+            this.stream = stream;
+        }
+    }
+
+    private final String type;
+    private final Closer<T> closer;
+    // Access order: least recently used streams first
+    private final LinkedHashMap<String, Entry<T>> streams = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, String> reclaimedIds = new LinkedHashMap<String, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_REMEMBERED_RECLAIMED_IDS;
+        }
+    };
+    private int maxStreams;
+    private long idleTimeoutMs;
+    private long reclaimedIdle = 0;
+    private long reclaimedOverLimit = 0;
+    private long closedOnReset = 0;
+
+    public StreamRegistry(String type, int maxStreams, long idleTimeoutMs, Closer<T> closer) {
+        this.type = type;
+        this.maxStreams = maxStreams;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.closer = closer;
+    }
+
+    public synchronized void setLimits(int maxStreams, long idleTimeoutMs) {
+        this.maxStreams = Math.max(1, maxStreams);
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public synchronized int getMaxStreams() {
+        return maxStreams;
+    }
+
+    public synchronized long getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    /**
+     * Registers a newly opened stream. If the maximum number of streams is reached, the least recently used idle
+     * stream is closed to make room. Returns false if no stream could be closed because they are all in use:
+     * the new stream is then not registered and the caller must close it.
+     */
+    public boolean add(String objectId, T stream) {
+        T evicted = null;
+        synchronized (this) {
+            if (streams.size() >= maxStreams) {
+                String evictedId = findLeastRecentlyUsedIdle();
+                if (evictedId == null)
+                    return false;
+
+                evicted = streams.remove(evictedId).stream;
+                reclaimedIds.put(evictedId, "closed to open a new " + type + " because the maximum of " + maxStreams + " open " + type + "s was reached");
+                reclaimedOverLimit++;
+            }
+            streams.put(objectId, new Entry<>(stream));
+            reclaimedIds.remove(objectId);
+        }
+
+        if (evicted != null)
+            closeQuietly(evicted);
+        return true;
+    }
+
+    private String findLeastRecentlyUsedIdle() {
+        for (Map.Entry<String, Entry<T>> entry : streams.entrySet()) {
+            if (entry.getValue().activeOperations == 0)
+                return entry.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the stream for the given id, and marks it as in use until release() is called.
+     * Returns null if there is no such stream.
+     */
+    public synchronized T acquire(String objectId) {
+        Entry<T> entry = streams.get(objectId);
+        if (entry == null)
+            return null;
+
+        entry.activeOperations++;
+        entry.lastUsed = System.currentTimeMillis();
+        return entry.stream;
+    }
+
+    public synchronized void release(String objectId) {
+        Entry<T> entry = streams.get(objectId);
+        if (entry == null)
+            return;
+
+        entry.activeOperations = Math.max(0, entry.activeOperations - 1);
+        entry.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the stream for the given id and refreshes its last use time, or null if there is no such stream.
+     */
+    public synchronized T get(String objectId) {
+        Entry<T> entry = streams.get(objectId);
+        if (entry == null)
+            return null;
+
+        entry.lastUsed = System.currentTimeMillis();
+        return entry.stream;
+    }
+
+    /**
+     * Replaces the stream registered for the given id (ex: by a wrapper of the same stream). Returns false if
+     * there is no such stream, or if it is in use.
+     */
+    public synchronized boolean replace(String objectId, T stream) {
+        Entry<T> entry = streams.get(objectId);
+        if (entry == null || entry.activeOperations > 0)
+            return false;
+
+        Entry<T> replacement = new Entry<>(stream);
+        streams.put(objectId, replacement);
+        return true;
+    }
+
+    public synchronized boolean contains(String objectId) {
+        return streams.containsKey(objectId);
+    }
+
+    /**
+     * Unregisters a stream closed by its owner.
+     */
+    public synchronized T remove(String objectId) {
+        Entry<T> entry = streams.remove(objectId);
+        return entry != null ? entry.stream : null;
+    }
+
+    /**
+     * Error message for an unknown stream id, explaining why the stream was closed if it was reclaimed.
+     */
+    public synchronized String unknownStreamMessage(String objectId) {
+        String reason = reclaimedIds.get(objectId);
+        if (reason != null)
+            return "This " + type + " is not available any more: " + reason;
+        else
+            return "Invalid " + type + " object passed";
+    }
+
+    /**
+     * Closes streams that have not been used for longer than the idle timeout.
+     */
+    public void sweepIdle() {
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            if (idleTimeoutMs <= 0)
+                return;
+
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, Entry<T>>> it = streams.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry<T>> entry = it.next();
+                if (entry.getValue().activeOperations == 0 && now - entry.getValue().lastUsed > idleTimeoutMs) {
+                    expired.add(entry.getValue().stream);
+                    reclaimedIds.put(entry.getKey(), "closed after being unused for more than " + idleTimeoutMs + "ms");
+                    reclaimedIdle++;
+                    it.remove();
+                }
+            }
+        }
+
+        for (T stream : expired) {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Closes all streams, including those in use. Used when the plugin is destroyed or the web view reloaded.
+     */
+    public void closeAll() {
+        List<T> all = new ArrayList<>();
+        synchronized (this) {
+            for (Entry<T> entry : streams.values()) {
+                all.add(entry.stream);
+            }
+            closedOnReset += streams.size();
+            streams.clear();
+        }
+
+        for (T stream : all) {
+            closeQuietly(stream);
+        }
+    }
+
+    private void closeQuietly(T stream) {
+        try {
+            closer.close(stream);
+        }
+        catch (Exception e) {
+            Log.w(TAG, "Unable to close reclaimed " + type, e);
+        }
+    }
+
+    public synchronized int size() {
+        return streams.size();
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("live", streams.size());
+        json.put("max", maxStreams);
+        json.put("idleTimeoutMs", idleTimeoutMs);
+        json.put("reclaimedIdle", reclaimedIdle);
+        json.put("reclaimedOverLimit", reclaimedOverLimit);
+        json.put("closedOnReset", closedOnReset);
+        return json;
+    }
+}
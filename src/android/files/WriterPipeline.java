@@ -0,0 +1,256 @@
+package org.elastos.plugins.hive.files;
+
+import android.util.Base64;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Ordered write queue in front of an upload stream.
+ *
+ * - Writes, flushes and closes are executed one after the other, in the order they were requested.
+ * - Small writes are coalesced in a buffer before reaching the upload stream.
+ * - The number of bytes queued but not yet written is bounded. Once this limit is reached, write completions
+ * are delayed until enough queued data has been written, which slows down the JS side producer (backpressure).
+ *
+ * Once a write fails, the error is reported to all following operations.
+ */
+public class WriterPipeline {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 1024 * 1024;
+
+    public interface Completion {
+        void onComplete(Throwable error);
+    }
+
+    private final OutputStream stream;
+    private final BufferedOutputStream bufferedStream;
+    private final long maxInFlightBytes;
+    private final ExecutorService queue = Executors.newSingleThreadExecutor();
+    private final ArrayDeque<Completion> pendingCompletions = new ArrayDeque<>();
+    private long inFlightBytes = 0;
+    private Throwable failure = null;
+    private boolean closed = false;
+    private boolean aborted = false;
+
+    public WriterPipeline(OutputStream stream, int bufferSize, long maxInFlightBytes) {
+        this.stream = stream;
+        this.bufferedStream = new BufferedOutputStream(stream, Math.max(1, bufferSize));
+        this.maxInFlightBytes = Math.max(1, maxInFlightBytes);
+    }
+
+    /**
+     * Returns the upload stream written by this pipeline.
+     */
+    public OutputStream getStream() {
+        return stream;
+    }
+
+    /**
+     * Queues a base64 encoded chunk (the way Cordova transfers JS Uint8Arrays). Decoding happens on the
+     * writer's queue, not on the caller thread.
+     */
+    public void writeBase64(String base64Data, Completion completion) {
+        // Accounting uses the decoded size, known in advance from the encoded length.
+        long dataLength = (long) base64Data.length() / 4 * 3;
+
+        boolean completeNow;
+        Throwable rejection = null;
+        synchronized (this) {
+            if (failure != null)
+                rejection = failure;
+            else if (closed)
+                rejection = new IOException("Writer is closed");
+
+            completeNow = true;
+            if (rejection == null) {
+                inFlightBytes += dataLength;
+                completeNow = inFlightBytes <= maxInFlightBytes;
+                if (!completeNow)
+                    pendingCompletions.add(completion);
+            }
+        }
+
+        if (rejection != null) {
+            completion.onComplete(rejection);
+            return;
+        }
+
+        try {
+            // The completion was already called, or is in pendingCompletions: the task doesn't own it
+            queue.execute(new QueuedTask(null, () -> {
+                try {
+                    if (getFailure() == null) {
+                        byte[] data = Base64.decode(base64Data, Base64.DEFAULT);
+                        bufferedStream.write(data);
+                    }
+                }
+                catch (Exception e) {
+                    fail(e);
+                }
+                finally {
+                    releaseInFlight(dataLength);
+                }
+            }));
+        }
+        catch (RejectedExecutionException e) {
+            // Aborted by another thread since the checks above. If the completion is not pending anymore, fail()
+            // already completed it.
+            boolean stillPending;
+            synchronized (this) {
+                stillPending = pendingCompletions.remove(completion);
+            }
+            if (completeNow || stillPending)
+                completion.onComplete(rejectionError());
+            return;
+        }
+
+        if (completeNow)
+            completion.onComplete(null);
+    }
+
+    /**
+     * Completes after all previously queued writes, and sends buffered data to the upload stream.
+     */
+    public void flush(Completion completion) {
+        enqueue(completion, () -> {
+            bufferedStream.flush();
+        });
+    }
+
+    /**
+     * Completes after all previously queued writes, then closes the upload stream and stops the queue.
+     */
+    public void close(Completion completion) {
+        synchronized (this) {
+            if (closed) {
+                completion.onComplete(null);
+                return;
+            }
+            closed = true;
+        }
+
+        enqueue(completion, () -> {
+            if (getFailure() == null)
+                bufferedStream.flush();
+            stream.close();
+        });
+        queue.shutdown();
+    }
+
+    /**
+     * Closes the upload stream immediately, without waiting for queued writes. Used to reclaim abandoned writers.
+     */
+    public void abort() {
+        synchronized (this) {
+            closed = true;
+            aborted = true;
+        }
+        List<Runnable> notStarted = queue.shutdownNow();
+        IOException error = new IOException("Writer was aborted");
+        fail(error);
+
+        // Flushes and closes that never ran must still complete
+        for (Runnable task : notStarted) {
+            if (task instanceof QueuedTask && ((QueuedTask) task).completion != null)
+                ((QueuedTask) task).completion.onComplete(error);
+        }
+
+        try {
+            stream.close();
+        }
+        catch (IOException e) {
+            // Nothing more we can do
+        }
+    }
+
+    private interface Operation {
+        void run() throws IOException;
+    }
+
+    /**
+     * Task of the queue, with the completion it has to call, if any, so that abort() can complete tasks that
+     * never ran.
+     */
+    private static class QueuedTask implements Runnable {
+        final Completion completion;
+        final Runnable task;
+
+        QueuedTask(Completion completion, Runnable task) {
+            this.completion = completion;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private void enqueue(Completion completion, Operation operation) {
+        try {
+            queue.execute(new QueuedTask(completion, () -> {
+                Throwable error = getFailure();
+                try {
+                    operation.run();
+                }
+                catch (Exception e) {
+                    fail(e);
+                    if (error == null)
+                        error = e;
+                }
+                completion.onComplete(error);
+            }));
+        }
+        catch (RejectedExecutionException e) {
+            completion.onComplete(rejectionError());
+        }
+    }
+
+    private synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Error for operations that can't be queued anymore.
+     */
+    private synchronized Throwable rejectionError() {
+        if (aborted)
+            return new IOException("Writer was aborted");
+        return failure != null ? failure : new IOException("Writer is closed");
+    }
+
+    private void fail(Throwable e) {
+        ArrayDeque<Completion> toFail;
+        synchronized (this) {
+            if (failure == null)
+                failure = e;
+            toFail = new ArrayDeque<>(pendingCompletions);
+            pendingCompletions.clear();
+        }
+
+        for (Completion pending : toFail) {
+            pending.onComplete(e);
+        }
+    }
+
+    private void releaseInFlight(long dataLength) {
+        ArrayDeque<Completion> toComplete = new ArrayDeque<>();
+        synchronized (this) {
+            inFlightBytes -= dataLength;
+            while (!pendingCompletions.isEmpty() && inFlightBytes <= maxInFlightBytes) {
+                toComplete.add(pendingCompletions.poll());
+            }
+        }
+
+        for (Completion pending : toComplete) {
+            pending.onComplete(null);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.elastos.plugins.hive.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latencies for one plugin action.
+ */
+public class ActionMetrics {
+    final AtomicLong calls = new AtomicLong(0);
+    final AtomicLong errors = new AtomicLong(0);
+    final AtomicLong bytesSent = new AtomicLong(0);     // To the vault (uploads)
+    final AtomicLong bytesReceived = new AtomicLong(0); // From the vault (downloads)
+    // Whole call duration, from execute() to the final result sent to JS
+    final LatencyHistogram latency = new LatencyHistogram();
+    // Synchronous part of the call, spent on the Cordova bridge thread inside execute()
+    final LatencyHistogram bridgeLatency = new LatencyHistogram();
+    // Actions run on a worker thread: wait for a worker, then synchronous part on the worker. For actions run on
+    // the bridge thread, work time is the bridge time and there is no queue time.
+    final LatencyHistogram queueLatency = new LatencyHistogram();
+    final LatencyHistogram workLatency = new LatencyHistogram();
+    // Duration of the first completed call since the plugin was loaded, not cleared by reset(): it includes
+    // lazy initializations that later calls don't pay for.
+    final AtomicLong firstCallNanos = new AtomicLong(-1);
+
+    public void recordCall() {
+        calls.incrementAndGet();
+    }
+
+    public void recordBridgeTime(long nanos) {
+        bridgeLatency.recordNanos(nanos);
+    }
+
+    public void recordQueueTime(long nanos) {
+        queueLatency.recordNanos(nanos);
+    }
+
+    public void recordWorkTime(long nanos) {
+        workLatency.recordNanos(nanos);
+    }
+
+    public void recordCompletion(long nanos, boolean success) {
+        firstCallNanos.compareAndSet(-1, nanos);
+        latency.recordNanos(nanos);
+        if (!success)
+            errors.incrementAndGet();
+    }
+
+    public void recordBytesSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    public void recordBytesReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    void reset() {
+        calls.set(0);
+        errors.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        latency.reset();
+        bridgeLatency.reset();
+        queueLatency.reset();
+        workLatency.reset();
+    }
+
+    JSONObject toJson(long periodMs) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("calls", calls.get());
+        json.put("callsPerSecond", periodMs <= 0 ? 0 : calls.get() * 1000.0 / periodMs);
+        json.put("errors", errors.get());
+        json.put("bytesSent", bytesSent.get());
+        json.put("bytesReceived", bytesReceived.get());
+        json.put("latencyMs", latency.toJson());
+        json.put("bridgeLatencyMs", bridgeLatency.toJson());
+        json.put("queueLatencyMs", queueLatency.toJson());
+        json.put("workLatencyMs", workLatency.toJson());
+        if (firstCallNanos.get() >= 0)
+            json.put("firstCallLatencyMs", firstCallNanos.get() / 1000000.0);
+        return json;
+    }
+}
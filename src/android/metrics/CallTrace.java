@@ -0,0 +1,98 @@
+package org.elastos.plugins.hive.metrics;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * Timed spans of a single plugin call (argument parsing on the bridge thread, conversions, waiting for the
+ * SDK, result marshalling...). Spans can be added from any thread.
+ */
+public class CallTrace {
+    private static class Span {
+        final String name;
+        final long startNanos;
+        final long durationNanos;
+        final long threadId;
+        final String threadName;
+
+        Span(String name, long startNanos, long durationNanos, Thread thread) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+        }
+    }
+
+    private final long callId;
+    private final String action;
+    private final long startNanos;
+    private final long startEpochMicros;
+    private final ArrayList<Span> spans = new ArrayList<>();
+    private long endNanos = -1;
+    private boolean success = true;
+
+    CallTrace(long callId, String action, long startNanos) {
+        this.callId = callId;
+        this.action = action;
+        this.startNanos = startNanos;
+        // Spans are timed with nanoTime(), converted to wall clock time only for the export
+        this.startEpochMicros = System.currentTimeMillis() * 1000 - (System.nanoTime() - startNanos) / 1000;
+    }
+
+    public synchronized void addSpan(String name, long spanStartNanos, long spanEndNanos) {
+        spans.add(new Span(name, spanStartNanos, spanEndNanos - spanStartNanos, Thread.currentThread()));
+    }
+
+    synchronized void complete(long endNanos, boolean success) {
+        this.endNanos = endNanos;
+        this.success = success;
+    }
+
+    synchronized long getLastSpanEnd() {
+        long lastEnd = startNanos;
+        for (Span span : spans) {
+            lastEnd = Math.max(lastEnd, span.startNanos + span.durationNanos);
+        }
+        return lastEnd;
+    }
+
+    public long getDurationNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * Appends this call as Chrome trace events ("X" complete events, in microseconds). The whole call is one
+     * event, on its own track, and each span is a separate event on the thread it ran on.
+     */
+    synchronized void appendTraceEvents(JSONArray events) throws JSONException {
+        JSONObject args = new JSONObject();
+        args.put("callId", callId);
+        args.put("success", success);
+        events.put(traceEvent(action, "call", startNanos, endNanos - startNanos, 0, args));
+
+        for (Span span : spans) {
+            JSONObject spanArgs = new JSONObject();
+            spanArgs.put("callId", callId);
+            spanArgs.put("action", action);
+            spanArgs.put("thread", span.threadName);
+            events.put(traceEvent(span.name, action, span.startNanos, span.durationNanos, span.threadId, spanArgs));
+        }
+    }
+
+    private JSONObject traceEvent(String name, String category, long eventStartNanos, long durationNanos, long tid, JSONObject args) throws JSONException {
+        JSONObject event = new JSONObject();
+        event.put("name", name);
+        event.put("cat", category);
+        event.put("ph", "X");
+        event.put("ts", startEpochMicros + (eventStartNanos - startNanos) / 1000);
+        event.put("dur", Math.max(0, durationNanos / 1000));
+        event.put("pid", 1);
+        event.put("tid", tid);
+        event.put("args", args);
+        return event;
+    }
+}
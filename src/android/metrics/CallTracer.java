@@ -0,0 +1,225 @@
+package org.elastos.plugins.hive.metrics;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records call traces into a ring buffer of recent calls. When a call is slower than the configured threshold,
+ * the ring buffer (the slow call and the calls around it) is dumped to a file in the Chrome trace event format,
+ * that can be opened with chrome://tracing or https://ui.perfetto.dev.
+ *
+ * Disabled by default.
+ */
+public class CallTracer {
+    private static final String TAG = "HivePlugin";
+    private static final String TRACE_FILE_PREFIX = "hive-trace-";
+
+    // Conversion spans recorded on the current thread, for the call being traced on this thread, if any.
+    private static final ThreadLocal<CallTrace> currentTrace = new ThreadLocal<>();
+    // Conversion spans recorded on threads without a current call (ex: SDK callbacks), waiting to be claimed by the
+    // next result sent from the same thread.
+    private static final ThreadLocal<ArrayList<long[]>> unclaimedSpanTimes = new ThreadLocal<>();
+    private static final ThreadLocal<ArrayList<String>> unclaimedSpanNames = new ThreadLocal<>();
+    private static final int MAX_UNCLAIMED_SPANS = 32;
+
+    private static volatile boolean enabled = false;
+
+    private final AtomicLong nextCallId = new AtomicLong(1);
+    private final ArrayDeque<CallTrace> recentTraces = new ArrayDeque<>();
+    private final ExecutorService fileWriter = Executors.newSingleThreadExecutor();
+    private File traceDir = null;
+    private int bufferSize = 200;
+    private long slowCallThresholdMs = 3000;
+    private int maxFiles = 5;
+    private long minDumpIntervalMs = 10000;
+    private long lastDumpTime = 0;
+
+    /**
+     * Applies tracing options: enabled, slowCallThresholdMs, bufferSize, maxFiles, minDumpIntervalMs.
+     */
+    public synchronized void configure(JSONObject options, File traceDir) throws JSONException {
+        this.traceDir = traceDir;
+
+        if (options.has("slowCallThresholdMs"))
+            slowCallThresholdMs = options.getLong("slowCallThresholdMs");
+        if (options.has("bufferSize"))
+            bufferSize = Math.max(1, options.getInt("bufferSize"));
+        if (options.has("maxFiles"))
+            maxFiles = Math.max(1, options.getInt("maxFiles"));
+        if (options.has("minDumpIntervalMs"))
+            minDumpIntervalMs = options.getLong("minDumpIntervalMs");
+        if (options.has("enabled"))
+            enabled = options.getBoolean("enabled");
+
+        if (!enabled)
+            recentTraces.clear();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a trace for a new call, or returns null if tracing is disabled.
+     */
+    public CallTrace startTrace(String action, long startNanos) {
+        if (!enabled)
+            return null;
+        return new CallTrace(nextCallId.getAndIncrement(), action, startNanos);
+    }
+
+    public static void setCurrentTrace(CallTrace trace) {
+        if (trace == null)
+            currentTrace.remove();
+        else
+            currentTrace.set(trace);
+    }
+
+    /**
+     * Records a span that ended now, for the call running on the current thread. Used by conversion helpers,
+     * which don't know which call they are working for.
+     */
+    public static void recordSpan(String name, long startNanos) {
+        if (!enabled)
+            return;
+
+        long endNanos = System.nanoTime();
+        CallTrace trace = currentTrace.get();
+        if (trace != null) {
+            trace.addSpan(name, startNanos, endNanos);
+            return;
+        }
+
+        ArrayList<long[]> times = unclaimedSpanTimes.get();
+        ArrayList<String> names = unclaimedSpanNames.get();
+        if (times == null) {
+            times = new ArrayList<>();
+            names = new ArrayList<>();
+            unclaimedSpanTimes.set(times);
+            unclaimedSpanNames.set(names);
+        }
+        if (times.size() >= MAX_UNCLAIMED_SPANS) {
+            times.remove(0);
+            names.remove(0);
+        }
+        times.add(new long[]{startNanos, endNanos});
+        names.add(name);
+    }
+
+    /**
+     * Moves spans recorded on this thread without a current call to the given trace. Called when a result is
+     * sent, as result conversions happen on the same thread right before sending.
+     *
+     * Returns the start time of the earliest claimed span, or -1 if there was none.
+     */
+    public static long claimSpans(CallTrace trace) {
+        ArrayList<long[]> times = unclaimedSpanTimes.get();
+        if (times == null || times.isEmpty())
+            return -1;
+
+        long earliestStart = Long.MAX_VALUE;
+        ArrayList<String> names = unclaimedSpanNames.get();
+        for (int i=0; i<times.size(); i++) {
+            trace.addSpan(names.get(i), times.get(i)[0], times.get(i)[1]);
+            earliestStart = Math.min(earliestStart, times.get(i)[0]);
+        }
+        times.clear();
+        names.clear();
+        return earliestStart;
+    }
+
+    /**
+     * Adds the completed call to the ring buffer, and dumps the buffer if the call was too slow.
+     */
+    public void onCallCompleted(CallTrace trace, long endNanos, boolean success) {
+        trace.complete(endNanos, success);
+
+        JSONArray eventsToDump = null;
+        File dumpDir = null;
+        synchronized (this) {
+            if (!enabled)
+                return;
+
+            recentTraces.add(trace);
+            while (recentTraces.size() > bufferSize) {
+                recentTraces.poll();
+            }
+
+            long now = System.currentTimeMillis();
+            boolean slow = trace.getDurationNanos() / 1000000 >= slowCallThresholdMs;
+            if (slow && traceDir != null && now - lastDumpTime >= minDumpIntervalMs) {
+                lastDumpTime = now;
+                dumpDir = traceDir;
+                eventsToDump = new JSONArray();
+                try {
+                    for (CallTrace recentTrace : recentTraces) {
+                        recentTrace.appendTraceEvents(eventsToDump);
+                    }
+                }
+                catch (JSONException e) {
+                    Log.w(TAG, "Unable to export call traces", e);
+                    eventsToDump = null;
+                }
+            }
+        }
+
+        if (eventsToDump != null) {
+            final JSONArray events = eventsToDump;
+            final File dir = dumpDir;
+            fileWriter.execute(() -> writeTraceFile(dir, events));
+        }
+    }
+
+    private void writeTraceFile(File dir, JSONArray events) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Unable to create trace directory " + dir);
+            return;
+        }
+
+        File traceFile = new File(dir, TRACE_FILE_PREFIX + System.currentTimeMillis() + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(traceFile), "UTF-8")) {
+            JSONObject trace = new JSONObject();
+            trace.put("traceEvents", events);
+            trace.put("displayTimeUnit", "ms");
+            writer.write(trace.toString());
+            Log.i(TAG, "Slow call detected, call traces written to " + traceFile);
+        }
+        catch (IOException | JSONException e) {
+            Log.w(TAG, "Unable to write trace file " + traceFile, e);
+        }
+
+        rotateTraceFiles(dir);
+    }
+
+    private void rotateTraceFiles(File dir) {
+        File[] traceFiles = dir.listFiles((d, name) -> name.startsWith(TRACE_FILE_PREFIX));
+        if (traceFiles == null || traceFiles.length <= maxFiles)
+            return;
+
+        // File names contain the creation time: oldest files first
+        Arrays.sort(traceFiles, (a, b) -> a.getName().compareTo(b.getName()));
+        for (int i=0; i<traceFiles.length - maxFiles; i++) {
+            if (!traceFiles[i].delete())
+                Log.w(TAG, "Unable to delete old trace file " + traceFiles[i]);
+        }
+    }
+
+    public void shutdown() {
+        fileWriter.shutdown();
+    }
+}
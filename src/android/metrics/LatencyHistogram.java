@@ -0,0 +1,95 @@
+package org.elastos.plugins.hive.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with logarithmic buckets (4 buckets per power of 2, so percentiles are precise
+ * to about 20%). Values are recorded in microseconds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS_COUNT = SUB_BUCKETS + 62 * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_COUNT);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong totalMicros = new AtomicLong(0);
+    private final AtomicLong maxMicros = new AtomicLong(0);
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the upper bound (in ms) of the bucket containing the given percentile (0-100).
+     */
+    public double percentileMs(double percentile) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i=0; i<BUCKETS_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(bucketUpperBound(i), maxMicros.get()) / 1000.0;
+        }
+        return maxMicros.get() / 1000.0;
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        long total = count.get();
+        json.put("count", total);
+        json.put("mean", total == 0 ? 0 : (totalMicros.get() / (double) total) / 1000.0);
+        json.put("p50", percentileMs(50));
+        json.put("p95", percentileMs(95));
+        json.put("p99", percentileMs(99));
+        json.put("max", maxMicros.get() / 1000.0);
+        return json;
+    }
+
+    public void reset() {
+        for (int i=0; i<BUCKETS_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros); // >= 2
+        int subBucket = (int) (micros >> (exponent - 2)) - SUB_BUCKETS;
+        return Math.min(SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + subBucket, BUCKETS_COUNT - 1);
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index + 1;
+
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + 2;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - 2);
+    }
+}
@@ -0,0 +1,213 @@
+package org.elastos.plugins.hive.metrics;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.elastos.plugins.hive.requests.RequestTracker;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Callback context given to plugin actions instead of the original one. Forwards all results to the
+ * original context and records the call duration and outcome when the final result is sent.
+ *
+ * When tracing is enabled, also records the call spans: waiting for the SDK, result conversions, result
+ * serialization and sending.
+ *
+ * Once the call is cancelled, results sent by the action are dropped.
+ */
+public class MeteredCallbackContext extends CallbackContext {
+    public interface CompletionListener {
+        void onCompleted(long durationNanos, boolean success);
+    }
+
+    private final CallbackContext callbackContext;
+    private final ActionMetrics metrics;
+    private final long startNanos;
+    private final CallTracer tracer;
+    private final CallTrace trace;
+    private RequestTracker.Request request = null;
+    // Set from the worker thread for offloaded actions
+    private volatile CompletionListener completionListener = null;
+    private boolean completed = false;
+    private boolean cancelled = false;
+    private long bridgeEndNanos = -1;
+    // Final result sent before the bridge call returned: the trace is completed when it returns.
+    private long pendingTraceEndNanos = -1;
+    private boolean pendingTraceSuccess = false;
+
+    public MeteredCallbackContext(CallbackContext callbackContext, ActionMetrics metrics, long startNanos) {
+        this(callbackContext, metrics, startNanos, null, null);
+    }
+
+    public MeteredCallbackContext(CallbackContext callbackContext, ActionMetrics metrics, long startNanos, CallTracer tracer, CallTrace trace) {
+        super(callbackContext.getCallbackId(), null);
+        this.callbackContext = callbackContext;
+        this.metrics = metrics;
+        this.startNanos = startNanos;
+        this.tracer = tracer;
+        this.trace = trace;
+    }
+
+    public ActionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public CallTrace getTrace() {
+        return trace;
+    }
+
+    public void setRequest(RequestTracker.Request request) {
+        this.request = request;
+    }
+
+    /**
+     * Sets a listener called once, with the call duration and outcome, when the final result is sent.
+     */
+    public void setCompletionListener(CompletionListener completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /**
+     * Tracked request of this call, or null if the caller didn't provide a request id.
+     */
+    public RequestTracker.Request getRequest() {
+        return request;
+    }
+
+    /**
+     * Sends the given result as final result of the call, and drops all results sent later by the action.
+     * Returns false if the call had already completed.
+     */
+    public boolean cancel(PluginResult cancellationResult) {
+        return deliver(cancellationResult, true);
+    }
+
+    /**
+     * Called when execute() returns to the bridge, after the action has parsed its arguments and started
+     * its work.
+     */
+    public void onBridgeReturned(long endNanos) {
+        if (trace == null)
+            return;
+
+        trace.addSpan("execute", startNanos, endNanos);
+
+        long traceEndNanos;
+        boolean traceSuccess;
+        synchronized (this) {
+            bridgeEndNanos = endNanos;
+            traceEndNanos = pendingTraceEndNanos;
+            traceSuccess = pendingTraceSuccess;
+        }
+
+        if (traceEndNanos != -1)
+            tracer.onCallCompleted(trace, Math.max(traceEndNanos, endNanos), traceSuccess);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return callbackContext.isFinished();
+    }
+
+    @Override
+    public void success(JSONObject message) {
+        if (trace == null) {
+            super.success(message);
+            return;
+        }
+
+        long start = System.nanoTime();
+        PluginResult result = new PluginResult(PluginResult.Status.OK, message);
+        trace.addSpan("serialize", start, System.nanoTime());
+        sendPluginResult(result);
+    }
+
+    @Override
+    public void success(JSONArray message) {
+        if (trace == null) {
+            super.success(message);
+            return;
+        }
+
+        long start = System.nanoTime();
+        PluginResult result = new PluginResult(PluginResult.Status.OK, message);
+        trace.addSpan("serialize", start, System.nanoTime());
+        sendPluginResult(result);
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        deliver(pluginResult, false);
+    }
+
+    private boolean deliver(PluginResult pluginResult, boolean cancellation) {
+        boolean finalResult = cancellation || !pluginResult.getKeepCallback();
+        boolean recordCompletion = false;
+        long bridgeEnd;
+
+        synchronized (this) {
+            if (cancelled || (cancellation && completed))
+                return false;
+
+            if (cancellation)
+                cancelled = true;
+
+            if (finalResult && !completed) {
+                completed = true;
+                recordCompletion = true;
+            }
+            bridgeEnd = bridgeEndNanos;
+        }
+
+        boolean success = pluginResult.getStatus() == PluginResult.Status.OK.ordinal();
+        if (recordCompletion) {
+            long durationNanos = System.nanoTime() - startNanos;
+            metrics.recordCompletion(durationNanos, success);
+            if (completionListener != null)
+                completionListener.onCompleted(durationNanos, success);
+            if (request != null)
+                request.finish();
+        }
+
+        if (trace == null)
+            callbackContext.sendPluginResult(pluginResult);
+        else
+            traceResult(pluginResult, bridgeEnd, recordCompletion, success);
+
+        return true;
+    }
+
+    private void traceResult(PluginResult pluginResult, long bridgeEnd, boolean finalResult, boolean success) {
+        // Time between the end of the previous step and the first conversion of this result is spent waiting
+        // for the SDK. Not applicable to results sent from execute() itself.
+        long previousEnd = trace.getLastSpanEnd();
+        long firstConversionStart = CallTracer.claimSpans(trace);
+        if (bridgeEnd != -1) {
+            long waitEnd = firstConversionStart != -1 ? firstConversionStart : System.nanoTime();
+            if (waitEnd > previousEnd)
+                trace.addSpan("sdk", Math.max(previousEnd, bridgeEnd), waitEnd);
+        }
+
+        long sendStart = System.nanoTime();
+        callbackContext.sendPluginResult(pluginResult);
+        long sendEnd = System.nanoTime();
+        trace.addSpan("send", sendStart, sendEnd);
+
+        if (!finalResult)
+            return;
+
+        if (bridgeEnd != -1) {
+            tracer.onCallCompleted(trace, sendEnd, success);
+        }
+        else {
+            synchronized (this) {
+                if (bridgeEndNanos == -1) {
+                    pendingTraceEndNanos = sendEnd;
+                    pendingTraceSuccess = success;
+                    return;
+                }
+            }
+            tracer.onCallCompleted(trace, sendEnd, success);
+        }
+    }
+}
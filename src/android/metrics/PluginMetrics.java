@@ -0,0 +1,67 @@
+package org.elastos.plugins.hive.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per action usage metrics of the plugin. Designed to be cheap enough to stay always enabled: recording
+ * only uses atomic counters, snapshots are only computed when requested.
+ */
+public class PluginMetrics {
+    private final ConcurrentHashMap<String, ActionMetrics> actions = new ConcurrentHashMap<>();
+    private final long startTime = System.currentTimeMillis();
+    // Start of the current measurement period, moved by reset()
+    private volatile long periodStartTime = startTime;
+
+    public ActionMetrics forAction(String action) {
+        ActionMetrics metrics = actions.get(action);
+        if (metrics == null) {
+            metrics = new ActionMetrics();
+            ActionMetrics existing = actions.putIfAbsent(action, metrics);
+            if (existing != null)
+                metrics = existing;
+        }
+        return metrics;
+    }
+
+    /**
+     * Clears all counters and latencies and starts a new measurement period, for instance before running a
+     * benchmark. Calls in progress are recorded in the new period when they complete.
+     */
+    public void reset() {
+        for (ActionMetrics metrics : actions.values()) {
+            metrics.reset();
+        }
+        periodStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns all metrics as JSON, with the given number of live handles for each type of object.
+     */
+    public JSONObject snapshot(Map<String, Integer> liveHandles) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("startTime", startTime);
+        long now = System.currentTimeMillis();
+        long periodStart = periodStartTime;
+        json.put("uptimeMs", now - startTime);
+        json.put("periodStartTime", periodStart);
+        json.put("periodMs", now - periodStart);
+
+        JSONObject actionsJson = new JSONObject();
+        for (Map.Entry<String, ActionMetrics> entry : actions.entrySet()) {
+            actionsJson.put(entry.getKey(), entry.getValue().toJson(now - periodStart));
+        }
+        json.put("actions", actionsJson);
+
+        JSONObject handlesJson = new JSONObject();
+        for (Map.Entry<String, Integer> entry : liveHandles.entrySet()) {
+            handlesJson.put(entry.getKey(), entry.getValue());
+        }
+        json.put("handles", handlesJson);
+
+        return json;
+    }
+}
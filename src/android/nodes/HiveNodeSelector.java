@@ -0,0 +1,220 @@
+package org.elastos.plugins.hive.nodes;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the latency and health of a list of nodes, by probing them periodically, and selects the fastest
+ * healthy one.
+ *
+ * - Latency is an exponentially weighted moving average of the probe round trip times, so that a single slow
+ * probe doesn't make a good node look bad.
+ * - A node is unhealthy after MAX_CONSECUTIVE_FAILURES failed probes in a row, until a probe succeeds again.
+ */
+public class HiveNodeSelector {
+    private static final String TAG = "HivePlugin";
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    public static final long DEFAULT_PROBE_INTERVAL_MS = 60 * 1000;
+    public static final int DEFAULT_PROBE_TIMEOUT_MS = 5000;
+
+    public enum Routing {
+        /** Use the fastest node only for vault owners that don't publish their own provider */
+        FALLBACK("fallback"),
+        /** Use the fastest node for all vault lookups without an explicit provider (mirrored nodes) */
+        ALWAYS("always");
+
+        private String mName;
+
+        Routing(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public static Routing fromName(String name) {
+            for(Routing r : values()) {
+                if (r.mName.equalsIgnoreCase(name)) {
+                    return r;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class NodeState {
+        final String url;
+        double rttEwmaMs = -1;
+        double lastRttMs = -1;
+        int consecutiveFailures = 0;
+        long probes = 0;
+        long failures = 0;
+        long lastProbeTime = 0;
+        String lastError = null;
+
+        NodeState(String url) {
+            this.url = url;
+        }
+
+        boolean isHealthy() {
+            return rttEwmaMs >= 0 && consecutiveFailures < MAX_CONSECUTIVE_FAILURES;
+        }
+    }
+
+    private final ArrayList<NodeState> nodes = new ArrayList<>();
+    private final NodeProber prober;
+    private final Routing routing;
+    private final long probeIntervalMs;
+    private final int probeTimeoutMs;
+    private final LongSupplier nanoClock;
+    private ScheduledFuture<?> probeTask = null;
+
+    public HiveNodeSelector(List<String> nodeAddresses, NodeProber prober, Routing routing, long probeIntervalMs, int probeTimeoutMs) {
+        this(nodeAddresses, prober, routing, probeIntervalMs, probeTimeoutMs, System::nanoTime);
+    }
+
+    /**
+     * Round trip times are measured with the given clock, in nanoseconds.
+     */
+    HiveNodeSelector(List<String> nodeAddresses, NodeProber prober, Routing routing, long probeIntervalMs, int probeTimeoutMs, LongSupplier nanoClock) {
+        for (String address : nodeAddresses) {
+            nodes.add(new NodeState(toNodeUrl(address)));
+        }
+        this.prober = prober;
+        this.routing = routing;
+        this.probeIntervalMs = probeIntervalMs;
+        this.probeTimeoutMs = probeTimeoutMs;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Reads node addresses from a node list file content ({"ipfsnodes": [{"addr": "host:port"}, ...]}).
+     */
+    public static List<String> parseNodeList(String nodeListJson) throws JSONException {
+        ArrayList<String> addresses = new ArrayList<>();
+        JSONArray nodesJson = new JSONObject(nodeListJson).getJSONArray("ipfsnodes");
+        for (int i=0; i<nodesJson.length(); i++) {
+            addresses.add(nodesJson.getJSONObject(i).getString("addr"));
+        }
+        return addresses;
+    }
+
+    /**
+     * Node lists contain bare "host:port" addresses, the SDK and probes need urls.
+     */
+    private static String toNodeUrl(String address) {
+        String url = address.contains("://") ? address : "http://" + address;
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    /**
+     * Probes all nodes now, then every probe interval. Probes are blocking and run on the given executor,
+     * the scheduler only triggers them.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler, Executor probeExecutor) {
+        if (probeTask != null)
+            return;
+
+        probeTask = scheduler.scheduleWithFixedDelay(() -> probeAll(probeExecutor), 0, probeIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops probing. Latencies and health are kept, and start() probes all nodes again right away.
+     */
+    public synchronized void stop() {
+        if (probeTask != null) {
+            probeTask.cancel(false);
+            probeTask = null;
+        }
+    }
+
+    void probeAll(Executor probeExecutor) {
+        for (NodeState node : nodes) {
+            probeExecutor.execute(() -> probe(node));
+        }
+    }
+
+    private void probe(NodeState node) {
+        long start = nanoClock.getAsLong();
+        Exception error = null;
+        try {
+            prober.probe(node.url, probeTimeoutMs);
+        }
+        catch (Exception e) {
+            error = e;
+        }
+        double rttMs = (nanoClock.getAsLong() - start) / 1000000.0;
+
+        synchronized (this) {
+            node.probes++;
+            node.lastProbeTime = System.currentTimeMillis();
+            if (error == null) {
+                node.lastRttMs = rttMs;
+                node.rttEwmaMs = node.rttEwmaMs < 0 ? rttMs : EWMA_WEIGHT * rttMs + (1 - EWMA_WEIGHT) * node.rttEwmaMs;
+                node.consecutiveFailures = 0;
+                node.lastError = null;
+            }
+            else {
+                node.failures++;
+                node.consecutiveFailures++;
+                node.lastError = error.getMessage();
+            }
+        }
+
+        if (error != null)
+            Log.d(TAG, "Node probe failed for " + node.url + ": " + error.getMessage());
+    }
+
+    /**
+     * Returns the url of the healthy node with the lowest average latency, or null if no node is known to be healthy.
+     */
+    public synchronized String selectFastest() {
+        NodeState fastest = null;
+        for (NodeState node : nodes) {
+            if (node.isHealthy() && (fastest == null || node.rttEwmaMs < fastest.rttEwmaMs))
+                fastest = node;
+        }
+        return fastest != null ? fastest.url : null;
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("routing", routing.getName());
+        json.put("selected", selectFastest() != null ? selectFastest() : JSONObject.NULL);
+
+        JSONArray nodesJson = new JSONArray();
+        for (NodeState node : nodes) {
+            JSONObject nodeJson = new JSONObject();
+            nodeJson.put("url", node.url);
+            nodeJson.put("healthy", node.isHealthy());
+            nodeJson.put("rttEwmaMs", node.rttEwmaMs);
+            nodeJson.put("lastRttMs", node.lastRttMs);
+            nodeJson.put("probes", node.probes);
+            nodeJson.put("failures", node.failures);
+            nodeJson.put("lastProbeTime", node.lastProbeTime);
+            if (node.lastError != null)
+                nodeJson.put("lastError", node.lastError);
+            nodesJson.put(nodeJson);
+        }
+        json.put("nodes", nodesJson);
+        return json;
+    }
+}
@@ -0,0 +1,46 @@
+package org.elastos.plugins.hive.nodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Probes a node with a plain HTTP request on a lightweight endpoint (the version endpoint by default). Any HTTP
+ * answer below 500 means the node is up, even if the endpoint is not allowed for GET requests: only the round trip
+ * matters here.
+ */
+public class HttpNodeProber implements NodeProber {
+    public static final String DEFAULT_PROBE_PATH = "/api/v0/version";
+
+    private final String probePath;
+
+    public HttpNodeProber(String probePath) {
+        this.probePath = probePath;
+    }
+
+    @Override
+    public void probe(String nodeUrl, int timeoutMs) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(nodeUrl + probePath).openConnection();
+        try {
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setUseCaches(false);
+
+            int status = connection.getResponseCode();
+            if (status >= 500)
+                throw new IOException("Node answered with HTTP status " + status);
+
+            // Drain the (small) answer so that the connection can be reused by the next probe
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                byte[] buffer = new byte[1024];
+                while (body.read(buffer) != -1) {}
+                body.close();
+            }
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.elastos.plugins.hive.nodes;
+
+/**
+ * Checks that a node is reachable. Implementations block until the node answers, and throw if it can't be reached
+ * or is not healthy. The round trip time is measured by the caller.
+ */
+public interface NodeProber {
+    void probe(String nodeUrl, int timeoutMs) throws Exception;
+}
@@ -0,0 +1,214 @@
+package org.elastos.plugins.hive.replica;
+
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.elastos.hive.database.Database;
+import org.elastos.hive.database.FindOptions;
+import org.elastos.hive.database.Index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Local copy of a vault collection, kept current by incremental pulls.
+ *
+ * Each sync pulls the documents whose watermark field (_id by default, or an update timestamp maintained by the
+ * app) is greater or equal to the highest value already pulled, in pages sorted by this field. Inserted documents
+ * are pulled with an increasing _id, updated documents only with an update timestamp. Deleted documents are only
+ * removed by a full sync.
+ *
+ * Queries are evaluated locally by QueryMatcher, using the local indexes for equality on indexed fields.
+ */
+public class CollectionReplica {
+    private static final String TAG = "HivePlugin";
+    public static final int SYNC_PAGE_SIZE = 200;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ReplicaStore store;
+    private final String replicaKey;
+    private final String collectionName;
+    private final String watermarkField;
+    private final List<String> indexedFields;
+    private final Executor executor;
+
+    private volatile String watermark = null;
+    private volatile long syncedAt = 0;
+    private CompletableFuture<Integer> currentSync = null;
+
+    /**
+     * @param executor Executor for local storage work, which must not run on the caller's thread.
+     */
+    public CollectionReplica(ReplicaStore store, String replicaKey, String collectionName, String watermarkField, List<String> indexedFields, Executor executor) {
+        this.store = store;
+        this.replicaKey = replicaKey;
+        this.collectionName = collectionName;
+        this.watermarkField = watermarkField;
+        this.indexedFields = indexedFields;
+        this.executor = executor;
+    }
+
+    /**
+     * Loads the sync state of the replica, kept from previous runs of the app.
+     */
+    public CompletableFuture<Void> open() {
+        return CompletableFuture.runAsync(() -> {
+            ReplicaStore.SyncState state = store.open(replicaKey, watermarkField);
+            watermark = state.watermark;
+            syncedAt = state.syncedAt;
+        }, executor);
+    }
+
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+    /**
+     * Time of the last successful sync, or 0 if the replica was never synced.
+     */
+    public long getSyncedAt() {
+        return syncedAt;
+    }
+
+    /**
+     * Pulls new and updated documents from the vault. A full sync first deletes all local documents. If a sync is
+     * already in progress, returns it instead of starting another one.
+     *
+     * Completes with the number of pulled documents.
+     */
+    public synchronized CompletableFuture<Integer> sync(Database database, boolean full) {
+        if (currentSync != null && !currentSync.isDone())
+            return currentSync;
+
+        CompletableFuture<Void> start = full ? CompletableFuture.runAsync(() -> {
+            store.clear(replicaKey);
+            watermark = null;
+        }, executor) : CompletableFuture.completedFuture(null);
+
+        currentSync = start.thenCompose(v -> pullPage(database, 0));
+        return currentSync;
+    }
+
+    private static class PageResult {
+        final int pulled;
+        final boolean morePages;
+
+        PageResult(int pulled, boolean morePages) {
+            this.pulled = pulled;
+            this.morePages = morePages;
+        }
+    }
+
+    private CompletableFuture<Integer> pullPage(Database database, int pulledSoFar) {
+        String previousWatermark = watermark;
+
+        ObjectNode query = objectMapper.createObjectNode();
+        if (previousWatermark != null) {
+            try {
+                // Greater or equal: documents sharing the last watermark value may not all have been pulled yet.
+                query.putObject(watermarkField).set("$gte", objectMapper.readTree(previousWatermark));
+            }
+            catch (IOException e) {
+                CompletableFuture<Integer> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+
+        FindOptions options = new FindOptions();
+        options.sort(new Index[]{new Index(watermarkField, Index.Order.ASCENDING)});
+        options.limit(SYNC_PAGE_SIZE);
+
+        return database.findMany(collectionName, query, options).thenApplyAsync(documents -> {
+            List<JsonNode> page = documents != null ? documents : Collections.emptyList();
+
+            String newWatermark = previousWatermark;
+            if (!page.isEmpty()) {
+                JsonNode lastValue = QueryMatcher.valueAt(page.get(page.size() - 1), watermarkField);
+                if (!lastValue.isMissingNode())
+                    newWatermark = lastValue.toString();
+            }
+
+            long now = System.currentTimeMillis();
+            store.applyBatch(replicaKey, page, indexedFields, newWatermark, now);
+            watermark = newWatermark;
+            syncedAt = now;
+
+            // A full page may be followed by more documents, unless the watermark didn't move (more than a page
+            // of documents with the same value can't be paged with this field).
+            boolean morePages = page.size() >= SYNC_PAGE_SIZE;
+            if (morePages && newWatermark != null && newWatermark.equals(previousWatermark)) {
+                Log.w(TAG, "Replica of " + collectionName + ": too many documents with " + watermarkField + " = " + newWatermark + ", use a more selective watermark field");
+                morePages = false;
+            }
+            return new PageResult(pulledSoFar + page.size(), morePages);
+        }, executor).thenCompose(result -> {
+            if (result.morePages)
+                return pullPage(database, result.pulled);
+            return CompletableFuture.completedFuture(result.pulled);
+        });
+    }
+
+    /**
+     * Finds local documents matching the query, sorted, then skipped and limited like on the vault. A limit of
+     * 0 or less means no limit.
+     */
+    public CompletableFuture<List<JsonNode>> find(JsonNode query, JsonNode sort, long skip, long limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<JsonNode> matching = loadMatching(query);
+
+            Comparator<JsonNode> comparator = QueryMatcher.sortComparator(sort);
+            if (comparator != null)
+                Collections.sort(matching, comparator);
+
+            int from = (int) Math.min(Math.max(0, skip), matching.size());
+            int to = limit > 0 ? (int) Math.min(matching.size(), from + limit) : matching.size();
+            return new ArrayList<>(matching.subList(from, to));
+        }, executor);
+    }
+
+    public CompletableFuture<Long> count(JsonNode query) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (query == null || query.size() == 0)
+                return store.countDocuments(replicaKey);
+            return (long) loadMatching(query).size();
+        }, executor);
+    }
+
+    private List<JsonNode> loadMatching(JsonNode query) {
+        String indexField = QueryMatcher.indexedEqualityField(query, indexedFields);
+        String indexValue = indexField != null ? QueryMatcher.indexKey(query.get(indexField)) : null;
+
+        ArrayList<JsonNode> matching = new ArrayList<>();
+        for (String json : store.loadDocuments(replicaKey, indexField, indexValue)) {
+            JsonNode document;
+            try {
+                document = objectMapper.readTree(json);
+            }
+            catch (IOException e) {
+                Log.w(TAG, "Invalid document in replica of " + collectionName, e);
+                continue;
+            }
+
+            if (QueryMatcher.matches(document, query))
+                matching.add(document);
+        }
+        return matching;
+    }
+
+    /**
+     * Deletes the local copy.
+     */
+    public CompletableFuture<Void> drop() {
+        return CompletableFuture.runAsync(() -> store.drop(replicaKey), executor);
+    }
+}
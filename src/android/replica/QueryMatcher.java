@@ -0,0 +1,387 @@
+package org.elastos.plugins.hive.replica;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates database queries on local replica documents.
+ *
+ * Supports the commonly used subset of the MongoDB query language: equality on (dotted) fields, with array
+ * fields matching if one element matches, $eq, $ne, $gt, $gte, $lt, $lte, $in, $nin, $exists, $and, $or and
+ * $nor. Other operators throw an UnsupportedQueryException, so that callers can fall back to a vault query
+ * instead of silently returning wrong results.
+ *
+ * Dotted paths going through arrays of objects ("items.name") match if the field of one element matches. On such
+ * paths, only conditions on non-null single values are supported, and sorting is not supported.
+ */
+public class QueryMatcher {
+    public static class UnsupportedQueryException extends RuntimeException {
+        public UnsupportedQueryException(String message) {
+            super(message);
+        }
+    }
+
+    public static boolean matches(JsonNode document, JsonNode query) {
+        if (query == null || query.isNull())
+            return true;
+
+        Iterator<Map.Entry<String, JsonNode>> it = query.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            String key = entry.getKey();
+            JsonNode condition = entry.getValue();
+
+            boolean matched;
+            switch (key) {
+                case "$and":
+                    matched = matchesAll(document, condition);
+                    break;
+                case "$or":
+                    matched = matchesAny(document, condition);
+                    break;
+                case "$nor":
+                    matched = !matchesAny(document, condition);
+                    break;
+                default:
+                    if (key.startsWith("$"))
+                        throw new UnsupportedQueryException("Query operator " + key + " is not supported by local replicas");
+                    boolean[] crossesArray = new boolean[1];
+                    JsonNode value = collectValues(document, key.split("\\."), 0, crossesArray);
+                    if (crossesArray[0])
+                        checkArrayPathCondition(key, condition);
+                    matched = fieldMatches(value, condition);
+            }
+
+            if (!matched)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesAll(JsonNode document, JsonNode queries) {
+        for (JsonNode query : queries) {
+            if (!matches(document, query))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesAny(JsonNode document, JsonNode queries) {
+        for (JsonNode query : queries) {
+            if (matches(document, query))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean fieldMatches(JsonNode value, JsonNode condition) {
+        if (!isOperatorObject(condition))
+            return equalsOrContains(value, condition);
+
+        Iterator<Map.Entry<String, JsonNode>> it = condition.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            JsonNode operand = entry.getValue();
+
+            boolean matched;
+            switch (entry.getKey()) {
+                case "$eq":
+                    matched = equalsOrContains(value, operand);
+                    break;
+                case "$ne":
+                    matched = !equalsOrContains(value, operand);
+                    break;
+                case "$gt":
+                    matched = anyCompares(value, operand, c -> c > 0);
+                    break;
+                case "$gte":
+                    matched = anyCompares(value, operand, c -> c >= 0);
+                    break;
+                case "$lt":
+                    matched = anyCompares(value, operand, c -> c < 0);
+                    break;
+                case "$lte":
+                    matched = anyCompares(value, operand, c -> c <= 0);
+                    break;
+                case "$in":
+                    matched = inList(value, operand);
+                    break;
+                case "$nin":
+                    matched = !inList(value, operand);
+                    break;
+                case "$exists":
+                    matched = operand.asBoolean() != value.isMissingNode();
+                    break;
+                default:
+                    throw new UnsupportedQueryException("Query operator " + entry.getKey() + " is not supported by local replicas");
+            }
+
+            if (!matched)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The values of a path going through an array are merged, so conditions that depend on a whole value (null,
+     * missing field, array equality) can't be evaluated correctly on them.
+     */
+    private static void checkArrayPathCondition(String path, JsonNode condition) {
+        if (!isOperatorObject(condition)) {
+            checkArrayPathOperand(path, condition);
+            return;
+        }
+
+        Iterator<Map.Entry<String, JsonNode>> it = condition.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            if (entry.getKey().equals("$exists"))
+                throw new UnsupportedQueryException("$exists on " + path + ", which goes through an array, is not supported by local replicas");
+
+            if (entry.getKey().equals("$in") || entry.getKey().equals("$nin")) {
+                for (JsonNode candidate : entry.getValue()) {
+                    checkArrayPathOperand(path, candidate);
+                }
+            }
+            else {
+                checkArrayPathOperand(path, entry.getValue());
+            }
+        }
+    }
+
+    private static void checkArrayPathOperand(String path, JsonNode operand) {
+        if (operand.isNull() || operand.isArray())
+            throw new UnsupportedQueryException("Comparing " + path + ", which goes through an array, with null or an array is not supported by local replicas");
+    }
+
+    /**
+     * Tells if a query condition is made of operators ({"$gt": 3}), rather than a value to compare with.
+     */
+    static boolean isOperatorObject(JsonNode condition) {
+        if (!condition.isObject() || condition.size() == 0)
+            return false;
+        return condition.fieldNames().next().startsWith("$") && !isExtendedJsonValue(condition);
+    }
+
+    // Extended JSON values such as {"$oid": "..."} or {"$date": ...} are values, not operators.
+    private static boolean isExtendedJsonValue(JsonNode node) {
+        if (node.size() != 1)
+            return false;
+        String name = node.fieldNames().next();
+        return name.equals("$oid") || name.equals("$date") || name.equals("$numberLong") || name.equals("$numberDecimal");
+    }
+
+    private interface ComparisonTest {
+        boolean test(int comparison);
+    }
+
+    private static boolean anyCompares(JsonNode value, JsonNode operand, ComparisonTest test) {
+        if (value.isMissingNode())
+            return false;
+
+        if (value.isArray()) {
+            for (JsonNode element : value) {
+                if (sameTypeClass(element, operand) && test.test(compare(element, operand)))
+                    return true;
+            }
+            return false;
+        }
+        return sameTypeClass(value, operand) && test.test(compare(value, operand));
+    }
+
+    private static boolean inList(JsonNode value, JsonNode list) {
+        for (JsonNode candidate : list) {
+            if (equalsOrContains(value, candidate))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean equalsOrContains(JsonNode value, JsonNode expected) {
+        if (valueEquals(value, expected))
+            return true;
+
+        if (value.isArray() && !expected.isArray()) {
+            for (JsonNode element : value) {
+                if (valueEquals(element, expected))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean valueEquals(JsonNode a, JsonNode b) {
+        // Null matches missing fields, like on the vault
+        if (b.isNull())
+            return a.isNull() || a.isMissingNode();
+        if (a.isNumber() && b.isNumber())
+            return a.decimalValue().compareTo(b.decimalValue()) == 0;
+        return a.equals(b);
+    }
+
+    private static boolean sameTypeClass(JsonNode a, JsonNode b) {
+        return typeRank(a) == typeRank(b);
+    }
+
+    /**
+     * Returns the value of a field in a document, following dotted paths ("author.name"). Returns a MissingNode
+     * if there is no such field.
+     *
+     * A path going through an array of objects ("items.name") returns an array with the field values of all
+     * elements, array values being merged into it.
+     */
+    public static JsonNode valueAt(JsonNode document, String path) {
+        return collectValues(document, path.split("\\."), 0, new boolean[1]);
+    }
+
+    /**
+     * valueAt() from parts[start]. crossesArray[0] is set if an array had to be traversed, other than with an
+     * element index ("items.0.name").
+     */
+    private static JsonNode collectValues(JsonNode current, String[] parts, int start, boolean[] crossesArray) {
+        for (int i=start; i<parts.length; i++) {
+            if (current == null || current.isMissingNode())
+                return MissingNode.getInstance();
+
+            if (current.isArray()) {
+                if (isArrayIndex(parts[i])) {
+                    current = current.path(Integer.parseInt(parts[i]));
+                    continue;
+                }
+
+                crossesArray[0] = true;
+                ArrayNode values = JsonNodeFactory.instance.arrayNode();
+                for (JsonNode element : current) {
+                    if (!element.isObject())
+                        continue;
+
+                    JsonNode value = collectValues(element, parts, i, crossesArray);
+                    if (value.isArray())
+                        values.addAll((ArrayNode) value);
+                    else if (!value.isMissingNode())
+                        values.add(value);
+                }
+                return values.size() > 0 ? values : MissingNode.getInstance();
+            }
+            current = current.path(parts[i]);
+        }
+        return current;
+    }
+
+    private static boolean isArrayIndex(String part) {
+        if (part.isEmpty() || part.length() > 9)
+            return false;
+        for (int i=0; i<part.length(); i++) {
+            if (!Character.isDigit(part.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Orders values of different types like MongoDB does (null, numbers, strings, objects, arrays, booleans),
+     * and values of the same type naturally.
+     */
+    public static int compare(JsonNode a, JsonNode b) {
+        int rankA = typeRank(a);
+        int rankB = typeRank(b);
+        if (rankA != rankB)
+            return Integer.compare(rankA, rankB);
+
+        if (a.isNumber())
+            return a.decimalValue().compareTo(b.decimalValue());
+        if (a.isTextual())
+            return a.asText().compareTo(b.asText());
+        if (a.isBoolean())
+            return Boolean.compare(a.asBoolean(), b.asBoolean());
+        if (a.isObject() && isExtendedJsonValue(a) && isExtendedJsonValue(b))
+            return compare(a.elements().next(), b.elements().next());
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static int typeRank(JsonNode node) {
+        if (node.isMissingNode() || node.isNull())
+            return 0;
+        if (node.isNumber())
+            return 1;
+        if (node.isTextual())
+            return 2;
+        if (node.isObject())
+            return 3;
+        if (node.isArray())
+            return 4;
+        if (node.isBoolean())
+            return 5;
+        return 6;
+    }
+
+    /**
+     * Returns a comparator for a FindOptions sort specification ({"field": 1, "other": -1}), or null if there
+     * is nothing to sort on.
+     */
+    public static Comparator<JsonNode> sortComparator(JsonNode sort) {
+        if (sort == null || !sort.isObject() || sort.size() == 0)
+            return null;
+
+        List<String> fields = new ArrayList<>();
+        List<Integer> orders = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> it = sort.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            fields.add(entry.getKey());
+            orders.add(entry.getValue().asInt(1) < 0 ? -1 : 1);
+        }
+
+        return (a, b) -> {
+            for (int i=0; i<fields.size(); i++) {
+                int comparison = compare(sortValueAt(a, fields.get(i)), sortValueAt(b, fields.get(i)));
+                if (comparison != 0)
+                    return comparison * orders.get(i);
+            }
+            return 0;
+        };
+    }
+
+    // The vault sorts on the smallest or largest element of the values found through arrays, which is not
+    // implemented locally.
+    private static JsonNode sortValueAt(JsonNode document, String path) {
+        boolean[] crossesArray = new boolean[1];
+        JsonNode value = collectValues(document, path.split("\\."), 0, crossesArray);
+        if (crossesArray[0])
+            throw new UnsupportedQueryException("Sorting on " + path + ", which goes through an array, is not supported by local replicas");
+        return value;
+    }
+
+    /**
+     * Key of a value in local indexes. Numbers are normalized so that 1 and 1.0 have the same key.
+     */
+    public static String indexKey(JsonNode value) {
+        if (value.isNumber())
+            return value.decimalValue().stripTrailingZeros().toPlainString();
+        return value.toString();
+    }
+
+    /**
+     * Returns a top level field of the query tested for equality with a plain value, among the given indexed
+     * fields, or null if the query can't use these indexes.
+     */
+    public static String indexedEqualityField(JsonNode query, List<String> indexedFields) {
+        if (query == null || !query.isObject())
+            return null;
+
+        for (String field : indexedFields) {
+            JsonNode condition = query.get(field);
+            if (condition != null && !condition.isNull() && !condition.isArray() && !isOperatorObject(condition))
+                return field;
+        }
+        return null;
+    }
+}
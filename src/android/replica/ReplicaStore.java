@@ -0,0 +1,193 @@
+package org.elastos.plugins.hive.replica;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-device SQLite storage of replicated collections.
+ *
+ * - replicas: one row per replicated collection, with its sync watermark and last sync time.
+ * - documents: replicated documents as JSON, by replica and document _id.
+ * - document_index: values of the indexed fields of each document, to find documents by field equality
+ * without parsing all documents of the collection.
+ */
+public class ReplicaStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "hive_replicas.db";
+    private static final int DATABASE_VERSION = 1;
+
+    /**
+     * Persisted sync state of a replica.
+     */
+    public static class SyncState {
+        public final String watermark; // JSON value of the watermark field of the last pulled document, or null
+        public final long syncedAt;
+
+        SyncState(String watermark, long syncedAt) {
+            this.watermark = watermark;
+            this.syncedAt = syncedAt;
+        }
+    }
+
+    public ReplicaStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE replicas (replica_key TEXT PRIMARY KEY, watermark_field TEXT NOT NULL, watermark TEXT, synced_at INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE documents (replica_key TEXT NOT NULL, doc_id TEXT NOT NULL, json TEXT NOT NULL, PRIMARY KEY (replica_key, doc_id))");
+        db.execSQL("CREATE TABLE document_index (replica_key TEXT NOT NULL, field TEXT NOT NULL, value TEXT NOT NULL, doc_id TEXT NOT NULL)");
+        db.execSQL("CREATE INDEX document_index_lookup ON document_index (replica_key, field, value)");
+        db.execSQL("CREATE INDEX document_index_doc ON document_index (replica_key, doc_id)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Replicas can always be pulled again from the vault
+        db.execSQL("DROP TABLE IF EXISTS replicas");
+        db.execSQL("DROP TABLE IF EXISTS documents");
+        db.execSQL("DROP TABLE IF EXISTS document_index");
+        onCreate(db);
+    }
+
+    /**
+     * Returns the sync state of a replica. If the replica doesn't exist yet or used another watermark field,
+     * it is (re)created empty.
+     */
+    public SyncState open(String replicaKey, String watermarkField) {
+        SQLiteDatabase db = getWritableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT watermark_field, watermark, synced_at FROM replicas WHERE replica_key = ?", new String[]{replicaKey})) {
+            if (cursor.moveToFirst() && watermarkField.equals(cursor.getString(0)))
+                return new SyncState(cursor.isNull(1) ? null : cursor.getString(1), cursor.getLong(2));
+        }
+
+        clear(replicaKey);
+        ContentValues values = new ContentValues();
+        values.put("replica_key", replicaKey);
+        values.put("watermark_field", watermarkField);
+        values.put("synced_at", 0L);
+        db.insertWithOnConflict("replicas", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        return new SyncState(null, 0);
+    }
+
+    /**
+     * Stores a batch of pulled documents and the new watermark, atomically.
+     */
+    public void applyBatch(String replicaKey, List<JsonNode> documents, List<String> indexedFields, String watermark, long syncedAt) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (JsonNode document : documents) {
+                String docId = QueryMatcher.indexKey(document.path("_id"));
+
+                ContentValues values = new ContentValues();
+                values.put("replica_key", replicaKey);
+                values.put("doc_id", docId);
+                values.put("json", document.toString());
+                db.insertWithOnConflict("documents", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+                db.delete("document_index", "replica_key = ? AND doc_id = ?", new String[]{replicaKey, docId});
+                for (String field : indexedFields) {
+                    JsonNode value = QueryMatcher.valueAt(document, field);
+                    if (value.isArray()) {
+                        // Equality on an array field matches any of its elements
+                        for (JsonNode element : value) {
+                            insertIndexValue(db, replicaKey, field, element, docId);
+                        }
+                    }
+                    else if (!value.isMissingNode()) {
+                        insertIndexValue(db, replicaKey, field, value, docId);
+                    }
+                }
+            }
+
+            ContentValues state = new ContentValues();
+            if (watermark != null)
+                state.put("watermark", watermark);
+            state.put("synced_at", syncedAt);
+            db.update("replicas", state, "replica_key = ?", new String[]{replicaKey});
+
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void insertIndexValue(SQLiteDatabase db, String replicaKey, String field, JsonNode value, String docId) {
+        ContentValues values = new ContentValues();
+        values.put("replica_key", replicaKey);
+        values.put("field", field);
+        values.put("value", QueryMatcher.indexKey(value));
+        values.put("doc_id", docId);
+        db.insert("document_index", null, values);
+    }
+
+    /**
+     * Deletes all documents of a replica and resets its watermark, before a full sync.
+     */
+    public void clear(String replicaKey) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete("documents", "replica_key = ?", new String[]{replicaKey});
+            db.delete("document_index", "replica_key = ?", new String[]{replicaKey});
+            ContentValues state = new ContentValues();
+            state.putNull("watermark");
+            state.put("synced_at", 0L);
+            db.update("replicas", state, "replica_key = ?", new String[]{replicaKey});
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes a replica and all its documents.
+     */
+    public void drop(String replicaKey) {
+        clear(replicaKey);
+        getWritableDatabase().delete("replicas", "replica_key = ?", new String[]{replicaKey});
+    }
+
+    /**
+     * Returns the JSON documents of a replica, only those with the given value for an indexed field if
+     * indexField is not null.
+     */
+    public List<String> loadDocuments(String replicaKey, String indexField, String indexValue) {
+        SQLiteDatabase db = getReadableDatabase();
+        ArrayList<String> documents = new ArrayList<>();
+        Cursor cursor;
+        if (indexField == null) {
+            cursor = db.rawQuery("SELECT json FROM documents WHERE replica_key = ?", new String[]{replicaKey});
+        }
+        else {
+            cursor = db.rawQuery("SELECT DISTINCT d.json FROM document_index i JOIN documents d ON d.replica_key = i.replica_key AND d.doc_id = i.doc_id"
+                    + " WHERE i.replica_key = ? AND i.field = ? AND i.value = ?", new String[]{replicaKey, indexField, indexValue});
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                documents.add(cursor.getString(0));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return documents;
+    }
+
+    public long countDocuments(String replicaKey) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), "documents", "replica_key = ?", new String[]{replicaKey});
+    }
+}
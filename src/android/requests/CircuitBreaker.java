@@ -0,0 +1,97 @@
+package org.elastos.plugins.hive.requests;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Circuit breaker of one vault provider.
+ *
+ * - CLOSED: calls go through. After failureThreshold transient failures in a row, the breaker opens.
+ * - OPEN: calls fail immediately, without reaching the provider, for openDurationMs.
+ * - HALF_OPEN: a single trial call goes through. Its success closes the breaker, its failure opens it again.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String provider;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean trialInProgress = false;
+    private long trips = 0;
+    private long rejectedCalls = 0;
+
+    CircuitBreaker(String provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Returns true if a call can be made now. Calls that are allowed must report their outcome with
+     * onSuccess() or onFailure().
+     */
+    synchronized boolean allowCall(long openDurationMs) {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            state = State.HALF_OPEN;
+            trialInProgress = false;
+        }
+
+        if (state == State.CLOSED)
+            return true;
+
+        if (state == State.HALF_OPEN && !trialInProgress) {
+            trialInProgress = true;
+            return true;
+        }
+
+        rejectedCalls++;
+        return false;
+    }
+
+    /**
+     * The provider answered (possibly with a functional error such as "not found").
+     */
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInProgress = false;
+    }
+
+    /**
+     * The provider could not be reached or failed with a transient error.
+     */
+    synchronized void onFailure(int failureThreshold) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN)
+                trips++;
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            trialInProgress = false;
+        }
+    }
+
+    /**
+     * An allowed call didn't reach the provider after all.
+     */
+    synchronized void onSkipped() {
+        trialInProgress = false;
+    }
+
+    synchronized long getRetryAfterMs(long openDurationMs) {
+        return Math.max(0, openedAt + openDurationMs - System.currentTimeMillis());
+    }
+
+    synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("provider", provider);
+        json.put("state", state.name());
+        json.put("consecutiveFailures", consecutiveFailures);
+        json.put("trips", trips);
+        json.put("rejectedCalls", rejectedCalls);
+        if (state != State.CLOSED)
+            json.put("openedAt", openedAt);
+        return json;
+    }
+}
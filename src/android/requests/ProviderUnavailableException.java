@@ -0,0 +1,10 @@
+package org.elastos.plugins.hive.requests;
+
+/**
+ * Raised without calling the provider, when its circuit breaker is open.
+ */
+public class ProviderUnavailableException extends Exception {
+    public ProviderUnavailableException(String message) {
+        super(message);
+    }
+}
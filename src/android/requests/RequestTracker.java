@@ -0,0 +1,152 @@
+package org.elastos.plugins.hive.requests;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plugin calls in progress, by request id (generated by the JS side), so that they can be cancelled.
+ */
+public class RequestTracker {
+    private static final String TAG = "HivePlugin";
+
+    public interface LateResultCloser<T> {
+        void close(T result) throws Exception;
+    }
+
+    public interface CancelHandler {
+        /**
+         * Called when the request is cancelled. Returns false if the request had already completed and
+         * could not be cancelled.
+         */
+        boolean onCancelled();
+    }
+
+    public static class Request {
+        private final RequestTracker tracker;
+        private final String requestId;
+        private final CancelHandler cancelHandler;
+        private final ArrayList<Runnable> cancelListeners = new ArrayList<>();
+        private volatile boolean cancelled = false;
+
+        Request(RequestTracker tracker, String requestId, CancelHandler cancelHandler) {
+            this.tracker = tracker;
+            this.requestId = requestId;
+            this.cancelHandler = cancelHandler;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Registers work to stop when the request is cancelled. Runs immediately if it is already cancelled.
+         */
+        public void onCancel(Runnable listener) {
+            synchronized (this) {
+                if (!cancelled) {
+                    cancelListeners.add(listener);
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        /**
+         * Returns a future completed like the given one, that is cancelled if the request is cancelled.
+         *
+         * Cancelling a future doesn't stop the SDK work that will complete it. If this work later produces a
+         * resource (ex: a download stream), it is given to lateResultCloser, if any, so that it is not leaked.
+         * Without lateResultCloser, the given future itself is also cancelled.
+         */
+        public <T> CompletableFuture<T> track(CompletableFuture<T> future, LateResultCloser<T> lateResultCloser) {
+            CompletableFuture<T> tracked = new CompletableFuture<>();
+            future.whenComplete((result, e) -> {
+                if (e != null) {
+                    tracked.completeExceptionally(e);
+                }
+                else if (!tracked.complete(result) && lateResultCloser != null && result != null) {
+                    try {
+                        lateResultCloser.close(result);
+                    }
+                    catch (Exception closeException) {
+                        Log.w(TAG, "Unable to release the late result of cancelled request " + requestId, closeException);
+                    }
+                }
+            });
+
+            onCancel(() -> {
+                tracked.cancel(false);
+                if (lateResultCloser == null)
+                    future.cancel(true);
+            });
+            return tracked;
+        }
+
+        public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+            return track(future, null);
+        }
+
+        /**
+         * Called when the final result of the request is sent.
+         */
+        public void finish() {
+            tracker.requests.remove(requestId, this);
+        }
+
+        private boolean cancel() {
+            if (!cancelHandler.onCancelled())
+                return false;
+
+            ArrayList<Runnable> listeners;
+            synchronized (this) {
+                cancelled = true;
+                listeners = new ArrayList<>(cancelListeners);
+                cancelListeners.clear();
+            }
+
+            for (Runnable listener : listeners) {
+                try {
+                    listener.run();
+                }
+                catch (CancellationException e) {
+                    // Expected from cancelled futures
+                }
+                catch (Exception e) {
+                    Log.w(TAG, "Error while cancelling request " + requestId, e);
+                }
+            }
+            return true;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Request> requests = new ConcurrentHashMap<>();
+
+    public Request start(String requestId, CancelHandler cancelHandler) {
+        Request request = new Request(this, requestId, cancelHandler);
+        requests.put(requestId, request);
+        return request;
+    }
+
+    /**
+     * Cancels the request with the given id. Returns false if there is no such request in progress.
+     */
+    public boolean cancel(String requestId) {
+        Request request = requests.remove(requestId);
+        if (request == null)
+            return false;
+
+        return request.cancel();
+    }
+
+    public int size() {
+        return requests.size();
+    }
+}
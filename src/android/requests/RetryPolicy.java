@@ -0,0 +1,173 @@
+package org.elastos.plugins.hive.requests;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Retries of idempotent provider calls that fail with transient (network) errors, with exponential backoff and
+ * full jitter, so that clients retrying at the same time don't hit the provider all together.
+ *
+ * Each provider has a circuit breaker: while a provider keeps failing, calls fail fast with a
+ * ProviderUnavailableException instead of adding load to it.
+ */
+public class RetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MS = 250;
+    public static final long DEFAULT_MAX_DELAY_MS = 4000;
+    public static final int DEFAULT_BREAKER_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_BREAKER_OPEN_DURATION_MS = 30000;
+
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long baseDelayMs = DEFAULT_BASE_DELAY_MS;
+    private volatile long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+    private volatile int breakerFailureThreshold = DEFAULT_BREAKER_FAILURE_THRESHOLD;
+    private volatile long breakerOpenDurationMs = DEFAULT_BREAKER_OPEN_DURATION_MS;
+
+    /**
+     * Applies retry options: maxAttempts, baseDelayMs, maxDelayMs, breakerFailureThreshold, breakerOpenDurationMs.
+     */
+    public void configure(JSONObject options) throws JSONException {
+        if (options.has("maxAttempts"))
+            maxAttempts = Math.max(1, options.getInt("maxAttempts"));
+        if (options.has("baseDelayMs"))
+            baseDelayMs = Math.max(0, options.getLong("baseDelayMs"));
+        if (options.has("maxDelayMs"))
+            maxDelayMs = Math.max(0, options.getLong("maxDelayMs"));
+        if (options.has("breakerFailureThreshold"))
+            breakerFailureThreshold = Math.max(1, options.getInt("breakerFailureThreshold"));
+        if (options.has("breakerOpenDurationMs"))
+            breakerOpenDurationMs = Math.max(0, options.getLong("breakerOpenDurationMs"));
+    }
+
+    /**
+     * Tells if an error is worth a retry: network errors and timeouts. Errors returned by the provider itself
+     * (not found, invalid query...) are not.
+     */
+    public static boolean isTransient(Throwable error) {
+        Throwable cause = error;
+        while (cause != null) {
+            if (cause instanceof java.io.FileNotFoundException)
+                return false;
+            if (cause instanceof IOException || cause instanceof TimeoutException)
+                return true;
+
+            Throwable next = cause.getCause();
+            if (next == cause)
+                break;
+            cause = next;
+        }
+        return false;
+    }
+
+    /**
+     * Calls operation, and calls it again after a backoff delay when it fails with a transient error, up to
+     * maxAttempts times. No retry happens after the request is cancelled.
+     */
+    public <T> CompletableFuture<T> execute(String provider, Supplier<CompletableFuture<T>> operation, ScheduledExecutorService scheduler, RequestTracker.Request request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(breakerFor(provider), operation, scheduler, request, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(CircuitBreaker breaker, Supplier<CompletableFuture<T>> operation, ScheduledExecutorService scheduler, RequestTracker.Request request, int attemptNumber, CompletableFuture<T> result) {
+        if (!breaker.allowCall(breakerOpenDurationMs)) {
+            result.completeExceptionally(new ProviderUnavailableException("The vault provider is unavailable after repeated failures, retry in "
+                    + breaker.getRetryAfterMs(breakerOpenDurationMs) + "ms"));
+            return;
+        }
+
+        CompletableFuture<T> call;
+        try {
+            call = operation.get();
+        }
+        catch (Exception e) {
+            breaker.onSkipped();
+            result.completeExceptionally(e);
+            return;
+        }
+
+        call.whenComplete((value, e) -> {
+            if (e == null) {
+                breaker.onSuccess();
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = unwrap(e);
+            if (!isTransient(cause)) {
+                breaker.onSuccess();
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            breaker.onFailure(breakerFailureThreshold);
+            boolean cancelled = request != null && request.isCancelled();
+            if (attemptNumber >= maxAttempts || cancelled) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            try {
+                scheduler.schedule(() -> attempt(breaker, operation, scheduler, request, attemptNumber + 1, result),
+                        backoffDelayMs(attemptNumber), TimeUnit.MILLISECONDS);
+            }
+            catch (Exception scheduleException) {
+                // Scheduler stopped (plugin destroyed)
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /**
+     * "Full jitter" backoff: random delay between 0 and base * 2^(attempt - 1), capped to maxDelayMs.
+     */
+    private long backoffDelayMs(int attemptNumber) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attemptNumber - 1, 20));
+        if (ceiling <= 0)
+            return 0;
+
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        if ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null)
+            return e.getCause();
+        return e;
+    }
+
+    private CircuitBreaker breakerFor(String provider) {
+        String key = provider != null ? provider : "";
+        CircuitBreaker breaker = breakers.get(key);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(key);
+            CircuitBreaker existing = breakers.putIfAbsent(key, breaker);
+            if (existing != null)
+                breaker = existing;
+        }
+        return breaker;
+    }
+
+    public JSONArray breakersToJson() throws JSONException {
+        JSONArray json = new JSONArray();
+        for (CircuitBreaker breaker : breakers.values()) {
+            json.put(breaker.toJson());
+        }
+        return json;
+    }
+}
@@ -0,0 +1,117 @@
+package org.elastos.plugins.hive.requests;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Deduplication of identical read requests running at the same time: while a request is in flight, callers
+ * asking for the same thing (same key) get the result of this request instead of sending their own.
+ *
+ * Only in-flight requests are shared, results are not cached once completed.
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    /**
+     * Builds a request key from the target, action and arguments. JSON arguments are normalized (sorted keys)
+     * so that equivalent queries give the same key.
+     */
+    public static String key(String target, String action, Object... args) {
+        StringBuilder key = new StringBuilder();
+        key.append(target).append('|').append(action);
+        for (Object arg : args) {
+            key.append('|');
+            appendCanonical(key, arg);
+        }
+        return key.toString();
+    }
+
+    private static void appendCanonical(StringBuilder out, Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            ArrayList<String> names = new ArrayList<>();
+            Iterator<String> it = object.keys();
+            while (it.hasNext()) {
+                names.add(it.next());
+            }
+            Collections.sort(names);
+
+            out.append('{');
+            for (int i=0; i<names.size(); i++) {
+                if (i > 0)
+                    out.append(',');
+                out.append(JSONObject.quote(names.get(i))).append(':');
+                appendCanonical(out, object.opt(names.get(i)));
+            }
+            out.append('}');
+        }
+        else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i=0; i<array.length(); i++) {
+                if (i > 0)
+                    out.append(',');
+                appendCanonical(out, array.opt(i));
+            }
+            out.append(']');
+        }
+        else if (value instanceof String) {
+            out.append(JSONObject.quote((String) value));
+        }
+        else if (value == null || value == JSONObject.NULL) {
+            out.append("null");
+        }
+        else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * Runs operation, unless a request with the same key is already in flight, in which case its result is shared.
+     * Each caller gets its own future, so that cancelling it doesn't affect the other callers.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> shared = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            deduplicated.incrementAndGet();
+            return existing.thenApply(result -> result);
+        }
+
+        executed.incrementAndGet();
+        try {
+            operation.get().whenComplete((result, e) -> {
+                inFlight.remove(key, shared);
+                if (e != null)
+                    shared.completeExceptionally(e);
+                else
+                    shared.complete(result);
+            });
+        }
+        catch (Exception e) {
+            inFlight.remove(key, shared);
+            shared.completeExceptionally(e);
+        }
+        return shared.thenApply(result -> result);
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("inFlight", inFlight.size());
+        json.put("executed", executed.get());
+        json.put("deduplicated", deduplicated.get());
+        return json;
+    }
+}
@@ -0,0 +1,404 @@
+package org.elastos.plugins.hive.subscriptions;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.elastos.hive.database.CountOptions;
+import org.elastos.hive.database.Database;
+import org.elastos.hive.database.FindOptions;
+import org.elastos.hive.database.Index;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Polls a collection query and reports the documents added, changed and removed since the previous poll.
+ *
+ * Each poll starts with a cheap probe: the number of matching documents, plus the greatest value of the change
+ * field (ex: an update timestamp maintained by the app) if there is one. Documents are only fetched when the
+ * probe moved:
+ * - With a change field, only documents whose change field is greater or equal to the last seen value are
+ * fetched, then _ids only if the count shows that documents were removed.
+ * - Without a change field, all matching documents are fetched and compared with the previous ones. Updates that
+ * don't change the number of documents are not detected in this case.
+ *
+ * The poll interval starts at the minimum interval, doubles after each poll without changes up to the maximum
+ * interval, and goes back to the minimum after a change. Polling stops while the subscription is paused.
+ */
+public class CollectionSubscription {
+    public static final long DEFAULT_MIN_INTERVAL_MS = 2000;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 60000;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public interface Listener {
+        /**
+         * Called after the first poll with all matching documents as added documents, then after each poll that
+         * found changes.
+         */
+        void onChanges(CollectionSubscription subscription, List<JsonNode> added, List<JsonNode> changed, List<JsonNode> removedIds, long count);
+
+        /**
+         * Called when a poll fails. Polling continues at the maximum interval.
+         */
+        void onError(CollectionSubscription subscription, Throwable error);
+    }
+
+    /**
+     * Polling statistics, shared by all subscriptions.
+     */
+    public static class Stats {
+        private final AtomicLong polls = new AtomicLong(0);
+        private final AtomicLong unchangedPolls = new AtomicLong(0);
+        private final AtomicLong fetches = new AtomicLong(0);
+        private final AtomicLong fetchedDocuments = new AtomicLong(0);
+        private final AtomicLong errors = new AtomicLong(0);
+
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("polls", polls.get());
+            json.put("unchangedPolls", unchangedPolls.get());
+            json.put("fetches", fetches.get());
+            json.put("fetchedDocuments", fetchedDocuments.get());
+            json.put("errors", errors.get());
+            return json;
+        }
+    }
+
+    private final String id;
+    private final Database database;
+    private final String collectionName;
+    private final JsonNode query;
+    private final String changeField;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final ScheduledExecutorService scheduler;
+    private final Listener listener;
+    private final Stats stats;
+
+    // Fingerprint (change field value, or whole document) of known documents, by _id JSON. Only used by the
+    // poll chain, which never runs twice at the same time.
+    private final HashMap<String, String> known = new HashMap<>();
+    private JsonNode lastChange = null;
+    private boolean initialized = false;
+
+    private long intervalMs;
+    private ScheduledFuture<?> nextPoll = null;
+    private boolean polling = false;
+    private boolean paused = false;
+    private boolean cancelled = false;
+
+    public CollectionSubscription(String id, Database database, String collectionName, JsonNode query, String changeField,
+                                  long minIntervalMs, long maxIntervalMs, ScheduledExecutorService scheduler, Listener listener, Stats stats) {
+        this.id = id;
+        this.database = database;
+        this.collectionName = collectionName;
+        this.query = query;
+        this.changeField = changeField;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = Math.max(minIntervalMs, maxIntervalMs);
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.stats = stats;
+        this.intervalMs = minIntervalMs;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+    /**
+     * Starts polling, with an immediate first poll.
+     */
+    public synchronized void start() {
+        schedulePoll(0);
+    }
+
+    /**
+     * Stops polling until resume(). A poll in progress completes normally.
+     */
+    public synchronized void pause() {
+        paused = true;
+        if (nextPoll != null) {
+            nextPoll.cancel(false);
+            nextPoll = null;
+        }
+    }
+
+    /**
+     * Resumes polling with an immediate poll, as changes may have been missed while paused.
+     */
+    public synchronized void resume() {
+        if (!paused)
+            return;
+        paused = false;
+        intervalMs = minIntervalMs;
+        if (!polling)
+            schedulePoll(0);
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        if (nextPoll != null) {
+            nextPoll.cancel(false);
+            nextPoll = null;
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void schedulePoll(long delayMs) {
+        if (cancelled || paused)
+            return;
+
+        try {
+            nextPoll = scheduler.schedule(this::poll, delayMs, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            // Plugin destroyed
+            cancelled = true;
+        }
+    }
+
+    private void poll() {
+        synchronized (this) {
+            if (cancelled || paused || polling)
+                return;
+            polling = true;
+            nextPoll = null;
+        }
+        stats.polls.incrementAndGet();
+
+        CompletableFuture<Boolean> changes;
+        try {
+            changes = initialized ? probeAndFetch() : fetchAll();
+        }
+        catch (RuntimeException e) {
+            changes = new CompletableFuture<>();
+            changes.completeExceptionally(e);
+        }
+
+        changes.whenComplete((changed, e) -> {
+            try {
+                if (e != null) {
+                    stats.errors.incrementAndGet();
+                    if (!isCancelled())
+                        listener.onError(this, e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            finally {
+                // Always reschedule, even if the listener failed, or the subscription would silently stop
+                synchronized (this) {
+                    polling = false;
+                    if (e != null)
+                        intervalMs = maxIntervalMs;
+                    else if (changed)
+                        intervalMs = minIntervalMs;
+                    else
+                        intervalMs = Math.min(intervalMs * 2, maxIntervalMs);
+                    schedulePoll(intervalMs);
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<Boolean> probeAndFetch() {
+        CompletableFuture<Long> countProbe = database.countDocuments(collectionName, query, new CountOptions());
+        CompletableFuture<JsonNode> changeProbe = changeField != null ? latestChange() : CompletableFuture.completedFuture(null);
+
+        return countProbe.thenCombine(changeProbe, Probe::new).thenCompose(probe -> {
+            boolean countMoved = probe.count != known.size();
+            boolean changeMoved = changeField != null && probe.latestChange != null && !probe.latestChange.equals(lastChange);
+
+            if (!countMoved && !changeMoved) {
+                stats.unchangedPolls.incrementAndGet();
+                return CompletableFuture.completedFuture(false);
+            }
+
+            if (changeField == null)
+                return fetchAll();
+            return fetchChanged(probe.count);
+        });
+    }
+
+    private static class Probe {
+        final long count;
+        final JsonNode latestChange;
+
+        Probe(long count, JsonNode latestChange) {
+            this.count = count;
+            this.latestChange = latestChange;
+        }
+    }
+
+    private CompletableFuture<JsonNode> latestChange() {
+        FindOptions options = new FindOptions();
+        options.sort(new Index[]{new Index(changeField, Index.Order.DESCENDING)});
+        options.limit(1);
+        options.projection(objectMapper.createObjectNode().put(changeField, 1));
+
+        return database.findMany(collectionName, query, options).thenApply(documents -> {
+            if (documents == null || documents.isEmpty())
+                return null;
+            return changeValue(documents.get(0));
+        });
+    }
+
+    /**
+     * Fetches all matching documents and compares them with the known ones.
+     */
+    private CompletableFuture<Boolean> fetchAll() {
+        stats.fetches.incrementAndGet();
+        return database.findMany(collectionName, query, new FindOptions()).thenApply(documents -> {
+            List<JsonNode> current = documents != null ? documents : new ArrayList<>();
+            stats.fetchedDocuments.addAndGet(current.size());
+
+            ArrayList<JsonNode> added = new ArrayList<>();
+            ArrayList<JsonNode> changed = new ArrayList<>();
+            HashSet<String> seen = new HashSet<>();
+            for (JsonNode document : current) {
+                String key = document.path("_id").toString();
+                seen.add(key);
+                collectChange(document, key, added, changed);
+            }
+
+            ArrayList<JsonNode> removedIds = new ArrayList<>();
+            for (String key : new ArrayList<>(known.keySet())) {
+                if (!seen.contains(key)) {
+                    known.remove(key);
+                    removedIds.add(readId(key));
+                }
+            }
+
+            return report(added, changed, removedIds);
+        });
+    }
+
+    /**
+     * Fetches the documents changed since the last seen change value, then the _ids of all matching documents
+     * if some documents were removed.
+     */
+    private CompletableFuture<Boolean> fetchChanged(long probedCount) {
+        JsonNode changedQuery = lastChange == null ? query : and(query, objectMapper.createObjectNode().set(changeField, objectMapper.createObjectNode().set("$gte", lastChange)));
+
+        FindOptions options = new FindOptions();
+        options.sort(new Index[]{new Index(changeField, Index.Order.ASCENDING)});
+
+        stats.fetches.incrementAndGet();
+        return database.findMany(collectionName, changedQuery, options).thenCompose(documents -> {
+            List<JsonNode> current = documents != null ? documents : new ArrayList<>();
+            stats.fetchedDocuments.addAndGet(current.size());
+
+            ArrayList<JsonNode> added = new ArrayList<>();
+            ArrayList<JsonNode> changed = new ArrayList<>();
+            for (JsonNode document : current) {
+                collectChange(document, document.path("_id").toString(), added, changed);
+            }
+
+            if (probedCount >= known.size())
+                return CompletableFuture.completedFuture(report(added, changed, new ArrayList<>()));
+
+            // Fewer documents than known ones: find which ones were removed
+            FindOptions idsOptions = new FindOptions();
+            idsOptions.projection(objectMapper.createObjectNode().put("_id", 1));
+            stats.fetches.incrementAndGet();
+            return database.findMany(collectionName, query, idsOptions).thenApply(ids -> {
+                HashSet<String> seen = new HashSet<>();
+                if (ids != null) {
+                    for (JsonNode idDocument : ids) {
+                        seen.add(idDocument.path("_id").toString());
+                    }
+                }
+
+                ArrayList<JsonNode> removedIds = new ArrayList<>();
+                for (String key : new ArrayList<>(known.keySet())) {
+                    if (!seen.contains(key)) {
+                        known.remove(key);
+                        removedIds.add(readId(key));
+                    }
+                }
+                return report(added, changed, removedIds);
+            });
+        });
+    }
+
+    private void collectChange(JsonNode document, String key, List<JsonNode> added, List<JsonNode> changed) {
+        JsonNode change = changeValue(document);
+        String fingerprint = change != null ? change.toString() : document.toString();
+
+        String previous = known.put(key, fingerprint);
+        if (previous == null)
+            added.add(document);
+        else if (!previous.equals(fingerprint))
+            changed.add(document);
+
+        if (change != null && (lastChange == null || compareChangeValues(change, lastChange) > 0))
+            lastChange = change;
+    }
+
+    private JsonNode changeValue(JsonNode document) {
+        if (changeField == null)
+            return null;
+        JsonNode value = document;
+        for (String part : changeField.split("\\.")) {
+            value = value.path(part);
+        }
+        return value.isMissingNode() || value.isNull() ? null : value;
+    }
+
+    private static int compareChangeValues(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber())
+            return a.decimalValue().compareTo(b.decimalValue());
+        if (a.isTextual() && b.isTextual())
+            return a.asText().compareTo(b.asText());
+        return a.toString().compareTo(b.toString());
+    }
+
+    private boolean report(List<JsonNode> added, List<JsonNode> changed, List<JsonNode> removedIds) {
+        boolean first = !initialized;
+        initialized = true;
+
+        boolean hasChanges = !added.isEmpty() || !changed.isEmpty() || !removedIds.isEmpty();
+        if ((first || hasChanges) && !isCancelled())
+            listener.onChanges(this, added, changed, removedIds, known.size());
+        return hasChanges;
+    }
+
+    private static JsonNode and(JsonNode query, JsonNode condition) {
+        if (query == null || query.size() == 0)
+            return condition;
+
+        ObjectNode combined = objectMapper.createObjectNode();
+        ArrayNode conditions = combined.putArray("$and");
+        conditions.add(query);
+        conditions.add(condition);
+        return combined;
+    }
+
+    private static JsonNode readId(String key) {
+        try {
+            return objectMapper.readTree(key);
+        }
+        catch (Exception e) {
+            return objectMapper.getNodeFactory().textNode(key);
+        }
+    }
+}
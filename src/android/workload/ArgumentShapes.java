@@ -0,0 +1,143 @@
+package org.elastos.plugins.hive.workload;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Redacted form of plugin call arguments, as recorded in workload captures.
+ *
+ * Strings are the values that carry user data (DIDs, documents content, file paths, base64 file data), so they are
+ * replaced by their length: {"$string": 12}. Strings that are plugin object ids are replaced by the object type:
+ * {"$handle": "vault"}. Object keys, numbers, booleans and nulls are kept, as they are mostly query structure and
+ * options (limit, offsets, sizes) that matter to replay the same work.
+ */
+public class ArgumentShapes {
+    private static final String STRING_MARKER = "$string";
+    private static final String HANDLE_MARKER = "$handle";
+
+    public interface HandleResolver {
+        /**
+         * Type of plugin object (ex: "vault", "reader") with the given id, or null if the value is not an object id.
+         */
+        String handleType(String value);
+    }
+
+    public interface HandleSubstitution {
+        /**
+         * Object id to use in place of an object of the given type, or null if there is none.
+         */
+        String objectIdFor(String handleType);
+    }
+
+    /**
+     * Returns the redacted shape of the given call arguments. Only top level strings can be object ids.
+     */
+    public static JSONArray redact(JSONArray args, HandleResolver resolver) throws JSONException {
+        JSONArray shape = new JSONArray();
+        for (int i=0; i<args.length(); i++) {
+            Object value = args.get(i);
+            String handleType = value instanceof String ? resolver.handleType((String) value) : null;
+            if (handleType != null)
+                shape.put(new JSONObject().put(HANDLE_MARKER, handleType));
+            else
+                shape.put(redactValue(value));
+        }
+        return shape;
+    }
+
+    private static Object redactValue(Object value) throws JSONException {
+        if (value instanceof String)
+            return new JSONObject().put(STRING_MARKER, ((String) value).length());
+
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            JSONObject redacted = new JSONObject();
+            Iterator<String> it = object.keys();
+            while (it.hasNext()) {
+                String key = it.next();
+                redacted.put(key, redactValue(object.get(key)));
+            }
+            return redacted;
+        }
+
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            JSONArray redacted = new JSONArray();
+            for (int i=0; i<array.length(); i++) {
+                redacted.put(redactValue(array.get(i)));
+            }
+            return redacted;
+        }
+
+        return value;
+    }
+
+    /**
+     * Collects the types of plugin objects referenced by a redacted shape.
+     */
+    public static void collectHandleTypes(JSONArray shape, Set<String> handleTypes) {
+        for (int i=0; i<shape.length(); i++) {
+            JSONObject object = shape.optJSONObject(i);
+            if (object != null && object.has(HANDLE_MARKER))
+                handleTypes.add(object.optString(HANDLE_MARKER));
+        }
+    }
+
+    /**
+     * Builds synthetic call arguments matching a redacted shape. Strings are filled with "A" characters (which
+     * is also valid base64 data when the length is a multiple of 4), object ids are replaced by the given
+     * substitution.
+     */
+    public static JSONArray synthesize(JSONArray shape, HandleSubstitution substitution) throws JSONException {
+        JSONArray args = new JSONArray();
+        for (int i=0; i<shape.length(); i++) {
+            JSONObject object = shape.optJSONObject(i);
+            if (object != null && object.has(HANDLE_MARKER)) {
+                String objectId = substitution.objectIdFor(object.getString(HANDLE_MARKER));
+                args.put(objectId != null ? objectId : JSONObject.NULL);
+            }
+            else {
+                args.put(synthesizeValue(shape.get(i)));
+            }
+        }
+        return args;
+    }
+
+    private static Object synthesizeValue(Object shape) throws JSONException {
+        if (shape instanceof JSONObject) {
+            JSONObject object = (JSONObject) shape;
+            if (object.length() == 1 && object.has(STRING_MARKER))
+                return syntheticString(object.getInt(STRING_MARKER));
+
+            JSONObject value = new JSONObject();
+            Iterator<String> it = object.keys();
+            while (it.hasNext()) {
+                String key = it.next();
+                value.put(key, synthesizeValue(object.get(key)));
+            }
+            return value;
+        }
+
+        if (shape instanceof JSONArray) {
+            JSONArray array = (JSONArray) shape;
+            JSONArray value = new JSONArray();
+            for (int i=0; i<array.length(); i++) {
+                value.put(synthesizeValue(array.get(i)));
+            }
+            return value;
+        }
+
+        return shape;
+    }
+
+    private static String syntheticString(int length) {
+        char[] chars = new char[Math.max(0, length)];
+        Arrays.fill(chars, 'A');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,180 @@
+package org.elastos.plugins.hive.workload;
+
+import android.util.Log;
+
+import org.elastos.plugins.hive.metrics.MeteredCallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the plugin calls made by the app (action, redacted arguments, arguments size, timing and outcome) to a
+ * JSON lines file, one call per line, so that a real usage pattern can later be replayed with WorkloadReplayer.
+ * See ArgumentShapes for what is redacted.
+ *
+ * Disabled by default. Each time capture is enabled, a new capture file is started.
+ */
+public class WorkloadRecorder {
+    private static final String TAG = "HivePlugin";
+    private static final String CAPTURE_FILE_PREFIX = "hive-capture-";
+    private static final int DEFAULT_MAX_EVENTS = 100000;
+
+    private static class Capture {
+        final File file;
+        final long startNanos = System.nanoTime();
+        final AtomicLong recordedEvents = new AtomicLong(0);
+        final AtomicLong droppedEvents = new AtomicLong(0);
+        // Only used on the file writer thread
+        Writer writer = null;
+        boolean closed = false;
+
+        Capture(File file) {
+            this.file = file;
+        }
+    }
+
+    private final ExecutorService fileWriter = Executors.newSingleThreadExecutor();
+    private volatile Capture capture = null;
+    private volatile int maxEvents = DEFAULT_MAX_EVENTS;
+    // Last capture, still reported after capture is disabled
+    private Capture lastCapture = null;
+
+    /**
+     * Applies capture options: enabled, maxEvents.
+     */
+    public synchronized void configure(JSONObject options, File captureDir) throws JSONException {
+        if (options.has("maxEvents"))
+            maxEvents = Math.max(1, options.getInt("maxEvents"));
+
+        if (!options.has("enabled"))
+            return;
+
+        boolean enabled = options.getBoolean("enabled");
+        if (enabled && capture == null) {
+            capture = new Capture(new File(captureDir, CAPTURE_FILE_PREFIX + System.currentTimeMillis() + ".jsonl"));
+            lastCapture = capture;
+        }
+        else if (!enabled && capture != null) {
+            final Capture stopped = capture;
+            capture = null;
+            fileWriter.execute(() -> closeCapture(stopped));
+        }
+    }
+
+    /**
+     * Starts recording a call. Returns the listener to attach to the call's callback context, or null if
+     * capture is disabled.
+     */
+    public MeteredCallbackContext.CompletionListener onCallStarted(String action, JSONArray args, ArgumentShapes.HandleResolver resolver, long startNanos) {
+        Capture current = capture;
+        if (current == null)
+            return null;
+
+        if (current.recordedEvents.incrementAndGet() > maxEvents) {
+            current.recordedEvents.decrementAndGet();
+            current.droppedEvents.incrementAndGet();
+            return null;
+        }
+
+        JSONObject event = new JSONObject();
+        try {
+            event.put("tMs", (startNanos - current.startNanos) / 1000000);
+            event.put("action", action);
+            event.put("args", ArgumentShapes.redact(args, resolver));
+            event.put("argsSize", args.toString().length());
+        }
+        catch (JSONException e) {
+            Log.w(TAG, "Unable to capture call " + action, e);
+            return null;
+        }
+
+        return (durationNanos, success) -> {
+            try {
+                event.put("durationMs", durationNanos / 1000000.0);
+                event.put("ok", success);
+            }
+            catch (JSONException e) {
+                return;
+            }
+            String line = event.toString();
+            try {
+                fileWriter.execute(() -> writeEvent(current, line));
+            }
+            catch (RejectedExecutionException e) {
+                // Call completed after the plugin was destroyed
+            }
+        };
+    }
+
+    private void writeEvent(Capture capture, String line) {
+        if (capture.closed)
+            return;
+
+        try {
+            if (capture.writer == null) {
+                File dir = capture.file.getParentFile();
+                if (dir != null && !dir.exists() && !dir.mkdirs())
+                    throw new IOException("Unable to create capture directory " + dir);
+
+                capture.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(capture.file), "UTF-8"));
+                Log.i(TAG, "Capturing plugin calls to " + capture.file);
+            }
+            capture.writer.write(line);
+            capture.writer.write('\n');
+            // Flushed on each event so that the capture survives the app being killed
+            capture.writer.flush();
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Unable to write capture file " + capture.file + ", capture stopped", e);
+            closeCapture(capture);
+        }
+    }
+
+    private void closeCapture(Capture capture) {
+        if (capture.closed)
+            return;
+
+        capture.closed = true;
+        if (capture.writer != null) {
+            try {
+                capture.writer.close();
+            }
+            catch (IOException e) {
+                Log.w(TAG, "Unable to close capture file " + capture.file, e);
+            }
+        }
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("enabled", capture != null);
+        if (lastCapture != null) {
+            json.put("file", lastCapture.file.getAbsolutePath());
+            json.put("recordedEvents", lastCapture.recordedEvents.get());
+            json.put("droppedEvents", lastCapture.droppedEvents.get());
+        }
+        return json;
+    }
+
+    /**
+     * Closes the current capture file, if any, after pending events are written.
+     */
+    public synchronized void shutdown() {
+        final Capture current = capture;
+        capture = null;
+        if (current != null)
+            fileWriter.execute(() -> closeCapture(current));
+        fileWriter.shutdown();
+    }
+}
@@ -0,0 +1,258 @@
+package org.elastos.plugins.hive.workload;
+
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.elastos.plugins.hive.metrics.LatencyHistogram;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a capture written by WorkloadRecorder: each captured call is executed again through the plugin, at the
+ * same time offset as in the capture (divided by the speed factor), with synthetic arguments of the same shape.
+ * Calls are started on schedule without waiting for previous calls to complete, like the original app traffic.
+ *
+ * Only calls made on a vault can be replayed, using the vault given to the replay. Calls on other plugin
+ * objects (clients, readers, writers, hive urls) depend on objects that don't exist any more, and are skipped.
+ * Calls that modify the vault (inserts, updates, deletes, uploads, scripts...) are skipped too, unless writes are
+ * explicitly allowed: their synthetic arguments would be written to the vault.
+ *
+ * Completes with the replay throughput, and the number of calls, errors and latencies for each action.
+ */
+public class WorkloadReplayer {
+    private static final String TAG = "HivePlugin";
+
+    // Vault actions that don't modify the vault content
+    private static final Set<String> READ_ONLY_ACTIONS = new HashSet<>(Arrays.asList(
+            "vault_getNodeVersion",
+            "database_countDocuments",
+            "database_findOne",
+            "database_findMany",
+            "database_findOneLocal",
+            "database_findManyLocal",
+            "database_countDocumentsLocal",
+            "files_hash",
+            "files_list",
+            "files_stat",
+            "payment_getPricingInfo",
+            "payment_getPricingPlan",
+            "payment_getOrder",
+            "payment_getAllOrders",
+            "payment_getActivePricingPlan",
+            "payment_getPaymentVersion"
+    ));
+
+    public interface ActionRunner {
+        void run(String action, JSONArray args, CallbackContext callbackContext) throws JSONException;
+    }
+
+    private static class ActionStats {
+        int calls = 0;
+        int errors = 0;
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private final List<JSONObject> events;
+    private final double speed;
+    private final String vaultObjectId;
+    private final boolean allowWrites;
+    private final ActionRunner runner;
+    private final ScheduledExecutorService scheduler;
+    private final CompletableFuture<JSONObject> result = new CompletableFuture<>();
+    private final List<ScheduledFuture<?>> scheduledCalls = Collections.synchronizedList(new ArrayList<>());
+    private final HashMap<String, ActionStats> stats = new HashMap<>();
+    private final AtomicInteger pendingCalls = new AtomicInteger(0);
+    private int skipped = 0;
+    private int skippedWrites = 0;
+    private long startNanos;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param speed Replay speed factor (2 replays twice as fast as captured). 0 or less starts all calls at once.
+     * @param allowWrites True to also replay calls that modify the vault.
+     */
+    public WorkloadReplayer(List<JSONObject> events, double speed, String vaultObjectId, boolean allowWrites, ActionRunner runner, ScheduledExecutorService scheduler) {
+        this.events = events;
+        this.speed = speed;
+        this.vaultObjectId = vaultObjectId;
+        this.allowWrites = allowWrites;
+        this.runner = runner;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Reads the events of a capture file, ordered by start time.
+     */
+    public static List<JSONObject> readEvents(File captureFile) throws IOException, JSONException {
+        ArrayList<JSONObject> events = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(captureFile), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty())
+                    events.add(new JSONObject(line));
+            }
+        }
+
+        // Events are written when calls complete, not when they start.
+        Collections.sort(events, (a, b) -> Long.compare(a.optLong("tMs"), b.optLong("tMs")));
+        return events;
+    }
+
+    public CompletableFuture<JSONObject> start() {
+        startNanos = System.nanoTime();
+        // Counts the scheduling itself, so that the replay can't complete before all calls are scheduled.
+        pendingCalls.incrementAndGet();
+
+        for (JSONObject event : events) {
+            JSONArray argsShape = event.optJSONArray("args");
+            if (!isReplayable(argsShape)) {
+                skipped++;
+                continue;
+            }
+            if (!allowWrites && !READ_ONLY_ACTIONS.contains(event.optString("action"))) {
+                skippedWrites++;
+                continue;
+            }
+
+            long delayMs = speed > 0 ? (long) (event.optLong("tMs") / speed) : 0;
+            pendingCalls.incrementAndGet();
+            scheduledCalls.add(scheduler.schedule(() -> replayEvent(event.optString("action"), argsShape), delayMs, TimeUnit.MILLISECONDS));
+        }
+
+        onCallDone();
+        return result;
+    }
+
+    /**
+     * Stops scheduling calls. Calls already started are not interrupted.
+     */
+    public void stop() {
+        stopped = true;
+        synchronized (scheduledCalls) {
+            for (ScheduledFuture<?> scheduledCall : scheduledCalls) {
+                if (scheduledCall.cancel(false))
+                    onCallDone();
+            }
+        }
+    }
+
+    private static boolean isReplayable(JSONArray argsShape) {
+        if (argsShape == null)
+            return false;
+
+        HashSet<String> handleTypes = new HashSet<>();
+        ArgumentShapes.collectHandleTypes(argsShape, handleTypes);
+        return handleTypes.size() == 1 && handleTypes.contains("vault");
+    }
+
+    private void replayEvent(String action, JSONArray argsShape) {
+        if (stopped) {
+            onCallDone();
+            return;
+        }
+
+        long callStartNanos = System.nanoTime();
+        CallbackContext callbackContext = new CallbackContext("replay", null) {
+            private boolean done = false;
+
+            @Override
+            public void sendPluginResult(PluginResult pluginResult) {
+                synchronized (this) {
+                    if (done || pluginResult.getKeepCallback())
+                        return;
+                    done = true;
+                }
+                onCallCompleted(action, System.nanoTime() - callStartNanos, pluginResult.getStatus() == PluginResult.Status.OK.ordinal());
+            }
+        };
+
+        try {
+            runner.run(action, ArgumentShapes.synthesize(argsShape, handleType -> vaultObjectId), callbackContext);
+        }
+        catch (Exception e) {
+            Log.w(TAG, "Unable to replay call " + action, e);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.toString()));
+        }
+    }
+
+    private void onCallCompleted(String action, long durationNanos, boolean success) {
+        synchronized (stats) {
+            ActionStats actionStats = stats.get(action);
+            if (actionStats == null) {
+                actionStats = new ActionStats();
+                stats.put(action, actionStats);
+            }
+            actionStats.calls++;
+            if (!success)
+                actionStats.errors++;
+            actionStats.latency.recordNanos(durationNanos);
+        }
+        onCallDone();
+    }
+
+    private void onCallDone() {
+        if (pendingCalls.decrementAndGet() != 0)
+            return;
+
+        try {
+            result.complete(toJson(System.nanoTime() - startNanos));
+        }
+        catch (JSONException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private JSONObject toJson(long durationNanos) throws JSONException {
+        JSONObject json = new JSONObject();
+        int calls = 0;
+        int errors = 0;
+        JSONObject actionsJson = new JSONObject();
+        synchronized (stats) {
+            for (Map.Entry<String, ActionStats> entry : stats.entrySet()) {
+                ActionStats actionStats = entry.getValue();
+                calls += actionStats.calls;
+                errors += actionStats.errors;
+
+                JSONObject actionJson = new JSONObject();
+                actionJson.put("calls", actionStats.calls);
+                actionJson.put("errors", actionStats.errors);
+                actionJson.put("latencyMs", actionStats.latency.toJson());
+                actionsJson.put(entry.getKey(), actionJson);
+            }
+        }
+
+        double durationMs = durationNanos / 1000000.0;
+        json.put("speed", speed);
+        json.put("events", events.size());
+        json.put("skipped", skipped);
+        json.put("skippedWrites", skippedWrites);
+        json.put("calls", calls);
+        json.put("errors", errors);
+        json.put("stopped", stopped);
+        json.put("durationMs", durationMs);
+        json.put("callsPerSecond", durationMs <= 0 ? 0 : calls * 1000.0 / durationMs);
+        json.put("actions", actionsJson);
+        return json;
+    }
+}
@@ -0,0 +1,13 @@
+package android.app;
+
+import android.content.Context;
+
+/**
+ * JVM shim of the android activity. Harnesses provide the directories and assets by extending it.
+ */
+public abstract class Activity extends Context {
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+}
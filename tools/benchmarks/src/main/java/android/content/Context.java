@@ -0,0 +1,18 @@
+package android.content;
+
+import android.content.res.AssetManager;
+
+import java.io.File;
+
+/**
+ * JVM shim of the android context, reduced to the directories and assets used by the hive plugin.
+ */
+public abstract class Context {
+    public abstract File getFilesDir();
+
+    public abstract File getCacheDir();
+
+    public abstract AssetManager getAssets();
+
+    public abstract Context getApplicationContext();
+}
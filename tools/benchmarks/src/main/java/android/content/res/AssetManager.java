@@ -0,0 +1,14 @@
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JVM shim of the android asset manager. The app has no assets unless a subclass opens them.
+ */
+public class AssetManager {
+    public InputStream open(String fileName) throws IOException {
+        throw new FileNotFoundException(fileName);
+    }
+}
@@ -0,0 +1,25 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * JVM shim of the android database cursor, reduced to the calls of the plugin replica store.
+ */
+public interface Cursor extends Closeable {
+    int getCount();
+
+    boolean moveToFirst();
+
+    boolean moveToNext();
+
+    boolean isNull(int columnIndex);
+
+    String getString(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,16 @@
+package android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * JVM shim of android DatabaseUtils. SQLite is not available on the JVM (see SQLiteOpenHelper).
+ */
+public class DatabaseUtils {
+    public static long longForQuery(SQLiteDatabase db, String query, String[] selectionArgs) {
+        throw SQLiteDatabase.unavailable();
+    }
+
+    public static long queryNumEntries(SQLiteDatabase db, String table, String selection, String[] selectionArgs) {
+        throw SQLiteDatabase.unavailable();
+    }
+}
@@ -0,0 +1,65 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.io.Closeable;
+
+/**
+ * JVM shim of the android SQLite database. Never instantiated: see SQLiteOpenHelper.
+ */
+public final class SQLiteDatabase implements Closeable {
+    public static final int CONFLICT_IGNORE = 4;
+    public static final int CONFLICT_REPLACE = 5;
+
+    private SQLiteDatabase() {
+    }
+
+    public static UnsupportedOperationException unavailable() {
+        return new UnsupportedOperationException("SQLite is not available on the JVM");
+    }
+
+    public void execSQL(String sql) {
+        throw unavailable();
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+        throw unavailable();
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        throw unavailable();
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        throw unavailable();
+    }
+
+    public long insertWithOnConflict(String table, String nullColumnHack, ContentValues initialValues, int conflictAlgorithm) {
+        throw unavailable();
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        throw unavailable();
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        throw unavailable();
+    }
+
+    public void beginTransaction() {
+        throw unavailable();
+    }
+
+    public void setTransactionSuccessful() {
+        throw unavailable();
+    }
+
+    public void endTransaction() {
+        throw unavailable();
+    }
+
+    @Override
+    public void close() {
+    }
+}
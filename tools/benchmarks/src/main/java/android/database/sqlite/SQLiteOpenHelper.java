@@ -0,0 +1,34 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * JVM shim of the android SQLite helper. There is no SQLite on the JVM: opening the database throws an
+ * UnsupportedOperationException, so that local replica actions fail instead of reporting wrong timings.
+ */
+public abstract class SQLiteOpenHelper {
+    private final String name;
+
+    public SQLiteOpenHelper(Context context, String name, Object factory, int version) {
+        this.name = name;
+    }
+
+    public String getDatabaseName() {
+        return name;
+    }
+
+    public SQLiteDatabase getWritableDatabase() {
+        throw SQLiteDatabase.unavailable();
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        throw SQLiteDatabase.unavailable();
+    }
+
+    public synchronized void close() {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+}
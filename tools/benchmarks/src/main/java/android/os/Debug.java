@@ -0,0 +1,18 @@
+package android.os;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * JVM shim of android.os.Debug, reduced to the thread CPU time used by compression stats.
+ */
+public final class Debug {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private Debug() {
+    }
+
+    public static long threadCpuTimeNanos() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+}
@@ -0,0 +1,114 @@
+package android.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JVM shim of android.util.Base64, backed by java.util.Base64, with the flags used by the plugin. Results are the
+ * same as on android, timings are the ones of the JVM implementation.
+ */
+public final class Base64 {
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int CRLF = 4;
+    public static final int URL_SAFE = 8;
+    public static final int NO_CLOSE = 16;
+
+    // Line length of the DEFAULT (wrapping) encoder, as on android
+    private static final int LINE_LENGTH = 76;
+
+    private Base64() {
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        return encodeToString(input, 0, input.length, flags);
+    }
+
+    public static String encodeToString(byte[] input, int offset, int len, int flags) {
+        return new String(encode(input, offset, len, flags), StandardCharsets.US_ASCII);
+    }
+
+    public static byte[] encode(byte[] input, int flags) {
+        return encode(input, 0, input.length, flags);
+    }
+
+    public static byte[] encode(byte[] input, int offset, int len, int flags) {
+        byte[] data = input;
+        if (offset != 0 || len != input.length) {
+            data = new byte[len];
+            System.arraycopy(input, offset, data, 0, len);
+        }
+
+        java.util.Base64.Encoder encoder;
+        if ((flags & NO_WRAP) != 0)
+            encoder = (flags & URL_SAFE) != 0 ? java.util.Base64.getUrlEncoder() : java.util.Base64.getEncoder();
+        else
+            encoder = java.util.Base64.getMimeEncoder(LINE_LENGTH, (flags & CRLF) != 0 ? new byte[]{'\r', '\n'} : new byte[]{'\n'});
+        if ((flags & NO_PADDING) != 0)
+            encoder = encoder.withoutPadding();
+
+        byte[] encoded = encoder.encode(data);
+        if ((flags & NO_WRAP) != 0 || encoded.length == 0)
+            return encoded;
+
+        // The android encoder also ends the last line
+        byte[] terminated = new byte[encoded.length + ((flags & CRLF) != 0 ? 2 : 1)];
+        System.arraycopy(encoded, 0, terminated, 0, encoded.length);
+        if ((flags & CRLF) != 0)
+            terminated[terminated.length - 2] = '\r';
+        terminated[terminated.length - 1] = '\n';
+        if ((flags & URL_SAFE) != 0) {
+            for (int i=0; i<terminated.length; i++) {
+                if (terminated[i] == '+')
+                    terminated[i] = '-';
+                else if (terminated[i] == '/')
+                    terminated[i] = '_';
+            }
+        }
+        return terminated;
+    }
+
+    public static byte[] decode(String str, int flags) {
+        return decode(str.getBytes(StandardCharsets.US_ASCII), flags);
+    }
+
+    /**
+     * Like on android, line breaks, spaces and missing padding are accepted. Throws IllegalArgumentException for
+     * invalid input.
+     */
+    public static byte[] decode(byte[] input, int flags) {
+        int length = 0;
+        byte[] cleaned = new byte[input.length];
+        for (byte b : input) {
+            if (b == '\n' || b == '\r' || b == ' ' || b == '\t')
+                continue;
+            if ((flags & URL_SAFE) != 0) {
+                if (b == '-')
+                    b = '+';
+                else if (b == '_')
+                    b = '/';
+            }
+            cleaned[length++] = b;
+        }
+
+        byte[] data = cleaned;
+        if (length != cleaned.length) {
+            data = new byte[length];
+            System.arraycopy(cleaned, 0, data, 0, length);
+        }
+        return java.util.Base64.getDecoder().decode(pad(data));
+    }
+
+    private static byte[] pad(byte[] data) {
+        int missing = (4 - data.length % 4) % 4;
+        if (missing == 0 || missing == 3)
+            return data;
+
+        byte[] padded = new byte[data.length + missing];
+        System.arraycopy(data, 0, padded, 0, data.length);
+        for (int i=data.length; i<padded.length; i++) {
+            padded[i] = '=';
+        }
+        return padded;
+    }
+}
@@ -0,0 +1,162 @@
+package android.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM shim of android.util.LruCache, with the same eviction and callback behaviour.
+ */
+public class LruCache<K, V> {
+    private final LinkedHashMap<K, V> map;
+    private int size;
+    private int maxSize;
+    private int putCount;
+    private int evictionCount;
+    private int hitCount;
+    private int missCount;
+
+    public LruCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize <= 0");
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<>(0, 0.75f, true);
+    }
+
+    public final V get(K key) {
+        if (key == null)
+            throw new NullPointerException("key == null");
+
+        V mapValue;
+        synchronized (this) {
+            mapValue = map.get(key);
+            if (mapValue != null) {
+                hitCount++;
+                return mapValue;
+            }
+            missCount++;
+        }
+
+        V createdValue = create(key);
+        if (createdValue == null)
+            return null;
+
+        synchronized (this) {
+            mapValue = map.put(key, createdValue);
+            if (mapValue != null)
+                map.put(key, mapValue);
+            else
+                size += safeSizeOf(key, createdValue);
+        }
+
+        if (mapValue != null) {
+            entryRemoved(false, key, createdValue, mapValue);
+            return mapValue;
+        }
+        trimToSize(maxSize);
+        return createdValue;
+    }
+
+    public final V put(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException("key == null || value == null");
+
+        V previous;
+        synchronized (this) {
+            putCount++;
+            size += safeSizeOf(key, value);
+            previous = map.put(key, value);
+            if (previous != null)
+                size -= safeSizeOf(key, previous);
+        }
+
+        if (previous != null)
+            entryRemoved(false, key, previous, value);
+        trimToSize(maxSize);
+        return previous;
+    }
+
+    public void trimToSize(int maxSize) {
+        while (true) {
+            K key;
+            V value;
+            synchronized (this) {
+                if (size <= maxSize || map.isEmpty())
+                    break;
+
+                Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
+                key = toEvict.getKey();
+                value = toEvict.getValue();
+                map.remove(key);
+                size -= safeSizeOf(key, value);
+                evictionCount++;
+            }
+            entryRemoved(true, key, value, null);
+        }
+    }
+
+    public final V remove(K key) {
+        if (key == null)
+            throw new NullPointerException("key == null");
+
+        V previous;
+        synchronized (this) {
+            previous = map.remove(key);
+            if (previous != null)
+                size -= safeSizeOf(key, previous);
+        }
+
+        if (previous != null)
+            entryRemoved(false, key, previous, null);
+        return previous;
+    }
+
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {
+    }
+
+    protected V create(K key) {
+        return null;
+    }
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0)
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        return result;
+    }
+
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    public final void evictAll() {
+        trimToSize(-1);
+    }
+
+    public synchronized final int size() {
+        return size;
+    }
+
+    public synchronized final int maxSize() {
+        return maxSize;
+    }
+
+    public synchronized final int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized final int missCount() {
+        return missCount;
+    }
+
+    public synchronized final int putCount() {
+        return putCount;
+    }
+
+    public synchronized final int evictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized final Map<K, V> snapshot() {
+        return new LinkedHashMap<>(map);
+    }
+}
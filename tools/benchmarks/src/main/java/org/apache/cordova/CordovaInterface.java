@@ -0,0 +1,17 @@
+package org.apache.cordova;
+
+import android.app.Activity;
+import android.content.Context;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * JVM shim of the Cordova interface given to plugins, reduced to what the hive plugin uses.
+ */
+public interface CordovaInterface {
+    Activity getActivity();
+
+    Context getContext();
+
+    ExecutorService getThreadPool();
+}
@@ -0,0 +1,52 @@
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * JVM shim of the config.xml preferences. Names are case insensitive, as in Cordova.
+ */
+public class CordovaPreferences {
+    private final HashMap<String, String> prefs = new HashMap<>(20);
+
+    public void set(String name, String value) {
+        prefs.put(name.toLowerCase(Locale.ENGLISH), value);
+    }
+
+    public void set(String name, boolean value) {
+        set(name, String.valueOf(value));
+    }
+
+    public void set(String name, int value) {
+        set(name, String.valueOf(value));
+    }
+
+    public Map<String, String> getAll() {
+        return prefs;
+    }
+
+    public boolean contains(String name) {
+        return getString(name, null) != null;
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    public int getInteger(String name, int defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? Integer.decode(value) : defaultValue;
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? value : defaultValue;
+    }
+}
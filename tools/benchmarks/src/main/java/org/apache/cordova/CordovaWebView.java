@@ -0,0 +1,8 @@
+package org.apache.cordova;
+
+/**
+ * JVM shim of the Cordova web view, reduced to the result delivery used by CallbackContext.
+ */
+public interface CordovaWebView {
+    void sendPluginResult(PluginResult pluginResult, String callbackId);
+}
@@ -0,0 +1,54 @@
+package org.elastos.plugins.hive.benchmarks;
+
+import android.util.Base64;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64 encoding of file chunks sent to JS (reader_read) and decoding of chunks received from JS
+ * (writer_write), with the same calls and flags as the plugin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64ChunkBenchmark {
+    @Param({"4096", "65536", "1048576"})
+    public int chunkSize;
+
+    private byte[] buffer;
+    private String encodedChunk;
+
+    @Setup
+    public void setUp() {
+        // Read buffers are allocated with the requested size
+        buffer = new byte[chunkSize];
+        new Random(1).nextBytes(buffer);
+        encodedChunk = Base64.encodeToString(buffer, Base64.NO_WRAP);
+    }
+
+    @Benchmark
+    public String encodeChunk() {
+        return Base64.encodeToString(buffer, 0, chunkSize, Base64.NO_WRAP);
+    }
+
+    @Benchmark
+    public byte[] decodeChunk() {
+        return Base64.decode(encodedChunk, Base64.DEFAULT);
+    }
+}
@@ -0,0 +1,64 @@
+package org.elastos.plugins.hive.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.elastos.hive.files.FileInfo;
+import org.elastos.plugins.hive.HivePluginHelper;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the result of files_list: one plugin JSON object per FileInfo returned by the SDK.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileInfoBenchmark {
+    @Param({"10", "1000"})
+    public int entryCount;
+
+    private List<FileInfo> fileInfos;
+
+    /**
+     * File infos are read from node JSON responses, as the SDK does.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        fileInfos = new ArrayList<>();
+        for (int i=0; i<entryCount; i++) {
+            String json = "{\"type\":\"" + (i % 10 == 0 ? "folder" : "file") + "\",\"name\":\"entry-" + i + ".dat\","
+                    + "\"size\":" + (i * 1024L) + ",\"last_modify\":" + (1600000000L + i) + "}";
+            fileInfos.add(mapper.readValue(json, FileInfo.class));
+        }
+    }
+
+    @Benchmark
+    public JSONArray hiveFileInfoToPluginJson() throws JSONException {
+        JSONArray jsonArray = new JSONArray();
+        for (FileInfo info : fileInfos) {
+            jsonArray.put(HivePluginHelper.hiveFileInfoToPluginJson(info));
+        }
+        return jsonArray;
+    }
+}
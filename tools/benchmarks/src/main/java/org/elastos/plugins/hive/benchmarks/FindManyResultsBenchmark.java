@@ -0,0 +1,72 @@
+package org.elastos.plugins.hive.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.elastos.plugins.hive.HivePluginHelper;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the result of database_findMany from the documents returned by the SDK: the JSONArray result (default),
+ * the raw JSON string result (rawJsonResults option), and one conversion per document for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindManyResultsBenchmark {
+    @Param({"1", "50", "500"})
+    public int resultCount;
+
+    // Number of scalar fields in each document
+    @Param({"10", "100"})
+    public int docSize;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    private List<JsonNode> results;
+
+    @Setup
+    public void setUp() {
+        results = new ArrayList<>();
+        for (int i=0; i<resultCount; i++) {
+            results.add(HivePluginHelper.jsonObjectToJsonNode(TestDocuments.document(docSize, depth, i)));
+        }
+    }
+
+    @Benchmark
+    public JSONArray jsonNodesToJsonArray() {
+        return HivePluginHelper.jsonNodesToJsonArray(results);
+    }
+
+    @Benchmark
+    public String rawJsonString() {
+        return HivePluginHelper.jsonNodeToJsonString(results);
+    }
+
+    @Benchmark
+    public JSONArray perDocumentConversion() {
+        JSONArray documents = new JSONArray();
+        for (JsonNode result : results) {
+            documents.put(HivePluginHelper.jsonNodeToJsonObject(result));
+        }
+        return documents;
+    }
+}
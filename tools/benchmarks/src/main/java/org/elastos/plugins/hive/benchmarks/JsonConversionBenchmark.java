@@ -0,0 +1,62 @@
+package org.elastos.plugins.hive.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.elastos.plugins.hive.HivePluginHelper;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions of a single document between org.json (plugin arguments and results) and Jackson (hive SDK), done
+ * for every query, inserted document and found document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonConversionBenchmark {
+    // Number of scalar fields in the document
+    @Param({"10", "100", "1000"})
+    public int docSize;
+
+    @Param({"1", "4", "16"})
+    public int depth;
+
+    private JSONObject document;
+    private JsonNode documentNode;
+
+    @Setup
+    public void setUp() {
+        document = TestDocuments.document(docSize, depth, 1);
+        documentNode = HivePluginHelper.jsonObjectToJsonNode(document);
+    }
+
+    @Benchmark
+    public JsonNode jsonObjectToJsonNode() {
+        return HivePluginHelper.jsonObjectToJsonNode(document);
+    }
+
+    @Benchmark
+    public JSONObject jsonNodeToJsonObject() {
+        return HivePluginHelper.jsonNodeToJsonObject(documentNode);
+    }
+
+    @Benchmark
+    public Object jsonNodeToJsonValue() {
+        return HivePluginHelper.jsonNodeToJsonValue(documentNode);
+    }
+}
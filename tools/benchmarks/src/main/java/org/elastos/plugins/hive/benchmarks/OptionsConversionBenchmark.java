@@ -0,0 +1,64 @@
+package org.elastos.plugins.hive.benchmarks;
+
+import org.elastos.hive.database.FindOptions;
+import org.elastos.hive.database.Index;
+import org.elastos.plugins.hive.HivePluginHelper;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of find options (skip, limit, sort and projection) from plugin arguments to SDK options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionsConversionBenchmark {
+    // Number of sort fields, and of projected fields
+    @Param({"1", "4", "16"})
+    public int fieldCount;
+
+    private JSONObject sort;
+    private JSONObject findOptions;
+
+    @Setup
+    public void setUp() throws JSONException {
+        sort = new JSONObject();
+        JSONObject projection = new JSONObject();
+        for (int i=0; i<fieldCount; i++) {
+            sort.put("field" + i, i % 2 == 0 ? 1 : -1);
+            projection.put("field" + i, true);
+        }
+
+        findOptions = new JSONObject();
+        findOptions.put("skip", 20);
+        findOptions.put("limit", 10);
+        findOptions.put("sort", sort);
+        findOptions.put("projection", projection);
+    }
+
+    @Benchmark
+    public Index[] jsonSortFieldsToNative() throws JSONException {
+        return HivePluginHelper.jsonSortFieldsToNative(sort);
+    }
+
+    @Benchmark
+    public FindOptions jsonFindOptionsToNative() {
+        return HivePluginHelper.jsonFindOptionsToNative(findOptions);
+    }
+}
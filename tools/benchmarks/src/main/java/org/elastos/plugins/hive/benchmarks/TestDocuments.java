@@ -0,0 +1,69 @@
+package org.elastos.plugins.hive.benchmarks;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Generates documents shaped like app data: string, integer, decimal and boolean fields, a small array per level,
+ * and nested objects. The same size and depth always give the same document.
+ */
+public final class TestDocuments {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private TestDocuments() {
+    }
+
+    /**
+     * Document with about fieldCount scalar fields, spread over depth nesting levels.
+     */
+    public static JSONObject document(int fieldCount, int depth, long seed) {
+        try {
+            Random random = new Random(seed);
+            int fieldsPerLevel = Math.max(1, fieldCount / Math.max(1, depth));
+            return level(random, fieldsPerLevel, Math.max(1, depth));
+        }
+        catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JSONObject level(Random random, int fieldCount, int remainingDepth) throws JSONException {
+        JSONObject object = new JSONObject();
+        for (int i=0; i<fieldCount; i++) {
+            switch (i % 4) {
+                case 0:
+                    object.put("s" + i, randomString(random, 16));
+                    break;
+                case 1:
+                    object.put("n" + i, random.nextInt(1000000));
+                    break;
+                case 2:
+                    object.put("d" + i, random.nextDouble() * 1000);
+                    break;
+                default:
+                    object.put("b" + i, random.nextBoolean());
+            }
+        }
+
+        JSONArray tags = new JSONArray();
+        for (int i=0; i<3; i++) {
+            tags.put(randomString(random, 8));
+        }
+        object.put("tags", tags);
+
+        if (remainingDepth > 1)
+            object.put("child", level(random, fieldCount, remainingDepth - 1));
+        return object;
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i=0; i<length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package org.elastos.plugins.hive.harness;
+
+import android.util.Base64;
+
+import org.elastos.plugins.hive.benchmarks.TestDocuments;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Weighted mixes of app-like operations: database CRUD, file streaming (upload by chunks, download by chunks)
+ * and scripting calls. An operation is one or several plugin calls, recorded as a whole under "op:<name>".
+ */
+public class ActionMix {
+    public interface Operation {
+        CompletableFuture<?> run(CallRecorder recorder, Random random);
+    }
+
+    public static class Settings {
+        String collection = "harness_documents";
+        String folder = "harness";
+        int documentCount = 1000;
+        int docSize = 20;
+        int depth = 2;
+        int fileSize = 256 * 1024;
+        int chunkSize = 64 * 1024;
+    }
+
+    private static class WeightedOperation {
+        final String name;
+        final int weight;
+        final Operation operation;
+
+        WeightedOperation(String name, int weight, Operation operation) {
+            this.name = name;
+            this.weight = weight;
+            this.operation = operation;
+        }
+    }
+
+    private static final long SETUP_TIMEOUT_MS = 120000;
+    private static final String FIND_SCRIPT = "harness_find";
+    private static final String INSERT_SCRIPT = "harness_insert";
+
+    private final String vaultId;
+    private final Settings settings;
+    private final List<WeightedOperation> operations = new ArrayList<>();
+    private int totalWeight = 0;
+
+    private ActionMix(String vaultId, Settings settings) {
+        this.vaultId = vaultId;
+        this.settings = settings;
+    }
+
+    /**
+     * Mix by name: crud, files, scripting or all.
+     */
+    public static ActionMix create(String name, String vaultId, Settings settings) {
+        ActionMix mix = new ActionMix(vaultId, settings);
+        boolean all = name.equals("all");
+        if (all || name.equals("crud"))
+            mix.addCrudOperations();
+        if (all || name.equals("files"))
+            mix.addFileOperations();
+        if (all || name.equals("scripting"))
+            mix.addScriptingOperations();
+        if (mix.operations.isEmpty())
+            throw new IllegalArgumentException("Unknown mix " + name + ", expected crud, files, scripting or all");
+        return mix;
+    }
+
+    /**
+     * Creates the collection, documents, file and scripts used by the operations of this mix.
+     */
+    public void prepare(PluginHarness harness) throws ExecutionException, InterruptedException, TimeoutException, JSONException {
+        // The collection may exist from a previous run
+        harness.call("database_createCollection", vaultId, settings.collection, null).get(SETUP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        JSONArray batch = new JSONArray();
+        for (int key=0; key<settings.documentCount; key++) {
+            batch.put(document(key));
+            if (batch.length() == 100 || key == settings.documentCount - 1) {
+                harness.callAndWait(SETUP_TIMEOUT_MS, "database_insertMany", vaultId, settings.collection, batch, null);
+                batch = new JSONArray();
+            }
+        }
+
+        if (hasOperation("files:download")) {
+            String writerId = harness.callAndWait(SETUP_TIMEOUT_MS, "files_upload", vaultId, seedFilePath(), null).getJsonObject().getString("objectId");
+            byte[] content = new byte[settings.fileSize];
+            new Random(1).nextBytes(content);
+            for (int offset=0; offset<content.length; offset+=settings.chunkSize) {
+                int length = Math.min(settings.chunkSize, content.length - offset);
+                harness.callAndWait(SETUP_TIMEOUT_MS, "writer_write", writerId, Base64.encodeToString(content, offset, length, Base64.NO_WRAP));
+            }
+            harness.callAndWait(SETUP_TIMEOUT_MS, "writer_close", writerId);
+        }
+
+        if (hasOperation("scripting:callFind")) {
+            JSONObject find = new JSONObject("{\"type\":\"find\",\"name\":\"found\",\"output\":true,\"body\":{\"collection\":\"" + settings.collection + "\",\"filter\":{\"key\":\"$params.key\"}}}");
+            harness.callAndWait(SETUP_TIMEOUT_MS, "scripting_setScript", vaultId, FIND_SCRIPT, find, null, false, false);
+            JSONObject insert = new JSONObject("{\"type\":\"insert\",\"name\":\"inserted\",\"output\":true,\"body\":{\"collection\":\"" + settings.collection + "\",\"document\":{\"key\":\"$params.key\",\"value\":\"$params.value\"}}}");
+            harness.callAndWait(SETUP_TIMEOUT_MS, "scripting_setScript", vaultId, INSERT_SCRIPT, insert, null, false, false);
+        }
+    }
+
+    /**
+     * Picks an operation according to the weights.
+     */
+    public String pick(Random random) {
+        int r = random.nextInt(totalWeight);
+        for (WeightedOperation operation : operations) {
+            r -= operation.weight;
+            if (r < 0)
+                return operation.name;
+        }
+        return operations.get(operations.size() - 1).name;
+    }
+
+    public Operation get(String name) {
+        for (WeightedOperation operation : operations) {
+            if (operation.name.equals(name))
+                return operation.operation;
+        }
+        throw new IllegalArgumentException("Unknown operation " + name);
+    }
+
+    private boolean hasOperation(String name) {
+        for (WeightedOperation operation : operations) {
+            if (operation.name.equals(name))
+                return true;
+        }
+        return false;
+    }
+
+    private void add(String name, int weight, Operation operation) {
+        operations.add(new WeightedOperation(name, weight, operation));
+        totalWeight += weight;
+    }
+
+    private void addCrudOperations() {
+        add("crud:insertOne", 20, (recorder, random) ->
+                recorder.call("database_insertOne", vaultId, settings.collection, document(settings.documentCount + random.nextInt(settings.documentCount)), null));
+        add("crud:findOne", 25, (recorder, random) ->
+                recorder.call("database_findOne", vaultId, settings.collection, keyFilter(random.nextInt(settings.documentCount)), null));
+        add("crud:findMany", 25, (recorder, random) -> {
+            int from = random.nextInt(settings.documentCount);
+            return recorder.call("database_findMany", vaultId, settings.collection, json("{\"key\":{\"$gte\":" + from + ",\"$lt\":" + (from + 20) + "}}"), json("{\"limit\":20}"));
+        });
+        add("crud:updateOne", 15, (recorder, random) ->
+                recorder.call("database_updateOne", vaultId, settings.collection, keyFilter(random.nextInt(settings.documentCount)),
+                        json("{\"$set\":{\"updatedAt\":" + System.currentTimeMillis() + "}}"), null));
+        add("crud:countDocuments", 10, (recorder, random) ->
+                recorder.call("database_countDocuments", vaultId, settings.collection, json("{\"key\":{\"$gte\":" + random.nextInt(settings.documentCount) + "}}"), null));
+        // Only deletes inserted documents, so that lookups keep finding the prepared ones
+        add("crud:deleteOne", 5, (recorder, random) ->
+                recorder.call("database_deleteOne", vaultId, settings.collection, keyFilter(settings.documentCount + random.nextInt(settings.documentCount)), null));
+    }
+
+    private void addFileOperations() {
+        add("files:upload", 40, (recorder, random) -> {
+            byte[] chunk = new byte[settings.chunkSize];
+            random.nextBytes(chunk);
+            String encodedChunk = Base64.encodeToString(chunk, Base64.NO_WRAP);
+            String path = settings.folder + "/upload-" + random.nextInt(100) + ".bin";
+            return recorder.call("files_upload", vaultId, path, null).thenCompose(writer -> {
+                String writerId = objectId(writer);
+                CompletableFuture<CapturedResult> writes = CompletableFuture.completedFuture(null);
+                for (int written=0; written<settings.fileSize; written+=settings.chunkSize) {
+                    writes = writes.thenCompose(v -> recorder.call("writer_write", writerId, encodedChunk));
+                }
+                return writes.thenCompose(v -> recorder.call("writer_close", writerId));
+            });
+        });
+        add("files:download", 50, (recorder, random) ->
+                recorder.call("files_download", vaultId, seedFilePath(), null).thenCompose(reader -> readAll(recorder, objectId(reader))));
+        add("files:list", 10, (recorder, random) ->
+                recorder.call("files_list", vaultId, settings.folder));
+    }
+
+    private CompletableFuture<CapturedResult> readAll(CallRecorder recorder, String readerId) {
+        return recorder.call("reader_read", readerId, settings.chunkSize).thenCompose(chunk -> {
+            if (chunk.getMessage().equals("null"))
+                return recorder.call("reader_close", readerId);
+            return readAll(recorder, readerId);
+        });
+    }
+
+    private void addScriptingOperations() {
+        add("scripting:callFind", 70, (recorder, random) ->
+                recorder.call("scripting_call", vaultId, FIND_SCRIPT, json("{\"key\":" + random.nextInt(settings.documentCount) + "}"), null, json("{\"readOnly\":true}")));
+        add("scripting:callInsert", 30, (recorder, random) ->
+                recorder.call("scripting_call", vaultId, INSERT_SCRIPT, json("{\"key\":" + (settings.documentCount + random.nextInt(settings.documentCount)) + ",\"value\":\"v\"}"), null, null));
+    }
+
+    private JSONObject document(int key) {
+        JSONObject document = TestDocuments.document(settings.docSize, settings.depth, key);
+        try {
+            document.put("key", key);
+        }
+        catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return document;
+    }
+
+    private String seedFilePath() {
+        return settings.folder + "/seed.bin";
+    }
+
+    private static JSONObject keyFilter(int key) {
+        return json("{\"key\":" + key + "}");
+    }
+
+    private static JSONObject json(String json) {
+        try {
+            return new JSONObject(json);
+        }
+        catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static String objectId(CapturedResult result) {
+        try {
+            return result.getJsonObject().getString("objectId");
+        }
+        catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.elastos.plugins.hive.harness;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers the auth challenges of the hive SDK, as the app's authenticationHandler does in JS.
+ */
+public interface AuthResponder {
+    /**
+     * Returns the challenge response JWT for the given challenge JWT.
+     */
+    String respond(String challengeJwt) throws Exception;
+
+    /**
+     * Runs a shell command for each challenge: the challenge JWT is written to its standard input and the response
+     * JWT is read from its standard output.
+     */
+    static AuthResponder command(String command, long timeoutMs) {
+        return challengeJwt -> {
+            Process process = new ProcessBuilder("sh", "-c", command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            try (OutputStream in = process.getOutputStream()) {
+                in.write(challengeJwt.getBytes(StandardCharsets.UTF_8));
+            }
+
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            try (InputStream out = process.getInputStream()) {
+                out.transferTo(response);
+            }
+            if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("Auth responder timed out");
+            }
+            if (process.exitValue() != 0)
+                throw new IOException("Auth responder exited with status " + process.exitValue());
+            return response.toString(StandardCharsets.UTF_8).trim();
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package org.elastos.plugins.hive.harness;
+
+import org.elastos.plugins.hive.metrics.LatencyHistogram;
+import org.json.JSONArray;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls plugin actions through the harness and records their latency and errors, by action.
+ */
+public class CallRecorder {
+    public static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong(0);
+        volatile String lastError = null;
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+    }
+
+    private final PluginHarness harness;
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+    private volatile boolean recording = true;
+
+    public CallRecorder(PluginHarness harness) {
+        this.harness = harness;
+    }
+
+    /**
+     * Calls an action. The returned future fails if the plugin returns an error.
+     */
+    public CompletableFuture<CapturedResult> call(String action, Object... args) {
+        JSONArray jsonArgs = PluginHarness.toJsonArray(args);
+        return harness.call(action, jsonArgs, null).thenApply(result -> {
+            record(action, result.getDurationNanos(), result.isOk() ? null : result.getMessage());
+            if (!result.isOk())
+                throw new CompletionException(new IllegalStateException(action + " failed: " + result.getMessage()));
+            return result;
+        });
+    }
+
+    /**
+     * Records a composite operation (several calls), under its own name.
+     */
+    public void record(String name, long durationNanos, String error) {
+        if (!recording)
+            return;
+
+        Stats actionStats = stats.computeIfAbsent(name, k -> new Stats());
+        if (error != null) {
+            actionStats.errors.incrementAndGet();
+            actionStats.lastError = error;
+        }
+        else {
+            actionStats.latency.recordNanos(durationNanos);
+        }
+    }
+
+    /**
+     * Warm-up calls are not recorded.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    public Map<String, Stats> getStats() {
+        return new TreeMap<>(stats);
+    }
+}
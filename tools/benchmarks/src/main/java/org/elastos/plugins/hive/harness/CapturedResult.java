@@ -0,0 +1,75 @@
+package org.elastos.plugins.hive.harness;
+
+import android.util.Base64;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * A plugin result captured by the harness, with the time elapsed since the call started.
+ */
+public class CapturedResult {
+    private final int status;
+    private final int messageType;
+    private final String message;
+    private final String strMessage;
+    private final long durationNanos;
+
+    CapturedResult(PluginResult pluginResult, long durationNanos) {
+        this.status = pluginResult.getStatus();
+        this.messageType = pluginResult.getMessageType();
+        this.message = pluginResult.getMessage();
+        this.strMessage = pluginResult.getStrMessage();
+        this.durationNanos = durationNanos;
+    }
+
+    public boolean isOk() {
+        return status == PluginResult.Status.OK.ordinal();
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Message as sent to the web view (JSON text, quoted string...).
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Message decoded as JS would receive it: JSONObject, JSONArray, String, Number, Boolean, byte[] or null.
+     */
+    public Object getValue() throws JSONException {
+        switch (messageType) {
+            case PluginResult.MESSAGE_TYPE_STRING:
+                return strMessage;
+            case PluginResult.MESSAGE_TYPE_ARRAYBUFFER:
+            case PluginResult.MESSAGE_TYPE_BINARYSTRING:
+                return Base64.decode(message, Base64.DEFAULT);
+            case PluginResult.MESSAGE_TYPE_NULL:
+                return null;
+            default:
+                return new JSONTokener(message).nextValue();
+        }
+    }
+
+    public JSONObject getJsonObject() throws JSONException {
+        Object value = getValue();
+        if (!(value instanceof JSONObject))
+            throw new JSONException("Expected a JSON object result, got " + message);
+        return (JSONObject) value;
+    }
+
+    @Override
+    public String toString() {
+        return (isOk() ? "OK " : "ERROR ") + message;
+    }
+}
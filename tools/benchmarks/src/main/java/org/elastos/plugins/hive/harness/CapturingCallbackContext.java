@@ -0,0 +1,44 @@
+package org.elastos.plugins.hive.harness;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Fake callback context capturing the results sent by the plugin. Results sent with keepCallback (ex: auth
+ * challenges) go to a listener, the final result completes the future.
+ */
+public class CapturingCallbackContext extends CallbackContext {
+    private final long startNanos = System.nanoTime();
+    private final CompletableFuture<CapturedResult> result = new CompletableFuture<>();
+    private final Consumer<CapturedResult> keptResultListener;
+
+    public CapturingCallbackContext(String callbackId, Consumer<CapturedResult> keptResultListener) {
+        super(callbackId, null);
+        this.keptResultListener = keptResultListener;
+    }
+
+    public CompletableFuture<CapturedResult> getResult() {
+        return result;
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        CapturedResult captured = new CapturedResult(pluginResult, System.nanoTime() - startNanos);
+        synchronized (this) {
+            if (finished)
+                return;
+            finished = !pluginResult.getKeepCallback();
+        }
+
+        if (pluginResult.getKeepCallback()) {
+            if (keptResultListener != null)
+                keptResultListener.accept(captured);
+        }
+        else {
+            result.complete(captured);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.elastos.plugins.hive.harness;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Activity of the harness: app files and cache directories under a data directory, and assets read from an
+ * optional directory.
+ */
+public class HarnessActivity extends Activity {
+    private final File filesDir;
+    private final File cacheDir;
+    private final AssetManager assets;
+
+    public HarnessActivity(File dataDir, File assetsDir) {
+        this.filesDir = new File(dataDir, "files");
+        this.cacheDir = new File(dataDir, "cache");
+        filesDir.mkdirs();
+        cacheDir.mkdirs();
+
+        this.assets = new AssetManager() {
+            @Override
+            public InputStream open(String fileName) throws IOException {
+                if (assetsDir == null)
+                    throw new FileNotFoundException(fileName);
+                return new FileInputStream(new File(assetsDir, fileName));
+            }
+        };
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    @Override
+    public AssetManager getAssets() {
+        return assets;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+}
@@ -0,0 +1,40 @@
+package org.elastos.plugins.hive.harness;
+
+import android.app.Activity;
+import android.content.Context;
+
+import org.apache.cordova.CordovaInterface;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cordova interface of the harness. Like Cordova, plugins get a cached thread pool for their background work.
+ */
+public class HarnessCordova implements CordovaInterface {
+    private final Activity activity;
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+
+    public HarnessCordova(Activity activity) {
+        this.activity = activity;
+    }
+
+    @Override
+    public Activity getActivity() {
+        return activity;
+    }
+
+    @Override
+    public Context getContext() {
+        return activity;
+    }
+
+    @Override
+    public ExecutorService getThreadPool() {
+        return threadPool;
+    }
+
+    public void shutdown() {
+        threadPool.shutdownNow();
+    }
+}
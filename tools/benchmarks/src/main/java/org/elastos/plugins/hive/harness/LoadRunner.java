@@ -0,0 +1,307 @@
+package org.elastos.plugins.hive.harness;
+
+import org.apache.cordova.CordovaPreferences;
+import org.elastos.plugins.hive.standin.StandInNode;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the hive plugin on a plain JVM: opens a vault through the plugin actions, runs a mix of operations
+ * from concurrent workers for a given duration, and reports calls per second and latency percentiles by action.
+ * With --replay, a workload captured on a device is replayed through the replayWorkload action instead of the mix.
+ *
+ * java -cp target/benchmarks.jar org.elastos.plugins.hive.harness.LoadRunner --help
+ */
+public class LoadRunner {
+    // Replays last as long as the captured workload, divided by the speed factor
+    private static final long REPLAY_TIMEOUT_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -cp target/benchmarks.jar org.elastos.plugins.hive.harness.LoadRunner [options]",
+            "  --standin <url|local>        Stand-in node (tools/standin-node) to run against, 'local' to start one in",
+            "                               this JVM. Node, resolver, owner, app instance and auth responder default",
+            "                               to the ones of the stand-in node",
+            "  --owner-did <did>            Vault owner (required without --standin)",
+            "  --app-instance-doc <file>    DID document of the app instance, for the SDK sign in (required without",
+            "                               --standin)",
+            "  --auth-responder <command>   Shell command answering auth challenges: challenge JWT on stdin,",
+            "                               response JWT on stdout (required without --standin)",
+            "  --node <url>                 Vault provider address, instead of the one published by the owner",
+            "  --resolver <url>             DID resolver",
+            "  --mix <name>                 crud, files, scripting or all (default all)",
+            "  --concurrency <n>            Concurrent workers, each running one operation at a time (default 4)",
+            "  --duration-s <s>             Measured duration (default 30)",
+            "  --warmup-s <s>               Unmeasured run before the measured one (default 5)",
+            "  --documents <n>              Prepared documents (default 1000)",
+            "  --doc-size <n>               Scalar fields per document (default 20)",
+            "  --depth <n>                  Nesting levels per document (default 2)",
+            "  --file-size <bytes>          Uploaded and downloaded file size (default 262144)",
+            "  --chunk-size <bytes>         Read and write chunk size (default 65536)",
+            "  --options <json>             Plugin options, passed to setOptions()",
+            "  --preference <name=value>    config.xml preference, can be repeated",
+            "  --data-dir <dir>             App data directory (default: a new temporary directory)",
+            "  --assets-dir <dir>           App assets directory",
+            "  --replay <file>              Replay a capture file (capture plugin option) instead of running a mix",
+            "  --replay-speed <x>           Replay speed factor, 0 to start all calls at once (default 1)",
+            "  --replay-writes              Also replay calls modifying the vault, with synthetic data",
+            "  --json <file>                Also write the report, with the plugin metrics, as JSON",
+            "  --skip-prepare               Don't create the collection, documents, file and scripts");
+
+    public static void main(String[] args) throws Exception {
+        String standIn = null;
+        String ownerDid = null;
+        String appInstanceDocPath = null;
+        String authResponderCommand = null;
+        String node = null;
+        String resolver = null;
+        String mixName = "all";
+        int concurrency = 4;
+        int durationSeconds = 30;
+        int warmupSeconds = 5;
+        String pluginOptions = null;
+        File dataDir = null;
+        File assetsDir = null;
+        File jsonReport = null;
+        File replayFile = null;
+        double replaySpeed = 1;
+        boolean replayWrites = false;
+        boolean prepare = true;
+        ActionMix.Settings settings = new ActionMix.Settings();
+        CordovaPreferences preferences = new CordovaPreferences();
+
+        try {
+            for (int i=0; i<args.length; i++) {
+                switch (args[i]) {
+                    case "--standin": standIn = args[++i]; break;
+                    case "--owner-did": ownerDid = args[++i]; break;
+                    case "--app-instance-doc": appInstanceDocPath = args[++i]; break;
+                    case "--auth-responder": authResponderCommand = args[++i]; break;
+                    case "--node": node = args[++i]; break;
+                    case "--resolver": resolver = args[++i]; break;
+                    case "--mix": mixName = args[++i]; break;
+                    case "--concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                    case "--duration-s": durationSeconds = Integer.parseInt(args[++i]); break;
+                    case "--warmup-s": warmupSeconds = Integer.parseInt(args[++i]); break;
+                    case "--documents": settings.documentCount = Integer.parseInt(args[++i]); break;
+                    case "--doc-size": settings.docSize = Integer.parseInt(args[++i]); break;
+                    case "--depth": settings.depth = Integer.parseInt(args[++i]); break;
+                    case "--file-size": settings.fileSize = Integer.parseInt(args[++i]); break;
+                    case "--chunk-size": settings.chunkSize = Integer.parseInt(args[++i]); break;
+                    case "--options": pluginOptions = args[++i]; break;
+                    case "--preference": {
+                        String preference = args[++i];
+                        int separator = preference.indexOf('=');
+                        if (separator <= 0)
+                            throw new IllegalArgumentException("Invalid preference " + preference + ", expected name=value");
+                        preferences.set(preference.substring(0, separator), preference.substring(separator + 1));
+                        break;
+                    }
+                    case "--data-dir": dataDir = new File(args[++i]); break;
+                    case "--assets-dir": assetsDir = new File(args[++i]); break;
+                    case "--replay": replayFile = new File(args[++i]); break;
+                    case "--replay-speed": replaySpeed = Double.parseDouble(args[++i]); break;
+                    case "--replay-writes": replayWrites = true; break;
+                    case "--json": jsonReport = new File(args[++i]); break;
+                    case "--skip-prepare": prepare = false; break;
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (standIn == null && (ownerDid == null || appInstanceDocPath == null || authResponderCommand == null))
+                throw new IllegalArgumentException("--owner-did, --app-instance-doc and --auth-responder are required without --standin");
+            if (replayFile != null && !replayFile.isFile())
+                throw new IllegalArgumentException("Capture file " + replayFile + " not found");
+            if (concurrency < 1 || durationSeconds < 1 || warmupSeconds < 0 || settings.documentCount < 1 || settings.chunkSize < 1 || replaySpeed < 0)
+                throw new IllegalArgumentException("Invalid option value");
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (dataDir == null)
+            dataDir = Files.createTempDirectory("hive-plugin-harness").toFile();
+
+        StandInNode localNode = null;
+        String appInstanceDoc = null;
+        AuthResponder responder = null;
+        if (standIn != null) {
+            String standInUrl = standIn;
+            if (standIn.equals("local")) {
+                localNode = new StandInNode(new StandInNode.Config().setPort(0));
+                localNode.start();
+                standInUrl = localNode.getUrl();
+                System.out.println("Local stand-in node: " + standInUrl);
+            }
+            StandInSignIn signIn = StandInSignIn.fetch(standInUrl);
+            node = node != null ? node : standInUrl;
+            resolver = resolver != null ? resolver : signIn.getResolverUrl();
+            ownerDid = ownerDid != null ? ownerDid : signIn.getUserDid();
+            appInstanceDoc = signIn.getAppInstanceDocument();
+            responder = signIn.responder();
+        }
+        if (appInstanceDocPath != null)
+            appInstanceDoc = new String(Files.readAllBytes(new File(appInstanceDocPath).toPath()), StandardCharsets.UTF_8);
+        if (authResponderCommand != null)
+            responder = AuthResponder.command(authResponderCommand, 60000);
+
+        try (PluginHarness harness = new PluginHarness(dataDir, assetsDir, preferences);
+             VaultSession session = new VaultSession(harness)) {
+            if (pluginOptions != null)
+                harness.callAndWait(10000, "setOptions", new JSONObject(pluginOptions));
+
+            session.open(resolver, appInstanceDoc, ownerDid, node, responder);
+            if (replayFile != null) {
+                replay(harness, session, replayFile, replaySpeed, replayWrites, jsonReport);
+            }
+            else {
+                ActionMix mix = ActionMix.create(mixName, session.getVaultId(), settings);
+                if (prepare)
+                    mix.prepare(harness);
+
+                CallRecorder recorder = new CallRecorder(harness);
+                if (warmupSeconds > 0) {
+                    recorder.setRecording(false);
+                    run(mix, recorder, concurrency, warmupSeconds);
+                    recorder.setRecording(true);
+                }
+                long elapsedNanos = run(mix, recorder, concurrency, durationSeconds);
+
+                printReport(recorder.getStats(), elapsedNanos);
+                if (jsonReport != null) {
+                    JSONObject report = toJson(recorder.getStats(), elapsedNanos, mixName, concurrency);
+                    report.put("pluginMetrics", harness.callAndWait(10000, "getMetrics").getValue());
+                    Files.write(jsonReport.toPath(), report.toString(2).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        finally {
+            if (localNode != null)
+                localNode.stop();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Replays a capture file against the vault of the session. Calls are made by the plugin, so the report is the
+     * replay result: calls per second and latency percentiles by action.
+     */
+    private static void replay(PluginHarness harness, VaultSession session, File replayFile, double speed, boolean allowWrites, File jsonReport) throws Exception {
+        JSONObject options = new JSONObject();
+        options.put("speed", speed);
+        options.put("allowWrites", allowWrites);
+        JSONObject result = harness.callAndWait(REPLAY_TIMEOUT_MS, "replayWorkload", replayFile.getAbsolutePath(), session.getVaultId(), options).getJsonObject();
+
+        System.out.println(String.format("Replayed %d of %d calls (%d skipped, %d writes skipped) in %d ms, %.1f calls/s, %d errors",
+                result.getLong("calls"), result.getLong("events"), result.getLong("skipped"), result.getLong("skippedWrites"),
+                result.getLong("durationMs"), result.getDouble("callsPerSecond"), result.getLong("errors")));
+        System.out.println(String.format("%-36s %9s %7s %9s %9s %9s %9s", "action", "calls", "errors", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        JSONObject actions = result.getJSONObject("actions");
+        for (Iterator<String> it = actions.keys(); it.hasNext(); ) {
+            String action = it.next();
+            JSONObject actionJson = actions.getJSONObject(action);
+            JSONObject latency = actionJson.getJSONObject("latencyMs");
+            System.out.println(String.format("%-36s %9d %7d %9.2f %9.2f %9.2f %9.2f", action, actionJson.getLong("calls"), actionJson.getLong("errors"),
+                    latency.getDouble("p50"), latency.getDouble("p95"), latency.getDouble("p99"), latency.getDouble("max")));
+        }
+
+        if (jsonReport != null) {
+            JSONObject report = new JSONObject();
+            report.put("replay", result);
+            report.put("pluginMetrics", harness.callAndWait(10000, "getMetrics").getValue());
+            Files.write(jsonReport.toPath(), report.toString(2).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Runs operations from concurrent workers until the duration is over, and returns the elapsed time.
+     */
+    private static long run(ActionMix mix, CallRecorder recorder, int concurrency, int durationSeconds) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        // Next operations are started from this executor, so that operations failing at once don't recurse
+        ExecutorService loop = Executors.newSingleThreadExecutor(r -> new Thread(r, "harness-loop"));
+        for (int i=0; i<concurrency; i++) {
+            Random random = new Random(i);
+            loop.execute(() -> runNext(mix, recorder, random, endNanos, done, loop));
+        }
+
+        done.await();
+        loop.shutdown();
+        return System.nanoTime() - startNanos;
+    }
+
+    private static void runNext(ActionMix mix, CallRecorder recorder, Random random, long endNanos, CountDownLatch done, ExecutorService loop) {
+        if (System.nanoTime() >= endNanos) {
+            done.countDown();
+            return;
+        }
+
+        String name = mix.pick(random);
+        long startNanos = System.nanoTime();
+        try {
+            mix.get(name).run(recorder, random).whenComplete((result, e) -> {
+                recorder.record("op:" + name, System.nanoTime() - startNanos, e == null ? null : String.valueOf(e.getCause() != null ? e.getCause().getMessage() : e));
+                loop.execute(() -> runNext(mix, recorder, random, endNanos, done, loop));
+            });
+        }
+        catch (RuntimeException e) {
+            recorder.record("op:" + name, System.nanoTime() - startNanos, e.toString());
+            loop.execute(() -> runNext(mix, recorder, random, endNanos, done, loop));
+        }
+    }
+
+    private static void printReport(Map<String, CallRecorder.Stats> stats, long elapsedNanos) throws JSONException {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format("%-36s %9s %7s %9s %9s %9s %9s %9s", "action", "calls", "errors", "calls/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, CallRecorder.Stats> entry : stats.entrySet()) {
+            CallRecorder.Stats actionStats = entry.getValue();
+            JSONObject latency = actionStats.getLatency().toJson();
+            long calls = actionStats.getLatency().getCount();
+            System.out.println(String.format("%-36s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f", entry.getKey(), calls, actionStats.getErrors(), calls / seconds,
+                    latency.getDouble("p50"), latency.getDouble("p95"), latency.getDouble("p99"), latency.getDouble("max")));
+        }
+
+        for (Map.Entry<String, CallRecorder.Stats> entry : stats.entrySet()) {
+            if (entry.getValue().getLastError() != null)
+                System.out.println("Last error of " + entry.getKey() + ": " + entry.getValue().getLastError());
+        }
+    }
+
+    private static JSONObject toJson(Map<String, CallRecorder.Stats> stats, long elapsedNanos, String mixName, int concurrency) throws JSONException {
+        double seconds = elapsedNanos / 1e9;
+        JSONObject actions = new JSONObject();
+        for (Map.Entry<String, CallRecorder.Stats> entry : stats.entrySet()) {
+            JSONObject json = entry.getValue().getLatency().toJson();
+            json.put("errors", entry.getValue().getErrors());
+            json.put("callsPerSecond", entry.getValue().getLatency().getCount() / seconds);
+            if (entry.getValue().getLastError() != null)
+                json.put("lastError", entry.getValue().getLastError());
+            actions.put(entry.getKey(), json);
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("mix", mixName);
+        report.put("concurrency", concurrency);
+        report.put("durationMs", elapsedNanos / 1000000);
+        report.put("actions", actions);
+        return report;
+    }
+}
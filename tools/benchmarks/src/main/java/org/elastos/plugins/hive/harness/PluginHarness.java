@@ -0,0 +1,89 @@
+package org.elastos.plugins.hive.harness;
+
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.PluginResult;
+import org.elastos.plugins.hive.HivePlugin;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs the hive plugin on a plain JVM, with stub Cordova and android classes. Calls are executed on a single
+ * bridge thread, as Cordova does, and their results are captured.
+ */
+public class PluginHarness implements AutoCloseable {
+    private final HivePlugin plugin = new HivePlugin();
+    private final HarnessCordova cordova;
+    private final ExecutorService bridge = Executors.newSingleThreadExecutor(r -> new Thread(r, "harness-bridge"));
+    private final AtomicLong nextCallbackId = new AtomicLong(1);
+
+    public PluginHarness(File dataDir, File assetsDir, CordovaPreferences preferences) {
+        cordova = new HarnessCordova(new HarnessActivity(dataDir, assetsDir));
+        plugin.privateInitialize("HivePlugin", cordova, null, preferences);
+    }
+
+    /**
+     * Calls a plugin action. Errors thrown by the action are reported like Cordova's plugin manager does.
+     */
+    public CompletableFuture<CapturedResult> call(String action, JSONArray args, Consumer<CapturedResult> keptResultListener) {
+        CapturingCallbackContext callbackContext = new CapturingCallbackContext("HivePlugin" + nextCallbackId.getAndIncrement(), keptResultListener);
+        bridge.execute(() -> {
+            try {
+                if (!plugin.execute(action, args, callbackContext))
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION));
+            }
+            catch (JSONException e) {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+            }
+            catch (Exception e) {
+                callbackContext.error(e.getMessage());
+            }
+        });
+        return callbackContext.getResult();
+    }
+
+    public CompletableFuture<CapturedResult> call(String action, Object... args) {
+        return call(action, toJsonArray(args), null);
+    }
+
+    /**
+     * Calls an action and waits for its result. Throws an ExecutionException if the result is an error.
+     */
+    public CapturedResult callAndWait(long timeoutMs, String action, Object... args) throws ExecutionException, InterruptedException, TimeoutException {
+        CapturedResult result = call(action, args).get(timeoutMs, TimeUnit.MILLISECONDS);
+        if (!result.isOk())
+            throw new ExecutionException(new IllegalStateException(action + " failed: " + result.getMessage()));
+        return result;
+    }
+
+    static JSONArray toJsonArray(Object... args) {
+        JSONArray array = new JSONArray();
+        for (Object arg : args) {
+            array.put(arg == null ? JSONObject.NULL : arg);
+        }
+        return array;
+    }
+
+    @Override
+    public void close() {
+        bridge.execute(plugin::onDestroy);
+        bridge.shutdown();
+        try {
+            bridge.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cordova.shutdown();
+    }
+}
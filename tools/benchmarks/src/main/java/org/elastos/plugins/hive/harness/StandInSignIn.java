@@ -0,0 +1,76 @@
+package org.elastos.plugins.hive.harness;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sign in with the test identities of a stand-in node (tools/standin-node): the node publishes its DID through
+ * its own DID resolver, provides the document of a test app instance, and answers the auth challenges for it.
+ */
+public class StandInSignIn {
+    private final String nodeUrl;
+    private final String resolverUrl;
+    private final String userDid;
+    private final String appInstanceDocument;
+
+    private StandInSignIn(String nodeUrl, JSONObject identities) throws JSONException {
+        this.nodeUrl = nodeUrl;
+        this.resolverUrl = identities.getString("resolver");
+        this.userDid = identities.getString("userDid");
+        this.appInstanceDocument = identities.getJSONObject("appInstanceDocument").toString();
+    }
+
+    public static StandInSignIn fetch(String nodeUrl) throws IOException, JSONException {
+        return new StandInSignIn(nodeUrl, request(nodeUrl + "/standin/identities", null));
+    }
+
+    public String getResolverUrl() {
+        return resolverUrl;
+    }
+
+    /**
+     * Test vault owner.
+     */
+    public String getUserDid() {
+        return userDid;
+    }
+
+    public String getAppInstanceDocument() {
+        return appInstanceDocument;
+    }
+
+    public AuthResponder responder() {
+        return challengeJwt -> request(nodeUrl + "/standin/challenge-response", new JSONObject().put("challenge", challengeJwt)).getString("jwt");
+    }
+
+    private static JSONObject request(String url, JSONObject body) throws IOException, JSONException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            if (body != null) {
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                String response = in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : "";
+                if (status >= 400)
+                    throw new IOException("Stand-in node request " + url + " failed with status " + status + ": " + response);
+                return new JSONObject(response);
+            }
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.elastos.plugins.hive.harness;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Client and vault opened through the plugin actions, in the same order as the JS API: getClient(), auth
+ * challenge callback, optional vault address override, then getVault().
+ */
+public class VaultSession implements AutoCloseable {
+    private static final long SETUP_TIMEOUT_MS = 60000;
+
+    private final PluginHarness harness;
+    private final ExecutorService authExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "harness-auth"));
+    private String clientId;
+    private String vaultId;
+
+    public VaultSession(PluginHarness harness) {
+        this.harness = harness;
+    }
+
+    public String getVaultId() {
+        return vaultId;
+    }
+
+    /**
+     * @param resolverUrl DID resolver, or null to keep the plugin default
+     * @param appInstanceDocument DID document of the app instance, used by the SDK to sign in
+     * @param ownerDid vault owner
+     * @param vaultAddress vault provider address, or null to use the one published by the owner
+     */
+    public void open(String resolverUrl, String appInstanceDocument, String ownerDid, String vaultAddress, AuthResponder responder)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        if (resolverUrl != null)
+            harness.callAndWait(SETUP_TIMEOUT_MS, "setDIDResolverUrl", resolverUrl);
+
+        JSONObject clientOptions = new JSONObject();
+        try {
+            clientOptions.put("authenticationDIDDocument", appInstanceDocument);
+            clientId = harness.callAndWait(SETUP_TIMEOUT_MS, "getClient", clientOptions).getJsonObject().getString("objectId");
+        }
+        catch (JSONException e) {
+            throw new ExecutionException(e);
+        }
+
+        // Challenges are answered off the plugin threads, the responder may be slow
+        harness.call("client_setAuthHandlerChallengeCallback", PluginHarness.toJsonArray(clientId), challenge -> {
+            if (!challenge.isOk() || challenge.getMessage() == null || challenge.getMessage().equals("null"))
+                return;
+            authExecutor.execute(() -> answerChallenge(challenge, responder));
+        });
+
+        if (vaultAddress != null)
+            harness.callAndWait(SETUP_TIMEOUT_MS, "client_setVaultAddress", ownerDid, vaultAddress);
+
+        CapturedResult vault = harness.callAndWait(SETUP_TIMEOUT_MS, "client_getVault", clientId, ownerDid);
+        try {
+            Object value = vault.getValue();
+            if (!(value instanceof JSONObject))
+                throw new ExecutionException(new IllegalStateException("No vault found for " + ownerDid));
+            vaultId = ((JSONObject) value).getString("objectId");
+        }
+        catch (JSONException e) {
+            throw new ExecutionException(e);
+        }
+    }
+
+    private void answerChallenge(CapturedResult challenge, AuthResponder responder) {
+        String response = null;
+        try {
+            response = responder.respond((String) challenge.getValue());
+        }
+        catch (Exception e) {
+            System.err.println("Unable to answer the auth challenge: " + e);
+        }
+        // A null response fails the SDK auth, and the pending calls with it
+        harness.call("client_sendAuthHandlerChallengeResponse", clientId, response);
+    }
+
+    @Override
+    public void close() {
+        authExecutor.shutdownNow();
+    }
+}
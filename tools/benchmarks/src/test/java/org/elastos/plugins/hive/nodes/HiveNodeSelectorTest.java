@@ -0,0 +1,173 @@
+package org.elastos.plugins.hive.nodes;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Probes run synchronously on the test thread, with a fake clock advanced by the fake prober, so that round trip
+ * times are exact.
+ */
+public class HiveNodeSelectorTest {
+    private static final String NODE_A = "http://node-a:9001";
+    private static final String NODE_B = "http://node-b:9001";
+
+    private long nanoTime;
+    private final Map<String, Long> rttMs = new HashMap<>();
+    private final Set<String> down = new HashSet<>();
+
+    private final NodeProber prober = (nodeUrl, timeoutMs) -> {
+        if (down.contains(nodeUrl))
+            throw new Exception("Connection refused");
+        nanoTime += rttMs.get(nodeUrl) * 1000000;
+    };
+
+    private HiveNodeSelector selector;
+
+    @Before
+    public void setUp() {
+        selector = new HiveNodeSelector(Arrays.asList("node-a:9001", "http://node-b:9001/"), prober,
+                HiveNodeSelector.Routing.FALLBACK, HiveNodeSelector.DEFAULT_PROBE_INTERVAL_MS,
+                HiveNodeSelector.DEFAULT_PROBE_TIMEOUT_MS, () -> nanoTime);
+        rttMs.put(NODE_A, 100L);
+        rttMs.put(NODE_B, 200L);
+    }
+
+    private void probeAll() {
+        selector.probeAll(Runnable::run);
+    }
+
+    private JSONObject nodeJson(String url) throws Exception {
+        JSONArray nodes = selector.toJson().getJSONArray("nodes");
+        for (int i=0; i<nodes.length(); i++) {
+            if (nodes.getJSONObject(i).getString("url").equals(url))
+                return nodes.getJSONObject(i);
+        }
+        throw new AssertionError("No node " + url);
+    }
+
+    @Test
+    public void normalizesNodeAddresses() throws Exception {
+        assertEquals(NODE_A, nodeJson(NODE_A).getString("url"));
+        assertEquals(NODE_B, nodeJson(NODE_B).getString("url"));
+    }
+
+    @Test
+    public void noNodeSelectedBeforeProbes() throws Exception {
+        assertNull(selector.selectFastest());
+        assertFalse(nodeJson(NODE_A).getBoolean("healthy"));
+    }
+
+    @Test
+    public void firstProbeSetsAverage() throws Exception {
+        probeAll();
+
+        assertEquals(100.0, nodeJson(NODE_A).getDouble("rttEwmaMs"), 1e-9);
+        assertEquals(200.0, nodeJson(NODE_B).getDouble("rttEwmaMs"), 1e-9);
+    }
+
+    @Test
+    public void averageWeighsNewProbes() throws Exception {
+        probeAll();
+        rttMs.put(NODE_A, 200L);
+        probeAll();
+
+        assertEquals(0.3 * 200 + 0.7 * 100, nodeJson(NODE_A).getDouble("rttEwmaMs"), 1e-9);
+        assertEquals(200.0, nodeJson(NODE_A).getDouble("lastRttMs"), 1e-9);
+
+        rttMs.put(NODE_A, 50L);
+        probeAll();
+
+        assertEquals(0.3 * 50 + 0.7 * (0.3 * 200 + 0.7 * 100), nodeJson(NODE_A).getDouble("rttEwmaMs"), 1e-9);
+        assertEquals(3, nodeJson(NODE_A).getLong("probes"));
+    }
+
+    @Test
+    public void selectsLowestAverage() {
+        probeAll();
+        assertEquals(NODE_A, selector.selectFastest());
+
+        // A single slow probe doesn't change the selection: 0.3 * 300 + 0.7 * 100 = 160 < 200
+        rttMs.put(NODE_A, 300L);
+        probeAll();
+        assertEquals(NODE_A, selector.selectFastest());
+
+        // 0.3 * 300 + 0.7 * 160 = 202 > 200
+        probeAll();
+        assertEquals(NODE_B, selector.selectFastest());
+    }
+
+    @Test
+    public void unhealthyAfterThreeConsecutiveFailures() throws Exception {
+        probeAll();
+        down.add(NODE_A);
+
+        probeAll();
+        probeAll();
+        assertTrue(nodeJson(NODE_A).getBoolean("healthy"));
+        assertEquals(NODE_A, selector.selectFastest());
+
+        probeAll();
+        assertFalse(nodeJson(NODE_A).getBoolean("healthy"));
+        assertEquals(3, nodeJson(NODE_A).getLong("failures"));
+        assertEquals("Connection refused", nodeJson(NODE_A).getString("lastError"));
+        assertEquals(NODE_B, selector.selectFastest());
+    }
+
+    @Test
+    public void healthyAgainAfterSuccess() throws Exception {
+        probeAll();
+        down.add(NODE_A);
+        probeAll();
+        probeAll();
+        probeAll();
+        assertEquals(NODE_B, selector.selectFastest());
+
+        down.remove(NODE_A);
+        probeAll();
+        assertTrue(nodeJson(NODE_A).getBoolean("healthy"));
+        assertFalse(nodeJson(NODE_A).has("lastError"));
+        assertEquals(NODE_A, selector.selectFastest());
+    }
+
+    @Test
+    public void failuresDontChangeAverage() throws Exception {
+        probeAll();
+        down.add(NODE_A);
+        probeAll();
+
+        assertEquals(100.0, nodeJson(NODE_A).getDouble("rttEwmaMs"), 1e-9);
+    }
+
+    @Test
+    public void noNodeSelectedWhenAllUnhealthy() {
+        probeAll();
+        down.add(NODE_A);
+        down.add(NODE_B);
+        probeAll();
+        probeAll();
+        probeAll();
+
+        assertNull(selector.selectFastest());
+    }
+
+    @Test
+    public void nodeNeverReachedIsNotSelected() {
+        down.add(NODE_A);
+        probeAll();
+
+        assertEquals(NODE_B, selector.selectFastest());
+    }
+}
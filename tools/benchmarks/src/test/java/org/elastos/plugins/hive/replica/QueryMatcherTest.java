@@ -0,0 +1,347 @@
+package org.elastos.plugins.hive.replica;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Expected results are the ones of MongoDB for the same documents and queries. JSON is written with single quotes.
+ */
+public class QueryMatcherTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static JsonNode json(String json) {
+        try {
+            return mapper.readTree(json.replace('\'', '"'));
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static boolean matches(String document, String query) {
+        return QueryMatcher.matches(json(document), json(query));
+    }
+
+    private static void assertUnsupported(String document, String query) {
+        try {
+            matches(document, query);
+            fail("Expected an UnsupportedQueryException for " + query);
+        }
+        catch (QueryMatcher.UnsupportedQueryException e) {
+            // Expected
+        }
+    }
+
+    // Equality and dotted paths
+
+    @Test
+    public void emptyOrNullQueryMatchesAll() {
+        assertTrue(matches("{'a': 1}", "{}"));
+        assertTrue(QueryMatcher.matches(json("{'a': 1}"), null));
+    }
+
+    @Test
+    public void equalityOnNestedField() {
+        assertTrue(matches("{'author': {'name': 'bob'}}", "{'author.name': 'bob'}"));
+        assertFalse(matches("{'author': {'name': 'bob'}}", "{'author.name': 'alice'}"));
+        assertFalse(matches("{'author': 'bob'}", "{'author.name': 'bob'}"));
+    }
+
+    @Test
+    public void numbersCompareByValue() {
+        assertTrue(matches("{'a': 1}", "{'a': 1.0}"));
+        assertTrue(matches("{'a': 1.50}", "{'a': 1.5}"));
+        assertFalse(matches("{'a': 1}", "{'a': '1'}"));
+    }
+
+    @Test
+    public void extendedJsonValuesAreValues() {
+        assertTrue(matches("{'_id': {'$oid': '0123'}}", "{'_id': {'$oid': '0123'}}"));
+        assertFalse(matches("{'_id': {'$oid': '0123'}}", "{'_id': {'$oid': '4567'}}"));
+    }
+
+    // Arrays
+
+    @Test
+    public void arrayFieldMatchesElement() {
+        assertTrue(matches("{'tags': ['a', 'b']}", "{'tags': 'b'}"));
+        assertFalse(matches("{'tags': ['a', 'b']}", "{'tags': 'c'}"));
+    }
+
+    @Test
+    public void arrayFieldMatchesWholeArray() {
+        assertTrue(matches("{'tags': ['a', 'b']}", "{'tags': ['a', 'b']}"));
+        assertFalse(matches("{'tags': ['a', 'b']}", "{'tags': ['b', 'a']}"));
+        assertFalse(matches("{'tags': ['a', 'b']}", "{'tags': ['a']}"));
+    }
+
+    @Test
+    public void rangeOnArrayMatchesAnyElement() {
+        assertTrue(matches("{'scores': [1, 10]}", "{'scores': {'$gt': 5}}"));
+        assertFalse(matches("{'scores': [1, 2]}", "{'scores': {'$gt': 5}}"));
+    }
+
+    @Test
+    public void pathThroughArrayOfObjects() {
+        String document = "{'items': [{'name': 'pen', 'qty': 2}, {'name': 'ink', 'qty': 10}]}";
+        assertTrue(matches(document, "{'items.name': 'ink'}"));
+        assertFalse(matches(document, "{'items.name': 'paper'}"));
+        assertTrue(matches(document, "{'items.qty': {'$gte': 10}}"));
+        assertTrue(matches(document, "{'items.name': {'$in': ['paper', 'pen']}}"));
+    }
+
+    @Test
+    public void pathThroughNestedArrays() {
+        String document = "{'orders': [{'items': [{'sku': 'x1'}, {'sku': 'x2'}]}, {'items': [{'sku': 'y1'}]}]}";
+        assertTrue(matches(document, "{'orders.items.sku': 'y1'}"));
+        assertFalse(matches(document, "{'orders.items.sku': 'z1'}"));
+    }
+
+    @Test
+    public void pathThroughArrayMergesArrayValues() {
+        String document = "{'posts': [{'tags': ['a', 'b']}, {'tags': ['c']}]}";
+        assertTrue(matches(document, "{'posts.tags': 'c'}"));
+        assertEquals(json("['a', 'b', 'c']"), QueryMatcher.valueAt(json(document), "posts.tags"));
+    }
+
+    @Test
+    public void pathWithArrayIndex() {
+        String document = "{'items': [{'name': 'pen'}, {'name': 'ink'}]}";
+        assertTrue(matches(document, "{'items.1.name': 'ink'}"));
+        assertFalse(matches(document, "{'items.0.name': 'ink'}"));
+        // No array traversal, so null and $exists are supported
+        assertTrue(matches(document, "{'items.2.name': null}"));
+        assertTrue(matches(document, "{'items.0.name': {'$exists': true}}"));
+    }
+
+    @Test
+    public void pathThroughArraySkipsScalarElements() {
+        assertTrue(matches("{'items': [3, {'name': 'pen'}]}", "{'items.name': 'pen'}"));
+        assertTrue(QueryMatcher.valueAt(json("{'items': [3, 4]}"), "items.name").isMissingNode());
+    }
+
+    @Test
+    public void unsupportedConditionsThroughArrays() {
+        String document = "{'items': [{'name': 'pen'}]}";
+        assertUnsupported(document, "{'items.name': null}");
+        assertUnsupported(document, "{'items.name': ['pen']}");
+        assertUnsupported(document, "{'items.name': {'$exists': false}}");
+        assertUnsupported(document, "{'items.name': {'$ne': null}}");
+        assertUnsupported(document, "{'items.name': {'$in': ['pen', null]}}");
+    }
+
+    // Null and missing fields
+
+    @Test
+    public void nullMatchesMissingField() {
+        assertTrue(matches("{'a': 1}", "{'b': null}"));
+        assertTrue(matches("{'a': 1, 'b': null}", "{'b': null}"));
+        assertFalse(matches("{'a': 1, 'b': 2}", "{'b': null}"));
+        assertTrue(matches("{'a': 1}", "{'a.b': null}"));
+    }
+
+    @Test
+    public void nullInOperators() {
+        assertTrue(matches("{'a': 1}", "{'b': {'$eq': null}}"));
+        assertFalse(matches("{'a': 1}", "{'b': {'$ne': null}}"));
+        assertTrue(matches("{'a': 1, 'b': 2}", "{'b': {'$ne': null}}"));
+        assertTrue(matches("{'a': 1}", "{'b': {'$in': [null, 2]}}"));
+        assertFalse(matches("{'a': 1}", "{'b': {'$nin': [null]}}"));
+    }
+
+    @Test
+    public void nullMatchesNullElement() {
+        assertTrue(matches("{'a': [1, null]}", "{'a': null}"));
+        assertFalse(matches("{'a': [1, 2]}", "{'a': null}"));
+    }
+
+    @Test
+    public void exists() {
+        assertTrue(matches("{'a': null}", "{'a': {'$exists': true}}"));
+        assertFalse(matches("{'b': 1}", "{'a': {'$exists': true}}"));
+        assertTrue(matches("{'b': 1}", "{'a': {'$exists': false}}"));
+    }
+
+    @Test
+    public void rangeDoesntMatchMissingField() {
+        assertFalse(matches("{'b': 1}", "{'a': {'$lt': 5}}"));
+        assertFalse(matches("{'b': 1}", "{'a': {'$gte': null}}"));
+    }
+
+    // $ne and $nin
+
+    @Test
+    public void neOnArrayExcludesContainedValue() {
+        assertFalse(matches("{'tags': ['a', 'b']}", "{'tags': {'$ne': 'a'}}"));
+        assertTrue(matches("{'tags': ['a', 'b']}", "{'tags': {'$ne': 'c'}}"));
+        assertFalse(matches("{'tags': ['a', 'b']}", "{'tags': {'$ne': ['a', 'b']}}"));
+    }
+
+    @Test
+    public void ninOnArrayExcludesContainedValues() {
+        assertFalse(matches("{'tags': ['a', 'b']}", "{'tags': {'$nin': ['x', 'b']}}"));
+        assertTrue(matches("{'tags': ['a', 'b']}", "{'tags': {'$nin': ['x', 'y']}}"));
+        assertTrue(matches("{'tags': []}", "{'tags': {'$nin': ['a']}}"));
+    }
+
+    @Test
+    public void neAndNinMatchMissingField() {
+        assertTrue(matches("{'b': 1}", "{'a': {'$ne': 1}}"));
+        assertTrue(matches("{'b': 1}", "{'a': {'$nin': [1, 2]}}"));
+    }
+
+    @Test
+    public void ninThroughArrayOfObjects() {
+        String document = "{'items': [{'name': 'pen'}, {'name': 'ink'}]}";
+        assertFalse(matches(document, "{'items.name': {'$nin': ['ink']}}"));
+        assertTrue(matches(document, "{'items.name': {'$nin': ['paper']}}"));
+        assertFalse(matches(document, "{'items.name': {'$ne': 'pen'}}"));
+    }
+
+    // Type ordering
+
+    @Test
+    public void rangesOnlyMatchSameType() {
+        assertFalse(matches("{'a': '10'}", "{'a': {'$gt': 5}}"));
+        assertFalse(matches("{'a': 10}", "{'a': {'$lt': 'z'}}"));
+        assertFalse(matches("{'a': true}", "{'a': {'$gt': 0}}"));
+        assertTrue(matches("{'a': 'b'}", "{'a': {'$gt': 'a'}}"));
+        assertTrue(matches("{'a': 2.5}", "{'a': {'$gt': 2}}"));
+    }
+
+    @Test
+    public void compareOrdersTypes() {
+        List<JsonNode> ordered = Arrays.asList(
+                JsonNodeFactory.instance.nullNode(),
+                json("-1"), json("2.5"), json("10"),
+                json("'10'"), json("'a'"), json("'b'"),
+                json("{'x': 1}"),
+                json("[1]"),
+                json("false"), json("true"));
+
+        for (int i=0; i<ordered.size(); i++) {
+            for (int j=0; j<ordered.size(); j++) {
+                JsonNode a = ordered.get(i);
+                JsonNode b = ordered.get(j);
+                assertEquals(a + " vs " + b, Integer.compare(i, j), Integer.signum(QueryMatcher.compare(a, b)));
+            }
+        }
+        assertTrue(QueryMatcher.compare(MissingNode.getInstance(), json("-1")) < 0);
+    }
+
+    @Test
+    public void compareNumbersOfDifferentRepresentations() {
+        assertEquals(0, QueryMatcher.compare(json("1"), json("1.0")));
+        assertTrue(QueryMatcher.compare(json("9007199254740993"), json("9007199254740992.0")) > 0);
+    }
+
+    @Test
+    public void compareExtendedJsonValues() {
+        assertTrue(QueryMatcher.compare(json("{'$date': 1000}"), json("{'$date': 2000}")) < 0);
+        assertTrue(QueryMatcher.compare(json("{'$oid': 'b'}"), json("{'$oid': 'a'}")) > 0);
+    }
+
+    @Test
+    public void sortComparatorUsesTypeOrder() {
+        List<JsonNode> documents = new ArrayList<>(Arrays.asList(
+                json("{'k': 'x', 'n': 1}"),
+                json("{'k': 3, 'n': 2}"),
+                json("{'n': 3}"),
+                json("{'k': true, 'n': 4}"),
+                json("{'k': 3, 'n': 5}")));
+
+        documents.sort(QueryMatcher.sortComparator(json("{'k': 1, 'n': -1}")));
+
+        List<Integer> order = new ArrayList<>();
+        for (JsonNode document : documents) {
+            order.add(document.get("n").asInt());
+        }
+        assertEquals(Arrays.asList(3, 5, 2, 1, 4), order);
+    }
+
+    @Test
+    public void noSortComparatorWithoutFields() {
+        assertNull(QueryMatcher.sortComparator(null));
+        assertNull(QueryMatcher.sortComparator(json("{}")));
+    }
+
+    @Test(expected = QueryMatcher.UnsupportedQueryException.class)
+    public void sortThroughArrayIsUnsupported() {
+        QueryMatcher.sortComparator(json("{'items.name': 1}")).compare(json("{'items': [{'name': 'a'}]}"), json("{'items': []}"));
+    }
+
+    // Logical and unsupported operators
+
+    @Test
+    public void logicalOperators() {
+        String document = "{'a': 1, 'b': 2}";
+        assertTrue(matches(document, "{'$and': [{'a': 1}, {'b': 2}]}"));
+        assertFalse(matches(document, "{'$and': [{'a': 1}, {'b': 3}]}"));
+        assertTrue(matches(document, "{'$or': [{'a': 5}, {'b': 2}]}"));
+        assertFalse(matches(document, "{'$or': [{'a': 5}, {'b': 5}]}"));
+        assertTrue(matches(document, "{'$nor': [{'a': 5}, {'b': 5}]}"));
+        assertFalse(matches(document, "{'$nor': [{'a': 1}]}"));
+    }
+
+    @Test
+    public void unsupportedOperators() {
+        assertUnsupported("{'a': 'abc'}", "{'a': {'$regex': '^a'}}");
+        assertUnsupported("{'a': 'abc'}", "{'$where': 'true'}");
+        assertUnsupported("{'a': [1]}", "{'a': {'$elemMatch': {'$gt': 0}}}");
+    }
+
+    // Index keys
+
+    @Test
+    public void indexKeyNormalizesNumbers() {
+        assertEquals(QueryMatcher.indexKey(json("1")), QueryMatcher.indexKey(json("1.0")));
+        assertEquals(QueryMatcher.indexKey(json("1")), QueryMatcher.indexKey(json("1.00")));
+        assertEquals(QueryMatcher.indexKey(json("100")), QueryMatcher.indexKey(json("1e2")));
+        assertEquals(QueryMatcher.indexKey(json("0")), QueryMatcher.indexKey(json("0.0")));
+        assertEquals("100", QueryMatcher.indexKey(json("100")));
+        assertNotEquals(QueryMatcher.indexKey(json("1")), QueryMatcher.indexKey(json("1.5")));
+    }
+
+    @Test
+    public void indexKeyDistinguishesStringsFromNumbers() {
+        assertNotEquals(QueryMatcher.indexKey(json("1")), QueryMatcher.indexKey(json("'1'")));
+        assertNotEquals(QueryMatcher.indexKey(json("1.0")), QueryMatcher.indexKey(json("'1'")));
+        assertNotEquals(QueryMatcher.indexKey(json("true")), QueryMatcher.indexKey(json("'true'")));
+        assertNotEquals(QueryMatcher.indexKey(json("null")), QueryMatcher.indexKey(json("'null'")));
+        assertEquals(QueryMatcher.indexKey(json("'1'")), QueryMatcher.indexKey(json("'1'")));
+    }
+
+    @Test
+    public void indexKeyOfObjects() {
+        assertEquals(QueryMatcher.indexKey(json("{'$oid': '0123'}")), QueryMatcher.indexKey(json("{'$oid': '0123'}")));
+        assertNotEquals(QueryMatcher.indexKey(json("{'$oid': '0123'}")), QueryMatcher.indexKey(json("'0123'")));
+    }
+
+    @Test
+    public void indexedEqualityField() {
+        List<String> indexed = Arrays.asList("owner", "kind");
+        assertEquals("owner", QueryMatcher.indexedEqualityField(json("{'owner': 'bob', 'size': 3}"), indexed));
+        assertEquals("kind", QueryMatcher.indexedEqualityField(json("{'owner': {'$ne': 'bob'}, 'kind': 2}"), indexed));
+        assertEquals("owner", QueryMatcher.indexedEqualityField(json("{'owner': {'$oid': '0123'}}"), indexed));
+        assertNull(QueryMatcher.indexedEqualityField(json("{'owner': null}"), indexed));
+        assertNull(QueryMatcher.indexedEqualityField(json("{'owner': ['a']}"), indexed));
+        assertNull(QueryMatcher.indexedEqualityField(json("{'size': 3}"), indexed));
+        assertNull(QueryMatcher.indexedEqualityField(null, indexed));
+    }
+}
@@ -0,0 +1,231 @@
+package org.elastos.plugins.hive.standin;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Elastos DID with a secp256r1 key, generated when the node starts. The document is signed and published as a
+ * "create" transaction, so that the DID SDK resolves and verifies it through the resolver route of the node, and
+ * JWTs are signed with ES256 by the primary key, so that the SDK can verify the challenges and tokens of the node.
+ */
+public class DidIdentity {
+    private static final String KEY_TYPE = "ECDSAsecp256r1";
+    private static final String SPECIFICATION = "elastos/did/1.0";
+    private static final long EXPIRES_DAYS = 5 * 365;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+    private static final String BASE58_ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+    private static final SecureRandom random = new SecureRandom();
+
+    private final KeyPair keyPair;
+    private final String did;
+    private final Map<String, Object> document;
+    private final Map<String, Object> transaction;
+
+    private DidIdentity(KeyPair keyPair) throws GeneralSecurityException {
+        this.keyPair = keyPair;
+
+        byte[] publicKey = compressedPublicKey((ECPublicKey) keyPair.getPublic());
+        did = "did:elastos:" + address(publicKey);
+        String keyId = getKeyId();
+        String created = DATE_FORMAT.format(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+
+        // Normalized form: the signature is computed on the document without proof
+        document = Json.object(
+                "id", did,
+                "publicKey", List.of(Json.object("id", keyId, "type", KEY_TYPE, "controller", did, "publicKeyBase58", base58(publicKey))),
+                "authentication", List.of(keyId),
+                "expires", DATE_FORMAT.format(Instant.now().plus(EXPIRES_DAYS, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS)));
+        String signature = base64Url(sign(Json.write(document).getBytes(StandardCharsets.UTF_8)));
+        document.put("proof", Json.object("type", KEY_TYPE, "created", created, "creator", keyId, "signatureValue", signature));
+
+        // Signed with the concatenation of specification, operation, previous transaction (none) and payload
+        String payload = base64Url(Json.write(document).getBytes(StandardCharsets.UTF_8));
+        byte[] requestSignature = sign((SPECIFICATION + "create" + payload).getBytes(StandardCharsets.UTF_8));
+        byte[] txid = new byte[32];
+        random.nextBytes(txid);
+        transaction = Json.object(
+                "txid", String.format("%064x", new BigInteger(1, txid)),
+                "timestamp", created,
+                "operation", Json.object(
+                        "header", Json.object("specification", SPECIFICATION, "operation", "create"),
+                        "payload", payload,
+                        "proof", Json.object("type", KEY_TYPE, "verificationMethod", keyId, "signature", base64Url(requestSignature))));
+    }
+
+    public static DidIdentity generate() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"), random);
+            return new DidIdentity(generator.generateKeyPair());
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException("secp256r1 keys are not supported by this JDK", e);
+        }
+    }
+
+    public String getDid() {
+        return did;
+    }
+
+    public String getKeyId() {
+        return did + "#primary";
+    }
+
+    /**
+     * Signed DID document, as a new JSON object.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getDocument() {
+        return (Map<String, Object>) Json.copy(document);
+    }
+
+    /**
+     * Resolution result of the DID (status and transactions), as returned by the DID resolver.
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> resolve() {
+        return Json.object("did", did, "status", 0, "transaction", List.of(Json.copy(transaction)));
+    }
+
+    /**
+     * ES256 JWT issued by this DID.
+     */
+    public String signJwt(Map<String, Object> claims) {
+        Map<String, Object> header = Json.object("alg", "ES256", "typ", "JWT", "version", "1.0", "kid", getKeyId());
+        String signingInput = base64Url(Json.write(header).getBytes(StandardCharsets.UTF_8)) + "." + base64Url(Json.write(claims).getBytes(StandardCharsets.UTF_8));
+        try {
+            return signingInput + "." + base64Url(sign(signingInput.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Claims of a JWT signed by this DID. Null if it can't be decoded or if the signature doesn't match.
+     */
+    public Map<String, Object> verifyJwt(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length != 3)
+            return null;
+        try {
+            byte[] signature = Base64.getUrlDecoder().decode(parts[2]);
+            if (signature.length != 64)
+                return null;
+            Signature verifier = Signature.getInstance("SHA256withECDSA");
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.UTF_8));
+            if (!verifier.verify(toDer(signature)))
+                return null;
+            return Json.parseObject(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+        }
+        catch (GeneralSecurityException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * SHA-256 ECDSA signature, as the 64 bytes concatenation of r and s used by DID documents and JWS.
+     */
+    private byte[] sign(byte[] data) throws GeneralSecurityException {
+        Signature signer = Signature.getInstance("SHA256withECDSA");
+        signer.initSign(keyPair.getPrivate(), random);
+        signer.update(data);
+        return fromDer(signer.sign());
+    }
+
+    private static byte[] fromDer(byte[] der) {
+        // SEQUENCE { INTEGER r, INTEGER s }, with a one byte length as signatures of 256 bits keys are short
+        int offset = 2;
+        byte[] signature = new byte[64];
+        for (int i=0; i<2; i++) {
+            int length = der[offset + 1];
+            byte[] integer = Arrays.copyOfRange(der, offset + 2, offset + 2 + length);
+            byte[] unsigned = new BigInteger(1, integer).toByteArray();
+            int start = unsigned.length > 32 ? unsigned.length - 32 : 0;
+            System.arraycopy(unsigned, start, signature, i * 32 + 32 - (unsigned.length - start), unsigned.length - start);
+            offset += 2 + length;
+        }
+        return signature;
+    }
+
+    private static byte[] toDer(byte[] signature) {
+        byte[] r = new BigInteger(1, Arrays.copyOfRange(signature, 0, 32)).toByteArray();
+        byte[] s = new BigInteger(1, Arrays.copyOfRange(signature, 32, 64)).toByteArray();
+        byte[] der = new byte[6 + r.length + s.length];
+        der[0] = 0x30;
+        der[1] = (byte) (4 + r.length + s.length);
+        der[2] = 0x02;
+        der[3] = (byte) r.length;
+        System.arraycopy(r, 0, der, 4, r.length);
+        der[4 + r.length] = 0x02;
+        der[5 + r.length] = (byte) s.length;
+        System.arraycopy(s, 0, der, 6 + r.length, s.length);
+        return der;
+    }
+
+    private static byte[] compressedPublicKey(ECPublicKey key) {
+        byte[] publicKey = new byte[33];
+        publicKey[0] = (byte) (key.getW().getAffineY().testBit(0) ? 0x03 : 0x02);
+        byte[] x = key.getW().getAffineX().toByteArray();
+        int start = x.length > 32 ? x.length - 32 : 0;
+        System.arraycopy(x, start, publicKey, 33 - (x.length - start), x.length - start);
+        return publicKey;
+    }
+
+    /**
+     * DID method specific id: base58 of the identity program hash of the key, with a checksum.
+     */
+    private static String address(byte[] publicKey) throws GeneralSecurityException {
+        byte[] script = new byte[35];
+        script[0] = 33;
+        System.arraycopy(publicKey, 0, script, 1, 33);
+        script[34] = (byte) 0xad;
+
+        byte[] hash = Ripemd160.digest(MessageDigest.getInstance("SHA-256").digest(script));
+        byte[] programHash = new byte[21];
+        programHash[0] = 0x67;
+        System.arraycopy(hash, 0, programHash, 1, 20);
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[] checksum = sha256.digest(sha256.digest(programHash));
+        byte[] address = Arrays.copyOf(programHash, 25);
+        System.arraycopy(checksum, 0, address, 21, 4);
+        return base58(address);
+    }
+
+    private static String base58(byte[] data) {
+        StringBuilder sb = new StringBuilder();
+        BigInteger value = new BigInteger(1, data);
+        BigInteger base = BigInteger.valueOf(58);
+        while (value.signum() > 0) {
+            BigInteger[] division = value.divideAndRemainder(base);
+            sb.append(BASE58_ALPHABET.charAt(division[1].intValue()));
+            value = division[0];
+        }
+        for (int i=0; i<data.length && data[i] == 0; i++) {
+            sb.append('1');
+        }
+        return sb.reverse().toString();
+    }
+
+    private static String base64Url(byte[] data) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+    }
+}
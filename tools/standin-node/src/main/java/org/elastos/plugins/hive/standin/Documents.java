@@ -0,0 +1,396 @@
+package org.elastos.plugins.hive.standin;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query matching, updates, sorting and projections on the documents of the stand-in node's collections.
+ *
+ * Supports the subset of the MongoDB language used by most apps: equality on (dotted) fields, with array fields
+ * matching if one element matches, $eq, $ne, $gt, $gte, $lt, $lte, $in, $nin, $exists, $and, $or, $nor, and the
+ * $set, $unset, $inc, $push and $setOnInsert update operators. Other operators are rejected with an
+ * IllegalArgumentException, reported to the client as a bad request.
+ */
+public class Documents {
+    private static final Object MISSING = new Object();
+
+    @SuppressWarnings("unchecked")
+    public static boolean matches(Map<String, Object> document, Map<String, Object> filter) {
+        if (filter == null)
+            return true;
+
+        for (Map.Entry<String, Object> entry : filter.entrySet()) {
+            String key = entry.getKey();
+            Object condition = entry.getValue();
+
+            boolean matched;
+            switch (key) {
+                case "$and":
+                    matched = true;
+                    for (Object sub : (List<Object>) condition) {
+                        if (!matches(document, (Map<String, Object>) sub)) {
+                            matched = false;
+                            break;
+                        }
+                    }
+                    break;
+                case "$or":
+                case "$nor":
+                    boolean any = false;
+                    for (Object sub : (List<Object>) condition) {
+                        if (matches(document, (Map<String, Object>) sub)) {
+                            any = true;
+                            break;
+                        }
+                    }
+                    matched = key.equals("$or") == any;
+                    break;
+                default:
+                    if (key.startsWith("$"))
+                        throw new IllegalArgumentException("Query operator " + key + " is not supported by the stand-in node");
+                    matched = fieldMatches(valueAt(document, key), condition);
+            }
+
+            if (!matched)
+                return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean fieldMatches(Object value, Object condition) {
+        if (!isOperatorObject(condition))
+            return equalsOrContains(value, condition);
+
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) condition).entrySet()) {
+            Object operand = entry.getValue();
+
+            boolean matched;
+            switch (entry.getKey()) {
+                case "$eq":
+                    matched = equalsOrContains(value, operand);
+                    break;
+                case "$ne":
+                    matched = !equalsOrContains(value, operand);
+                    break;
+                case "$gt":
+                    matched = anyCompares(value, operand, 1, false);
+                    break;
+                case "$gte":
+                    matched = anyCompares(value, operand, 1, true);
+                    break;
+                case "$lt":
+                    matched = anyCompares(value, operand, -1, false);
+                    break;
+                case "$lte":
+                    matched = anyCompares(value, operand, -1, true);
+                    break;
+                case "$in":
+                case "$nin":
+                    boolean found = false;
+                    for (Object candidate : (List<Object>) operand) {
+                        if (equalsOrContains(value, candidate)) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    matched = entry.getKey().equals("$in") == found;
+                    break;
+                case "$exists":
+                    matched = Boolean.TRUE.equals(operand) == (value != MISSING);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Query operator " + entry.getKey() + " is not supported by the stand-in node");
+            }
+
+            if (!matched)
+                return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean isOperatorObject(Object condition) {
+        if (!(condition instanceof Map) || ((Map<String, Object>) condition).isEmpty())
+            return false;
+        return ((Map<String, Object>) condition).keySet().iterator().next().startsWith("$");
+    }
+
+    private static boolean equalsOrContains(Object value, Object expected) {
+        if (valueEquals(value, expected))
+            return true;
+
+        if (value instanceof List && !(expected instanceof List)) {
+            for (Object element : (List<?>) value) {
+                if (valueEquals(element, expected))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        // Null matches missing fields, like on a real node
+        if (b == null)
+            return a == null || a == MISSING;
+        if (a instanceof Number && b instanceof Number)
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        return b.equals(a);
+    }
+
+    /**
+     * @param sign 1 for greater than, -1 for lower than.
+     */
+    private static boolean anyCompares(Object value, Object operand, int sign, boolean orEqual) {
+        if (value == MISSING)
+            return false;
+
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (compares(element, operand, sign, orEqual))
+                    return true;
+            }
+            return false;
+        }
+        return compares(value, operand, sign, orEqual);
+    }
+
+    private static boolean compares(Object value, Object operand, int sign, boolean orEqual) {
+        if (typeRank(value) != typeRank(operand))
+            return false;
+        int comparison = compare(value, operand) * sign;
+        return comparison > 0 || (orEqual && comparison == 0);
+    }
+
+    /**
+     * Value of a (dotted) field, or MISSING.
+     */
+    @SuppressWarnings("unchecked")
+    static Object valueAt(Map<String, Object> document, String path) {
+        Object current = document;
+        for (String part : path.split("\\.")) {
+            if (current instanceof Map) {
+                Map<String, Object> object = (Map<String, Object>) current;
+                if (!object.containsKey(part))
+                    return MISSING;
+                current = object.get(part);
+            }
+            else if (current instanceof List) {
+                try {
+                    int index = Integer.parseInt(part);
+                    List<Object> list = (List<Object>) current;
+                    if (index < 0 || index >= list.size())
+                        return MISSING;
+                    current = list.get(index);
+                }
+                catch (NumberFormatException e) {
+                    return MISSING;
+                }
+            }
+            else {
+                return MISSING;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Orders values of different types like MongoDB does (null, numbers, strings, objects, arrays, booleans).
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Object a, Object b) {
+        int rankA = typeRank(a);
+        int rankB = typeRank(b);
+        if (rankA != rankB)
+            return Integer.compare(rankA, rankB);
+
+        if (a instanceof Number)
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        if (a instanceof String)
+            return ((String) a).compareTo((String) b);
+        if (a instanceof Boolean)
+            return Boolean.compare((Boolean) a, (Boolean) b);
+        if (a == null || a == MISSING)
+            return 0;
+        return Json.write(a).compareTo(Json.write(b));
+    }
+
+    private static int typeRank(Object value) {
+        if (value == null || value == MISSING)
+            return 0;
+        if (value instanceof Number)
+            return 1;
+        if (value instanceof String)
+            return 2;
+        if (value instanceof Map)
+            return 3;
+        if (value instanceof List)
+            return 4;
+        if (value instanceof Boolean)
+            return 5;
+        return 6;
+    }
+
+    /**
+     * Sort specification, either {"field": 1, "other": -1} or [["field", 1], ["other", -1]] (the way the SDK
+     * serializes its Index list). Returns null if there is nothing to sort on.
+     */
+    @SuppressWarnings("unchecked")
+    public static Comparator<Map<String, Object>> sortComparator(Object sort) {
+        List<String> fields = new ArrayList<>();
+        List<Integer> orders = new ArrayList<>();
+
+        if (sort instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) sort).entrySet()) {
+                fields.add(entry.getKey());
+                orders.add(sortOrder(entry.getValue()));
+            }
+        }
+        else if (sort instanceof List) {
+            for (Object index : (List<Object>) sort) {
+                if (index instanceof List && ((List<Object>) index).size() == 2) {
+                    fields.add(String.valueOf(((List<Object>) index).get(0)));
+                    orders.add(sortOrder(((List<Object>) index).get(1)));
+                }
+                else if (index instanceof Map) {
+                    for (Map.Entry<String, Object> entry : ((Map<String, Object>) index).entrySet()) {
+                        fields.add(entry.getKey());
+                        orders.add(sortOrder(entry.getValue()));
+                    }
+                }
+            }
+        }
+
+        if (fields.isEmpty())
+            return null;
+
+        return (a, b) -> {
+            for (int i=0; i<fields.size(); i++) {
+                int comparison = compare(valueAt(a, fields.get(i)), valueAt(b, fields.get(i)));
+                if (comparison != 0)
+                    return comparison * orders.get(i);
+            }
+            return 0;
+        };
+    }
+
+    private static int sortOrder(Object order) {
+        if (order instanceof Number)
+            return ((Number) order).intValue() < 0 ? -1 : 1;
+        return "desc".equalsIgnoreCase(String.valueOf(order)) || "descending".equalsIgnoreCase(String.valueOf(order)) ? -1 : 1;
+    }
+
+    /**
+     * Applies a projection ({"field": 1} to only keep some fields, {"field": 0} to remove some). _id is kept
+     * unless explicitly excluded.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> project(Map<String, Object> document, Map<String, Object> projection) {
+        if (projection == null || projection.isEmpty())
+            return document;
+
+        boolean inclusion = false;
+        for (Map.Entry<String, Object> entry : projection.entrySet()) {
+            if (!entry.getKey().equals("_id") && isTruthy(entry.getValue()))
+                inclusion = true;
+        }
+
+        LinkedHashMap<String, Object> projected = new LinkedHashMap<>();
+        if (inclusion) {
+            if (!projection.containsKey("_id") || isTruthy(projection.get("_id"))) {
+                if (document.containsKey("_id"))
+                    projected.put("_id", document.get("_id"));
+            }
+            for (Map.Entry<String, Object> entry : projection.entrySet()) {
+                if (isTruthy(entry.getValue()) && document.containsKey(entry.getKey()))
+                    projected.put(entry.getKey(), document.get(entry.getKey()));
+            }
+        }
+        else {
+            projected.putAll(document);
+            for (Map.Entry<String, Object> entry : projection.entrySet()) {
+                if (!isTruthy(entry.getValue()))
+                    projected.remove(entry.getKey());
+            }
+        }
+        return projected;
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value instanceof Number)
+            return ((Number) value).doubleValue() != 0;
+        return Boolean.TRUE.equals(value);
+    }
+
+    /**
+     * Applies an update to a document, in place. An update without operators replaces the whole document,
+     * except its _id.
+     */
+    @SuppressWarnings("unchecked")
+    public static void applyUpdate(Map<String, Object> document, Map<String, Object> update, boolean inserting) {
+        if (!isOperatorObject(update)) {
+            Object id = document.get("_id");
+            document.clear();
+            document.put("_id", id);
+            for (Map.Entry<String, Object> entry : update.entrySet()) {
+                if (!entry.getKey().equals("_id"))
+                    document.put(entry.getKey(), Json.copy(entry.getValue()));
+            }
+            return;
+        }
+
+        for (Map.Entry<String, Object> operation : update.entrySet()) {
+            Map<String, Object> fields = (Map<String, Object>) operation.getValue();
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                switch (operation.getKey()) {
+                    case "$set":
+                        document.put(field.getKey(), Json.copy(field.getValue()));
+                        break;
+                    case "$setOnInsert":
+                        if (inserting)
+                            document.put(field.getKey(), Json.copy(field.getValue()));
+                        break;
+                    case "$unset":
+                        document.remove(field.getKey());
+                        break;
+                    case "$inc":
+                        Object current = document.get(field.getKey());
+                        Number increment = (Number) field.getValue();
+                        if (current instanceof Long && increment instanceof Long)
+                            document.put(field.getKey(), (Long) current + (Long) increment);
+                        else
+                            document.put(field.getKey(), (current instanceof Number ? ((Number) current).doubleValue() : 0) + increment.doubleValue());
+                        break;
+                    case "$push":
+                        Object array = document.get(field.getKey());
+                        if (!(array instanceof List)) {
+                            array = new ArrayList<>();
+                            document.put(field.getKey(), array);
+                        }
+                        ((List<Object>) array).add(Json.copy(field.getValue()));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Update operator " + operation.getKey() + " is not supported by the stand-in node");
+                }
+            }
+        }
+    }
+
+    /**
+     * Equality fields of a filter, used to build the document inserted by an upsert.
+     */
+    public static Map<String, Object> upsertBase(Map<String, Object> filter) {
+        LinkedHashMap<String, Object> document = new LinkedHashMap<>();
+        if (filter == null)
+            return document;
+
+        for (Map.Entry<String, Object> entry : filter.entrySet()) {
+            if (!entry.getKey().startsWith("$") && !entry.getKey().contains(".") && !isOperatorObject(entry.getValue()))
+                document.put(entry.getKey(), Json.copy(entry.getValue()));
+        }
+        return document;
+    }
+}
@@ -0,0 +1,302 @@
+package org.elastos.plugins.hive.standin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer, so that the stand-in node only needs a JDK.
+ *
+ * Objects are LinkedHashMap (field order is kept), arrays are ArrayList, numbers are Long when they are integers
+ * and Double otherwise, and null is null.
+ */
+public class Json {
+    public static class ParseException extends RuntimeException {
+        ParseException(String message) {
+            super(message);
+        }
+    }
+
+    private final String text;
+    private int pos = 0;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    public static Object parse(String text) {
+        Json parser = new Json(text);
+        parser.skipWhitespace();
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != text.length())
+            throw new ParseException("Unexpected content at offset " + parser.pos);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) {
+        Object value = parse(text);
+        if (!(value instanceof Map))
+            throw new ParseException("Expected a JSON object");
+        return (Map<String, Object>) value;
+    }
+
+    public static String write(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(sb, value);
+        return sb.toString();
+    }
+
+    /**
+     * Builds an object from name / value pairs: Json.object("name", "a", "size", 3).
+     */
+    public static Map<String, Object> object(Object... namesAndValues) {
+        LinkedHashMap<String, Object> object = new LinkedHashMap<>();
+        for (int i=0; i + 1<namesAndValues.length; i+=2) {
+            object.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return object;
+    }
+
+    /**
+     * Deep copy, so that stored documents can't be modified through returned values.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object copy(Object value) {
+        if (value instanceof Map) {
+            LinkedHashMap<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            ArrayList<Object> copy = new ArrayList<>();
+            for (Object element : (List<Object>) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        if (pos >= text.length())
+            throw new ParseException("Unexpected end of JSON");
+
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        LinkedHashMap<String, Object> object = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return object;
+        }
+
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"')
+                throw new ParseException("Expected a field name at offset " + pos);
+            String name = readString();
+            skipWhitespace();
+            if (peek() != ':')
+                throw new ParseException("Expected ':' at offset " + pos);
+            pos++;
+            skipWhitespace();
+            object.put(name, readValue());
+            skipWhitespace();
+
+            char c = peek();
+            pos++;
+            if (c == '}')
+                return object;
+            if (c != ',')
+                throw new ParseException("Expected ',' or '}' at offset " + (pos - 1));
+        }
+    }
+
+    private List<Object> readArray() {
+        ArrayList<Object> array = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return array;
+        }
+
+        while (true) {
+            skipWhitespace();
+            array.add(readValue());
+            skipWhitespace();
+
+            char c = peek();
+            pos++;
+            if (c == ']')
+                return array;
+            if (c != ',')
+                throw new ParseException("Expected ',' or ']' at offset " + (pos - 1));
+        }
+    }
+
+    private String readString() {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= text.length())
+                throw new ParseException("Unterminated string");
+
+            char c = text.charAt(pos++);
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            if (pos >= text.length())
+                throw new ParseException("Unterminated string");
+            char escaped = text.charAt(pos++);
+            switch (escaped) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > text.length())
+                        throw new ParseException("Invalid unicode escape");
+                    sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+            }
+        }
+    }
+
+    private Object readNumber() {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+        String number = text.substring(start, pos);
+        if (number.isEmpty())
+            throw new ParseException("Unexpected character '" + text.charAt(start) + "' at offset " + start);
+
+        try {
+            if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0)
+                return Long.parseLong(number);
+            return Double.parseDouble(number);
+        }
+        catch (NumberFormatException e) {
+            throw new ParseException("Invalid number " + number);
+        }
+    }
+
+    private void expect(String word) {
+        if (!text.startsWith(word, pos))
+            throw new ParseException("Unexpected content at offset " + pos);
+        pos += word.length();
+    }
+
+    private char peek() {
+        if (pos >= text.length())
+            throw new ParseException("Unexpected end of JSON");
+        return text.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        }
+        else if (value instanceof String) {
+            writeString(sb, (String) value);
+        }
+        else if (value instanceof Map) {
+            sb.append('{');
+            Iterator<Map.Entry<String, Object>> it = ((Map<String, Object>) value).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Object> entry = it.next();
+                writeString(sb, entry.getKey());
+                sb.append(':');
+                write(sb, entry.getValue());
+                if (it.hasNext())
+                    sb.append(',');
+            }
+            sb.append('}');
+        }
+        else if (value instanceof List) {
+            sb.append('[');
+            Iterator<Object> it = ((List<Object>) value).iterator();
+            while (it.hasNext()) {
+                write(sb, it.next());
+                if (it.hasNext())
+                    sb.append(',');
+            }
+            sb.append(']');
+        }
+        else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 1e15)
+                sb.append((long) d);
+            else
+                sb.append(d);
+        }
+        else {
+            // Numbers and booleans
+            sb.append(value);
+        }
+    }
+
+    private static void writeString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
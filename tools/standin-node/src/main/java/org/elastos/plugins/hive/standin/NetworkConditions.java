@@ -0,0 +1,179 @@
+package org.elastos.plugins.hive.standin;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Simulated network conditions of the stand-in node: a latency added to each request, and bandwidth limits for
+ * request and response bodies. Can be changed while the node is running.
+ *
+ * Bandwidth limits apply to each request separately (one simulated connection per request), like independent
+ * HTTP connections to a remote node.
+ */
+public class NetworkConditions {
+    // Throttled streams are written by chunks of this size, so that rates are smooth for large bodies
+    private static final int THROTTLE_CHUNK_SIZE = 8 * 1024;
+
+    private volatile long latencyMs = 0;
+    private volatile long jitterMs = 0;
+    private volatile long downloadBytesPerSecond = 0;
+    private volatile long uploadBytesPerSecond = 0;
+    private volatile double errorRate = 0;
+
+    /**
+     * Fixed delay before each response, plus a random delay between 0 and jitterMs.
+     */
+    public NetworkConditions setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = Math.max(0, latencyMs);
+        this.jitterMs = Math.max(0, jitterMs);
+        return this;
+    }
+
+    /**
+     * Bandwidth limits in bytes per second, from the node to the client (download) and from the client to the
+     * node (upload). 0 means unlimited.
+     */
+    public NetworkConditions setBandwidth(long downloadBytesPerSecond, long uploadBytesPerSecond) {
+        this.downloadBytesPerSecond = Math.max(0, downloadBytesPerSecond);
+        this.uploadBytesPerSecond = Math.max(0, uploadBytesPerSecond);
+        return this;
+    }
+
+    /**
+     * Ratio (0 to 1) of requests failing with a 503 error, to test retries and circuit breakers.
+     */
+    public NetworkConditions setErrorRate(double errorRate) {
+        this.errorRate = Math.max(0, Math.min(1, errorRate));
+        return this;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public long getJitterMs() {
+        return jitterMs;
+    }
+
+    public long getDownloadBytesPerSecond() {
+        return downloadBytesPerSecond;
+    }
+
+    public long getUploadBytesPerSecond() {
+        return uploadBytesPerSecond;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    void applyLatency() {
+        long delay = latencyMs;
+        if (jitterMs > 0)
+            delay += ThreadLocalRandom.current().nextLong(jitterMs + 1);
+        sleep(delay);
+    }
+
+    boolean shouldFail() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    InputStream throttleUpload(InputStream in) {
+        long rate = uploadBytesPerSecond;
+        return rate > 0 ? new ThrottledInputStream(in, rate) : in;
+    }
+
+    OutputStream throttleDownload(OutputStream out) {
+        long rate = downloadBytesPerSecond;
+        return rate > 0 ? new ThrottledOutputStream(out, rate) : out;
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0)
+            return;
+        try {
+            Thread.sleep(ms);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Delays transfers so that the average rate since the first byte stays under the limit.
+     */
+    private static class Pacer {
+        private final long bytesPerSecond;
+        private long startNanos = -1;
+        private long transferred = 0;
+
+        Pacer(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void onTransferred(long bytes) {
+            if (startNanos == -1)
+                startNanos = System.nanoTime();
+
+            transferred += bytes;
+            long expectedElapsedMs = transferred * 1000 / bytesPerSecond;
+            long elapsedMs = (System.nanoTime() - startNanos) / 1000000;
+            sleep(expectedElapsedMs - elapsedMs);
+        }
+    }
+
+    private static class ThrottledInputStream extends FilterInputStream {
+        private final Pacer pacer;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond) {
+            super(in);
+            this.pacer = new Pacer(bytesPerSecond);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1)
+                pacer.onTransferred(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, Math.min(len, THROTTLE_CHUNK_SIZE));
+            if (read > 0)
+                pacer.onTransferred(read);
+            return read;
+        }
+    }
+
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private final Pacer pacer;
+
+        ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+            super(out);
+            this.pacer = new Pacer(bytesPerSecond);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            pacer.onTransferred(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, THROTTLE_CHUNK_SIZE);
+                out.write(b, off, chunk);
+                pacer.onTransferred(chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+    }
+}
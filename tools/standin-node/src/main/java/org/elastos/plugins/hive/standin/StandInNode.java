@@ -0,0 +1,1080 @@
+package org.elastos.plugins.hive.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in hive node for load and latency tests of the plugin: an in-memory implementation of the v1 node REST
+ * API (auth, database, files, scripting, payment, vault service) with injected latency, bandwidth limits and
+ * errors. Only needs a JDK, and can run as a local process or inside a test JVM.
+ *
+ * The node has its own DID, and serves a DID resolver for it, so that the hive SDK can sign in: challenges and
+ * access tokens are signed by the node DID. It also has a test user, app and app instance DID, used to sign in
+ * without a real DID store (see getAppInstanceIdentity() and the /standin/ routes).
+ *
+ * This is not a hive node: documents are kept in memory, scripting conditions are only partly evaluated, and
+ * challenge responses are not verified (see README.md).
+ */
+public class StandInNode {
+    public static class Config {
+        String host = "127.0.0.1";
+        int port = 9001;
+        int threads = 16;
+        boolean requireToken = false;
+        boolean autoCreateVaults = true;
+        String defaultOwnerDid = null;
+        String upstreamResolver = null;
+        long tokenTtlSeconds = 24 * 3600;
+
+        public Config setHost(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * 0 to use any free port (see getPort()).
+         */
+        public Config setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Config setThreads(int threads) {
+            this.threads = Math.max(1, threads);
+            return this;
+        }
+
+        /**
+         * Reject requests without a token issued by this node. Otherwise they are run as defaultOwnerDid.
+         */
+        public Config setRequireToken(boolean requireToken) {
+            this.requireToken = requireToken;
+            return this;
+        }
+
+        /**
+         * Create vaults on first use instead of answering "vault does not exist".
+         */
+        public Config setAutoCreateVaults(boolean autoCreateVaults) {
+            this.autoCreateVaults = autoCreateVaults;
+            return this;
+        }
+
+        /**
+         * Vault owner of requests without token. Defaults to the test user DID (see getUserIdentity()).
+         */
+        public Config setDefaultOwnerDid(String defaultOwnerDid) {
+            this.defaultOwnerDid = defaultOwnerDid;
+            return this;
+        }
+
+        /**
+         * DID resolver to forward the resolution of DIDs unknown to this node to, e.g. https://api.elastos.io/eid.
+         * By default, they are not found.
+         */
+        public Config setUpstreamResolver(String upstreamResolver) {
+            this.upstreamResolver = upstreamResolver;
+            return this;
+        }
+    }
+
+    private static class HttpError extends RuntimeException {
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static class Caller {
+        final String did;
+        final String appDid;
+
+        Caller(String did, String appDid) {
+            this.did = did;
+            this.appDid = appDid;
+        }
+    }
+
+    // File transfer started by a fileUpload or fileDownload script executable
+    private static class Transaction {
+        final VaultStore.Vault vault;
+        final String path;
+        final boolean upload;
+
+        Transaction(VaultStore.Vault vault, String path, boolean upload) {
+            this.vault = vault;
+            this.path = path;
+            this.upload = upload;
+        }
+    }
+
+    private static final int STATUS_ALREADY_EXISTS = 455;
+    private static final int DID_STATUS_NOT_FOUND = 3;
+    private static final long CHALLENGE_TTL_SECONDS = 180;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+    private static final Pattern PARAMS_PATTERN = Pattern.compile("\\$params\\.([A-Za-z0-9_]+)");
+    private static final String[] PREFIX_ROUTES = {
+            "/api/v1/files/upload/",
+            "/api/v1/scripting/run_script_upload/",
+            "/api/v1/scripting/run_script_download/"
+    };
+
+    private final Config config;
+    private final DidIdentity nodeIdentity = DidIdentity.generate();
+    private final DidIdentity userIdentity = DidIdentity.generate();
+    private final DidIdentity appIdentity = DidIdentity.generate();
+    private final DidIdentity appInstanceIdentity = DidIdentity.generate();
+    private final Map<String, DidIdentity> identities = new LinkedHashMap<>();
+    private final NetworkConditions conditions = new NetworkConditions();
+    private final VaultStore store;
+    private final ConcurrentHashMap<String, Transaction> transactions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StandInNode(Config config) {
+        this.config = config;
+        this.store = new VaultStore(config.autoCreateVaults);
+        for (DidIdentity identity : new DidIdentity[] { nodeIdentity, userIdentity, appIdentity, appInstanceIdentity }) {
+            identities.put(identity.getDid(), identity);
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null)
+            return;
+
+        executor = Executors.newFixedThreadPool(config.threads);
+        server = HttpServer.create(new InetSocketAddress(config.host, config.port), 128);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server == null)
+            return;
+
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server = null;
+        executor = null;
+    }
+
+    public synchronized int getPort() {
+        if (server == null)
+            throw new IllegalStateException("The stand-in node is not started");
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Base URL to give to the plugin as vault provider address.
+     */
+    public String getUrl() {
+        return "http://" + config.host + ":" + getPort();
+    }
+
+    /**
+     * DID resolver serving the DIDs of this node, to give to the plugin with setDIDResolverUrl().
+     */
+    public String getResolverUrl() {
+        return getUrl() + "/standin/resolver";
+    }
+
+    public DidIdentity getNodeIdentity() {
+        return nodeIdentity;
+    }
+
+    /**
+     * Test vault owner, issuer of the credential in the challenge responses of getChallengeResponse().
+     */
+    public DidIdentity getUserIdentity() {
+        return userIdentity;
+    }
+
+    public DidIdentity getAppIdentity() {
+        return appIdentity;
+    }
+
+    /**
+     * App instance to sign in with: give its document to getClient(), and answer the auth challenges with
+     * getChallengeResponse().
+     */
+    public DidIdentity getAppInstanceIdentity() {
+        return appInstanceIdentity;
+    }
+
+    public NetworkConditions getConditions() {
+        return conditions;
+    }
+
+    public VaultStore getStore() {
+        return store;
+    }
+
+    /**
+     * Number of handled requests by route, e.g. "POST /api/v1/db/find_many".
+     */
+    public Map<String, Long> getRequestCounts() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : requestCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Forgets all vaults, pending transactions and request counts. Network conditions are kept.
+     */
+    public void reset() {
+        store.clear();
+        transactions.clear();
+        requestCounts.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            // Control routes are not affected by the simulated network
+            if (path.startsWith("/standin/")) {
+                handleControl(exchange, path);
+                return;
+            }
+
+            requestCounts.computeIfAbsent(exchange.getRequestMethod() + " " + routeOf(path), k -> new LongAdder()).increment();
+            conditions.applyLatency();
+            if (conditions.shouldFail())
+                throw new HttpError(503, "Injected error");
+
+            route(exchange, path);
+        }
+        catch (HttpError e) {
+            sendError(exchange, e.status, e.getMessage());
+        }
+        catch (VaultStore.NotFoundException e) {
+            sendError(exchange, 404, e.getMessage());
+        }
+        catch (VaultStore.AlreadyExistsException e) {
+            sendError(exchange, STATUS_ALREADY_EXISTS, e.getMessage());
+        }
+        catch (Json.ParseException | IllegalArgumentException | ClassCastException e) {
+            sendError(exchange, 400, e.getMessage());
+        }
+        catch (IOException e) {
+            // Client went away, nothing to answer
+        }
+        catch (Exception e) {
+            sendError(exchange, 500, e.toString());
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private static String routeOf(String path) {
+        for (String prefix : PREFIX_ROUTES) {
+            if (path.startsWith(prefix))
+                return prefix + "*";
+        }
+        return path;
+    }
+
+    private void route(HttpExchange exchange, String path) throws IOException {
+        if (path.equals("/api/v0/version") || path.equals("/api/v1/hive/version")) {
+            sendJson(exchange, Json.object("version", "standin"));
+            return;
+        }
+        if (path.equals("/api/v1/hive/commithash")) {
+            sendJson(exchange, Json.object("commit_hash", "standin"));
+            return;
+        }
+        if (path.equals("/api/v1/did/sign_in")) {
+            signIn(exchange);
+            return;
+        }
+        if (path.equals("/api/v1/did/auth")) {
+            auth(exchange);
+            return;
+        }
+        if (path.startsWith("/api/v1/payment/")) {
+            // Payment info doesn't need a vault
+            payment(exchange, path.substring("/api/v1/payment/".length()), caller(exchange));
+            return;
+        }
+
+        Caller caller = caller(exchange);
+        if (path.equals("/api/v1/service/vault/create")) {
+            boolean created = store.createVault(caller.did);
+            sendJson(exchange, Json.object("existing", !created));
+            return;
+        }
+        if (path.equals("/api/v1/service/vault/remove")) {
+            store.removeVault(caller.did);
+            sendJson(exchange, Json.object());
+            return;
+        }
+        if (path.equals("/api/v1/service/vault/freeze") || path.equals("/api/v1/service/vault/unfreeze")) {
+            store.getVault(caller.did);
+            sendJson(exchange, Json.object());
+            return;
+        }
+        if (path.equals("/api/v1/service/vault")) {
+            sendJson(exchange, Json.object("vault_service_info", store.serviceInfo(store.getVault(caller.did))));
+            return;
+        }
+        if (path.startsWith("/api/v1/db/")) {
+            database(exchange, path.substring("/api/v1/db/".length()), store.getVault(caller.did));
+            return;
+        }
+        if (path.startsWith("/api/v1/files/")) {
+            files(exchange, path.substring("/api/v1/files/".length()), store.getVault(caller.did));
+            return;
+        }
+        if (path.startsWith("/api/v1/scripting/")) {
+            scripting(exchange, path.substring("/api/v1/scripting/".length()), caller);
+            return;
+        }
+        throw new HttpError(404, "Unknown route " + path);
+    }
+
+    // Auth
+
+    private void signIn(HttpExchange exchange) throws IOException {
+        Map<String, Object> document = objectField(readJson(exchange), "document");
+        Object appInstanceDid = document.get("id");
+        if (!(appInstanceDid instanceof String))
+            throw new IllegalArgumentException("Missing document id");
+
+        long now = System.currentTimeMillis() / 1000;
+        String challenge = nodeIdentity.signJwt(Json.object(
+                "iss", nodeIdentity.getDid(),
+                "sub", "DIDAuthChallenge",
+                "aud", appInstanceDid,
+                "nonce", UUID.randomUUID().toString(),
+                "exp", now + CHALLENGE_TTL_SECONDS));
+        sendJson(exchange, Json.object("challenge", challenge));
+    }
+
+    /**
+     * The user DID is the issuer of the first credential of the presentation (credential issued by the user to the
+     * app instance), as for a real node. The response and the presentation are not verified.
+     */
+    @SuppressWarnings("unchecked")
+    private void auth(HttpExchange exchange) throws IOException {
+        Object jwt = readJson(exchange).get("jwt");
+        Map<String, Object> claims = jwt instanceof String ? jwtClaims((String) jwt) : null;
+        if (claims == null)
+            throw new IllegalArgumentException("Missing or invalid jwt");
+
+        String userDid = claims.get("iss") instanceof String ? (String) claims.get("iss") : defaultOwnerDid();
+        String appDid = null;
+        Object presentation = claims.get("presentation");
+        if (presentation instanceof Map) {
+            Object credentials = ((Map<String, Object>) presentation).get("verifiableCredential");
+            if (credentials instanceof List && !((List<Object>) credentials).isEmpty() && ((List<Object>) credentials).get(0) instanceof Map) {
+                Map<String, Object> credential = (Map<String, Object>) ((List<Object>) credentials).get(0);
+                if (credential.get("issuer") instanceof String)
+                    userDid = (String) credential.get("issuer");
+                Object subject = credential.get("credentialSubject");
+                if (subject instanceof Map && ((Map<String, Object>) subject).get("appDid") instanceof String)
+                    appDid = (String) ((Map<String, Object>) subject).get("appDid");
+            }
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> tokenClaims = Json.object(
+                "iss", nodeIdentity.getDid(),
+                "sub", userDid,
+                "aud", claims.get("iss"),
+                "exp", now + config.tokenTtlSeconds);
+        if (appDid != null)
+            tokenClaims.put("appDid", appDid);
+        sendJson(exchange, Json.object("access_token", nodeIdentity.signJwt(tokenClaims), "token_expired", now + config.tokenTtlSeconds));
+    }
+
+    /**
+     * Answer of the test app instance to a challenge of this node, as an app would build it with its DID store: a
+     * JWT signed by the app instance, with a presentation of the credential issued by the test user to the app
+     * instance. The credential and the presentation are not signed, as the node doesn't verify them.
+     */
+    public String getChallengeResponse(String challenge) {
+        Map<String, Object> challengeClaims = nodeIdentity.verifyJwt(challenge);
+        if (challengeClaims == null)
+            throw new IllegalArgumentException("Not a challenge of this node");
+        if (!appInstanceIdentity.getDid().equals(challengeClaims.get("aud")))
+            throw new IllegalArgumentException("Not a challenge for the test app instance " + appInstanceIdentity.getDid());
+
+        long now = System.currentTimeMillis() / 1000;
+        String issuanceDate = DATE_FORMAT.format(Instant.ofEpochSecond(now));
+        Map<String, Object> credential = Json.object(
+                "id", appInstanceIdentity.getDid() + "#app-id-credential",
+                "type", List.of("AppIdCredential"),
+                "issuer", userIdentity.getDid(),
+                "issuanceDate", issuanceDate,
+                "expirationDate", DATE_FORMAT.format(Instant.ofEpochSecond(now + config.tokenTtlSeconds)),
+                "credentialSubject", Json.object("id", appInstanceIdentity.getDid(), "appDid", appIdentity.getDid()));
+        return appInstanceIdentity.signJwt(Json.object(
+                "iss", appInstanceIdentity.getDid(),
+                "aud", challengeClaims.get("iss"),
+                "nonce", challengeClaims.get("nonce"),
+                "exp", now + CHALLENGE_TTL_SECONDS,
+                "presentation", Json.object(
+                        "type", "VerifiablePresentation",
+                        "created", issuanceDate,
+                        "verifiableCredential", List.of(credential))));
+    }
+
+    private Caller caller(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null) {
+            String token = authorization.trim().replaceFirst("^(?i)(token|bearer)\\s+", "");
+            Map<String, Object> claims = nodeIdentity.verifyJwt(token);
+            if (claims != null && claims.get("sub") instanceof String) {
+                Object exp = claims.get("exp");
+                if (exp instanceof Number && ((Number) exp).longValue() < System.currentTimeMillis() / 1000)
+                    throw new HttpError(401, "Access token expired");
+                Object appDid = claims.get("appDid");
+                return new Caller((String) claims.get("sub"), appDid instanceof String ? (String) appDid : null);
+            }
+        }
+
+        if (config.requireToken)
+            throw new HttpError(401, "Missing or invalid access token");
+        return new Caller(defaultOwnerDid(), null);
+    }
+
+    private String defaultOwnerDid() {
+        return config.defaultOwnerDid != null ? config.defaultOwnerDid : userIdentity.getDid();
+    }
+
+    /**
+     * Payload of a JWT, without checking its signature. Null if it can't be decoded.
+     */
+    private static Map<String, Object> jwtClaims(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length < 2)
+            return null;
+        try {
+            return Json.parseObject(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Database
+
+    @SuppressWarnings("unchecked")
+    private void database(HttpExchange exchange, String action, VaultStore.Vault vault) throws IOException {
+        Map<String, Object> body = readJson(exchange);
+        String collection = stringField(body, "collection");
+        Map<String, Object> options = body.get("options") instanceof Map ? (Map<String, Object>) body.get("options") : null;
+        boolean timestamp = options != null && Boolean.TRUE.equals(options.get("timestamp"));
+        boolean upsert = options != null && Boolean.TRUE.equals(options.get("upsert"));
+
+        switch (action) {
+            case "create_collection":
+                store.createCollection(vault, collection);
+                sendJson(exchange, Json.object());
+                break;
+            case "delete_collection":
+                store.deleteCollection(vault, collection);
+                sendJson(exchange, Json.object());
+                break;
+            case "insert_one": {
+                List<Object> ids = store.insert(vault, collection, List.of(objectField(body, "document")), timestamp);
+                sendJson(exchange, Json.object("acknowledged", true, "inserted_id", ids.get(0)));
+                break;
+            }
+            case "insert_many": {
+                ArrayList<Map<String, Object>> documents = new ArrayList<>();
+                for (Object document : listField(body, "document")) {
+                    documents.add((Map<String, Object>) document);
+                }
+                sendJson(exchange, Json.object("acknowledged", true, "inserted_ids", store.insert(vault, collection, documents, timestamp)));
+                break;
+            }
+            case "update_one":
+            case "update_many":
+                sendJson(exchange, updateResult(store.update(vault, collection, filterField(body), objectField(body, "update"), action.equals("update_one"), upsert)));
+                break;
+            case "delete_one":
+            case "delete_many":
+                sendJson(exchange, Json.object("acknowledged", true, "deleted_count", store.delete(vault, collection, filterField(body), action.equals("delete_one"))));
+                break;
+            case "count_documents":
+                sendJson(exchange, Json.object("count", store.count(vault, collection, filterField(body), options)));
+                break;
+            case "find_one": {
+                Map<String, Object> findOptions = options == null ? new LinkedHashMap<>() : new LinkedHashMap<>(options);
+                findOptions.put("limit", 1L);
+                List<Map<String, Object>> found = store.find(vault, collection, filterField(body), findOptions);
+                sendJson(exchange, Json.object("items", found.isEmpty() ? null : found.get(0)));
+                break;
+            }
+            case "find_many":
+                sendJson(exchange, Json.object("items", store.find(vault, collection, filterField(body), options)));
+                break;
+            default:
+                throw new HttpError(404, "Unknown database route " + action);
+        }
+    }
+
+    private static Map<String, Object> updateResult(Object[] result) {
+        return Json.object("acknowledged", true, "matched_count", result[0], "modified_count", result[1], "upserted_id", result[2]);
+    }
+
+    // Files
+
+    private void files(HttpExchange exchange, String action, VaultStore.Vault vault) throws IOException {
+        if (action.startsWith("upload/")) {
+            store.writeFile(vault, URLDecoder.decode(action.substring("upload/".length()), "UTF-8"), readBody(exchange));
+            sendJson(exchange, Json.object());
+            return;
+        }
+
+        switch (action) {
+            case "download":
+                sendBytes(exchange, store.readFile(vault, queryParameter(exchange, "path")));
+                break;
+            case "delete":
+                store.deleteFile(vault, stringField(readJson(exchange), "path"));
+                sendJson(exchange, Json.object());
+                break;
+            case "move":
+            case "copy": {
+                Map<String, Object> body = readJson(exchange);
+                store.moveFile(vault, stringField(body, "src_path"), stringField(body, "dst_path"), action.equals("copy"));
+                sendJson(exchange, Json.object());
+                break;
+            }
+            case "properties":
+                sendJson(exchange, store.fileProperties(vault, queryParameter(exchange, "path")));
+                break;
+            case "list/folder":
+                sendJson(exchange, Json.object("file_info_list", store.listFolder(vault, queryParameter(exchange, "path"))));
+                break;
+            case "file/hash":
+                sendJson(exchange, Json.object("SHA256", store.fileHash(vault, queryParameter(exchange, "path"))));
+                break;
+            default:
+                throw new HttpError(404, "Unknown files route " + action);
+        }
+    }
+
+    // Scripting
+
+    @SuppressWarnings("unchecked")
+    private void scripting(HttpExchange exchange, String action, Caller caller) throws IOException {
+        if (action.startsWith("run_script_upload/") || action.startsWith("run_script_download/")) {
+            boolean upload = action.startsWith("run_script_upload/");
+            Transaction transaction = transactions.remove(action.substring(action.indexOf('/') + 1));
+            if (transaction == null || transaction.upload != upload)
+                throw new HttpError(404, "Unknown transaction");
+            if (upload) {
+                store.writeFile(transaction.vault, transaction.path, readBody(exchange));
+                sendJson(exchange, Json.object());
+            }
+            else {
+                sendBytes(exchange, store.readFile(transaction.vault, transaction.path));
+            }
+            return;
+        }
+
+        Map<String, Object> body = readJson(exchange);
+        switch (action) {
+            case "set_script": {
+                VaultStore.Vault vault = store.getVault(caller.did);
+                store.setScript(vault, stringField(body, "name"), body);
+                sendJson(exchange, Json.object("acknowledged", true));
+                break;
+            }
+            case "run_script": {
+                String targetDid = caller.did;
+                Object context = body.get("context");
+                if (context instanceof Map && ((Map<String, Object>) context).get("target_did") instanceof String)
+                    targetDid = (String) ((Map<String, Object>) context).get("target_did");
+
+                VaultStore.Vault vault = store.getVault(targetDid);
+                Map<String, Object> script = store.getScript(vault, stringField(body, "name"));
+                Map<String, Object> params = body.get("params") instanceof Map ? (Map<String, Object>) body.get("params") : new LinkedHashMap<>();
+
+                Object condition = script.get("condition");
+                if (condition instanceof Map && !checkCondition(vault, (Map<String, Object>) substitute(condition, params, caller), params, caller))
+                    throw new HttpError(403, "Script condition not met");
+
+                Map<String, Object> outputs = new LinkedHashMap<>();
+                runExecutable(vault, objectField(script, "executable"), params, caller, outputs);
+                sendJson(exchange, outputs);
+                break;
+            }
+            default:
+                throw new HttpError(404, "Unknown scripting route " + action);
+        }
+    }
+
+    /**
+     * Only queryHasResults, and, or conditions are evaluated. Other condition types pass.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean checkCondition(VaultStore.Vault vault, Map<String, Object> condition, Map<String, Object> params, Caller caller) {
+        Object type = condition.get("type");
+        Object body = condition.get("body");
+        if ("queryHasResults".equals(type)) {
+            Map<String, Object> query = (Map<String, Object>) body;
+            return store.count(vault, stringField(query, "collection"), filterField(query), null) > 0;
+        }
+        if ("and".equals(type) || "or".equals(type)) {
+            boolean and = "and".equals(type);
+            for (Object inner : (List<Object>) body) {
+                if (checkCondition(vault, (Map<String, Object>) inner, params, caller) != and)
+                    return !and;
+            }
+            return and;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runExecutable(VaultStore.Vault vault, Map<String, Object> executable, Map<String, Object> params, Caller caller, Map<String, Object> outputs) {
+        String type = stringField(executable, "type");
+        if (type.equals("aggregated")) {
+            for (Object inner : (List<Object>) executable.get("body")) {
+                runExecutable(vault, (Map<String, Object>) inner, params, caller, outputs);
+            }
+            return;
+        }
+
+        Map<String, Object> body = (Map<String, Object>) substitute(objectField(executable, "body"), params, caller);
+        Map<String, Object> options = body.get("options") instanceof Map ? (Map<String, Object>) body.get("options") : null;
+        Object output;
+        switch (type) {
+            case "find":
+                output = Json.object("items", store.find(vault, stringField(body, "collection"), filterField(body), options));
+                break;
+            case "insert": {
+                boolean timestamp = options != null && Boolean.TRUE.equals(options.get("timestamp"));
+                List<Object> ids = store.insert(vault, stringField(body, "collection"), List.of(objectField(body, "document")), timestamp);
+                output = Json.object("acknowledged", true, "inserted_id", ids.get(0));
+                break;
+            }
+            case "update": {
+                boolean upsert = options != null && Boolean.TRUE.equals(options.get("upsert"));
+                output = updateResult(store.update(vault, stringField(body, "collection"), filterField(body), objectField(body, "update"), false, upsert));
+                break;
+            }
+            case "delete":
+                output = Json.object("acknowledged", true, "deleted_count", store.delete(vault, stringField(body, "collection"), filterField(body), false));
+                break;
+            case "fileUpload":
+            case "fileDownload": {
+                String transactionId = VaultStore.newObjectId();
+                transactions.put(transactionId, new Transaction(vault, stringField(body, "path"), type.equals("fileUpload")));
+                output = Json.object("transaction_id", transactionId);
+                break;
+            }
+            case "fileProperties":
+                output = store.fileProperties(vault, stringField(body, "path"));
+                break;
+            case "fileHash":
+                output = Json.object("SHA256", store.fileHash(vault, stringField(body, "path")));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported executable type " + type);
+        }
+
+        if (!Boolean.FALSE.equals(executable.get("output")))
+            outputs.put(stringField(executable, "name"), output);
+    }
+
+    /**
+     * Replaces $params.<name>, $caller_did and $caller_app_did in string values. A string that is only a
+     * parameter reference is replaced by the parameter value, whatever its type.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object substitute(Object value, Map<String, Object> params, Caller caller) {
+        if (value instanceof Map) {
+            LinkedHashMap<String, Object> substituted = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                substituted.put(entry.getKey(), substitute(entry.getValue(), params, caller));
+            }
+            return substituted;
+        }
+        if (value instanceof List) {
+            ArrayList<Object> substituted = new ArrayList<>();
+            for (Object element : (List<Object>) value) {
+                substituted.add(substitute(element, params, caller));
+            }
+            return substituted;
+        }
+        if (!(value instanceof String))
+            return value;
+
+        String s = (String) value;
+        if (s.equals("$caller_did"))
+            return caller.did;
+        if (s.equals("$caller_app_did"))
+            return caller.appDid;
+
+        Matcher matcher = PARAMS_PATTERN.matcher(s);
+        if (matcher.matches())
+            return Json.copy(params.get(matcher.group(1)));
+
+        StringBuffer sb = new StringBuffer();
+        matcher.reset();
+        while (matcher.find()) {
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(String.valueOf(params.get(matcher.group(1)))));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    // Payment
+
+    private void payment(HttpExchange exchange, String action, Caller caller) throws IOException {
+        switch (action) {
+            case "version":
+                sendJson(exchange, Json.object("version", "1.0"));
+                break;
+            case "vault_package_info":
+                sendJson(exchange, Json.object(
+                        "pricingPlans", pricingPlans(),
+                        "backupPlans", new ArrayList<>(),
+                        "paymentSettings", Json.object("receivingELAAddress", "EStandInReceivingAddress", "wait_payment_timeout", 30, "wait_tx_timeout", 120),
+                        "version", "1.0"));
+                break;
+            case "vault_pricing_plan":
+                sendJson(exchange, pricingPlan(queryParameter(exchange, "name")));
+                break;
+            case "create_vault_package_order": {
+                Map<String, Object> order = store.createOrder(store.getVault(caller.did), caller.did, pricingPlan(stringField(readJson(exchange), "pricing_name")));
+                sendJson(exchange, Json.object("order_id", order.get("order_id")));
+                break;
+            }
+            case "pay_vault_package_order": {
+                Map<String, Object> body = readJson(exchange);
+                store.payOrder(store.getVault(caller.did), stringField(body, "order_id"), listField(body, "pay_txids"));
+                sendJson(exchange, Json.object());
+                break;
+            }
+            case "vault_package_order":
+                sendJson(exchange, Json.object("order_info", store.getOrder(store.getVault(caller.did), queryParameter(exchange, "order_id"))));
+                break;
+            case "vault_package_order_list":
+                sendJson(exchange, Json.object("order_info_list", store.getOrders(store.getVault(caller.did))));
+                break;
+            default:
+                throw new HttpError(404, "Unknown payment route " + action);
+        }
+    }
+
+    private static List<Object> pricingPlans() {
+        List<Object> plans = new ArrayList<>();
+        plans.add(Json.object("name", "Free", "maxStorage", 500, "serviceDays", -1, "amount", 0, "currency", "ELA"));
+        plans.add(Json.object("name", "Rookie", "maxStorage", 2000, "serviceDays", 30, "amount", 2.5, "currency", "ELA"));
+        plans.add(Json.object("name", "Advanced", "maxStorage", 50000, "serviceDays", 30, "amount", 10, "currency", "ELA"));
+        return plans;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> pricingPlan(String name) {
+        for (Object plan : pricingPlans()) {
+            if (((Map<String, Object>) plan).get("name").equals(name))
+                return (Map<String, Object>) plan;
+        }
+        throw new VaultStore.NotFoundException("Pricing plan " + name + " not found");
+    }
+
+    // Control routes
+
+    private void handleControl(HttpExchange exchange, String path) throws IOException {
+        switch (path) {
+            case "/standin/conditions":
+                if (exchange.getRequestMethod().equals("POST")) {
+                    Map<String, Object> body = readJson(exchange);
+                    conditions.setLatency(longField(body, "latencyMs", conditions.getLatencyMs()), longField(body, "jitterMs", conditions.getJitterMs()));
+                    conditions.setBandwidth(longField(body, "downloadBytesPerSecond", conditions.getDownloadBytesPerSecond()),
+                            longField(body, "uploadBytesPerSecond", conditions.getUploadBytesPerSecond()));
+                    if (body.get("errorRate") instanceof Number)
+                        conditions.setErrorRate(((Number) body.get("errorRate")).doubleValue());
+                }
+                sendJson(exchange, Json.object(
+                        "latencyMs", conditions.getLatencyMs(),
+                        "jitterMs", conditions.getJitterMs(),
+                        "downloadBytesPerSecond", conditions.getDownloadBytesPerSecond(),
+                        "uploadBytesPerSecond", conditions.getUploadBytesPerSecond(),
+                        "errorRate", conditions.getErrorRate()));
+                break;
+            case "/standin/stats":
+                sendJson(exchange, Json.object("requests", new LinkedHashMap<String, Object>(getRequestCounts()), "vaults", store.vaultCount(), "pendingTransactions", transactions.size()));
+                break;
+            case "/standin/reset":
+                reset();
+                sendJson(exchange, Json.object());
+                break;
+            case "/standin/identities":
+                sendJson(exchange, Json.object(
+                        "nodeDid", nodeIdentity.getDid(),
+                        "userDid", userIdentity.getDid(),
+                        "appDid", appIdentity.getDid(),
+                        "appInstanceDid", appInstanceIdentity.getDid(),
+                        "appInstanceDocument", appInstanceIdentity.getDocument(),
+                        "resolver", getResolverUrl()));
+                break;
+            case "/standin/challenge-response":
+                sendJson(exchange, Json.object("jwt", getChallengeResponse(stringField(readJson(exchange), "challenge"))));
+                break;
+            case "/standin/resolver":
+                resolveDid(exchange);
+                break;
+            default:
+                throw new HttpError(404, "Unknown route " + path);
+        }
+    }
+
+    // Requests and responses
+
+    /**
+     * JSON-RPC DID resolution, with the methods of the current (did_resolveDID) and previous (resolvedid) resolver
+     * APIs. Other DIDs are forwarded to the upstream resolver if any, or not found.
+     */
+    @SuppressWarnings("unchecked")
+    private void resolveDid(HttpExchange exchange) throws IOException {
+        byte[] request = readBody(exchange);
+        Map<String, Object> body = Json.parseObject(new String(request, StandardCharsets.UTF_8));
+        Object method = body.get("method");
+        Object params = body.get("params");
+        if (params instanceof List && !((List<Object>) params).isEmpty())
+            params = ((List<Object>) params).get(0);
+
+        Map<String, Object> response = Json.object("jsonrpc", "2.0", "id", body.get("id"));
+        if (!("did_resolveDID".equals(method) || "resolvedid".equals(method)) || !(params instanceof Map)) {
+            response.put("error", Json.object("code", -32601, "message", "Unsupported method " + method));
+        }
+        else {
+            String did = stringField((Map<String, Object>) params, "did");
+            DidIdentity identity = identities.get(did);
+            if (identity == null && config.upstreamResolver != null) {
+                forwardToUpstreamResolver(exchange, request);
+                return;
+            }
+            response.put("result", identity != null ? identity.resolve() : Json.object("did", did, "status", DID_STATUS_NOT_FOUND));
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, 200, Json.write(response).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void forwardToUpstreamResolver(HttpExchange exchange, byte[] request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(config.upstreamResolver).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request);
+            }
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                send(exchange, status, in != null ? in.readAllBytes() : new byte[0]);
+            }
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        boolean control = exchange.getRequestURI().getPath().startsWith("/standin/");
+        try (InputStream in = control ? exchange.getRequestBody() : conditions.throttleUpload(exchange.getRequestBody())) {
+            return in.readAllBytes();
+        }
+    }
+
+    private Map<String, Object> readJson(HttpExchange exchange) throws IOException {
+        String body = new String(readBody(exchange), StandardCharsets.UTF_8).trim();
+        return body.isEmpty() ? new LinkedHashMap<>() : Json.parseObject(body);
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int separator = pair.indexOf('=');
+                String key = separator < 0 ? pair : pair.substring(0, separator);
+                if (URLDecoder.decode(key, "UTF-8").equals(name))
+                    return separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), "UTF-8");
+            }
+        }
+        throw new IllegalArgumentException("Missing query parameter " + name);
+    }
+
+    private static String stringField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String))
+            throw new IllegalArgumentException("Missing or invalid field " + name);
+        return (String) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> objectField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof Map))
+            throw new IllegalArgumentException("Missing or invalid field " + name);
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> listField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof List))
+            throw new IllegalArgumentException("Missing or invalid field " + name);
+        return (List<Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> filterField(Map<String, Object> body) {
+        Object filter = body.get("filter");
+        return filter instanceof Map ? (Map<String, Object>) filter : new LinkedHashMap<>();
+    }
+
+    private static long longField(Map<String, Object> body, String name, long defaultValue) {
+        Object value = body.get(name);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
+    private void sendJson(HttpExchange exchange, Map<String, Object> fields) throws IOException {
+        Map<String, Object> response = Json.object("_status", "OK");
+        response.putAll(fields);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, 200, Json.write(response).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendBytes(HttpExchange exchange, byte[] content) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        send(exchange, 200, content);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) {
+        Map<String, Object> response = Json.object("_status", "ERR", "_error", Json.object("code", status, "message", message));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try {
+            send(exchange, status, Json.write(response).getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            // Client went away, or headers were already sent
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] content) throws IOException {
+        exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+        if (content.length == 0)
+            return;
+        boolean control = exchange.getRequestURI().getPath().startsWith("/standin/");
+        try (OutputStream out = control ? exchange.getResponseBody() : conditions.throttleDownload(exchange.getResponseBody())) {
+            out.write(content);
+        }
+    }
+
+    // Command line
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -cp out org.elastos.plugins.hive.standin.StandInNode [options]",
+            "  --host <host>              Address to listen on (default 127.0.0.1)",
+            "  --port <port>              Port to listen on, 0 for any (default 9001)",
+            "  --threads <n>              Request handling threads (default 16)",
+            "  --latency-ms <ms>          Delay added to each request (default 0)",
+            "  --jitter-ms <ms>           Random extra delay, up to this value (default 0)",
+            "  --download-kbps <kbit/s>   Bandwidth limit from node to client, per request (default unlimited)",
+            "  --upload-kbps <kbit/s>     Bandwidth limit from client to node, per request (default unlimited)",
+            "  --error-rate <0..1>        Ratio of requests failing with HTTP 503 (default 0)",
+            "  --require-token            Reject requests without an access token issued by this node",
+            "  --no-auto-create           Don't create vaults on first use",
+            "  --owner-did <did>          Vault owner for requests without token (default: the test user DID)",
+            "  --upstream-resolver <url>  DID resolver for DIDs unknown to the node (default: not found)");
+
+    public static void main(String[] args) throws IOException {
+        Config config = new Config();
+        long latencyMs = 0;
+        long jitterMs = 0;
+        long downloadKbps = 0;
+        long uploadKbps = 0;
+        double errorRate = 0;
+
+        try {
+            for (int i=0; i<args.length; i++) {
+                switch (args[i]) {
+                    case "--host": config.setHost(args[++i]); break;
+                    case "--port": config.setPort(Integer.parseInt(args[++i])); break;
+                    case "--threads": config.setThreads(Integer.parseInt(args[++i])); break;
+                    case "--latency-ms": latencyMs = Long.parseLong(args[++i]); break;
+                    case "--jitter-ms": jitterMs = Long.parseLong(args[++i]); break;
+                    case "--download-kbps": downloadKbps = Long.parseLong(args[++i]); break;
+                    case "--upload-kbps": uploadKbps = Long.parseLong(args[++i]); break;
+                    case "--error-rate": errorRate = Double.parseDouble(args[++i]); break;
+                    case "--require-token": config.setRequireToken(true); break;
+                    case "--no-auto-create": config.setAutoCreateVaults(false); break;
+                    case "--owner-did": config.setDefaultOwnerDid(args[++i]); break;
+                    case "--upstream-resolver": config.setUpstreamResolver(args[++i]); break;
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        StandInNode node = new StandInNode(config);
+        node.getConditions()
+                .setLatency(latencyMs, jitterMs)
+                .setBandwidth(downloadKbps * 1000 / 8, uploadKbps * 1000 / 8)
+                .setErrorRate(errorRate);
+        node.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(node::stop));
+        System.out.println("Stand-in hive node listening on " + node.getUrl());
+        System.out.println("DID resolver: " + node.getResolverUrl());
+        System.out.println("Node DID: " + node.getNodeIdentity().getDid());
+        System.out.println("Test user DID: " + node.getUserIdentity().getDid());
+        System.out.println("Test app instance DID: " + node.getAppInstanceIdentity().getDid() + " (document: GET /standin/identities)");
+    }
+}
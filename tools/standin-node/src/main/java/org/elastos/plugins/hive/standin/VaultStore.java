@@ -0,0 +1,493 @@
+package org.elastos.plugins.hive.standin;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory content of the vaults hosted by the stand-in node: collections, files, scripts and orders, by vault
+ * owner DID. Each vault is locked as a whole during an operation, which is enough for load tests.
+ */
+public class VaultStore {
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    public static class AlreadyExistsException extends RuntimeException {
+        public AlreadyExistsException(String message) {
+            super(message);
+        }
+    }
+
+    public static class StoredFile {
+        final byte[] content;
+        final long modified;
+
+        StoredFile(byte[] content) {
+            this.content = content;
+            this.modified = System.currentTimeMillis() / 1000;
+        }
+    }
+
+    public static class Vault {
+        final String ownerDid;
+        final long created = System.currentTimeMillis() / 1000;
+        final Map<String, List<Map<String, Object>>> collections = new TreeMap<>();
+        // Files by path, without leading '/'
+        final TreeMap<String, StoredFile> files = new TreeMap<>();
+        final Map<String, Map<String, Object>> scripts = new LinkedHashMap<>();
+        final Map<String, Map<String, Object>> orders = new LinkedHashMap<>();
+        String pricingPlan = "Free";
+
+        Vault(String ownerDid) {
+            this.ownerDid = ownerDid;
+        }
+
+        public String getOwnerDid() {
+            return ownerDid;
+        }
+
+        List<Map<String, Object>> collection(String name) {
+            List<Map<String, Object>> documents = collections.get(name);
+            if (documents == null)
+                throw new NotFoundException("Collection " + name + " not found");
+            return documents;
+        }
+
+        long databaseSize() {
+            long size = 0;
+            for (List<Map<String, Object>> documents : collections.values()) {
+                for (Map<String, Object> document : documents) {
+                    size += Json.write(document).length();
+                }
+            }
+            return size;
+        }
+
+        long filesSize() {
+            long size = 0;
+            for (StoredFile file : files.values()) {
+                size += file.content.length;
+            }
+            return size;
+        }
+    }
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final ConcurrentHashMap<String, Vault> vaults = new ConcurrentHashMap<>();
+    private final boolean autoCreateVaults;
+
+    public VaultStore(boolean autoCreateVaults) {
+        this.autoCreateVaults = autoCreateVaults;
+    }
+
+    /**
+     * Creates the vault of the given owner. Returns false if it already exists.
+     */
+    public boolean createVault(String ownerDid) {
+        return vaults.putIfAbsent(ownerDid, new Vault(ownerDid)) == null;
+    }
+
+    public void removeVault(String ownerDid) {
+        vaults.remove(ownerDid);
+    }
+
+    /**
+     * Vault of the given owner. Created on first use if vaults are auto created.
+     */
+    public Vault getVault(String ownerDid) {
+        if (autoCreateVaults)
+            return vaults.computeIfAbsent(ownerDid, Vault::new);
+
+        Vault vault = vaults.get(ownerDid);
+        if (vault == null)
+            throw new NotFoundException("Vault of " + ownerDid + " does not exist");
+        return vault;
+    }
+
+    public Vault findVault(String ownerDid) {
+        return vaults.get(ownerDid);
+    }
+
+    public void clear() {
+        vaults.clear();
+    }
+
+    public int vaultCount() {
+        return vaults.size();
+    }
+
+    // Database
+
+    public void createCollection(Vault vault, String name) {
+        synchronized (vault) {
+            if (vault.collections.containsKey(name))
+                throw new AlreadyExistsException("Collection " + name + " already exists");
+            vault.collections.put(name, new ArrayList<>());
+        }
+    }
+
+    public void deleteCollection(Vault vault, String name) {
+        synchronized (vault) {
+            vault.collections.remove(name);
+        }
+    }
+
+    /**
+     * Inserts documents, and returns their _id as strings.
+     */
+    public List<Object> insert(Vault vault, String collectionName, List<Map<String, Object>> documents, boolean timestamp) {
+        ArrayList<Object> insertedIds = new ArrayList<>();
+        synchronized (vault) {
+            List<Map<String, Object>> collection = vault.collection(collectionName);
+            for (Map<String, Object> document : documents) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> stored = (Map<String, Object>) Json.copy(document);
+                if (!stored.containsKey("_id"))
+                    stored.put("_id", Json.object("$oid", newObjectId()));
+                if (timestamp) {
+                    long now = System.currentTimeMillis() / 1000;
+                    stored.put("created", now);
+                    stored.put("modified", now);
+                }
+                collection.add(stored);
+                insertedIds.add(idString(stored.get("_id")));
+            }
+        }
+        return insertedIds;
+    }
+
+    /**
+     * Returns copies of the matching documents.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> find(Vault vault, String collectionName, Map<String, Object> filter, Map<String, Object> options) {
+        ArrayList<Map<String, Object>> found = new ArrayList<>();
+        synchronized (vault) {
+            for (Map<String, Object> document : vault.collection(collectionName)) {
+                if (Documents.matches(document, filter))
+                    found.add((Map<String, Object>) Json.copy(document));
+            }
+        }
+
+        if (options == null)
+            return found;
+
+        Comparator<Map<String, Object>> comparator = Documents.sortComparator(options.get("sort"));
+        if (comparator != null)
+            found.sort(comparator);
+
+        int skip = intOption(options, "skip");
+        int limit = intOption(options, "limit");
+        List<Map<String, Object>> page = found.subList(Math.min(skip, found.size()), limit > 0 ? Math.min(found.size(), skip + limit) : found.size());
+
+        ArrayList<Map<String, Object>> projected = new ArrayList<>();
+        Object projection = options.get("projection");
+        for (Map<String, Object> document : page) {
+            projected.add(projection instanceof Map ? Documents.project(document, (Map<String, Object>) projection) : document);
+        }
+        return projected;
+    }
+
+    public long count(Vault vault, String collectionName, Map<String, Object> filter, Map<String, Object> options) {
+        long count = 0;
+        synchronized (vault) {
+            for (Map<String, Object> document : vault.collection(collectionName)) {
+                if (Documents.matches(document, filter))
+                    count++;
+            }
+        }
+
+        if (options != null) {
+            count = Math.max(0, count - intOption(options, "skip"));
+            int limit = intOption(options, "limit");
+            if (limit > 0)
+                count = Math.min(count, limit);
+        }
+        return count;
+    }
+
+    /**
+     * Returns matched count, modified count and upserted id (or null).
+     */
+    public Object[] update(Vault vault, String collectionName, Map<String, Object> filter, Map<String, Object> update, boolean onlyOne, boolean upsert) {
+        long matched = 0;
+        long modified = 0;
+        Object upsertedId = null;
+        synchronized (vault) {
+            List<Map<String, Object>> collection = vault.collection(collectionName);
+            for (Map<String, Object> document : collection) {
+                if (!Documents.matches(document, filter))
+                    continue;
+
+                matched++;
+                String before = Json.write(document);
+                Documents.applyUpdate(document, update, false);
+                if (!before.equals(Json.write(document))) {
+                    modified++;
+                    if (document.containsKey("modified"))
+                        document.put("modified", System.currentTimeMillis() / 1000);
+                }
+                if (onlyOne)
+                    break;
+            }
+
+            if (matched == 0 && upsert) {
+                Map<String, Object> document = Documents.upsertBase(filter);
+                if (!document.containsKey("_id"))
+                    document.put("_id", Json.object("$oid", newObjectId()));
+                Documents.applyUpdate(document, update, true);
+                collection.add(document);
+                upsertedId = idString(document.get("_id"));
+            }
+        }
+        return new Object[]{matched, modified, upsertedId};
+    }
+
+    public long delete(Vault vault, String collectionName, Map<String, Object> filter, boolean onlyOne) {
+        long deleted = 0;
+        synchronized (vault) {
+            List<Map<String, Object>> collection = vault.collection(collectionName);
+            for (int i=0; i<collection.size(); i++) {
+                if (Documents.matches(collection.get(i), filter)) {
+                    collection.remove(i--);
+                    deleted++;
+                    if (onlyOne)
+                        break;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    // Files
+
+    public void writeFile(Vault vault, String path, byte[] content) {
+        synchronized (vault) {
+            vault.files.put(normalizePath(path), new StoredFile(content));
+        }
+    }
+
+    public byte[] readFile(Vault vault, String path) {
+        synchronized (vault) {
+            StoredFile file = vault.files.get(normalizePath(path));
+            if (file == null)
+                throw new NotFoundException("File " + path + " not found");
+            return file.content;
+        }
+    }
+
+    /**
+     * Deletes a file, or a folder and everything under it.
+     */
+    public void deleteFile(Vault vault, String path) {
+        String normalized = normalizePath(path);
+        synchronized (vault) {
+            vault.files.remove(normalized);
+            vault.files.subMap(normalized + "/", normalized + "0").clear();
+        }
+    }
+
+    public void moveFile(Vault vault, String sourcePath, String destinationPath, boolean keepSource) {
+        String source = normalizePath(sourcePath);
+        String destination = normalizePath(destinationPath);
+        synchronized (vault) {
+            TreeMap<String, StoredFile> moved = new TreeMap<>();
+            StoredFile file = vault.files.get(source);
+            if (file != null)
+                moved.put(destination, file);
+            for (Map.Entry<String, StoredFile> entry : vault.files.subMap(source + "/", source + "0").entrySet()) {
+                moved.put(destination + entry.getKey().substring(source.length()), entry.getValue());
+            }
+            if (moved.isEmpty())
+                throw new NotFoundException("File " + sourcePath + " not found");
+
+            if (!keepSource)
+                deleteFile(vault, source);
+            vault.files.putAll(moved);
+        }
+    }
+
+    /**
+     * Returns {type, name, size, last_modify} for a file or folder.
+     */
+    public Map<String, Object> fileProperties(Vault vault, String path) {
+        String normalized = normalizePath(path);
+        synchronized (vault) {
+            StoredFile file = vault.files.get(normalized);
+            if (file != null)
+                return fileInfo("file", baseName(normalized), file.content.length, file.modified);
+
+            if (normalized.isEmpty() || !vault.files.subMap(normalized + "/", normalized + "0").isEmpty())
+                return fileInfo("folder", baseName(normalized), 0, vault.created);
+        }
+        throw new NotFoundException("File " + path + " not found");
+    }
+
+    /**
+     * Lists the files and folders directly under a folder.
+     */
+    public List<Map<String, Object>> listFolder(Vault vault, String path) {
+        String normalized = normalizePath(path);
+        String prefix = normalized.isEmpty() ? "" : normalized + "/";
+        ArrayList<Map<String, Object>> children = new ArrayList<>();
+        Set<String> folders = new LinkedHashSet<>();
+        synchronized (vault) {
+            Map<String, StoredFile> under = prefix.isEmpty() ? vault.files : vault.files.subMap(prefix, normalized + "0");
+            if (under.isEmpty() && !prefix.isEmpty())
+                throw new NotFoundException("Folder " + path + " not found");
+
+            for (Map.Entry<String, StoredFile> entry : under.entrySet()) {
+                String relative = entry.getKey().substring(prefix.length());
+                int separator = relative.indexOf('/');
+                if (separator < 0)
+                    children.add(fileInfo("file", relative, entry.getValue().content.length, entry.getValue().modified));
+                else if (folders.add(relative.substring(0, separator)))
+                    children.add(fileInfo("folder", relative.substring(0, separator), 0, vault.created));
+            }
+        }
+        return children;
+    }
+
+    public String fileHash(Vault vault, String path) {
+        byte[] content = readFile(vault, path);
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, Object> fileInfo(String type, String name, long size, long modified) {
+        return Json.object("type", type, "name", name, "size", size, "last_modify", modified);
+    }
+
+    private static String normalizePath(String path) {
+        String normalized = path == null ? "" : path.trim();
+        while (normalized.startsWith("/"))
+            normalized = normalized.substring(1);
+        while (normalized.endsWith("/"))
+            normalized = normalized.substring(0, normalized.length() - 1);
+        return normalized;
+    }
+
+    private static String baseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    // Scripts and orders
+
+    public void setScript(Vault vault, String name, Map<String, Object> script) {
+        synchronized (vault) {
+            vault.scripts.put(name, script);
+        }
+    }
+
+    public Map<String, Object> getScript(Vault vault, String name) {
+        synchronized (vault) {
+            Map<String, Object> script = vault.scripts.get(name);
+            if (script == null)
+                throw new NotFoundException("Script " + name + " not found");
+            return script;
+        }
+    }
+
+    public Map<String, Object> createOrder(Vault vault, String ownerDid, Map<String, Object> pricingPlan) {
+        Map<String, Object> order = Json.object(
+                "order_id", newObjectId(),
+                "did", ownerDid,
+                "pricing_info", pricingPlan,
+                "pay_txids", new ArrayList<>(),
+                "state", "wait_pay",
+                "type", "vault",
+                "creat_time", System.currentTimeMillis() / 1000,
+                "finish_time", 0);
+        synchronized (vault) {
+            vault.orders.put((String) order.get("order_id"), order);
+        }
+        return order;
+    }
+
+    public Map<String, Object> payOrder(Vault vault, String orderId, List<Object> transactionIds) {
+        synchronized (vault) {
+            Map<String, Object> order = getOrder(vault, orderId);
+            order.put("pay_txids", transactionIds);
+            order.put("state", "success");
+            order.put("finish_time", System.currentTimeMillis() / 1000);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> pricing = (Map<String, Object>) order.get("pricing_info");
+            vault.pricingPlan = (String) pricing.get("name");
+            return order;
+        }
+    }
+
+    public Map<String, Object> getOrder(Vault vault, String orderId) {
+        synchronized (vault) {
+            Map<String, Object> order = vault.orders.get(orderId);
+            if (order == null)
+                throw new NotFoundException("Order " + orderId + " not found");
+            return order;
+        }
+    }
+
+    public List<Map<String, Object>> getOrders(Vault vault) {
+        synchronized (vault) {
+            return new ArrayList<>(vault.orders.values());
+        }
+    }
+
+    public Map<String, Object> serviceInfo(Vault vault) {
+        synchronized (vault) {
+            return Json.object(
+                    "did", vault.ownerDid,
+                    "max_storage", 500,
+                    "file_use_storage", vault.filesSize(),
+                    "db_use_storage", vault.databaseSize(),
+                    "modify_time", vault.created,
+                    "start_time", vault.created,
+                    "end_time", -1,
+                    "delete_time", -1,
+                    "pricing_using", vault.pricingPlan,
+                    "state", "running");
+        }
+    }
+
+    static String newObjectId() {
+        byte[] bytes = new byte[12];
+        random.nextBytes(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object idString(Object id) {
+        if (id instanceof Map && ((Map<String, Object>) id).containsKey("$oid"))
+            return ((Map<String, Object>) id).get("$oid");
+        return id;
+    }
+
+    private static int intOption(Map<String, Object> options, String name) {
+        Object value = options.get(name);
+        return value instanceof Number ? Math.max(0, ((Number) value).intValue()) : 0;
+    }
+}
@@ -22,13 +22,85 @@
 
 var exec = cordova.exec;
 
-function execAsPromise<T>(method: string, params: any[] = []): Promise<T> {
-    return new Promise((resolve, reject)=>{
+let nextRequestId = 1;
+
+/**
+ * Native actions only implemented by the Android plugin. Elsewhere, they are rejected right away: cordova-ios
+ * doesn't call back for a method the plugin doesn't have, so the call would never complete.
+ */
+const ANDROID_ONLY_ACTIONS = [
+    "cancel", "setOptions", "getMetrics", "resetMetrics", "replayWorkload",
+    "client_callScriptOnVaults", "client_getVaultAddress", "client_setVaultAddress",
+    "database_bulkWrite", "database_enableReplica", "database_syncReplica", "database_disableReplica",
+    "database_findOneLocal", "database_findManyLocal", "database_countDocumentsLocal",
+    "database_subscribe", "database_unsubscribe",
+    "reader_enableReadAhead", "reader_readSpilled"
+];
+
+function isAndroid(): boolean {
+    return cordova.platformId === "android";
+}
+
+function isAvailable(method: string): boolean {
+    return isAndroid() || ANDROID_ONLY_ACTIONS.indexOf(method) < 0;
+}
+
+function notAvailableError(method: string): EnhancedErrorImpl {
+    return new EnhancedErrorImpl("UNSPECIFIED", method + " is only available on Android");
+}
+
+/**
+ * Appends the request id to the native call parameters so that the call can be cancelled. Only the Android
+ * plugin supports cancellation, so the parameters are sent unchanged on other platforms.
+ */
+function withRequestId(params: any[], requestId: string): any[] {
+    if (!isAndroid())
+        return params;
+    return [...params, { $requestId: requestId }];
+}
+
+function execAsPromise<T>(method: string, params: any[] = []): HivePlugin.CancellablePromise<T> {
+    let requestId = "" + (nextRequestId++);
+    let promise = new Promise<T>((resolve, reject)=>{
+        if (!isAvailable(method)) {
+            reject(notAvailableError(method));
+            return;
+        }
+
         exec((result: any)=>{
             resolve(result);
         }, (err: any)=>{
             reject(nativeToTSException(err));
-        }, 'HivePlugin', method, params);
+        }, 'HivePlugin', method, withRequestId(params, requestId));
+    });
+    return makeCancellable(promise, requestId);
+}
+
+function makeCancellable<T>(promise: Promise<T>, requestId: string): HivePlugin.CancellablePromise<T> {
+    let cancellable = promise as HivePlugin.CancellablePromise<T>;
+    cancellable.requestId = requestId;
+    cancellable.cancel = () => cancelRequest(requestId);
+    return cancellable;
+}
+
+/**
+ * Post processes the result of a cancellable native call. The returned promise still cancels the native call.
+ */
+function thenCancellable<T, R>(promise: HivePlugin.CancellablePromise<T>, onResult: (result: T) => R | PromiseLike<R>): HivePlugin.CancellablePromise<R> {
+    return makeCancellable(promise.then(onResult), promise.requestId);
+}
+
+function cancelRequest(requestId: string): Promise<boolean> {
+    // Nothing to cancel where native calls can't be cancelled
+    if (!isAvailable("cancel"))
+        return Promise.resolve(false);
+
+    return new Promise((resolve, reject)=>{
+        exec((cancelled: boolean)=>{
+            resolve(cancelled);
+        }, (err: any)=>{
+            reject(nativeToTSException(err));
+        }, 'HivePlugin', "cancel", [requestId]);
     });
 }
 
@@ -38,13 +110,19 @@ enum NativeErrorCode {
     PROVIDER_NOT_PUBLISHED = -2, // No vault provider information inside a DID document
     DID_NOT_PUBLISHED = -3,
     INVALID_HIVE_URL_FORMAT = -4,
+    PROVIDER_UNAVAILABLE = -5, // Provider circuit breaker open after repeated network failures
 
     // Database errors - range -1000 ~ -1999
     COLLECTION_NOT_FOUND = -1000,
+    REPLICA_NOT_ENABLED = -1001, // Local query on a collection without enableReplica()
+    UNSUPPORTED_LOCAL_QUERY = -1002, // Query operator not evaluated by local replicas
 
     // File errors - range -2000 ~ -2999
     FILE_NOT_FOUND = -2000,
 
+    // Request errors - range -3000 ~ -3999
+    REQUEST_CANCELLED = -3000,
+
     // Unknown error
     UNSPECIFIED = 999
 }
@@ -68,15 +146,24 @@ function nativeToTSException(nativeErr) {
         case NativeErrorCode.PROVIDER_NOT_PUBLISHED: tsErrorCode = "PROVIDER_NOT_PUBLISHED"; break;
         case NativeErrorCode.DID_NOT_PUBLISHED: tsErrorCode = "DID_NOT_PUBLISHED"; break;
         case NativeErrorCode.COLLECTION_NOT_FOUND: tsErrorCode = "COLLECTION_NOT_FOUND"; break;
+        case NativeErrorCode.REPLICA_NOT_ENABLED: tsErrorCode = "REPLICA_NOT_ENABLED"; break;
+        case NativeErrorCode.UNSUPPORTED_LOCAL_QUERY: tsErrorCode = "UNSUPPORTED_LOCAL_QUERY"; break;
         case NativeErrorCode.FILE_NOT_FOUND: tsErrorCode = "FILE_NOT_FOUND"; break;
         case NativeErrorCode.INVALID_HIVE_URL_FORMAT: tsErrorCode = "INVALID_HIVE_URL_FORMAT"; break;
+        case NativeErrorCode.PROVIDER_UNAVAILABLE: tsErrorCode = "PROVIDER_UNAVAILABLE"; break;
+        case NativeErrorCode.REQUEST_CANCELLED: tsErrorCode = "REQUEST_CANCELLED"; break;
         default: tsErrorCode = "UNSPECIFIED";
     }
 
-    return new EnhancedErrorImpl(tsErrorCode, nativeErr.message);
+    let enhancedError = new EnhancedErrorImpl(tsErrorCode, nativeErr.message);
+    if (nativeErr.partialResult)
+        enhancedError.partialResult = nativeErr.partialResult;
+    return enhancedError;
 }
 
 class EnhancedErrorImpl extends Error implements HivePlugin.EnhancedError {
+    partialResult?: any;
+
     constructor(private errorType: HivePlugin.EnhancedErrorType, message: string) {
         super(message);
 
@@ -340,10 +427,16 @@ class InsertOneResultImpl implements HivePlugin.Database.InsertOneResult {
 
 class InsertManyResultImpl implements HivePlugin.Database.InsertManyResult {
     insertedIds: string[];
+    insertedCount: number;
+    batchCount: number;
+    failedBatches: HivePlugin.Database.InsertManyFailedBatch[];
 
     static fromJson(json: HivePlugin.JSONObject): InsertManyResultImpl {
         let result = new InsertManyResultImpl();
         Object.assign(result, json);
+        result.failedBatches = (result.failedBatches || []).map(failedBatch => {
+            return { offset: failedBatch.offset, count: failedBatch.count, error: nativeToTSException(failedBatch.error) };
+        });
         return result;
     }
 }
@@ -388,21 +481,28 @@ class DatabaseImpl implements HivePlugin.Database.Database {
         return InsertOneResultImpl.fromJson(resultJson);
     }
 
-    async insertMany(collectionName: string, documents: HivePlugin.JSONObject[], options?: HivePlugin.Database.InsertOptions): Promise<HivePlugin.Database.InsertManyResult> {
-        let resultJson = await execAsPromise<HivePlugin.JSONObject>("database_insertMany", [this.vault.objectId, collectionName, documents, options]);
-        return InsertManyResultImpl.fromJson(resultJson);
+    async insertMany(collectionName: string, documents: HivePlugin.JSONObject[], options?: HivePlugin.Database.InsertManyOptions): Promise<HivePlugin.Database.InsertManyResult> {
+        try {
+            let resultJson = await execAsPromise<HivePlugin.JSONObject>("database_insertMany", [this.vault.objectId, collectionName, documents, options]);
+            return InsertManyResultImpl.fromJson(resultJson);
+        }
+        catch (e) {
+            if (e instanceof EnhancedErrorImpl && e.partialResult)
+                e.partialResult = InsertManyResultImpl.fromJson(e.partialResult);
+            throw e;
+        }
     }
 
-    async countDocuments(collectionName: string, query: HivePlugin.JSONObject, options?: HivePlugin.Database.CountOptions): Promise<number> {
-        let resultJson = await execAsPromise<{count:number}>("database_countDocuments", [this.vault.objectId, collectionName, query, options]);
-        return resultJson.count;
+    countDocuments(collectionName: string, query: HivePlugin.JSONObject, options?: HivePlugin.Database.CountOptions): HivePlugin.CancellablePromise<number> {
+        let request = execAsPromise<{count:number}>("database_countDocuments", [this.vault.objectId, collectionName, query, options]);
+        return thenCancellable(request, resultJson => resultJson.count);
     }
 
-    findOne(collectionName: string, query: HivePlugin.JSONObject, options?: HivePlugin.Database.FindOptions): Promise<HivePlugin.JSONObject> {
+    findOne(collectionName: string, query: HivePlugin.JSONObject, options?: HivePlugin.Database.FindOptions): HivePlugin.CancellablePromise<HivePlugin.JSONObject> {
         return execAsPromise<HivePlugin.JSONObject>("database_findOne", [this.vault.objectId, collectionName, query, options]);
     }
 
-    findMany(collectionName: string, query: HivePlugin.JSONObject, options?: HivePlugin.Database.FindOptions): Promise<HivePlugin.JSONObject[]> {
+    findMany(collectionName: string, query: HivePlugin.JSONObject, options?: HivePlugin.Database.FindOptions): HivePlugin.CancellablePromise<HivePlugin.JSONObject[]> {
         return execAsPromise<HivePlugin.JSONObject[]>("database_findMany", [this.vault.objectId, collectionName, query, options]);
     }
 
@@ -425,6 +525,88 @@ class DatabaseImpl implements HivePlugin.Database.Database {
         let resultJson = await execAsPromise<HivePlugin.JSONObject>("database_deleteMany", [this.vault.objectId, collectionName, filter, options]);
         return DeleteResultImpl.fromJson(resultJson);
     }
+
+    bulkWrite(collectionName: string, operations: HivePlugin.Database.BulkWriteOperation[], options?: HivePlugin.Database.BulkWriteOptions): HivePlugin.CancellablePromise<HivePlugin.Database.BulkWriteResult> {
+        let request = execAsPromise<any>("database_bulkWrite", [this.vault.objectId, collectionName, operations, options]);
+        return thenCancellable(request, resultJson => {
+            for (let result of resultJson.results) {
+                if (result.error)
+                    result.error = nativeToTSException(result.error);
+            }
+            return resultJson as HivePlugin.Database.BulkWriteResult;
+        });
+    }
+
+    enableReplica(collectionName: string, options?: HivePlugin.Database.ReplicaOptions): Promise<HivePlugin.Database.ReplicaSyncResult> {
+        return execAsPromise<HivePlugin.Database.ReplicaSyncResult>("database_enableReplica", [this.vault.objectId, collectionName, options]);
+    }
+
+    syncReplica(collectionName: string, options?: HivePlugin.Database.ReplicaSyncOptions): Promise<HivePlugin.Database.ReplicaSyncResult> {
+        return execAsPromise<HivePlugin.Database.ReplicaSyncResult>("database_syncReplica", [this.vault.objectId, collectionName, options]);
+    }
+
+    async disableReplica(collectionName: string): Promise<void> {
+        await execAsPromise<void>("database_disableReplica", [this.vault.objectId, collectionName]);
+    }
+
+    findOneLocal(collectionName: string, query?: HivePlugin.JSONObject, options?: HivePlugin.Database.FindOptions, freshness?: HivePlugin.Database.LocalQueryFreshness): Promise<HivePlugin.Database.LocalFindOneResult> {
+        return execAsPromise<HivePlugin.Database.LocalFindOneResult>("database_findOneLocal", [this.vault.objectId, collectionName, query, options, freshness]);
+    }
+
+    findManyLocal(collectionName: string, query?: HivePlugin.JSONObject, options?: HivePlugin.Database.FindOptions, freshness?: HivePlugin.Database.LocalQueryFreshness): Promise<HivePlugin.Database.LocalFindManyResult> {
+        return execAsPromise<HivePlugin.Database.LocalFindManyResult>("database_findManyLocal", [this.vault.objectId, collectionName, query, options, freshness]);
+    }
+
+    countDocumentsLocal(collectionName: string, query?: HivePlugin.JSONObject, freshness?: HivePlugin.Database.LocalQueryFreshness): Promise<HivePlugin.Database.LocalCountResult> {
+        return execAsPromise<HivePlugin.Database.LocalCountResult>("database_countDocumentsLocal", [this.vault.objectId, collectionName, query, freshness]);
+    }
+
+    subscribe(collectionName: string, query: HivePlugin.JSONObject, onChanges: (changes: HivePlugin.Database.CollectionChanges) => void, onError?: (error: HivePlugin.EnhancedError) => void, options?: HivePlugin.Database.SubscribeOptions): Promise<HivePlugin.Database.Subscription> {
+        return new Promise((resolve, reject)=>{
+            if (!isAvailable("database_subscribe")) {
+                reject(notAvailableError("database_subscribe"));
+                return;
+            }
+
+            let subscribed = false;
+
+            // Changes are streamed by the native side (kept alive callback) until unsubscribe() sends a final "done" message.
+            exec((message: any)=>{
+                if (!message || message.done)
+                    return;
+
+                if (message.subscriptionId) {
+                    subscribed = true;
+                    resolve(new SubscriptionImpl(message.subscriptionId));
+                }
+                else if (message.error) {
+                    if (onError)
+                        onError(nativeToTSException(message.error));
+                }
+                else {
+                    onChanges({
+                        added: message.added,
+                        changed: message.changed,
+                        removed: message.removed,
+                        count: message.count
+                    });
+                }
+            }, (err: any)=>{
+                if (!subscribed)
+                    reject(nativeToTSException(err));
+                else if (onError)
+                    onError(nativeToTSException(err));
+            }, 'HivePlugin', "database_subscribe", [this.vault.objectId, collectionName, query, options]);
+        });
+    }
+}
+
+class SubscriptionImpl implements HivePlugin.Database.Subscription {
+    constructor(public id: string) {}
+
+    async unsubscribe(): Promise<void> {
+        await execAsPromise<void>("database_unsubscribe", [this.id]);
+    }
 }
 
 class WriterImpl implements HivePlugin.Files.Writer {
@@ -436,8 +618,9 @@ class WriterImpl implements HivePlugin.Files.Writer {
     flush(): Promise<void> {
         return execAsPromise<void>("writer_flush", [this.objectId]);
     }
-    close(): Promise<void> {
-        return execAsPromise<void>("writer_close", [this.objectId]);
+    async close(): Promise<HivePlugin.Files.CompressionStats> {
+        let stats = await execAsPromise<HivePlugin.Files.CompressionStats>("writer_close", [this.objectId]);
+        return stats || null;
     }
 
     static fromJson(json: HivePlugin.JSONObject): WriterImpl {
@@ -513,27 +696,62 @@ class Base64Binary {
     };
 }
 
+type SpilledReadAllResult = {
+    spilled: true;
+    size: number;
+}
+
+const READ_SPILLED_CHUNK_SIZE = 1024 * 1024;
+
 class ReaderImpl implements HivePlugin.Files.Reader {
     objectId: string;
 
-    async read(bytesCount: number): Promise<Uint8Array> {
+    read(bytesCount: number): HivePlugin.CancellablePromise<Uint8Array> {
         // Cordova automatically converts Uint8Array to a encoded base64 string in the direction JS->Native.
         // But it does not convert from base64 to Uint8Array in the other direction. So we do this manually.
-        let readData = await execAsPromise<string>("reader_read", [this.objectId, bytesCount]);
-        if (!readData)
-            return null;
-
-        return new Base64Binary().decode(readData);
+        let request = execAsPromise<string>("reader_read", [this.objectId, bytesCount]);
+        return thenCancellable(request, readData => {
+            if (!readData)
+                return null;
+
+            return new Base64Binary().decode(readData);
+        });
+    }
+    readAll(options?: HivePlugin.Files.ReadAllOptions): HivePlugin.CancellablePromise<Uint8Array> {
+        let request = execAsPromise<string | SpilledReadAllResult>("reader_readAll", [this.objectId, options]);
+        return thenCancellable(request, readData => {
+            if (!readData)
+                return null;
+
+            if (typeof readData !== "string")
+                return this.readSpilledData(readData.size);
+
+            return new Base64Binary().decode(readData);
+        });
+    }
+    /**
+     * Large readAll() results are kept in a native temporary file, and transferred by chunks.
+     */
+    private async readSpilledData(size: number): Promise<Uint8Array> {
+        let data = new Uint8Array(size);
+        let offset = 0;
+        while (offset < size) {
+            let chunk = await execAsPromise<string>("reader_readSpilled", [this.objectId, offset, READ_SPILLED_CHUNK_SIZE]);
+            let bytes = new Base64Binary().decode(chunk);
+            if (bytes.length == 0)
+                break;
+
+            data.set(bytes, offset);
+            offset += bytes.length;
+        }
+        return data;
     }
-    async readAll(): Promise<Uint8Array> {
-        let readData = await execAsPromise<string>("reader_readAll", [this.objectId]);
-        if (!readData)
-            return null;
-
-        return new Base64Binary().decode(readData);
+    enableReadAhead(options?: HivePlugin.Files.ReadAheadOptions): Promise<void> {
+        return execAsPromise<void>("reader_enableReadAhead", [this.objectId, options]);
     }
-    close(): Promise<void> {
-        return execAsPromise<void>("reader_close", [this.objectId]);
+    async close(): Promise<HivePlugin.Files.CompressionStats> {
+        let stats = await execAsPromise<HivePlugin.Files.CompressionStats>("reader_close", [this.objectId]);
+        return stats || null;
     }
 
     static fromJson(json: HivePlugin.JSONObject): ReaderImpl {
@@ -574,14 +792,14 @@ class FileInfoImpl implements HivePlugin.Files.FileInfo {
 class FilesImpl implements HivePlugin.Files.Files  {
     constructor(private vault: VaultImpl) {}
 
-    async upload(path: string): Promise<HivePlugin.Files.Writer> {
-        let resultJson = await execAsPromise<HivePlugin.JSONObject>("files_upload", [this.vault.objectId, path]);
-        return WriterImpl.fromJson(resultJson);
+    upload(path: string, options?: HivePlugin.Files.UploadOptions): HivePlugin.CancellablePromise<HivePlugin.Files.Writer> {
+        let request = execAsPromise<HivePlugin.JSONObject>("files_upload", [this.vault.objectId, path, options]);
+        return thenCancellable(request, resultJson => WriterImpl.fromJson(resultJson));
     }
 
-    async download(path: string): Promise<HivePlugin.Files.Reader> {
-        let resultJson = await execAsPromise<HivePlugin.JSONObject>("files_download", [this.vault.objectId, path]);
-        return ReaderImpl.fromJson(resultJson);
+    download(path: string, options?: HivePlugin.Files.DownloadOptions): HivePlugin.CancellablePromise<HivePlugin.Files.Reader> {
+        let request = execAsPromise<HivePlugin.JSONObject>("files_download", [this.vault.objectId, path, options]);
+        return thenCancellable(request, resultJson => ReaderImpl.fromJson(resultJson));
     }
 
     async delete(path: string): Promise<boolean> {
@@ -840,18 +1058,18 @@ class ScriptingImpl implements HivePlugin.Scripting.Scripting {
         return result.success;
     }
 
-    call(functionName: string, params?: HivePlugin.JSONObject, appDID?: string): Promise<HivePlugin.JSONObject> {
-        return execAsPromise<HivePlugin.JSONObject>("scripting_call", [this.vault.objectId, functionName, params, appDID]);
+    call(functionName: string, params?: HivePlugin.JSONObject, appDID?: string, options?: HivePlugin.Scripting.CallOptions): HivePlugin.CancellablePromise<HivePlugin.JSONObject> {
+        return execAsPromise<HivePlugin.JSONObject>("scripting_call", [this.vault.objectId, functionName, params, appDID, options]);
     }
 
-    async downloadFile(transactionId: string): Promise<HivePlugin.Files.Reader> {
-        let resultJson = await execAsPromise<HivePlugin.JSONObject>("scripting_downloadFile", [this.vault.objectId, transactionId]);
-        return ReaderImpl.fromJson(resultJson);
+    downloadFile(transactionId: string): HivePlugin.CancellablePromise<HivePlugin.Files.Reader> {
+        let request = execAsPromise<HivePlugin.JSONObject>("scripting_downloadFile", [this.vault.objectId, transactionId]);
+        return thenCancellable(request, resultJson => ReaderImpl.fromJson(resultJson));
     }
 
-    async uploadFile(transactionId: string): Promise<HivePlugin.Files.Writer> {
-        let resultJson = await execAsPromise<HivePlugin.JSONObject>("scripting_uploadFile", [this.vault.objectId, transactionId]);
-        return WriterImpl.fromJson(resultJson);
+    uploadFile(transactionId: string): HivePlugin.CancellablePromise<HivePlugin.Files.Writer> {
+        let request = execAsPromise<HivePlugin.JSONObject>("scripting_uploadFile", [this.vault.objectId, transactionId]);
+        return thenCancellable(request, resultJson => WriterImpl.fromJson(resultJson));
     }
 }
 
@@ -921,7 +1139,7 @@ class VaultImpl implements HivePlugin.Vault {
 class HiveURLInfoImpl implements HivePlugin.HiveURLInfo {
     objectId: string;
 
-    callScript(): Promise<HivePlugin.JSONObject> {
+    callScript(): HivePlugin.CancellablePromise<HivePlugin.JSONObject> {
         return execAsPromise<HivePlugin.JSONObject>("hiveURLInfo_callScript", [this.objectId]);
     }
 
@@ -966,9 +1184,43 @@ class ClientImpl implements HivePlugin.Client {
         }
     }
 
-    async downloadFileByScriptUrl(scriptURL: string): Promise<HivePlugin.Files.Reader> {
-        let resultJson = await execAsPromise<HivePlugin.JSONObject>("client_downloadFileByScriptUrl", [this.objectId, scriptURL]);
-        return ReaderImpl.fromJson(resultJson);
+    downloadFileByScriptUrl(scriptURL: string): HivePlugin.CancellablePromise<HivePlugin.Files.Reader> {
+        let request = execAsPromise<HivePlugin.JSONObject>("client_downloadFileByScriptUrl", [this.objectId, scriptURL]);
+        return thenCancellable(request, resultJson => ReaderImpl.fromJson(resultJson));
+    }
+
+    callScriptOnVaults(targets: string[], functionName: string, params?: HivePlugin.JSONObject, appDID?: string, options?: HivePlugin.CallScriptOnVaultsOptions, onResult?: (result: HivePlugin.VaultScriptResult) => void): HivePlugin.CancellablePromise<HivePlugin.VaultScriptResult[]> {
+        let requestId = "" + (nextRequestId++);
+        let promise = new Promise<HivePlugin.VaultScriptResult[]>((resolve, reject)=>{
+            if (!isAvailable("client_callScriptOnVaults")) {
+                reject(notAvailableError("client_callScriptOnVaults"));
+                return;
+            }
+
+            let results: HivePlugin.VaultScriptResult[] = new Array(targets.length);
+
+            // Results are streamed one by one by the native side (kept alive callback), then a final "done" message is sent.
+            exec((message: any)=>{
+                if (message && message.done) {
+                    resolve(results);
+                    return;
+                }
+
+                let result: HivePlugin.VaultScriptResult = {
+                    target: message.target,
+                    success: message.success,
+                    result: message.result,
+                    error: message.error ? nativeToTSException(message.error) : undefined
+                };
+                results[message.index] = result;
+
+                if (onResult)
+                    onResult(result);
+            }, (err: any)=>{
+                reject(nativeToTSException(err));
+            }, 'HivePlugin', "client_callScriptOnVaults", withRequestId([this.objectId, targets, functionName, params, appDID, options], requestId));
+        });
+        return makeCancellable(promise, requestId);
     }
 
     static fromJson(json: HivePlugin.JSONObject): ClientImpl {
@@ -1121,6 +1373,22 @@ class HiveManagerImpl implements HivePlugin.HiveManager {
     setDIDResolverUrl(resolver: string): Promise<void> {
         return execAsPromise<void>("setDIDResolverUrl", [resolver]);
     }
+
+    getMetrics(): Promise<HivePlugin.Metrics> {
+        return execAsPromise<HivePlugin.Metrics>("getMetrics", []);
+    }
+
+    resetMetrics(): Promise<void> {
+        return execAsPromise<void>("resetMetrics", []);
+    }
+
+    replayWorkload(captureFile: string, vault: HivePlugin.Vault, options?: HivePlugin.ReplayOptions): HivePlugin.CancellablePromise<HivePlugin.ReplayResult> {
+        return execAsPromise<HivePlugin.ReplayResult>("replayWorkload", [captureFile, (vault as VaultImpl).objectId, options]);
+    }
+
+    setOptions(options: HivePlugin.PluginOptions): Promise<void> {
+        return execAsPromise<void>("setOptions", [options]);
+    }
 }
 
 export = new HiveManagerImpl();
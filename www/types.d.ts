@@ -55,18 +55,45 @@ declare namespace HivePlugin {
         "PROVIDER_NOT_PUBLISHED" | // No vault provider information inside a DID document
         "DID_NOT_PUBLISHED" |
         "INVALID_HIVE_URL_FORMAT" |
+        "PROVIDER_UNAVAILABLE" | // The vault provider failed repeatedly and is not called for a while (circuit breaker)
 
         // Database errors - range -1000 ~ -1999
         "COLLECTION_NOT_FOUND" |
+        "REPLICA_NOT_ENABLED" | // Local query on a collection whose replica was not enabled with enableReplica()
+        "UNSUPPORTED_LOCAL_QUERY" | // The query uses an operator that local replicas can't evaluate
 
         // File errors - range -2000 ~ -2999
         "FILE_NOT_FOUND" |
 
+        // Request errors - range -3000 ~ -3999
+        "REQUEST_CANCELLED" | // The request was cancelled with CancellablePromise.cancel()
+
         // Unknown error
         "UNSPECIFIED";
 
     export class EnhancedError {
         getType(): EnhancedErrorType;
+        /** For calls that fail after a part of their work is done (insertMany()): result of that part */
+        partialResult?: any;
+    }
+
+    /**
+     * Promise of a plugin call that can be cancelled while in progress, for example when the user navigates
+     * away from a screen that is waiting for a large download or query result.
+     *
+     * A cancelled call is rejected right away with a REQUEST_CANCELLED error and its result, if it arrives
+     * later, is discarded (streams opened in the meantime are closed). Cancelling doesn't always stop the
+     * network request itself, but it stops all further processing of its result.
+     */
+    export interface CancellablePromise<T> extends Promise<T> {
+        /** Identifier of the native call */
+        requestId: string;
+
+        /**
+         * Cancels the call. Resolves to false if the call was already completed.
+         * Calls can only be cancelled on Android: elsewhere, this resolves to false and the call completes.
+         */
+        cancel(): Promise<boolean>;
     }
 
     export namespace Files {
@@ -77,7 +104,7 @@ declare namespace HivePlugin {
             /**
              * Reads at most bytesCount bytes from the file.
              */
-            read(bytesCount: number): Promise<Uint8Array>;
+            read(bytesCount: number): CancellablePromise<Uint8Array>;
 
             /**
              * Convenient way to read a whole file at once. This method may be used only
@@ -86,12 +113,38 @@ declare namespace HivePlugin {
              * In order to display a downloaded hive picture as a HTML image, the following sample can be useful:
              * img.src = URL.createObjectURL(await hiveFileReader.readAll());
              */
-            readAll(): Promise<Uint8Array>;
+            readAll(options?: ReadAllOptions): CancellablePromise<Uint8Array>;
+
+            /**
+             * Keeps downloading the next chunks in the background while the app processes the data already
+             * read, so that following read() calls are mostly served from memory. Useful for sequential reads
+             * of large files. Must not be called while a read is in progress.
+             * Android only: rejected on other platforms.
+             */
+            enableReadAhead(options?: ReadAheadOptions): Promise<void>;
 
             /**
              * Closes and frees reader's resources.
+             *
+             * For files that were uploaded compressed, returns decompression stats. Otherwise returns null.
+             */
+            close(): Promise<CompressionStats>;
+        }
+
+        type ReadAllOptions = {
+            /**
+             * Above this size, the native side writes the file to a temporary file instead of keeping it in
+             * memory, and the data is transferred by chunks. The temporary file is deleted when the reader is
+             * closed. Default: 4194304
              */
-            close(): Promise<void>;
+            spillThresholdBytes?: number;
+        }
+
+        type ReadAheadOptions = {
+            /** Size of each background network read. Default: 65536 */
+            chunkSize?: number;
+            /** Maximum amount of data downloaded in advance and not read yet. Default: 524288 */
+            maxBufferedBytes?: number;
         }
 
         /**
@@ -100,18 +153,82 @@ declare namespace HivePlugin {
         export interface Writer {
             /**
              * Appends the given data to the current file buffer.
+             *
+             * Writes are queued and sent in order. The returned promise resolves once the data is queued, but
+             * it is delayed while too much data is waiting to be sent (see UploadOptions.maxInFlightBytes), so
+             * awaiting each write() naturally adapts the writing pace to the network speed.
              */
             write(data: Uint8Array): Promise<void>;
 
             /**
              * Flushes buffered data previously written with write() to the remote file.
+             * Resolves after all previous writes have been sent.
              */
             flush(): Promise<void>;
 
             /**
              * Closes and frees writer's resources.
+             *
+             * For compressed uploads, returns compression stats. Otherwise returns null.
+             */
+            close(): Promise<CompressionStats>;
+        }
+
+        /**
+         * Compression algorithms available for uploads.
+         */
+        export type CompressionAlgorithm = "gzip" | "deflate";
+
+        /**
+         * Options used for upload().
+         */
+        export type UploadOptions = {
+            /**
+             * Compresses the uploaded content. Compressed files are tagged and automatically decompressed by
+             * download(). Useful for JSON or text content. Disabled by default.
+             *
+             * Android only. Compressed files are stored in a plugin specific format ("HIVZ" header) that the iOS
+             * and Electron plugins and other hive clients can't read: only use it for files that are only read
+             * by this plugin on Android.
+             */
+            compression?: {
+                /** Default: gzip */
+                algorithm?: CompressionAlgorithm;
+                /** From 1 (fastest) to 9 (smallest). Default: 6 */
+                level?: number;
+            };
+            /** Size of the buffer used to group small writes before sending them. Default: 64 KB */
+            bufferSize?: number;
+            /** Maximum number of written bytes waiting to be sent before write() calls are slowed down. Default: 1 MB */
+            maxInFlightBytes?: number;
+        }
+
+        /**
+         * Options used for download().
+         */
+        export type DownloadOptions = {
+            /**
+             * Whether files uploaded with compression should be decompressed while reading. If false, the raw
+             * (compressed) content is returned. Default: true
+             *
+             * Android only. Other platforms always return the raw content.
              */
-            close(): Promise<void>;
+            decompress?: boolean;
+        }
+
+        /**
+         * Compression results of a compressed upload or download.
+         */
+        export type CompressionStats = {
+            algorithm: CompressionAlgorithm;
+            /** Uncompressed size, in bytes */
+            rawBytes: number;
+            /** Size transferred to/from the vault, in bytes */
+            compressedBytes: number;
+            /** rawBytes / compressedBytes */
+            ratio: number;
+            /** CPU time spent compressing or decompressing */
+            cpuTimeMs: number;
         }
 
         /** Represents a file path on the back-end side. */
@@ -145,7 +262,7 @@ declare namespace HivePlugin {
              * small file chunks. After writing, flush() must be called to actually send the data
              * remotely.
              */
-            upload(path: FilePath): Promise<Writer>;
+            upload(path: FilePath, options?: UploadOptions): CancellablePromise<Writer>;
 
             /**
              * Initiates a download sequence by returning a Reader object that can be used to read
@@ -154,7 +271,7 @@ declare namespace HivePlugin {
              * In case parts of the file path don't exist yet (folder parts), they are automatically
              * created.
              */
-            download(path: FilePath): Promise<Reader>;
+            download(path: FilePath, options?: DownloadOptions): CancellablePromise<Reader>;
 
             /**
              * Deletes a file, or a folder. In case the given path is a folder, deletion is recursive.
@@ -385,7 +502,12 @@ declare namespace HivePlugin {
          * Options used during collection creation.
          */
         export type CreateCollectionOptions = {
-            // Nothing supported for now
+            /** Creates a fixed size collection, where the oldest documents are replaced by new ones. Default: false */
+            capped?: boolean;
+            /** Maximum size of a capped collection, in bytes. Required for capped collections */
+            size?: number;
+            /** Maximum number of documents of a capped collection */
+            max?: number;
         }
 
         /**
@@ -403,6 +525,10 @@ declare namespace HivePlugin {
             limit?: number;
             /** Number of results to skip before starting counting */
             skip?: number;
+            /** Maximum time the vault may spend counting, in milliseconds */
+            maxTimeMS?: number;
+            /** Index to use, as fields and directions (ex: {"date": -1}) */
+            hint?: JSONObject;
         }
 
         /**
@@ -423,21 +549,46 @@ declare namespace HivePlugin {
          * Options used for insertOne() operations.
          */
         export type InsertOptions = {
-            // Nothing supported for now
+            /** Set to true to skip the collection's schema validation. Default: false */
+            bypassDocumentValidation?: boolean;
+            /** For insertMany(): set to false to keep inserting the other documents after a failed one. Default: true */
+            ordered?: boolean;
+        }
+
+        /**
+         * Options used for insertMany() operations.
+         */
+        export type InsertManyOptions = InsertOptions & {
+            /** Maximum number of documents sent in a single request. Default: 500 */
+            batchSize?: number;
+            /** Maximum number of batch requests in progress when ordered is false. Ordered batches are sent one by one. Default: 3 */
+            concurrency?: number;
+            /**
+             * Set to true to keep sending the next batches after a failed batch, and to get failed batches in the
+             * result. Otherwise, only the batches already in progress complete, and the call fails with the
+             * InsertManyResult of the inserted documents as partialResult of the error. Default: false
+             */
+            continueOnError?: boolean;
         }
 
         /**
          * Options used for updateOne(), updateMany() operations.
          */
         export type UpdateOptions = {
-            // Nothing supported for now
+            /** Set to true to insert a document if none matches the filter. Default: false */
+            upsert?: boolean;
+            /** Set to true to skip the collection's schema validation. Default: false */
+            bypassDocumentValidation?: boolean;
+            /** Index to use, as fields and directions (ex: {"date": -1}) */
+            hint?: JSONObject;
         }
 
         /**
          * Options used for delete() operations.
          */
         export type DeleteOptions = {
-            // Nothing supported for now
+            /** Index to use, as fields and directions (ex: {"date": -1}) */
+            hint?: JSONObject;
         }
 
         /**
@@ -467,7 +618,21 @@ declare namespace HivePlugin {
          * Result after calls to insertMany() operations.
          */
         export type InsertManyResult = {
+            /** Ids of the inserted documents, in the order of the documents. null for documents of failed batches */
             insertedIds: string[];
+            insertedCount: number;
+            /** Number of requests the documents were split into */
+            batchCount: number;
+            /** Batches that could not be inserted, with continueOnError. The call fails instead if no document was inserted. */
+            failedBatches: InsertManyFailedBatch[];
+        }
+
+        export type InsertManyFailedBatch = {
+            /** Index of the first document of the batch */
+            offset: number;
+            /** Number of documents in the batch */
+            count: number;
+            error: EnhancedError;
         }
 
         /**
@@ -487,6 +652,170 @@ declare namespace HivePlugin {
             deletedCount: number;
         }
 
+        /**
+         * Operation of a bulkWrite() call, in the MongoDB bulkWrite() format.
+         */
+        export type BulkWriteOperation =
+            /** options.ordered is not allowed: ordering is an option of the bulk write */
+            { insertOne: { document: JSONObject, options?: InsertOptions } } |
+            { updateOne: { filter: JSONObject, update: JSONObject, options?: UpdateOptions } } |
+            { updateMany: { filter: JSONObject, update: JSONObject, options?: UpdateOptions } } |
+            { deleteOne: { filter: JSONObject, options?: DeleteOptions } } |
+            { deleteMany: { filter: JSONObject, options?: DeleteOptions } };
+
+        /**
+         * Options used by bulkWrite().
+         */
+        export type BulkWriteOptions = {
+            /**
+             * Ordered operations run one after the other, and stop at the first failure. Unordered operations
+             * run in parallel, and failures don't stop other operations. Default: true
+             */
+            ordered?: boolean;
+            /** Maximum number of vault calls in progress for unordered operations. Default: 4 */
+            concurrency?: number;
+            /**
+             * For unordered operations: group inserts into insertMany() requests, instead of one request per insert.
+             * The vault doesn't tell which documents of a failed request were inserted, so the error of a failed
+             * request is reported on all its inserts. Default: false
+             */
+            groupInserts?: boolean;
+        }
+
+        /**
+         * Outcome of one bulkWrite() operation. Only the fields of the operation type are set.
+         */
+        export type BulkWriteOperationResult = {
+            /** False if the operation was not run, after a failure of an ordered bulk write or a cancellation */
+            executed: boolean;
+            error?: EnhancedError;
+            insertedId?: string;
+            matchedCount?: number;
+            modifiedCount?: number;
+            upsertedCount?: number;
+            upsertedId?: string;
+            deletedCount?: number;
+        }
+
+        /**
+         * Result after a call to bulkWrite(). Totals only count successful operations.
+         */
+        export type BulkWriteResult = {
+            insertedCount: number;
+            matchedCount: number;
+            modifiedCount: number;
+            upsertedCount: number;
+            deletedCount: number;
+            /** Number of failed operations */
+            errorCount: number;
+            /** One result per operation, in the same order */
+            results: BulkWriteOperationResult[];
+        }
+
+        /**
+         * Options used by enableReplica().
+         */
+        export type ReplicaOptions = {
+            /**
+             * Field pulled documents are ordered by, to only pull documents with a greater or equal value during
+             * incremental syncs. Use an update timestamp maintained by the app to also pull updated documents.
+             * Default: "_id"
+             */
+            watermarkField?: string;
+            /** Fields indexed locally, to speed up local queries testing these fields for equality */
+            indexes?: string[];
+        }
+
+        /**
+         * Options used by syncReplica().
+         */
+        export type ReplicaSyncOptions = {
+            /**
+             * Set to true to pull the whole collection again. Incremental syncs don't remove documents deleted
+             * from the vault. Default: false
+             */
+            full?: boolean;
+        }
+
+        /**
+         * Result after enableReplica() or syncReplica().
+         */
+        export type ReplicaSyncResult = {
+            /** Number of documents pulled from the vault */
+            pulled: number;
+            /** Time of the last successful sync (ms since epoch) */
+            syncedAt: number;
+        }
+
+        /**
+         * Freshness requirements of local queries.
+         */
+        export type LocalQueryFreshness = {
+            /**
+             * Maximum age of the local replica. An older replica is synced before running the query. Default:
+             * -1, the local data is used as is.
+             */
+            maxStalenessMs?: number;
+            /** Set to true to query the local data anyway if this sync fails. Default: false */
+            allowStale?: boolean;
+        }
+
+        export type LocalQueryResult = {
+            /** Time of the last successful sync of the replica (ms since epoch), or 0 if never synced */
+            syncedAt: number;
+            /** True if the replica is older than maxStalenessMs, after a failed sync */
+            stale: boolean;
+        }
+
+        export type LocalFindOneResult = LocalQueryResult & {
+            document: JSONObject | null;
+        }
+
+        export type LocalFindManyResult = LocalQueryResult & {
+            documents: JSONObject[];
+        }
+
+        export type LocalCountResult = LocalQueryResult & {
+            count: number;
+        }
+
+        /**
+         * Options used by subscribe().
+         */
+        export type SubscribeOptions = {
+            /**
+             * Field updated by the app each time a document changes (ex: an update timestamp). When set, polls
+             * only fetch documents whose change field moved. Otherwise, all matching documents are fetched when
+             * their number changes, and updates that keep the same number of documents are not reported.
+             */
+            changeField?: string;
+            /** Poll interval after a change (ms). Polls without changes double the interval. Default: 2000 */
+            minIntervalMs?: number;
+            /** Maximum poll interval (ms), also used after a failed poll. Default: 60000 */
+            maxIntervalMs?: number;
+        }
+
+        /**
+         * Changes found by a subscription poll. The first notification lists all matching documents as added.
+         */
+        export type CollectionChanges = {
+            added: JSONObject[];
+            changed: JSONObject[];
+            /** _id of removed documents */
+            removed: JSONObject[];
+            /** Number of matching documents after these changes */
+            count: number;
+        }
+
+        export interface Subscription {
+            id: string;
+
+            /**
+             * Stops polling. No more changes are reported after this call resolves.
+             */
+            unsubscribe(): Promise<void>;
+        }
+
         /**
          * Equivalent of Mongo's ObjectId to be used in database queries.
          */
@@ -506,13 +835,13 @@ declare namespace HivePlugin {
             /**
              * Returns the number of documents matching the given query and options.
              */
-            countDocuments(collectionName: string, query: JSONObject, options?: CountOptions): Promise<number>;
+            countDocuments(collectionName: string, query: JSONObject, options?: CountOptions): CancellablePromise<number>;
 
             /**
              * Queries the database for some specific documents based on the given query and returns at most
              * one document.
              */
-            findOne(collectionName: string, query?: JSONObject, options?: FindOptions): Promise<JSONObject>;
+            findOne(collectionName: string, query?: JSONObject, options?: FindOptions): CancellablePromise<JSONObject>;
 
             /**
              * Queries the database for some specific documents based on the given query and returns a list of
@@ -520,7 +849,7 @@ declare namespace HivePlugin {
              *
              * @returns List of results matching the query
              */
-            findMany(collectionName: string, query?: JSONObject, options?: FindOptions): Promise<JSONObject[]>;
+            findMany(collectionName: string, query?: JSONObject, options?: FindOptions): CancellablePromise<JSONObject[]>;
 
             /**
              * Inserts a new document to the given collection, into current user's personal vault.
@@ -530,7 +859,7 @@ declare namespace HivePlugin {
             /**
              * Inserts several new documents to the given collection, into current user's personal vault.
              */
-            insertMany(collectionName: string, documents: JSONObject[], options?: InsertOptions): Promise<InsertManyResult>;
+            insertMany(collectionName: string, documents: JSONObject[], options?: InsertManyOptions): Promise<InsertManyResult>;
 
             /**
              * Updates at most one existing document based on the given query filter and using the given
@@ -553,6 +882,62 @@ declare namespace HivePlugin {
              * Deletes all documents matching the given deletion filter.
              */
             deleteMany(collectionName: string, filter: JSONObject, options?: DeleteOptions): Promise<DeleteResult>;
+
+            /**
+             * Runs a list of insert, update and delete operations with a single native call. Inserts of unordered
+             * operations can be grouped into insertMany() requests. The result gives the outcome of each operation,
+             * and totals.
+             * Android only: rejected on other platforms.
+             */
+            bulkWrite(collectionName: string, operations: BulkWriteOperation[], options?: BulkWriteOptions): CancellablePromise<BulkWriteResult>;
+
+            /**
+             * Keeps a local copy of a collection for offline queries, stored on the device across app restarts,
+             * and pulls documents added since the last sync.
+             * Android only: rejected on other platforms.
+             */
+            enableReplica(collectionName: string, options?: ReplicaOptions): Promise<ReplicaSyncResult>;
+
+            /**
+             * Pulls documents added (or updated, depending on the watermark field) since the last sync into the
+             * local replica.
+             * Android only: rejected on other platforms.
+             */
+            syncReplica(collectionName: string, options?: ReplicaSyncOptions): Promise<ReplicaSyncResult>;
+
+            /**
+             * Stops replicating a collection and deletes its local copy.
+             * Android only: rejected on other platforms.
+             */
+            disableReplica(collectionName: string): Promise<void>;
+
+            /**
+             * Same as findOne(), on the local replica of the collection. Supported query operators are $eq, $ne,
+             * $gt, $gte, $lt, $lte, $in, $nin, $exists, $and, $or and $nor. Projections are not supported.
+             * Android only: rejected on other platforms.
+             */
+            findOneLocal(collectionName: string, query?: JSONObject, options?: FindOptions, freshness?: LocalQueryFreshness): Promise<LocalFindOneResult>;
+
+            /**
+             * Same as findMany(), on the local replica of the collection.
+             * Android only: rejected on other platforms.
+             */
+            findManyLocal(collectionName: string, query?: JSONObject, options?: FindOptions, freshness?: LocalQueryFreshness): Promise<LocalFindManyResult>;
+
+            /**
+             * Same as countDocuments(), on the local replica of the collection.
+             * Android only: rejected on other platforms.
+             */
+            countDocumentsLocal(collectionName: string, query?: JSONObject, freshness?: LocalQueryFreshness): Promise<LocalCountResult>;
+
+            /**
+             * Watches the documents matching a query, and reports the added, changed and removed ones. The
+             * collection is polled natively: a count (and change field) probe first, then only the changed
+             * documents are fetched. Polling slows down while nothing changes, and stops while the app is in
+             * background.
+             * Android only: rejected on other platforms.
+             */
+            subscribe(collectionName: string, query: JSONObject, onChanges: (changes: CollectionChanges) => void, onError?: (error: EnhancedError) => void, options?: SubscribeOptions): Promise<Subscription>;
         }
     }
 
@@ -562,6 +947,14 @@ declare namespace HivePlugin {
     }
 
     export namespace Scripting {
+        export type CallOptions = {
+            /**
+             * Set to true if the script only reads data. Read only scripts are retried on network errors
+             * (see RetryOptions). Default: false
+             */
+            readOnly?: boolean;
+        }
+
         export namespace Conditions {
             export namespace Database {
                 /**
@@ -676,21 +1069,21 @@ declare namespace HivePlugin {
              * challenge response. This allows calling scripts from other application contexts in case they chose to made their
              * script accessible anonimously.
              */
-            call(functionName: string, params?: JSONObject, appDID?: string): Promise<JSONObject>;
+            call(functionName: string, params?: JSONObject, appDID?: string, options?: CallOptions): CancellablePromise<JSONObject>;
 
             /**
              * After calling a script that runs a DownloadExecutable, a call() to that script returns a transaction_id in its
              * response. That transaction_id can be used with downloadFile() to download a file that is provided by the
              * script output.
              */
-            downloadFile(transactionId: string): Promise<Files.Reader>;
+            downloadFile(transactionId: string): CancellablePromise<Files.Reader>;
 
             /**
              * After calling a script that runs a UploadExecutable, a call() to that script returns a transaction_id in its
              * response. That transaction_id can be used with uploadFile() to upload a file that has to be provided as part
              * of the script.
              */
-            uploadFile(transactionId: string): Promise<Files.Writer>;
+            uploadFile(transactionId: string): CancellablePromise<Files.Writer>;
         }
     }
 
@@ -825,7 +1218,45 @@ declare namespace HivePlugin {
          * JSON output to contain a file download information. If this is the case, the file download is
          * starting and a file reader is returned.
          */
-        downloadFileByScriptUrl(scriptURL: string): Promise<Files.Reader>;
+        downloadFileByScriptUrl(scriptURL: string): CancellablePromise<Files.Reader>;
+
+        /**
+         * Calls the same script on many vaults in parallel, for example to gather posts from all friends at once.
+         *
+         * Each target is either a vault owner DID, in which case functionName is called on that user's vault,
+         * or a hive url (hive://...), in which case the script embedded in the url is called.
+         *
+         * Results are delivered to onResult() as soon as each vault answers, so slow vaults don't block fast ones.
+         * The returned promise resolves once all targets have completed, with results in the same order as targets.
+         * Failures (including timeouts) of a single target don't reject the promise, they are reported in that
+         * target's result.
+         * Android only: rejected on other platforms.
+         */
+        callScriptOnVaults(targets: string[], functionName: string, params?: JSONObject, appDID?: string, options?: CallScriptOnVaultsOptions, onResult?: (result: VaultScriptResult) => void): CancellablePromise<VaultScriptResult[]>;
+    }
+
+    /**
+     * Options used for Client.callScriptOnVaults().
+     */
+    type CallScriptOnVaultsOptions = {
+        /** Maximum number of vaults called at the same time. Default: 8 */
+        concurrency?: number;
+        /** Maximum time (ms) allowed for each vault to resolve and return its result. Default: 15000. 0 to disable. */
+        timeout?: number;
+    }
+
+    /**
+     * Result of a script call on one of the vaults targeted by Client.callScriptOnVaults().
+     */
+    type VaultScriptResult = {
+        /** Vault owner DID or hive url, as given in the targets list */
+        target: string;
+        /** Whether the script could be called successfully on this target */
+        success: boolean;
+        /** Script output, if successful. Usually an object, but scripts can also return arrays or single values */
+        result?: JSONObject | any[] | string | number | boolean | null;
+        /** Reason of the failure, if not successful */
+        error?: EnhancedError;
     }
 
     /**
@@ -839,7 +1270,7 @@ declare namespace HivePlugin {
          * Calls a script represented by the parsed hive url.
          * Internally calls client.getVault().getScripting().call("scriptName", {params});
          */
-        callScript(): Promise<JSONObject>;
+        callScript(): CancellablePromise<JSONObject>;
 
         /**
          * Returns the vault targeted by the parsed url. Useful to be able to call consecutive actions following
@@ -908,6 +1339,369 @@ declare namespace HivePlugin {
          */
         errorOfType(error: any, errorType: HivePlugin.EnhancedErrorType): boolean;
 
+        /**
+         * Returns the vault provider address forced with setVaultAddress() for this vault owner, or null.
+         * Android only: rejected on other platforms.
+         */
+        getVaultAddress(ownerDid: string): Promise<string>;
+
+        /**
+         * Forces the vault provider address used for this vault owner, instead of the provider published in
+         * the owner's DID document. Mostly useful to point the app to a local or test hive node.
+         * Passing null removes the override.
+         * Android only: rejected on other platforms.
+         */
+        setVaultAddress(ownerDid: string, vaultAddress: string): Promise<void>;
+
+        /**
+         * Sets the DID resolver used by clients. It must be called before the first client is created: the
+         * resolver is then set up once for the app. On Android, setting a different URL afterwards rejects, and
+         * the resolver is set up at startup when the HiveDIDResolverUrl preference is set in config.xml.
+         */
         setDIDResolverUrl(resolver: string): Promise<void>;
+
+        /**
+         * Returns usage metrics collected by the native plugin since startup: calls, errors, latencies and
+         * transferred bytes for each plugin action, and the number of live native objects.
+         * Android only: rejected on other platforms.
+         */
+        getMetrics(): Promise<Metrics>;
+
+        /**
+         * Clears per action counters and latencies, so that the next getMetrics() only covers calls made
+         * after this one. Useful to measure a given scenario (ex: a benchmark run).
+         * Android only: rejected on other platforms.
+         */
+        resetMetrics(): Promise<void>;
+
+        /**
+         * Replays the calls recorded in a capture file (see CaptureOptions) on the given vault, with the
+         * captured timing and synthetic arguments of the same shape, and returns the replay throughput and
+         * latencies. Only read-only calls are replayed, unless ReplayOptions.allowWrites is set. Replayed calls
+         * are not captured and are not included in getMetrics().
+         * Android only: rejected on other platforms.
+         */
+        replayWorkload(captureFile: string, vault: Vault, options?: ReplayOptions): CancellablePromise<ReplayResult>;
+
+        /**
+         * Sets plugin wide options. Only the given sections are changed, other settings are kept.
+         * Android only: rejected on other platforms.
+         */
+        setOptions(options: PluginOptions): Promise<void>;
+    }
+
+    /**
+     * Slow call tracing. When enabled, timings of the recent plugin calls (argument parsing, data conversions,
+     * waiting for the SDK, result marshalling) are kept in memory. Each time a call takes longer than
+     * slowCallThresholdMs, these recent traces are written to a file in the app data folder ("traces" folder), in
+     * the Chrome trace event format (can be opened with chrome://tracing or https://ui.perfetto.dev).
+     */
+    type TracingOptions = {
+        /** Disabled by default */
+        enabled?: boolean;
+        /** Calls slower than this trigger a trace file. Default: 3000ms */
+        slowCallThresholdMs?: number;
+        /** Number of recent calls kept in memory and written to trace files. Default: 200 */
+        bufferSize?: number;
+        /** Number of trace files kept, older files are deleted. Default: 5 */
+        maxFiles?: number;
+        /** Minimum time between two trace files. Default: 10000ms */
+        minDumpIntervalMs?: number;
+    }
+
+    /**
+     * Limits of open file readers and writers. Readers and writers that are not used for longer than
+     * idleTimeoutMs are closed automatically, and when the maximum number of readers (or writers) is reached,
+     * opening a new one closes the least recently used one. Readers and writers in the middle of an operation
+     * are never closed. Using a closed reader or writer fails with an error explaining why it was closed.
+     */
+    type StreamsOptions = {
+        /** Default: 32 */
+        maxReaders?: number;
+        /** Default: 16 */
+        maxWriters?: number;
+        /** Default: 300000 (5 minutes). 0 to never close idle readers and writers. */
+        idleTimeoutMs?: number;
+    }
+
+    /**
+     * Latency aware node selection (android only). When enabled, nodes of the bundled node list (or the given
+     * addresses) are probed periodically, and vault lookups can be routed to the fastest healthy node:
+     * - "fallback" routing (default) uses the fastest node only for vault owners that don't publish a vault
+     * provider in their DID document.
+     * - "always" routing uses the fastest node for all vault lookups, for deployments where nodes mirror each other.
+     */
+    type NodeSelectionOptions = {
+        /** Default: true when this section is given. false stops probing and routing. */
+        enabled?: boolean;
+        /** Node addresses ("host:port" or urls) to use instead of the bundled list, for example local test servers. */
+        addresses?: string[];
+        routing?: "fallback" | "always";
+        /** Default: 60000 */
+        probeIntervalMs?: number;
+        /** Default: 5000 */
+        probeTimeoutMs?: number;
+        /** HTTP path requested on each node to measure its latency. Default: "/api/v0/version" */
+        probePath?: string;
+    }
+
+    /**
+     * Retries of read only operations (findOne(), findMany(), countDocuments(), files stat(), list(), hash() and
+     * scripts called with the readOnly option) that fail because of network errors. Retries are delayed by a
+     * random exponential backoff.
+     *
+     * After breakerFailureThreshold network failures in a row on the same provider, calls to this provider fail
+     * immediately with a PROVIDER_UNAVAILABLE error for breakerOpenDurationMs, then a single trial call decides
+     * if the provider is back.
+     */
+    type RetryOptions = {
+        /** Total number of attempts, including the first call. 1 disables retries. Default: 3 */
+        maxAttempts?: number;
+        /** Default: 250 */
+        baseDelayMs?: number;
+        /** Default: 4000 */
+        maxDelayMs?: number;
+        /** Default: 5 */
+        breakerFailureThreshold?: number;
+        /** Default: 30000 */
+        breakerOpenDurationMs?: number;
+    }
+
+    /**
+     * Records all plugin calls (action, arguments shape and size, timing, outcome) to a capture file that can
+     * be replayed with replayWorkload(). String values are replaced by their length, so documents content, DIDs
+     * and file data are not recorded. Each time capture is enabled, a new capture file is started.
+     */
+    type CaptureOptions = {
+        /** Default: false */
+        enabled?: boolean;
+        /** Maximum number of calls recorded in a capture file. Default: 100000 */
+        maxEvents?: number;
+    }
+
+    type ResultsOptions = {
+        /**
+         * Documents returned by findOne(), findMany(), scripting calls and hive url script calls are passed
+         * to JS exactly as serialized by the hive SDK, instead of going through intermediate native JSON
+         * objects. Faster for large results. Number formatting may differ slightly (ex: 1.0 instead of 1),
+         * and script results that are not JSON objects are returned as is instead of null. Default: false
+         */
+        rawJson?: boolean;
+    }
+
+    /**
+     * The plugin warms up in the background when the app starts (class loading, and DID resolver setup if
+     * the HiveDIDResolverUrl preference is set in config.xml). Set the HiveWarmUp preference to false to
+     * disable it.
+     */
+    type WarmUpOptions = {
+        /**
+         * DIDs of vault owners whose vault provider is resolved as soon as a client exists, so that their
+         * first vault lookup doesn't wait for DID resolution.
+         */
+        vaultOwners?: string[];
+    }
+
+    type BridgeOptions = {
+        /**
+         * Database and scripting calls decode and convert their arguments (documents, queries, script params)
+         * on a worker thread, so that large payloads don't block other plugin calls on the Cordova bridge
+         * thread. Set to false to run them on the bridge thread. Default: true
+         */
+        offloadActions?: boolean;
+    }
+
+    type PluginOptions = {
+        tracing?: TracingOptions;
+        streams?: StreamsOptions;
+        nodes?: NodeSelectionOptions;
+        retry?: RetryOptions;
+        capture?: CaptureOptions;
+        results?: ResultsOptions;
+        warmUp?: WarmUpOptions;
+        bridge?: BridgeOptions;
+    }
+
+    type ReplayOptions = {
+        /** Replay speed factor: 2 replays twice as fast as captured, 0 starts all calls at once. Default: 1 */
+        speed?: number;
+        /**
+         * Also replays calls that modify the vault (inserts, updates, deletes, uploads, script calls...), with
+         * synthetic data. Only use this with a test vault. Default: false
+         */
+        allowWrites?: boolean;
+    }
+
+    type ReplayResult = {
+        speed: number;
+        /** Calls in the capture file */
+        events: number;
+        /** Calls that could not be replayed because they don't apply to a vault */
+        skipped: number;
+        /** Calls not replayed because they modify the vault and allowWrites was not set */
+        skippedWrites: number;
+        calls: number;
+        errors: number;
+        /** True if the replay was cancelled */
+        stopped: boolean;
+        durationMs: number;
+        callsPerSecond: number;
+        actions: { [action: string]: { calls: number; errors: number; latencyMs: LatencyMetrics } };
+    }
+
+    /**
+     * Latency distribution, in milliseconds. Percentiles are approximate (about 20% precision).
+     */
+    type LatencyMetrics = {
+        count: number;
+        mean: number;
+        p50: number;
+        p95: number;
+        p99: number;
+        max: number;
+    }
+
+    /**
+     * Metrics of one native plugin action (ex: "database_findMany").
+     */
+    type ActionMetrics = {
+        /** Calls since the start of the measurement period (plugin startup or last resetMetrics()) */
+        calls: number;
+        /** Average call rate over the measurement period */
+        callsPerSecond: number;
+        errors: number;
+        /** Bytes uploaded to vaults */
+        bytesSent: number;
+        /** Bytes downloaded from vaults */
+        bytesReceived: number;
+        /** Full call duration, until the result is sent back */
+        latencyMs: LatencyMetrics;
+        /**
+         * Part of the call that runs synchronously on the Cordova bridge thread. Only the dispatch to a worker
+         * thread for actions with large arguments (database and scripting calls), see BridgeOptions.
+         */
+        bridgeLatencyMs: LatencyMetrics;
+        /** Wait for a worker thread, for actions run on worker threads. Empty for other actions */
+        queueLatencyMs: LatencyMetrics;
+        /** Synchronous part of the call (argument decoding and conversions), on the worker or bridge thread */
+        workLatencyMs: LatencyMetrics;
+        /**
+         * Duration of the first call since the plugin was loaded, including lazy initializations. Not
+         * cleared by resetMetrics().
+         */
+        firstCallLatencyMs?: number;
+    }
+
+    type Metrics = {
+        startTime: number;
+        uptimeMs: number;
+        /** Start of the measurement period: plugin startup, or the last resetMetrics() call */
+        periodStartTime: number;
+        periodMs: number;
+        actions: { [action: string]: ActionMetrics };
+        /** Number of live native objects, by type (clients, vaults, readers, writers, hiveURLInfos) */
+        handles: { [handleType: string]: number };
+        streams: {
+            readers: StreamsMetrics;
+            writers: StreamsMetrics;
+            readAhead: ReadAheadMetrics;
+        };
+        /** Only when node selection is enabled */
+        nodes?: NodesMetrics;
+        circuitBreakers: CircuitBreakerMetrics[];
+        /**
+         * Identical findOne(), files stat() and getNodeVersion() calls made while the same call is in progress
+         * share its result instead of sending a new request.
+         */
+        singleFlight: {
+            inFlight: number;
+            executed: number;
+            deduplicated: number;
+        };
+        capture: {
+            enabled: boolean;
+            /** Path of the current or last capture file, if any */
+            file?: string;
+            recordedEvents?: number;
+            /** Calls not recorded because maxEvents was reached */
+            droppedEvents?: number;
+        };
+        warmUp: {
+            done: boolean;
+            durationMs: number;
+            /** True if the DID resolver was set up during warm-up */
+            resolverReady: boolean;
+            resolverError?: string;
+            preloadedClasses: number;
+            /** Vault owners whose provider was resolved ahead of time, see WarmUpOptions */
+            preResolvedOwners: number;
+            preResolveErrors: number;
+        };
+        /** Collection subscriptions, see Database.subscribe() */
+        subscriptions: {
+            active: number;
+            polls: number;
+            /** Polls that stopped after the probe, without fetching documents */
+            unchangedPolls: number;
+            fetches: number;
+            fetchedDocuments: number;
+            errors: number;
+        };
+    }
+
+    type CircuitBreakerMetrics = {
+        provider: string;
+        state: "CLOSED" | "OPEN" | "HALF_OPEN";
+        consecutiveFailures: number;
+        /** Number of times the breaker opened */
+        trips: number;
+        /** Calls failed immediately because the breaker was open */
+        rejectedCalls: number;
+        /** Only when not CLOSED */
+        openedAt?: number;
+    }
+
+    type NodesMetrics = {
+        routing: "fallback" | "always";
+        /** Url of the currently selected (fastest healthy) node, if any */
+        selected: string | null;
+        nodes: {
+            url: string;
+            healthy: boolean;
+            /** Moving average of probe round trip times, -1 if never reached */
+            rttEwmaMs: number;
+            lastRttMs: number;
+            probes: number;
+            failures: number;
+            lastProbeTime: number;
+            lastError?: string;
+        }[];
+    }
+
+    type StreamsMetrics = {
+        live: number;
+        max: number;
+        idleTimeoutMs: number;
+        /** Closed after being unused for more than idleTimeoutMs */
+        reclaimedIdle: number;
+        /** Closed to make room for a new reader or writer */
+        reclaimedOverLimit: number;
+        /** Closed because the web view was reloaded or the plugin destroyed */
+        closedOnReset: number;
+    }
+
+    /**
+     * Reads of readers with read-ahead enabled.
+     */
+    type ReadAheadMetrics = {
+        /** Open readers with read-ahead enabled */
+        readers: number;
+        reads: number;
+        /** Reads served from data downloaded in advance */
+        hits: number;
+        /** Reads that had to wait for the network */
+        stalls: number;
+        stallTimeMs: number;
+        prefetchedBytes: number;
     }
 }